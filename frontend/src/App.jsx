@@ -1,4 +1,4 @@
-import { useEffect, useState } from 'react';
+import { useEffect, useRef, useState } from 'react';
 import './App.scss';
 import { CartesVisibles } from './components/CartesVisibles';
 import { Joueur } from './components/Joueur';
@@ -6,11 +6,18 @@ import { Log } from './components/Log';
 import { Piles } from './components/Piles';
 import { Plateau } from './components/Plateau';
 import { Prompt } from './components/Prompt';
+import { appliquerPatch } from './patch';
+import { decoderEtat, decoderJson, encoderAction, indexerReferentiel } from './protocole';
 
 function App() {
   const [ws, setWs] = useState(undefined);
   const [data, setData] = useState(undefined);
   const [highlightedRoutes, setHighlightedRoutes] = useState([]);
+  // destination survolée ({ joueur, destination }) dont les routes en
+  // surbrillance ont été demandées au serveur
+  const surbrillanceDemandee = useRef(undefined);
+  // messages du log reçus ({ premier: numéro du premier message, messages: [...] })
+  const [log, setLog] = useState({ premier: 0, messages: [] });
 
   useEffect(() => {
     if (ws === undefined) {
@@ -19,20 +26,122 @@ function App() {
         hostname = "localhost";
       }
       const websocket = new WebSocket(`ws://${hostname}:3232`);
+      websocket.binaryType = "arraybuffer";
+      // protocole binaire, sur demande (adresse de la page terminée par ?binaire)
+      const parametres = new URLSearchParams(window.location.search);
+      const binaire = parametres.has("binaire");
+      // messages JSON dans des trames binaires, sur demande (?trames=utf8 ou
+      // ?trames=deflate), encodés une seule fois par le serveur pour tous les
+      // clients (spectateurs nombreux)
+      const trames = parametres.get("trames");
+      // référentiel de la partie (protocole binaire uniquement)
+      let referentiel = undefined;
+      // version de l'état courant (pour détecter un message manquant)
+      let version = -1;
+      // à chaque nouvel état, la surbrillance de la destination survolée est
+      // redemandée au serveur (les routes libres et possédées ont pu changer)
+      const changerVersion = function (nouvelle) {
+        version = nouvelle;
+        const demande = surbrillanceDemandee.current;
+        if (demande !== undefined) {
+          websocket.send(JSON.stringify({ type: "surbrillance", joueur: demande.joueur, destination: demande.destination }));
+        }
+      };
+      // numéro du dernier message du log reçu
+      let dernierMessage = -1;
+      const ajouterMessages = function (extrait) {
+        if (extrait === undefined) {
+          return;
+        }
+        if (extrait.premier > dernierMessage + 1 && dernierMessage >= 0) {
+          // des messages ont été perdus : ils seront récupérés avec l'état complet
+          websocket.send(JSON.stringify({ type: "resync", log: dernierMessage }));
+          return;
+        }
+        const nouveaux = extrait.messages.slice(Math.max(0, dernierMessage + 1 - extrait.premier));
+        dernierMessage = extrait.premier + extrait.messages.length - 1;
+        setLog(ancien => ancien.messages.length === 0
+          ? { premier: extrait.premier, messages: extrait.messages }
+          : { premier: ancien.premier, messages: ancien.messages.concat(nouveaux) });
+      };
+      websocket.onopen = function () {
+        websocket.send(JSON.stringify(binaire ? { type: "binaire" } : trames ? { type: "delta", trames } : { type: "delta" }));
+      };
+      // les messages sont traités dans l'ordre de réception, même lorsque leur
+      // décodage est asynchrone (décompression)
+      let traitement = Promise.resolve();
       websocket.onmessage = function (event) {
-        const receivedData = JSON.parse(event.data);
+        traitement = traitement.then(() => traiterMessage(event)).catch(e => console.error(e));
+      };
+      const traiterMessage = async function (event) {
+        if (event.data instanceof ArrayBuffer && binaire) {
+          // chaque trame contient l'état complet : une trame perdue ne fait
+          // manquer que des messages du log (détectés par ajouterMessages)
+          const trame = decoderEtat(event.data, referentiel);
+          changerVersion(trame.version);
+          setData(trame.etat);
+          ajouterMessages(trame.log);
+          return;
+        }
+        const receivedData = event.data instanceof ArrayBuffer
+          ? await decoderJson(event.data, trames === "deflate")
+          : JSON.parse(event.data);
         console.log(receivedData);
-        setData(receivedData);
+        if (receivedData.type === "referentiel") {
+          referentiel = indexerReferentiel(receivedData);
+        } else if (receivedData.type === "etat") {
+          changerVersion(receivedData.version);
+          setData(receivedData.etat);
+          ajouterMessages(receivedData.log);
+        } else if (receivedData.type === "patch") {
+          if (receivedData.base !== version) {
+            websocket.send(JSON.stringify({ type: "resync", log: dernierMessage }));
+            return;
+          }
+          changerVersion(receivedData.version);
+          setData(etat => appliquerPatch(etat, receivedData.ops));
+          ajouterMessages(receivedData.log);
+        } else if (receivedData.type === "surbrillance") {
+          const demande = surbrillanceDemandee.current;
+          // une réponse calculée pour un état précédent est ignorée
+          if (demande !== undefined && demande.joueur === receivedData.joueur
+            && demande.destination === receivedData.destination && receivedData.version >= version) {
+            setHighlightedRoutes(receivedData.routes);
+          }
+        } else if (receivedData.type === "historique") {
+          const extrait = receivedData.log;
+          setLog(ancien => extrait.messages.length === 0 || extrait.premier >= ancien.premier
+            ? ancien
+            : { premier: extrait.premier, messages: extrait.messages.slice(0, ancien.premier - extrait.premier).concat(ancien.messages) });
+        } else {
+          setData(receivedData);
+          setLog({ premier: 0, messages: receivedData.log });
+        }
       };
       websocket._send = websocket.send;
       websocket.send = function (message) {
         console.log("Message envoyé: " + message);
-        websocket._send(message);
+        // les instructions de jeu sont envoyées en binaire si possible (les
+        // messages de contrôle commencent par '{' et restent en JSON)
+        const action = referentiel !== undefined && !message.startsWith("{")
+          ? encoderAction(message, referentiel) : undefined;
+        websocket._send(action === undefined ? message : action);
       };
       setWs(websocket);
     }
   }, [ws]);
 
+  // les routes en surbrillance sont calculées par le serveur à la demande
+  const surligner = function (joueur, destination) {
+    if (destination === undefined) {
+      surbrillanceDemandee.current = undefined;
+      setHighlightedRoutes([]);
+    } else {
+      surbrillanceDemandee.current = { joueur, destination };
+      ws.send(JSON.stringify({ type: "surbrillance", joueur, destination }));
+    }
+  };
+
   if (data === undefined) {
     return (<div id="main">
       <p>La connexion avec le serveur n'a pas pu être établie.</p>
@@ -48,7 +157,11 @@ function App() {
           <Prompt joueur={data.joueurs[data.joueurCourant]} instruction={data.instruction} boutons={data.boutons} ws={ws} />
           <CartesVisibles cartes={data.cartesTransportVisibles} ws={ws} />
           <div className='row'>
-            <Log logLines={data.log} />
+            <Log
+              logLines={log.messages}
+              peutRemonter={log.premier > 0}
+              remonter={() => ws.send(JSON.stringify({ type: "historique", avant: log.premier, nombre: 50 }))}
+            />
             <Piles
               piocheWagon={data.piocheWagon}
               piocheBateau={data.piocheBateau}
@@ -64,7 +177,7 @@ function App() {
                 key={index}
                 joueur={joueur}
                 estJoueurCourant={data.joueurCourant === index}
-                setHighlightedRoutes={setHighlightedRoutes}
+                surligner={destination => surligner(index, destination)}
                 ws={ws}
               />
             )}
@@ -12,7 +12,7 @@ function destinationToString(destination) {
 
 
 export function Joueur(props) {
-    const { joueur, estJoueurCourant, setHighlightedRoutes, ws } = props;
+    const { joueur, estJoueurCourant, surligner, ws } = props;
     return (
         <div className={`panneau-joueur ${joueur.couleur} ${estJoueurCourant ? 'actif' : ''}`}>
             <div className="header row">
@@ -23,7 +23,7 @@ export function Joueur(props) {
                 />
                 <div className="info column">
                     <span className="nom">{joueur.nom}</span>
-                    <div className="score">Score: {joueur.score}</div>
+                    <div className="score">Score: {joueur.score} (projeté : {joueur.scoreProjete})</div>
                     <div className="wagons">Wagons: {joueur.pionsWagon} ({joueur.pionsWagonReserve})</div>
                     <div className="bateaux">Bateaux: {joueur.pionsBateau} ({joueur.pionsBateauReserve})</div>
                 </div>
@@ -34,8 +34,8 @@ export function Joueur(props) {
                         <div
                             key={index}
                             className="destination"
-                            onMouseEnter={() => setHighlightedRoutes(joueur.routesPourDestinations[index])}
-                            onMouseLeave={() => setHighlightedRoutes([])}
+                            onMouseEnter={() => surligner(destination.nom)}
+                            onMouseLeave={() => surligner(undefined)}
                         >
                             {destinationToString(destination)}
                         </div>
@@ -8,9 +8,10 @@ export function Log(props) {
         innerLogRef.current.scrollTop = innerLogRef.current.scrollHeight;
     }, [props.logLines]);
 
-    const { logLines } = props;
+    const { logLines, peutRemonter, remonter } = props;
     return <div id="log">
         <div id="inner-log" ref={innerLogRef}>
+            {peutRemonter && <button onClick={remonter}>Messages précédents</button>}
             {logLines.map((line, index) => <pre key={index}>{parse(line)}</pre>)}
         </div>
     </div>;
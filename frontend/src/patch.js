@@ -0,0 +1,36 @@
+// Application des différences (format JSON Patch, opérations add/remove/replace)
+// envoyées par le serveur entre deux états successifs du jeu
+
+function parseChemin(chemin) {
+    return chemin.split("/").slice(1).map(cle => cle.replace(/~1/g, "/").replace(/~0/g, "~"));
+}
+
+export function appliquerPatch(etat, operations) {
+    const resultat = structuredClone(etat);
+    for (const operation of operations) {
+        const cles = parseChemin(operation.path);
+        if (cles.length === 0) {
+            return structuredClone(operation.value);
+        }
+        let parent = resultat;
+        for (const cle of cles.slice(0, -1)) {
+            parent = parent[cle];
+        }
+        const derniere = cles[cles.length - 1];
+        if (operation.op === "remove") {
+            if (Array.isArray(parent)) {
+                parent.splice(Number(derniere), 1);
+            } else {
+                delete parent[derniere];
+            }
+        } else if (Array.isArray(parent) && derniere === "-") {
+            parent.push(operation.value);
+        } else if (Array.isArray(parent) && operation.op === "add") {
+            // insertion à la position indiquée (cartes ajoutées à une main triée)
+            parent.splice(Number(derniere), 0, operation.value);
+        } else {
+            parent[derniere] = operation.value;
+        }
+    }
+    return resultat;
+}
@@ -0,0 +1,153 @@
+// Protocole binaire optionnel (voir ProtocoleBinaire.java côté serveur) :
+// décodage des trames d'état et encodage des actions à l'aide du référentiel
+// de la partie envoyé par le serveur
+
+const TRAME_ETAT = 1;
+
+const ACTIONS_SANS_ARGUMENT = ["", "WAGON", "BATEAU", null, null, null, "PIONS WAGON", "PIONS BATEAU", "DESTINATION"];
+const ACTION_CARTE = 3;
+const ACTION_ROUTE = 4;
+const ACTION_PORT = 5;
+const ACTION_DESTINATION = 9;
+const ACTION_NOMBRE = 10;
+
+const decodeur = new TextDecoder();
+
+function lecteur(donnees) {
+    const vue = new DataView(donnees);
+    let position = 0;
+    const l = {
+        u8: () => vue.getUint8(position++),
+        i8: () => vue.getInt8(position++),
+        i16: () => { const v = vue.getInt16(position); position += 2; return v; },
+        i64: () => { const v = Number(vue.getBigInt64(position)); position += 8; return v; },
+        entier: () => {
+            let n = 0;
+            for (let decalage = 0; ; decalage += 7) {
+                const b = vue.getUint8(position++);
+                n += (b & 0x7F) * 2 ** decalage;
+                if (b < 0x80) {
+                    return n;
+                }
+            }
+        },
+        chaine: () => {
+            const longueur = l.entier() - 1;
+            if (longueur < 0) {
+                return null;
+            }
+            const chaine = decodeur.decode(new Uint8Array(donnees, position, longueur));
+            position += longueur;
+            return chaine;
+        },
+        liste: (elements) => {
+            const n = l.entier();
+            const resultat = [];
+            for (let i = 0; i < n; i++) {
+                // identifiant + 1 (0 pour un élément absent du référentiel)
+                const id = l.entier() - 1;
+                resultat.push(id < 0 ? null : elements[id]);
+            }
+            return resultat;
+        },
+    };
+    return l;
+}
+
+// Décode une trame d'état : renvoie un message de la même forme que le message
+// JSON "etat" ({ type, version, etat, log })
+export function decoderEtat(donnees, ref) {
+    const l = lecteur(donnees);
+    if (l.u8() !== TRAME_ETAT) {
+        return undefined;
+    }
+    const version = l.i64();
+    const premier = l.i64();
+    const messages = [];
+    for (let n = l.entier(); n > 0; n--) {
+        messages.push(l.chaine());
+    }
+    const nbJoueurs = l.u8();
+    const etat = { joueurCourant: l.i8(), joueurs: [] };
+    for (let j = 0; j < nbJoueurs; j++) {
+        const joueur = {
+            nom: l.chaine(),
+            couleur: ref.couleurs[l.u8()],
+            score: l.i16(),
+            scoreProjete: l.i16(),
+            pionsWagon: l.u8(),
+            pionsWagonReserve: l.u8(),
+            pionsBateau: l.u8(),
+            pionsBateauReserve: l.u8(),
+            main: l.liste(ref.cartes),
+            inPlay: l.liste(ref.cartes),
+            ports: l.liste(ref.ports),
+            routes: l.liste(ref.routes),
+        };
+        joueur.destinationsIncompletes = l.liste(ref.destinations);
+        joueur.destinationsCompletes = l.liste(ref.destinations);
+        etat.joueurs.push(joueur);
+    }
+    for (const pioche of ["piocheWagon", "piocheBateau"]) {
+        etat[pioche] = { pioche: l.entier(), defausse: l.liste(ref.cartes) };
+    }
+    etat.cartesTransportVisibles = l.liste(ref.cartes);
+    etat.nbDestinations = l.entier();
+    etat.instruction = l.chaine();
+    etat.boutons = [];
+    for (let n = l.entier(); n > 0; n--) {
+        etat.boutons.push({ label: l.chaine(), valeur: l.chaine() });
+    }
+    return { type: "etat", version, etat, log: { premier, messages } };
+}
+
+// Prépare les tables de correspondance nom -> identifiant du référentiel
+export function indexerReferentiel(ref) {
+    const ids = (noms) => new Map(noms.map((nom, id) => [nom, id]));
+    return {
+        ...ref,
+        idsCartes: ids(ref.cartes.map(c => c.nom)),
+        idsRoutes: ids(ref.routes),
+        idsPorts: ids(ref.ports),
+        idsDestinations: ids(ref.destinations.map(d => d.nom)),
+    };
+}
+
+// Encode une instruction de jeu en action binaire (undefined si l'instruction
+// n'a pas d'équivalent binaire : elle est alors envoyée en texte)
+export function encoderAction(entree, ref) {
+    const type = ACTIONS_SANS_ARGUMENT.indexOf(entree);
+    if (type >= 0) {
+        return new Uint8Array([type]).buffer;
+    }
+    let action;
+    let argument;
+    for ([action, argument] of [
+        [ACTION_CARTE, ref.idsCartes.get(entree)],
+        [ACTION_ROUTE, ref.idsRoutes.get(entree)],
+        [ACTION_PORT, ref.idsPorts.get(entree)],
+        [ACTION_DESTINATION, ref.idsDestinations.get(entree)],
+        [ACTION_NOMBRE, /^\d+$/.test(entree) && Number(entree) <= 0x7FFFFFFF ? Number(entree) : undefined],
+    ]) {
+        if (argument !== undefined) {
+            // argument en entier variable (7 bits par octet)
+            const octets = [action];
+            for (; argument >= 0x80; argument >>>= 7) {
+                octets.push(argument & 0x7F | 0x80);
+            }
+            octets.push(argument);
+            return new Uint8Array(octets).buffer;
+        }
+    }
+    return undefined;
+}
+
+// Décode un message JSON reçu dans une trame binaire (clients qui ont demandé
+// les trames "utf8" ou "deflate" avec le message de contrôle "delta")
+export async function decoderJson(donnees, compresse) {
+    if (!compresse) {
+        return JSON.parse(decodeur.decode(donnees));
+    }
+    const flux = new Blob([donnees]).stream().pipeThrough(new DecompressionStream("deflate"));
+    return JSON.parse(await new Response(flux).text());
+}
@@ -0,0 +1,342 @@
+package fr.umontpellier.iut.gui;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import fr.umontpellier.iut.rails.RoueTemporelle;
+
+/**
+ * File d'envoi des messages vers un client connecté au serveur.
+ * <p>
+ * Les messages sont envoyés de façon asynchrone, un seul à la fois par client,
+ * dans l'ordre où ils ont été publiés. La file est bornée : lorsqu'un client
+ * n'arrive pas à suivre, les messages en attente sont remplacés par l'état
+ * complet le plus récent (seul le dernier état compte). Un client qui reste en
+ * retard trop longtemps est déconnecté, de même qu'un client dont un envoi ne
+ * se termine pas : chaque envoi est surveillé par une échéance de la
+ * {@link RoueTemporelle}, si bien qu'un envoi bloqué est détecté même si aucun
+ * nouvel état n'est publié.
+ * <p>
+ * Les messages sont des chaînes de caractères (JSON) ou, pour les clients qui
+ * utilisent le protocole binaire, des {@link TrameBinaire} partagées entre les
+ * clients : la file retient chaque trame qu'elle contient et la libère lorsque
+ * la trame a été envoyée ou retirée de la file.
+ * <p>
+ * Un client peut aussi demander à recevoir les messages JSON dans des trames
+ * binaires (encodés en UTF-8, éventuellement compressés) : les messages
+ * partagés par tous les clients sont alors ajoutés à la file sous forme de
+ * trames déjà encodées, et les autres sont encodés au moment de leur envoi.
+ */
+class ClientWeb implements SendHandler {
+    /**
+     * Nombre maximum de différences en attente d'envoi pour un client
+     */
+    static final int CAPACITE_FILE = 8;
+    /**
+     * Nombre de fusions consécutives (sans que le client ait rattrapé son retard)
+     * au-delà duquel le client est déconnecté
+     */
+    static final int MAX_FUSIONS = 32;
+    /**
+     * Durée maximale d'un envoi au-delà de laquelle le client est considéré
+     * comme bloqué et déconnecté
+     */
+    static final Duration DELAI_MAX_ENVOI = Duration.ofSeconds(10);
+
+    /**
+     * Forme sous laquelle les messages JSON sont envoyés au client
+     */
+    enum EncodageJson {
+        /**
+         * Trames texte (encodées par la websocket pour chaque client)
+         */
+        TEXTE,
+        /**
+         * Trames binaires contenant le JSON encodé en UTF-8
+         */
+        UTF8,
+        /**
+         * Trames binaires contenant le JSON encodé en UTF-8 et compressé (zlib)
+         */
+        DEFLATE
+    }
+
+    private final Session session;
+    /**
+     * Exécute la déconnexion d'un client bloqué (la tâche de la roue temporelle
+     * ne doit pas bloquer son thread)
+     */
+    private final Executor executeur;
+    private final Duration delaiMaxEnvoi;
+    /**
+     * Indique si le client reçoit les différences entre états (sinon il reçoit
+     * l'état complet à chaque fois)
+     */
+    private boolean delta;
+    /**
+     * Indique si le client utilise le protocole binaire (voir
+     * {@link ProtocoleBinaire})
+     */
+    private boolean binaire;
+    private EncodageJson encodageJson = EncodageJson.TEXTE;
+    private final Deque<Object> file = new ArrayDeque<>();
+    /**
+     * Message à envoyer avant tous ceux de la file, qui n'est jamais remplacé par
+     * un état complet (référentiel du protocole binaire)
+     */
+    private String preambule;
+    /**
+     * Message en cours d'envoi
+     */
+    private Object messageEnCours;
+    /**
+     * Indique si le message en attente dans la file est un état complet (qui sera
+     * remplacé par un état plus récent le cas échéant)
+     */
+    private boolean etatCompletEnAttente;
+    private boolean envoiEnCours;
+    /**
+     * Numéro de l'envoi en cours, et échéance qui le surveille
+     */
+    private long numeroEnvoi;
+    private RoueTemporelle.Echeance surveillanceEnvoi;
+    private int nbFusions;
+    private boolean ferme;
+
+    /**
+     * @param executeur exécute la vérification des envois qui durent plus de
+     *                  {@link #DELAI_MAX_ENVOI}
+     */
+    ClientWeb(Session session, Executor executeur) {
+        this(session, executeur, DELAI_MAX_ENVOI);
+    }
+
+    ClientWeb(Session session, Executor executeur, Duration delaiMaxEnvoi) {
+        this.session = session;
+        this.executeur = executeur;
+        this.delaiMaxEnvoi = delaiMaxEnvoi;
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    boolean recoitDelta() {
+        return delta;
+    }
+
+    void setDelta(boolean delta) {
+        this.delta = delta;
+    }
+
+    boolean estBinaire() {
+        return binaire;
+    }
+
+    EncodageJson getEncodageJson() {
+        return encodageJson;
+    }
+
+    void setEncodageJson(EncodageJson encodageJson) {
+        this.encodageJson = encodageJson;
+    }
+
+    /**
+     * Passe le client au protocole binaire : le référentiel lui est envoyé avant
+     * tout autre message, suivi de l'état complet.
+     */
+    synchronized void passerEnBinaire(String referentiel, TrameBinaire etatComplet) {
+        if (ferme) {
+            return;
+        }
+        binaire = true;
+        preambule = referentiel;
+        if (etatComplet != null) {
+            envoyerEtatComplet(etatComplet);
+        } else {
+            envoyerSuivant();
+        }
+    }
+
+    /**
+     * Publie un nouvel état pour ce client.
+     *
+     * @param increment   message à envoyer au client s'il est à jour (différence
+     *                    avec l'état précédent ou trame binaire), ou null pour
+     *                    lui envoyer l'état complet
+     * @param etatComplet fournit l'état complet au format attendu par le client
+     *                    (si aucun incrément n'est donné, ou si la file doit être
+     *                    fusionnée)
+     */
+    synchronized void publier(Object increment, Supplier<?> etatComplet) {
+        if (ferme) {
+            return;
+        }
+        if (increment != null && !etatCompletEnAttente && file.size() < CAPACITE_FILE) {
+            ajouter(increment);
+        } else {
+            remplacerParEtatComplet(etatComplet.get());
+        }
+        envoyerSuivant();
+    }
+
+    /**
+     * Remplace les messages en attente par l'état complet passé en argument et
+     * l'envoie dès que possible (connexion, demande de resynchronisation)
+     */
+    synchronized void envoyerEtatComplet(Object etatComplet) {
+        if (ferme) {
+            return;
+        }
+        vider();
+        ajouter(etatComplet);
+        etatCompletEnAttente = true;
+        envoyerSuivant();
+    }
+
+    /**
+     * Ajoute à la file un message qui ne correspond pas à un état (réponse à une
+     * demande du client). Ce message peut être perdu si la file est fusionnée
+     * avant son envoi.
+     */
+    synchronized void envoyer(String message) {
+        if (ferme) {
+            return;
+        }
+        ajouter(message);
+        envoyerSuivant();
+    }
+
+    private void ajouter(Object message) {
+        if (message instanceof TrameBinaire trame) {
+            trame.retenir();
+        }
+        file.add(message);
+    }
+
+    /**
+     * Vide la file en libérant les trames qu'elle contient
+     */
+    private void vider() {
+        for (Object message : file) {
+            if (message instanceof TrameBinaire trame) {
+                trame.liberer();
+            }
+        }
+        file.clear();
+    }
+
+    private void remplacerParEtatComplet(Object etatComplet) {
+        if (!file.isEmpty()) {
+            nbFusions++;
+            if (nbFusions > MAX_FUSIONS) {
+                fermer("client trop lent");
+                return;
+            }
+        }
+        vider();
+        ajouter(etatComplet);
+        etatCompletEnAttente = true;
+    }
+
+    /**
+     * Déconnecte le client si l'envoi surveillé est toujours en cours (appelée
+     * lorsque le délai maximal d'un envoi est écoulé)
+     */
+    private synchronized void verifierEnvoi(long numero) {
+        if (!ferme && envoiEnCours && numeroEnvoi == numero) {
+            fermer("envoi bloqué");
+        }
+    }
+
+    private void annulerSurveillance() {
+        if (surveillanceEnvoi != null) {
+            surveillanceEnvoi.annuler();
+            surveillanceEnvoi = null;
+        }
+    }
+
+    private void envoyerSuivant() {
+        if (ferme || envoiEnCours || (file.isEmpty() && preambule == null)) {
+            return;
+        }
+        Object message;
+        if (preambule != null) {
+            message = preambule;
+            preambule = null;
+        } else {
+            message = file.poll();
+            if (file.isEmpty()) {
+                etatCompletEnAttente = false;
+            }
+            if (message instanceof String texte && encodageJson != EncodageJson.TEXTE) {
+                // message propre à ce client : encodé pour lui seul (la trame
+                // créée est libérée à la fin de l'envoi)
+                message = TrameBinaire.json(texte, encodageJson == EncodageJson.DEFLATE);
+            }
+        }
+        envoiEnCours = true;
+        messageEnCours = message;
+        long numero = ++numeroEnvoi;
+        surveillanceEnvoi = RoueTemporelle.getInstance().planifier(delaiMaxEnvoi,
+                () -> executeur.execute(() -> verifierEnvoi(numero)));
+        try {
+            if (message instanceof TrameBinaire trame) {
+                session.getAsyncRemote().sendBinary(trame.vue(), this);
+            } else {
+                session.getAsyncRemote().sendText((String) message, this);
+            }
+        } catch (IllegalStateException e) {
+            envoiEnCours = false;
+            annulerSurveillance();
+            if (message instanceof TrameBinaire trame) {
+                trame.liberer();
+            }
+            messageEnCours = null;
+            fermer("session fermée");
+        }
+    }
+
+    /**
+     * Appelée lorsqu'un envoi asynchrone est terminé
+     */
+    @Override
+    public synchronized void onResult(SendResult resultat) {
+        envoiEnCours = false;
+        annulerSurveillance();
+        if (messageEnCours instanceof TrameBinaire trame) {
+            trame.liberer();
+        }
+        messageEnCours = null;
+        if (!resultat.isOK()) {
+            fermer("erreur d'envoi");
+            return;
+        }
+        if (file.isEmpty()) {
+            // le client a rattrapé son retard
+            nbFusions = 0;
+        }
+        envoyerSuivant();
+    }
+
+    private void fermer(String raison) {
+        ferme = true;
+        annulerSurveillance();
+        preambule = null;
+        vider();
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, raison));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
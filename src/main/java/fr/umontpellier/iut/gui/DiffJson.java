@@ -0,0 +1,214 @@
+package fr.umontpellier.iut.gui;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.umontpellier.iut.rails.EtatJson;
+
+/**
+ * Calcul de la différence structurelle entre deux états du jeu sérialisés en
+ * JSON.
+ * <p>
+ * La différence est exprimée sous la forme d'une liste d'opérations au format
+ * JSON Patch (RFC 6902), limitée aux opérations "add", "remove" et "replace".
+ * Comme dans la RFC, "add" à un indice d'un tableau insère l'élément à cette
+ * position ("-" l'ajoute à la fin). Appliquer les opérations dans l'ordre à
+ * l'ancien état redonne exactement le nouvel état.
+ */
+public final class DiffJson {
+
+    private DiffJson() {
+    }
+
+    /**
+     * Renvoie la liste des opérations qui transforment {@code ancien} en
+     * {@code nouveau} (liste vide si les deux états sont égaux)
+     */
+    public static JsonArray diff(JsonElement ancien, JsonElement nouveau) {
+        JsonArray operations = new JsonArray();
+        diff("", ancien, nouveau, operations);
+        return operations;
+    }
+
+    /**
+     * Renvoie la liste des opérations qui transforment l'état {@code ancien} en
+     * l'état {@code nouveau} (les mêmes que {@link #diff(JsonElement, JsonElement)}
+     * sur les arbres des deux états). Seules les sections qui ont changé (voir
+     * {@link EtatJson}) sont analysées, sauf si les deux états n'ont pas les
+     * mêmes sections.
+     */
+    public static JsonArray diff(EtatJson ancien, EtatJson nouveau) {
+        if (!ancien.memesSections(nouveau)) {
+            return diff(JsonParser.parseString(ancien.texte()), JsonParser.parseString(nouveau.texte()));
+        }
+        JsonArray operations = new JsonArray();
+        for (int i = 0; i < nouveau.getNbSections(); i++) {
+            if (!nouveau.sectionEgale(i, ancien)) {
+                diff(nouveau.getChemin(i), JsonParser.parseString(ancien.getSection(i)),
+                        JsonParser.parseString(nouveau.getSection(i)), operations);
+            }
+        }
+        return operations;
+    }
+
+    private static void diff(String chemin, JsonElement ancien, JsonElement nouveau, JsonArray operations) {
+        if (ancien.isJsonObject() && nouveau.isJsonObject()) {
+            diffObjets(chemin, ancien.getAsJsonObject(), nouveau.getAsJsonObject(), operations);
+        } else if (ancien.isJsonArray() && nouveau.isJsonArray()) {
+            diffTableaux(chemin, ancien.getAsJsonArray(), nouveau.getAsJsonArray(), operations);
+        } else if (!ancien.equals(nouveau)) {
+            operations.add(operation("replace", chemin, nouveau));
+        }
+    }
+
+    private static void diffObjets(String chemin, JsonObject ancien, JsonObject nouveau, JsonArray operations) {
+        for (Map.Entry<String, JsonElement> entree : ancien.entrySet()) {
+            String cheminCle = chemin + "/" + echapper(entree.getKey());
+            JsonElement valeur = nouveau.get(entree.getKey());
+            if (valeur == null) {
+                operations.add(operation("remove", cheminCle, null));
+            } else {
+                diff(cheminCle, entree.getValue(), valeur, operations);
+            }
+        }
+        for (Map.Entry<String, JsonElement> entree : nouveau.entrySet()) {
+            if (!ancien.has(entree.getKey())) {
+                operations.add(operation("add", chemin + "/" + echapper(entree.getKey()), entree.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Les tableaux d'éléments nommés (cartes et destinations, qui ont un champ
+     * {@code nom} unique) sont comparés par nom, si les éléments présents dans
+     * les deux tableaux y sont dans le même ordre (voir
+     * {@link #diffParNoms(String, JsonArray, JsonArray, JsonArray)}) : une carte
+     * ajoutée au milieu d'une main triée ne donne qu'une insertion.
+     * <p>
+     * Les autres tableaux sont comparés élément par élément sur leur partie
+     * commune. Les éléments en plus sont ajoutés à la fin, les éléments en moins
+     * sont retirés en partant de la fin (ce qui couvre le cas le plus fréquent
+     * des listes qui ne font que grandir ou rétrécir par la fin).
+     */
+    private static void diffTableaux(String chemin, JsonArray ancien, JsonArray nouveau, JsonArray operations) {
+        if (diffParNoms(chemin, ancien, nouveau, operations)) {
+            return;
+        }
+        int communs = Math.min(ancien.size(), nouveau.size());
+        for (int i = 0; i < communs; i++) {
+            diff(chemin + "/" + i, ancien.get(i), nouveau.get(i), operations);
+        }
+        for (int i = communs; i < nouveau.size(); i++) {
+            operations.add(operation("add", chemin + "/-", nouveau.get(i)));
+        }
+        for (int i = ancien.size() - 1; i >= communs; i--) {
+            operations.add(operation("remove", chemin + "/" + i, null));
+        }
+    }
+
+    /**
+     * Compare deux tableaux d'éléments nommés : les éléments absents du nouveau
+     * tableau sont retirés (en partant de la fin), puis les éléments absents de
+     * l'ancien tableau sont insérés à leur position ("add" à un indice), et enfin
+     * les éléments communs sont comparés entre eux.
+     *
+     * @return false (sans ajouter d'opération) si les tableaux ne sont pas des
+     *         tableaux d'éléments nommés, ou si leurs éléments communs ne sont pas
+     *         dans le même ordre
+     */
+    private static boolean diffParNoms(String chemin, JsonArray ancien, JsonArray nouveau, JsonArray operations) {
+        Set<String> nomsAnciens = noms(ancien);
+        Set<String> nomsNouveaux = nomsAnciens == null ? null : noms(nouveau);
+        if (nomsNouveaux == null) {
+            return false;
+        }
+        // les éléments communs doivent être dans le même ordre
+        int j = 0;
+        for (JsonElement element : ancien) {
+            String nom = nom(element);
+            if (!nomsNouveaux.contains(nom)) {
+                continue;
+            }
+            while (!nomsAnciens.contains(nom(nouveau.get(j)))) {
+                j++;
+            }
+            if (!nom.equals(nom(nouveau.get(j++)))) {
+                return false;
+            }
+        }
+        for (int i = ancien.size() - 1; i >= 0; i--) {
+            if (!nomsNouveaux.contains(nom(ancien.get(i)))) {
+                operations.add(operation("remove", chemin + "/" + i, null));
+            }
+        }
+        for (int i = 0; i < nouveau.size(); i++) {
+            if (!nomsAnciens.contains(nom(nouveau.get(i)))) {
+                operations.add(operation("add", chemin + "/" + i, nouveau.get(i)));
+            }
+        }
+        int i = 0;
+        for (JsonElement element : ancien) {
+            if (nomsNouveaux.contains(nom(element))) {
+                while (!nomsAnciens.contains(nom(nouveau.get(i)))) {
+                    i++;
+                }
+                diff(chemin + "/" + i, element, nouveau.get(i), operations);
+                i++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return les noms des éléments du tableau, ou null si le tableau est vide ou
+     *         si ses éléments ne sont pas tous des objets ayant des noms
+     *         différents
+     */
+    private static Set<String> noms(JsonArray tableau) {
+        if (tableau.isEmpty()) {
+            return null;
+        }
+        Set<String> noms = new HashSet<>();
+        for (JsonElement element : tableau) {
+            String nom = nom(element);
+            if (nom == null || !noms.add(nom)) {
+                return null;
+            }
+        }
+        return noms;
+    }
+
+    private static String nom(JsonElement element) {
+        if (!element.isJsonObject()) {
+            return null;
+        }
+        JsonElement nom = element.getAsJsonObject().get("nom");
+        return nom != null && nom.isJsonPrimitive() && nom.getAsJsonPrimitive().isString() ? nom.getAsString() : null;
+    }
+
+    private static JsonObject operation(String op, String chemin, JsonElement valeur) {
+        JsonObject operation = new JsonObject();
+        operation.addProperty("op", op);
+        operation.addProperty("path", chemin);
+        if (valeur != null) {
+            operation.add("value", valeur);
+        }
+        return operation;
+    }
+
+    /**
+     * Échappe une clé pour l'utiliser dans un chemin JSON Pointer (RFC 6901)
+     */
+    private static String echapper(String cle) {
+        if (cle.indexOf('~') < 0 && cle.indexOf('/') < 0) {
+            return cle;
+        }
+        return cle.replace("~", "~0").replace("/", "~1");
+    }
+}
@@ -1,41 +1,205 @@
 package fr.umontpellier.iut.gui;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.websocket.DeploymentException;
 import javax.websocket.Session;
 
 import org.glassfish.tyrus.server.Server;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import fr.umontpellier.iut.rails.EtatJson;
 import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.JournalPartie;
+import fr.umontpellier.iut.rails.LogJeu;
+import fr.umontpellier.iut.rails.Metriques;
+import fr.umontpellier.iut.rails.SurbrillanceDestinations;
 
 public class GameServer {
     /**
-     * Liste des clients connectés au serveur
+     * Clients connectés au serveur, indexés par leur session
+     * (uniquement manipulés par le thread de diffusion)
+     */
+    private static final Map<Session, ClientWeb> clients = new LinkedHashMap<>();
+    /**
+     * Modèle d'exécution du thread de la partie et du thread de diffusion
+     * (threads virtuels avec -Drails.threads=virtuels)
+     */
+    private static final ModeleThreads modeleThreads = ModeleThreads.depuisProprietes();
+    /**
+     * Thread unique qui calcule les différences et distribue les états aux clients.
+     * Toutes les variables liées à la diffusion ne sont manipulées que par ce
+     * thread, ce qui évite de bloquer le thread du jeu pendant les envois. Les
+     * messages de contrôle des clients sont aussi traités par ce thread (les
+     * instructions de jeu sont simplement ajoutées à la file de la partie, sans
+     * attente, dans le thread qui les reçoit).
+     */
+    private static final ExecutorService diffuseur = Executors
+            .newSingleThreadExecutor(modeleThreads.fabrique("diffusion", true));
+    /**
+     * Thread qui relit l'historique du log demandé par les clients (éventuellement
+     * dans le fichier d'archive) : la lecture ne retarde pas la diffusion, et
+     * seul l'envoi de la réponse est confié au thread de diffusion.
      */
-    private static ArrayList<Session> clients = new ArrayList<>();
+    private static final ExecutorService lecteurHistorique = Executors
+            .newSingleThreadExecutor(modeleThreads.fabrique("historique", true));
     /**
      * Description de l'état du jeu, envoyé aux clients pour la mise à jour de l'interface graphique
+     * (calculée à la demande à partir de {@code etatCourant})
+     */
+    private static String etatJeu = null;
+    /**
+     * Message contenant l'état complet et sa version, pour les clients qui reçoivent
+     * les différences (calculé à la demande à partir de {@code etatCourant})
+     */
+    private static String messageEtatComplet = null;
+    /**
+     * Dernier état du jeu, tel qu'il a été écrit par la partie (ses sections sont
+     * comparées à celles de l'état suivant pour calculer les différences)
+     */
+    private static EtatJson etatCourant = null;
+    /**
+     * Dernier état du jeu encodé pour le protocole binaire (voir
+     * {@link ProtocoleBinaire#encoderEtat(Jeu)}), s'il y a un protocole binaire
+     */
+    private static byte[] etatBinaireCourant = null;
+    /**
+     * Trame binaire de l'état courant avec les nouveaux messages du log, envoyée
+     * à tous les clients qui utilisent le protocole binaire (calculée une seule
+     * fois par état, s'il y a de tels clients)
+     */
+    private static TrameBinaire trameEtat = null;
+    /**
+     * Trame binaire de l'état courant avec tous les messages du log conservés en
+     * mémoire (calculée à la demande)
+     */
+    private static TrameBinaire trameEtatComplet = null;
+    /**
+     * Messages JSON de l'état courant (différences et états complets) déjà
+     * encodés dans des trames binaires, pour les clients qui reçoivent le JSON
+     * sous cette forme : chaque message est encodé (et compressé) une seule fois
+     * par encodage, puis la même trame est envoyée à tous ces clients. Les
+     * messages sont identifiés par l'objet String qui les contient.
+     */
+    private static final Map<String, TrameBinaire> tramesJsonUtf8 = new IdentityHashMap<>();
+    private static final Map<String, TrameBinaire> tramesJsonDeflate = new IdentityHashMap<>();
+    /**
+     * Numéro de version de l'état du jeu, incrémenté à chaque nouvel état. Il permet
+     * aux clients de détecter un message manquant et de demander une resynchronisation.
+     */
+    private static long versionEtatJeu = 0;
+    /**
+     * Log de la partie dont l'état est diffusé, et numéro du dernier message déjà
+     * transmis aux clients avec les différences
+     */
+    private static LogJeu logJeu = null;
+    private static long dernierMessagePublie = -1;
+    /**
+     * Routes en surbrillance pour les destinations dans l'état courant (calculées
+     * lorsqu'un client les demande)
+     */
+    private static SurbrillanceDestinations surbrillanceDestinations = null;
+    /**
+     * Nombre maximum de messages du log renvoyés par une demande d'historique
      */
-    private static String etatJeu = "";
+    private static final int MAX_MESSAGES_HISTORIQUE = 200;
+    private static final Gson gson = new Gson();
     /**
      * Instance de jeu exécutée par le serveur
      */
     private static Jeu jeu;
+    /**
+     * Encodage des messages pour les clients qui utilisent le protocole binaire
+     */
+    private static ProtocoleBinaire protocoleBinaire;
 
     public static void main(String[] args) {
         // Lancement de la partie
-        jeu = new Jeu(new String[]{"Guybrush", "Largo", "LeChuck", "Elaine"});
-        // jeu = new Jeu(new String[]{"Guybrush", "Largo"});
+        // Avec -Drails.journal=fichier, la partie est journalisée et, si le fichier
+        // existe déjà, la partie journalisée est reprise là où elle s'était arrêtée
+        String fichierJournal = System.getProperty("rails.journal");
+        try {
+            if (fichierJournal != null && Files.exists(Path.of(fichierJournal))) {
+                jeu = Jeu.reprendre(Path.of(fichierJournal), JournalPartie.INTERVALLE_INSTANTANES_PAR_DEFAUT);
+            } else {
+                jeu = new Jeu(new String[]{"Guybrush", "Largo", "LeChuck", "Elaine"});
+                // jeu = new Jeu(new String[]{"Guybrush", "Largo"});
+                if (fichierJournal != null) {
+                    jeu.activerJournal(Path.of(fichierJournal), JournalPartie.INTERVALLE_INSTANTANES_PAR_DEFAUT);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        protocoleBinaire = new ProtocoleBinaire(jeu);
+
+        // Délai de décision optionnel (-Drails.delai=secondes) : un joueur qui ne
+        // répond pas à temps passe, ou joue automatiquement jusqu'à la fin de la
+        // partie avec -Drails.delai.reaction=automatique
+        String delai = System.getProperty("rails.delai");
+        if (delai != null) {
+            Jeu.ReactionDelaiDepasse reaction = "automatique".equals(System.getProperty("rails.delai.reaction"))
+                    ? Jeu.ReactionDelaiDepasse.JOUEUR_AUTOMATIQUE
+                    : Jeu.ReactionDelaiDepasse.PASSER;
+            jeu.setDelaiDecision(Duration.ofMillis(Math.round(Double.parseDouble(delai) * 1000)), reaction);
+        }
+
+        // Archivage optionnel du log complet de la partie (-Drails.log.archive=fichier)
+        String archive = System.getProperty("rails.log.archive");
+        if (archive != null) {
+            try {
+                jeu.getLog().activerArchive(Path.of(archive));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Enregistrement optionnel de la partie pour pouvoir la rejouer
+        // (-Drails.enregistrement=fichier, voir JeuRejoue)
+        String fichierEnregistrement = System.getProperty("rails.enregistrement");
+        if (fichierEnregistrement != null) {
+            try {
+                jeu.activerEnregistrement().ecrireAuFurEtAMesure(Path.of(fichierEnregistrement));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Mesures des chemins critiques (-Drails.metriques=true), consultables
+        // par JMX et sur http://localhost:3233/metriques (-Drails.metriques.port)
+        if (Metriques.sontActives()) {
+            try {
+                ServeurMetriques.demarrer(Integer.getInteger("rails.metriques.port", 3233), modeleThreads);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
 
         // Prépare le serveur websocket
         Server server = new Server("localhost", 3232, "/", WebSocketClient.class);
 
         try (Scanner scanner = new Scanner(System.in)) {
             server.start();             // lance le serveur
-            new Thread(jeu).start();    // démarre le jeu (exécute la méthode Jeu.run() dans un nouveau thread)
+            modeleThreads.demarrer("partie", jeu);  // démarre le jeu (exécute la méthode Jeu.run() dans un nouveau thread)
 
             while (true) {
                 jeu.addInput(scanner.nextLine());
@@ -47,6 +211,14 @@ public class GameServer {
         }
     }
 
+    /**
+     * @return le modèle d'exécution des threads du serveur (et ses mesures
+     *         d'épinglage des threads virtuels)
+     */
+    public static ModeleThreads getModeleThreads() {
+        return modeleThreads;
+    }
+
     /**
      * Ajoute une nouvelle instruction à la file d'instructions
      * (cette méthode est appelée lorsqu'un message est reçue sur la websocket)
@@ -58,20 +230,210 @@ public class GameServer {
     }
 
     /**
-     * Met à jour l'état de la partie, et envoie le nouvel état à tous les clients connectés
+     * Ajoute à la file d'instructions une action envoyée en binaire par un client
+     * (voir {@link ProtocoleBinaire}). Les actions invalides sont ignorées.
+     *
+     * @param message l'action reçue
+     */
+    public static void addInput(ByteBuffer message) {
+        String entree = protocoleBinaire.decoderAction(message);
+        if (entree != null) {
+            jeu.addInput(entree);
+        }
+    }
+
+    /**
+     * Met à jour l'état de la partie, et envoie le nouvel état à tous les clients connectés.
+     * <p>
+     * L'état est reçu déjà sérialisé (voir {@link Jeu#etatJson()}). Les
+     * différences sont calculées par le thread de diffusion, qui se charge aussi
+     * des envois : le temps passé dans cette méthode ne dépend pas du nombre de
+     * clients. Seules les sections de l'état qui ont changé sont analysées (voir
+     * {@link DiffJson#diff(EtatJson, EtatJson)}), et les messages contenant
+     * l'état complet reprennent son texte sans l'analyser.
+     * <p>
+     * L'état destiné au protocole binaire est encodé directement à partir du
+     * jeu, dans le thread de la partie (qui appelle cette méthode) : c'est le
+     * seul moment où le jeu ne change pas. Seules les trames, qui ajoutent à cet
+     * état sa version et les messages du log, sont construites par le thread de
+     * diffusion.
+     * <p>
+     * Les clients qui ont demandé les différences ne reçoivent que les opérations
+     * permettant de passer de l'état précédent au nouvel état (avec le numéro de
+     * version correspondant) ainsi que les nouveaux messages du log. Les clients
+     * qui utilisent le protocole binaire reçoivent tous la même trame, qui
+     * contient l'état et les nouveaux messages du log. Les autres clients
+     * reçoivent l'état complet avec les derniers messages du log.
      * 
-     * @param etatJeu l'état de la partie
+     * @param partie       la partie
+     * @param etat         l'état de la partie au format JSON
+     * @param surbrillance les routes en surbrillance pour les destinations dans
+     *                     cet état (envoyées aux clients qui les demandent)
      */
-    public static void setEtatJeu(String etatJeu) {
-        GameServer.etatJeu = etatJeu;
-        // Envoie l'état de la partie à tous les clients
-        try {
-            for (Session session : clients) {
-                session.getBasicRemote().sendText(etatJeu);
+    public static void setEtatJeu(Jeu partie, EtatJson etat, SurbrillanceDestinations surbrillance) {
+        byte[] etatBinaire = protocoleBinaire == null ? null : protocoleBinaire.encoderEtat(partie);
+        LogJeu log = partie.getLog();
+        diffuseur.execute(() -> publier(etat, etatBinaire, log, surbrillance));
+    }
+
+    private static void publier(EtatJson etat, byte[] etatBinaire, LogJeu log,
+            SurbrillanceDestinations surbrillance) {
+        long debut = Metriques.debut();
+        EtatJson ancienEtat = etatCourant;
+        etatCourant = etat;
+        etatBinaireCourant = etatBinaire;
+        surbrillanceDestinations = surbrillance;
+        etatJeu = null;
+        messageEtatComplet = null;
+        trameEtat = liberer(trameEtat);
+        trameEtatComplet = liberer(trameEtatComplet);
+        libererTramesJson();
+        versionEtatJeu++;
+        if (log != logJeu) {
+            logJeu = log;
+            dernierMessagePublie = -1;
+        }
+        LogJeu.Extrait nouveauxMessages = log.depuis(dernierMessagePublie);
+        dernierMessagePublie = nouveauxMessages.premier() + nouveauxMessages.messages().size() - 1;
+
+        String patch = null;
+        if (ancienEtat != null && clients.values().stream().anyMatch(c -> c.recoitDelta() && !c.estBinaire())) {
+            JsonObject message = new JsonObject();
+            message.addProperty("type", "patch");
+            message.addProperty("version", versionEtatJeu);
+            message.addProperty("base", versionEtatJeu - 1);
+            message.add("ops", DiffJson.diff(ancienEtat, etat));
+            if (!nouveauxMessages.messages().isEmpty()) {
+                message.add("log", gson.toJsonTree(nouveauxMessages));
+            }
+            patch = gson.toJson(message);
+        }
+        if (clients.values().stream().anyMatch(ClientWeb::estBinaire)) {
+            trameEtat = protocoleBinaire.trameEtat(versionEtatJeu, nouveauxMessages, etatBinaire);
+        }
+        Metriques.SERIALISATION_DIFFUSION.enregistrerDepuis(debut);
+
+        debut = Metriques.debut();
+        for (ClientWeb client : clients.values()) {
+            Object increment = client.estBinaire() ? trameEtat : client.recoitDelta() ? encoderPour(client, patch) : null;
+            client.publier(increment, () -> etatCompletPour(client));
+        }
+        Metriques.ENVOI_DIFFUSION.enregistrerDepuis(debut);
+    }
+
+    /**
+     * Libère une trame binaire conservée par le serveur
+     *
+     * @return null
+     */
+    private static TrameBinaire liberer(TrameBinaire trame) {
+        if (trame != null) {
+            trame.liberer();
+        }
+        return null;
+    }
+
+    /**
+     * Renvoie un message JSON partagé par les clients (différences ou état
+     * complet de l'état courant) sous la forme attendue par le client : la chaîne
+     * elle-même, ou une trame binaire encodée une seule fois pour tous les
+     * clients qui utilisent le même encodage.
+     */
+    private static Object encoderPour(ClientWeb client, String message) {
+        if (message == null || client.getEncodageJson() == ClientWeb.EncodageJson.TEXTE) {
+            return message;
+        }
+        boolean compresser = client.getEncodageJson() == ClientWeb.EncodageJson.DEFLATE;
+        return (compresser ? tramesJsonDeflate : tramesJsonUtf8)
+                .computeIfAbsent(message, m -> TrameBinaire.json(m, compresser));
+    }
+
+    private static void libererTramesJson() {
+        tramesJsonUtf8.values().forEach(TrameBinaire::liberer);
+        tramesJsonUtf8.clear();
+        tramesJsonDeflate.values().forEach(TrameBinaire::liberer);
+        tramesJsonDeflate.clear();
+    }
+
+    /**
+     * Renvoie l'état complet de la partie au format JSON, avec les messages du log
+     * conservés en mémoire (sérialisé à la demande, une seule fois par état)
+     */
+    private static String getEtatJeu() {
+        if (etatJeu == null) {
+            String etat = etatCourant.texte();
+            etatJeu = new StringBuilder(etat.length() + 4096)
+                    .append(etat, 0, etat.length() - 1)
+                    .append(",\"log\":")
+                    .append(gson.toJson(logJeu.getMessages().messages()))
+                    .append('}')
+                    .toString();
+        }
+        return etatJeu;
+    }
+
+    /**
+     * Renvoie le message contenant l'état complet de la partie, son numéro de
+     * version et les messages du log conservés en mémoire, envoyé aux clients qui
+     * reçoivent les différences lors de leur connexion ou lorsqu'ils demandent une
+     * resynchronisation (sérialisé à la demande, une seule fois par état)
+     */
+    private static String getMessageEtatComplet() {
+        if (messageEtatComplet == null) {
+            messageEtatComplet = messageEtatComplet(-1);
+        }
+        return messageEtatComplet;
+    }
+
+    /**
+     * Renvoie le message contenant l'état complet de la partie et les messages du
+     * log dont le numéro est supérieur à {@code dernierMessageRecu} (les messages
+     * que le client a déjà reçus ne sont pas renvoyés)
+     */
+    private static String messageEtatComplet(long dernierMessageRecu) {
+        StringWriter texte = new StringWriter();
+        try (JsonWriter message = new JsonWriter(texte)) {
+            message.beginObject();
+            message.name("type").value("etat");
+            message.name("version").value(versionEtatJeu);
+            message.name("etat").jsonValue(etatCourant == null ? "{}" : etatCourant.texte());
+            if (logJeu != null) {
+                message.name("log").jsonValue(gson.toJson(logJeu.depuis(dernierMessageRecu)));
             }
+            message.endObject();
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
+        }
+        return texte.toString();
+    }
+
+    /**
+     * Renvoie la trame binaire contenant l'état complet de la partie et les
+     * messages du log conservés en mémoire (encodée à la demande, une seule fois
+     * par état)
+     */
+    private static TrameBinaire getTrameEtatComplet() {
+        if (trameEtatComplet == null) {
+            trameEtatComplet = trameEtatComplet(-1);
+        }
+        return trameEtatComplet;
+    }
+
+    /**
+     * Renvoie une nouvelle trame binaire contenant l'état complet de la partie et
+     * les messages du log dont le numéro est supérieur à
+     * {@code dernierMessageRecu} (la trame doit être libérée par l'appelant)
+     */
+    private static TrameBinaire trameEtatComplet(long dernierMessageRecu) {
+        LogJeu.Extrait log = logJeu == null ? new LogJeu.Extrait(0, List.of()) : logJeu.depuis(dernierMessageRecu);
+        return protocoleBinaire.trameEtat(versionEtatJeu, log, etatBinaireCourant);
+    }
+
+    private static Object etatCompletPour(ClientWeb client) {
+        if (client.estBinaire()) {
+            return getTrameEtatComplet();
         }
+        return encoderPour(client, client.recoitDelta() ? getMessageEtatComplet() : getEtatJeu());
     }
 
     /**
@@ -81,12 +443,190 @@ public class GameServer {
      * @param session la session du nouveau client
      */
     public static void addClient(Session session) {
-        GameServer.clients.add(session);
+        diffuseur.execute(() -> {
+            ClientWeb client = new ClientWeb(session, diffuseur);
+            clients.put(session, client);
+            if (etatCourant != null) {
+                client.envoyerEtatComplet(getEtatJeu());
+            }
+        });
+    }
+
+    /**
+     * Traite un message de contrôle envoyé par un client (message JSON de la forme
+     * {@code {"type": ...}}), qui ne correspond pas à une instruction de jeu.
+     * <p>
+     * Messages reconnus :
+     * - "delta" : le client demande à recevoir les différences entre états. Avec
+     * le champ {@code trames} ("utf8" ou "deflate"), il reçoit les messages JSON
+     * dans des trames binaires (encodées en UTF-8, et compressées au format zlib
+     * avec "deflate") : les différences et les états complets sont alors encodés
+     * une seule fois pour tous les clients, ce qui convient aux spectateurs
+     * nombreux
+     * - "resync" : le client demande l'état complet (par exemple s'il a détecté un
+     * message manquant)
+     * - "binaire" : le client demande à utiliser le protocole binaire (voir
+     * {@link ProtocoleBinaire}) : il reçoit le référentiel de la partie puis
+     * l'état complet et les états suivants sous forme de trames binaires
+     * - "historique" : le client demande les {@code nombre} messages du log
+     * précédant le message numéro {@code avant}
+     * - "surbrillance" : le client demande les routes à mettre en surbrillance
+     * pour la destination de nom {@code destination} du joueur numéro
+     * {@code joueur} (elles ne font pas partie de l'état diffusé, et ne sont
+     * calculées que lorsqu'un client les demande)
+     * <p>
+     * Les messages "delta", "binaire" et "resync" peuvent indiquer dans le champ {@code log}
+     * le numéro du dernier message du log reçu par le client, pour que seuls les
+     * messages suivants lui soient renvoyés.
+     * <p>
+     * Les champs sont vérifiés avant que le message soit confié au thread de
+     * diffusion : un message mal formé (champ numérique qui n'est pas un entier,
+     * par exemple) est ignoré.
+     *
+     * @param message le message reçu
+     * @param session la session du client qui a envoyé le message
+     */
+    public static void traiterControle(String message, Session session) {
+        JsonObject controle;
+        String type;
+        long dernierMessageRecu;
+        long avant;
+        int nombre;
+        int joueur;
+        String destination;
         try {
-            session.getBasicRemote().sendText(etatJeu);
-        } catch (IOException e) {
-            e.printStackTrace();
+            controle = JsonParser.parseString(message).getAsJsonObject();
+            type = controle.get("type").getAsString();
+            dernierMessageRecu = champEntier(controle, "log", -1);
+            avant = champEntier(controle, "avant", -1);
+            nombre = (int) Math.max(0, Math.min(champEntier(controle, "nombre", 50), MAX_MESSAGES_HISTORIQUE));
+            joueur = Math.toIntExact(champEntier(controle, "joueur", -1));
+            destination = champChaine(controle, "destination");
+        } catch (JsonParseException | IllegalStateException | NullPointerException | UnsupportedOperationException
+                | IllegalArgumentException | ArithmeticException e) {
+            // message mal formé : ignoré
+            return;
+        }
+        diffuseur.execute(() -> {
+            ClientWeb client = clients.get(session);
+            if (client == null) {
+                return;
+            }
+            switch (type) {
+                case "delta" -> {
+                    client.setDelta(true);
+                    if (controle.has("trames")) {
+                        client.setEncodageJson(switch (controle.get("trames").getAsString()) {
+                            case "utf8" -> ClientWeb.EncodageJson.UTF8;
+                            case "deflate" -> ClientWeb.EncodageJson.DEFLATE;
+                            default -> ClientWeb.EncodageJson.TEXTE;
+                        });
+                    }
+                    client.envoyerEtatComplet(messageEtatComplet(dernierMessageRecu));
+                }
+                case "binaire" -> {
+                    if (protocoleBinaire == null) {
+                        return;
+                    }
+                    TrameBinaire trame = etatCourant == null ? null : trameEtatComplet(dernierMessageRecu);
+                    client.passerEnBinaire(protocoleBinaire.referentiel(), trame);
+                    liberer(trame);
+                }
+                case "resync" -> {
+                    if (etatCourant == null) {
+                        return;
+                    }
+                    if (client.estBinaire()) {
+                        TrameBinaire trame = trameEtatComplet(dernierMessageRecu);
+                        client.envoyerEtatComplet(trame);
+                        trame.liberer();
+                    } else {
+                        client.envoyerEtatComplet(
+                                client.recoitDelta() ? messageEtatComplet(dernierMessageRecu) : getEtatJeu());
+                    }
+                }
+                case "historique" -> {
+                    if (logJeu == null || !controle.has("avant")) {
+                        return;
+                    }
+                    envoyerHistorique(session, client, logJeu, avant, nombre);
+                }
+                case "surbrillance" -> {
+                    if (surbrillanceDestinations == null || !controle.has("joueur") || destination == null) {
+                        return;
+                    }
+                    JsonObject reponse = new JsonObject();
+                    reponse.addProperty("type", "surbrillance");
+                    reponse.addProperty("version", versionEtatJeu);
+                    reponse.addProperty("joueur", joueur);
+                    reponse.addProperty("destination", destination);
+                    reponse.add("routes", gson.toJsonTree(surbrillanceDestinations.routesPourDestination(joueur, destination)));
+                    client.envoyer(gson.toJson(reponse));
+                }
+                default -> {
+                }
+            }
+        });
+    }
+
+    /**
+     * Relit l'historique demandé par un client dans le thread de lecture de
+     * l'historique, puis le lui envoie depuis le thread de diffusion (s'il est
+     * toujours connecté)
+     */
+    private static void envoyerHistorique(Session session, ClientWeb client, LogJeu log, long avant, int nombre) {
+        lecteurHistorique.execute(() -> {
+            JsonObject reponse = new JsonObject();
+            reponse.addProperty("type", "historique");
+            try {
+                reponse.add("log", gson.toJsonTree(log.avant(avant, nombre)));
+            } catch (UncheckedIOException e) {
+                System.err.println("Lecture de l'historique impossible : " + e.getCause());
+                return;
+            }
+            String texte = gson.toJson(reponse);
+            diffuseur.execute(() -> {
+                if (clients.get(session) == client) {
+                    client.envoyer(texte);
+                }
+            });
+        });
+    }
+
+    /**
+     * @return la valeur du champ entier d'un message de contrôle, ou
+     *         {@code defaut} si le champ est absent
+     * @throws IllegalArgumentException si le champ n'est pas un nombre entier
+     */
+    private static long champEntier(JsonObject controle, String champ, long defaut) {
+        JsonElement valeur = controle.get(champ);
+        if (valeur == null) {
+            return defaut;
+        }
+        if (!valeur.isJsonPrimitive() || !valeur.getAsJsonPrimitive().isNumber()) {
+            throw new IllegalArgumentException("Le champ " + champ + " n'est pas un nombre");
+        }
+        try {
+            return valeur.getAsBigDecimal().longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new IllegalArgumentException("Le champ " + champ + " n'est pas un entier", e);
+        }
+    }
+
+    /**
+     * @return la valeur du champ texte d'un message de contrôle, ou null si le
+     *         champ est absent
+     * @throws IllegalArgumentException si le champ n'est pas une chaîne
+     */
+    private static String champChaine(JsonObject controle, String champ) {
+        JsonElement valeur = controle.get(champ);
+        if (valeur == null) {
+            return null;
+        }
+        if (!valeur.isJsonPrimitive() || !valeur.getAsJsonPrimitive().isString()) {
+            throw new IllegalArgumentException("Le champ " + champ + " n'est pas une chaîne");
         }
+        return valeur.getAsString();
     }
 
     /**
@@ -96,6 +636,6 @@ public class GameServer {
      * @param session la session du client à retirer
      */
     public static void removeClient(Session session) {
-        GameServer.clients.remove(session);
+        diffuseur.execute(() -> clients.remove(session));
     }
 }
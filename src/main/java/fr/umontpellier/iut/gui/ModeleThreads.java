@@ -0,0 +1,142 @@
+package fr.umontpellier.iut.gui;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Modèle d'exécution des threads du serveur (partie et diffusion des états) :
+ * threads de la plateforme, ou threads virtuels avec
+ * {@code -Drails.threads=virtuels}.
+ * <p>
+ * Un thread virtuel bloqué en attente (par exemple une partie qui attend la
+ * réponse d'un joueur dans {@code Jeu.lireLigne}) ne monopolise pas de thread du
+ * système, si bien que le nombre de threads et la mémoire restent stables quel
+ * que soit le nombre de parties. Les threads virtuels n'existent qu'à partir de
+ * Java 21 : ils sont créés par réflexion, et les threads de la plateforme sont
+ * utilisés si la JVM ne les propose pas.
+ * <p>
+ * Lorsque les threads virtuels sont utilisés, les épinglages (thread virtuel
+ * bloqué sans libérer son thread porteur, par exemple dans un bloc
+ * {@code synchronized}) qui durent plus de {@link #SEUIL_EPINGLAGE} sont
+ * comptés à partir des événements JFR {@code jdk.VirtualThreadPinned}.
+ */
+public final class ModeleThreads {
+    public enum Type {
+        PLATEFORME,
+        VIRTUELS
+    }
+
+    /**
+     * Durée à partir de laquelle un épinglage est compté
+     */
+    static final Duration SEUIL_EPINGLAGE = Duration.ofMillis(20);
+
+    private final Type type;
+    /**
+     * Fabrique de threads virtuels (null si les threads de la plateforme sont
+     * utilisés)
+     */
+    private final ThreadFactory fabriqueVirtuelle;
+    private final AtomicLong nbEpinglages = new AtomicLong();
+    private final AtomicLong dureeEpinglagesNanos = new AtomicLong();
+
+    /**
+     * @param type le modèle demandé (les threads de la plateforme sont utilisés
+     *             si les threads virtuels ne sont pas disponibles)
+     */
+    public ModeleThreads(Type type) {
+        ThreadFactory fabrique = null;
+        if (type == Type.VIRTUELS) {
+            try {
+                Object constructeur = Thread.class.getMethod("ofVirtual").invoke(null);
+                fabrique = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory")
+                        .invoke(constructeur);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Threads virtuels indisponibles (Java " + Runtime.version().feature()
+                        + ") : utilisation des threads de la plateforme");
+            }
+        }
+        this.fabriqueVirtuelle = fabrique;
+        this.type = fabrique == null ? Type.PLATEFORME : Type.VIRTUELS;
+        if (this.type == Type.VIRTUELS) {
+            surveillerEpinglages();
+        }
+    }
+
+    /**
+     * @return le modèle choisi par la propriété système {@code rails.threads}
+     *         ("virtuels" ou "plateforme", par défaut)
+     */
+    public static ModeleThreads depuisProprietes() {
+        return new ModeleThreads("virtuels".equals(System.getProperty("rails.threads"))
+                ? Type.VIRTUELS
+                : Type.PLATEFORME);
+    }
+
+    /**
+     * @return le modèle effectivement utilisé
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Renvoie une fabrique de threads nommés. Les threads virtuels sont toujours
+     * des démons.
+     *
+     * @param nom    le nom des threads créés
+     * @param demon  indique si les threads de la plateforme créés sont des démons
+     *               (la JVM peut s'arrêter sans attendre qu'ils se terminent)
+     */
+    public ThreadFactory fabrique(String nom, boolean demon) {
+        return tache -> {
+            Thread thread;
+            if (fabriqueVirtuelle != null) {
+                thread = fabriqueVirtuelle.newThread(tache);
+                thread.setName(nom);
+            } else {
+                thread = new Thread(tache, nom);
+                thread.setDaemon(demon);
+            }
+            return thread;
+        };
+    }
+
+    /**
+     * Crée et démarre un thread qui exécute la tâche
+     */
+    public Thread demarrer(String nom, Runnable tache) {
+        Thread thread = fabrique(nom, false).newThread(tache);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * @return le nombre d'épinglages de threads virtuels plus longs que
+     *         {@link #SEUIL_EPINGLAGE} depuis le démarrage
+     */
+    public long getNbEpinglages() {
+        return nbEpinglages.get();
+    }
+
+    /**
+     * @return la durée totale des épinglages comptés par
+     *         {@link #getNbEpinglages()}
+     */
+    public Duration getDureeEpinglages() {
+        return Duration.ofNanos(dureeEpinglagesNanos.get());
+    }
+
+    private void surveillerEpinglages() {
+        RecordingStream flux = new RecordingStream();
+        flux.enable("jdk.VirtualThreadPinned").withThreshold(SEUIL_EPINGLAGE);
+        flux.onEvent("jdk.VirtualThreadPinned", evenement -> {
+            nbEpinglages.incrementAndGet();
+            dureeEpinglagesNanos.addAndGet(evenement.getDuration().toNanos());
+        });
+        flux.startAsync();
+    }
+}
@@ -0,0 +1,475 @@
+package fr.umontpellier.iut.gui;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+import fr.umontpellier.iut.rails.Bouton;
+import fr.umontpellier.iut.rails.Index;
+import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.LogJeu;
+import fr.umontpellier.iut.rails.PilesCartesTransport;
+import fr.umontpellier.iut.rails.Route;
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Destination;
+import fr.umontpellier.iut.rails.data.Ville;
+
+/**
+ * Protocole binaire optionnel entre le serveur et les clients websocket.
+ * <p>
+ * Un client choisit ce protocole en envoyant le message de contrôle
+ * {@code {"type": "binaire"}}. Il reçoit alors (en texte) le référentiel de la
+ * partie ({@link #referentiel()}), qui donne les éléments désignés par leurs
+ * identifiants, puis les états de la partie sous forme de trames binaires. Les
+ * autres messages de contrôle restent en JSON, et les clients qui ne demandent
+ * rien continuent à recevoir du JSON.
+ * <p>
+ * Les entiers sont écrits en big-endian. Les nombres d'éléments et les
+ * longueurs sont des entiers variables (7 bits par octet, bit de poids fort à 1
+ * s'il y a un octet suivant) ; les chaînes sont en UTF-8 précédées de leur
+ * longueur + 1 (0 pour une chaîne absente) ; les listes d'identifiants sont des
+ * nombres d'éléments suivis des identifiants + 1, en entiers variables (0 pour
+ * un élément qui n'est pas dans le référentiel) : un identifiant inférieur à
+ * 127 tient sur un octet, et un plateau peut avoir plus de 65 536 routes. Une
+ * trame d'état est formée de :
+ * <pre>
+ * u8   TRAME_ETAT
+ * i64  version de l'état
+ * i64  numéro du premier message du log, var nombre de messages, chaînes
+ * u8   nombre de joueurs, u8 joueur courant (255 si aucun)
+ * pour chaque joueur :
+ *      chaîne nom, u8 couleur, i16 score, i16 score projeté, u8 pions wagon,
+ *      u8 réserve wagon, u8 pions bateau, u8 réserve bateau, cartes en main,
+ *      cartes posées, ports, routes, destinations incomplètes, destinations
+ *      complètes
+ * pioche wagon : var nombre de cartes dans la pioche, cartes de la défausse
+ * pioche bateau : idem
+ * cartes visibles
+ * var nombre de destinations dans la pile
+ * chaîne instruction
+ * var nombre de boutons, pour chacun chaîne label et chaîne valeur
+ * </pre>
+ * Les actions peuvent être envoyées par les clients en binaire : un octet
+ * donnant le type de l'action (constantes {@code ACTION_*}), suivi pour
+ * certaines actions d'un identifiant ou d'un nombre (entier variable).
+ */
+public final class ProtocoleBinaire {
+    public static final int TRAME_ETAT = 1;
+
+    public static final int ACTION_PASSER = 0;
+    public static final int ACTION_PIOCHE_WAGON = 1;
+    public static final int ACTION_PIOCHE_BATEAU = 2;
+    /**
+     * Choisir une carte transport (argument : identifiant de la carte)
+     */
+    public static final int ACTION_CARTE = 3;
+    /**
+     * Choisir une route (argument : identifiant de la route)
+     */
+    public static final int ACTION_ROUTE = 4;
+    /**
+     * Choisir un port (argument : identifiant du port)
+     */
+    public static final int ACTION_PORT = 5;
+    public static final int ACTION_PIONS_WAGON = 6;
+    public static final int ACTION_PIONS_BATEAU = 7;
+    public static final int ACTION_PIOCHE_DESTINATIONS = 8;
+    /**
+     * Choisir une destination (argument : identifiant de la destination)
+     */
+    public static final int ACTION_DESTINATION = 9;
+    /**
+     * Choisir un nombre, par exemple de pions (argument : le nombre)
+     */
+    public static final int ACTION_NOMBRE = 10;
+
+    private static final String[] ENTREES_SANS_ARGUMENT = { "", "WAGON", "BATEAU", null, null, null,
+            "PIONS WAGON", "PIONS BATEAU", "DESTINATION" };
+
+    private final Index<CarteTransport> indexCartes;
+    private final Index<Route> indexRoutes;
+    private final Index<Ville> indexPorts;
+    private final Index<Destination> indexDestinations;
+    /**
+     * Tampon dans lequel l'état est encodé, et tableau de travail pour trier les
+     * cartes (utilisés uniquement par le thread de la partie, voir
+     * {@link #encoderEtat(Jeu)})
+     */
+    private ByteBuffer tamponEtat = ByteBuffer.allocate(TrameBinaire.TAILLE_INITIALE);
+    private CarteTransport[] tri = new CarteTransport[32];
+
+    public ProtocoleBinaire(Jeu jeu) {
+        this.indexCartes = jeu.getIndexCartes();
+        this.indexRoutes = jeu.getIndexRoutes();
+        this.indexPorts = jeu.getIndexPorts();
+        this.indexDestinations = jeu.getIndexDestinations();
+    }
+
+    /**
+     * Renvoie le référentiel de la partie (message JSON de type "referentiel") :
+     * la description des cartes transport et des destinations, et les noms des
+     * routes, des ports et des couleurs des joueurs, rangés dans l'ordre de leurs
+     * identifiants
+     */
+    public String referentiel() {
+        Gson gson = new Gson();
+        JsonObject message = new JsonObject();
+        message.addProperty("type", "referentiel");
+        message.add("cartes", gson.toJsonTree(indexCartes.getElements()));
+        message.add("destinations", gson.toJsonTree(indexDestinations.getElements()));
+        message.add("routes", gson.toJsonTree(indexRoutes.getElements().stream().map(Route::getNom).toList()));
+        message.add("ports", gson.toJsonTree(indexPorts.getElements().stream().map(Ville::nom).toList()));
+        message.add("couleurs", gson.toJsonTree(Joueur.CouleurJouer.values()));
+        return gson.toJson(message);
+    }
+
+    /**
+     * Encode l'état de la partie (la partie de la trame d'état qui suit les
+     * messages du log), directement à partir du jeu et de ses joueurs. L'état
+     * doit être encodé par le thread de la partie, pendant qu'elle attend une
+     * décision ; les octets renvoyés peuvent ensuite être transmis au thread qui
+     * construit les trames.
+     */
+    public byte[] encoderEtat(Jeu jeu) {
+        while (true) {
+            tamponEtat.clear();
+            try {
+                ecrireEtat(tamponEtat, jeu);
+            } catch (BufferOverflowException e) {
+                tamponEtat = ByteBuffer.allocate(2 * tamponEtat.capacity());
+                continue;
+            }
+            return Arrays.copyOf(tamponEtat.array(), tamponEtat.position());
+        }
+    }
+
+    private void ecrireEtat(ByteBuffer tampon, Jeu jeu) {
+        List<Joueur> joueurs = jeu.getJoueurs();
+        tampon.put((byte) joueurs.size());
+        tampon.put((byte) joueurs.indexOf(jeu.getJoueurCourant()));
+        for (Joueur joueur : joueurs) {
+            ecrireChaine(tampon, joueur.getNom());
+            tampon.put((byte) joueur.getCouleur().ordinal());
+            tampon.putShort((short) joueur.getScore());
+            tampon.putShort((short) joueur.getScoreProjete());
+            tampon.put((byte) joueur.getNbPionsWagon());
+            tampon.put((byte) joueur.getNbPionsWagonEnReserve());
+            tampon.put((byte) joueur.getNbPionsBateau());
+            tampon.put((byte) joueur.getNbPionsBateauEnReserve());
+            ecrireCartesTriees(tampon, joueur.getCartesTransport());
+            ecrireCartesTriees(tampon, joueur.getCartesTransportPosees());
+            ecrireIds(tampon, joueur.getPorts(), indexPorts);
+            ecrireIds(tampon, joueur.getRoutes(), indexRoutes);
+            ecrireDestinations(tampon, joueur, false);
+            ecrireDestinations(tampon, joueur, true);
+        }
+        for (PilesCartesTransport piles : new PilesCartesTransport[] { jeu.getPilesDeCartesWagon(),
+                jeu.getPilesDeCartesBateau() }) {
+            ecrireEntier(tampon, piles.getNbCartesPioche());
+            ecrireIds(tampon, piles.getDefausse(), indexCartes);
+        }
+        ecrireIds(tampon, jeu.getCartesTransportVisibles(), indexCartes);
+        ecrireEntier(tampon, jeu.getNbDestinations());
+        ecrireChaine(tampon, jeu.getInstruction());
+        Collection<Bouton> boutons = jeu.getBoutons();
+        if (boutons == null) {
+            ecrireEntier(tampon, 0);
+        } else {
+            ecrireEntier(tampon, boutons.size());
+            for (Bouton bouton : boutons) {
+                ecrireChaine(tampon, bouton.label());
+                ecrireChaine(tampon, bouton.valeur());
+            }
+        }
+    }
+
+    /**
+     * Écrit les cartes dans l'ordre où elles apparaissent dans l'état JSON (voir
+     * {@link CarteTransport#compareTo(CarteTransport)})
+     */
+    private void ecrireCartesTriees(ByteBuffer tampon, Collection<CarteTransport> cartes) {
+        if (tri.length < cartes.size()) {
+            tri = new CarteTransport[2 * cartes.size()];
+        }
+        int n = 0;
+        for (CarteTransport carte : cartes) {
+            tri[n++] = carte;
+        }
+        Arrays.sort(tri, 0, n);
+        ecrireEntier(tampon, n);
+        for (int i = 0; i < n; i++) {
+            ecrireId(tampon, indexCartes.getId(tri[i]));
+            tri[i] = null;
+        }
+    }
+
+    private void ecrireDestinations(ByteBuffer tampon, Joueur joueur, boolean completes) {
+        List<Destination> destinations = joueur.getDestinations();
+        int n = 0;
+        for (int i = 0; i < destinations.size(); i++) {
+            if (joueur.estDestinationComplete(i) == completes) {
+                n++;
+            }
+        }
+        ecrireEntier(tampon, n);
+        for (int i = 0; i < destinations.size(); i++) {
+            if (joueur.estDestinationComplete(i) == completes) {
+                ecrireId(tampon, indexDestinations.getId(destinations.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Encode une trame d'état
+     *
+     * @param version numéro de version de l'état
+     * @param log     messages du log à transmettre avec l'état
+     * @param etat    l'état de la partie (tel que produit par
+     *                {@link #encoderEtat(Jeu)})
+     */
+    TrameBinaire trameEtat(long version, LogJeu.Extrait log, byte[] etat) {
+        return TrameBinaire.ecrire(tampon -> ecrireEtat(tampon, version, log, etat));
+    }
+
+    void ecrireEtat(ByteBuffer tampon, long version, LogJeu.Extrait log, byte[] etat) {
+        tampon.put((byte) TRAME_ETAT);
+        tampon.putLong(version);
+        tampon.putLong(log.premier());
+        ecrireEntier(tampon, log.messages().size());
+        for (String message : log.messages()) {
+            ecrireChaine(tampon, message);
+        }
+        tampon.put(etat);
+    }
+
+    /**
+     * Décode une trame d'état sous la forme d'un message JSON de type "etat"
+     * (le même que celui reçu par les clients qui reçoivent les différences, avec
+     * les noms des éléments à la place de leurs identifiants et la description
+     * complète des cartes et des destinations)
+     *
+     * @throws IllegalArgumentException si la trame n'est pas une trame d'état
+     *                                  valide
+     */
+    public JsonObject decoderEtat(ByteBuffer trame) {
+        Gson gson = new Gson();
+        try {
+            if (trame.get() != TRAME_ETAT) {
+                throw new IllegalArgumentException("La trame n'est pas une trame d'état");
+            }
+            JsonObject message = new JsonObject();
+            message.addProperty("type", "etat");
+            message.addProperty("version", trame.getLong());
+            JsonObject log = new JsonObject();
+            log.addProperty("premier", trame.getLong());
+            JsonArray messages = new JsonArray();
+            for (int n = lireEntier(trame); n > 0; n--) {
+                messages.add(lireChaine(trame));
+            }
+            log.add("messages", messages);
+
+            JsonObject etat = new JsonObject();
+            JsonArray joueurs = new JsonArray();
+            int nbJoueurs = Byte.toUnsignedInt(trame.get());
+            etat.addProperty("joueurCourant", trame.get());
+            for (int j = 0; j < nbJoueurs; j++) {
+                JsonObject joueur = new JsonObject();
+                joueur.addProperty("nom", lireChaine(trame));
+                joueur.addProperty("couleur", Joueur.CouleurJouer.values()[trame.get()].name());
+                joueur.addProperty("score", trame.getShort());
+                joueur.addProperty("scoreProjete", trame.getShort());
+                joueur.addProperty("pionsWagon", trame.get());
+                joueur.addProperty("pionsWagonReserve", trame.get());
+                joueur.addProperty("pionsBateau", trame.get());
+                joueur.addProperty("pionsBateauReserve", trame.get());
+                joueur.add("main", gson.toJsonTree(lireElements(trame, indexCartes)));
+                joueur.add("inPlay", gson.toJsonTree(lireElements(trame, indexCartes)));
+                joueur.add("ports", lireNoms(trame, indexPorts));
+                joueur.add("routes", lireNoms(trame, indexRoutes));
+                joueur.add("destinationsIncompletes", gson.toJsonTree(lireElements(trame, indexDestinations)));
+                joueur.add("destinationsCompletes", gson.toJsonTree(lireElements(trame, indexDestinations)));
+                joueurs.add(joueur);
+            }
+            etat.add("joueurs", joueurs);
+            for (String pioche : new String[] { "piocheWagon", "piocheBateau" }) {
+                JsonObject pile = new JsonObject();
+                pile.addProperty("pioche", lireEntier(trame));
+                pile.add("defausse", gson.toJsonTree(lireElements(trame, indexCartes)));
+                etat.add(pioche, pile);
+            }
+            etat.add("cartesTransportVisibles", gson.toJsonTree(lireElements(trame, indexCartes)));
+            etat.addProperty("nbDestinations", lireEntier(trame));
+            String instruction = lireChaine(trame);
+            etat.add("instruction", instruction == null ? JsonNull.INSTANCE : gson.toJsonTree(instruction));
+            JsonArray boutons = new JsonArray();
+            for (int n = lireEntier(trame); n > 0; n--) {
+                JsonObject bouton = new JsonObject();
+                bouton.addProperty("label", lireChaine(trame));
+                bouton.addProperty("valeur", lireChaine(trame));
+                boutons.add(bouton);
+            }
+            etat.add("boutons", boutons);
+            message.add("etat", etat);
+            message.add("log", log);
+            return message;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Trame d'état incomplète", e);
+        }
+    }
+
+    /**
+     * Encode une instruction de jeu sous la forme d'une action binaire
+     *
+     * @return l'action, ou null si l'instruction ne correspond à aucune action
+     */
+    public ByteBuffer encoderAction(String entree) {
+        ByteBuffer action = ByteBuffer.allocate(6);
+        for (int type = 0; type < ENTREES_SANS_ARGUMENT.length; type++) {
+            if (entree.equals(ENTREES_SANS_ARGUMENT[type])) {
+                return action.put((byte) type).flip();
+            }
+        }
+        int id;
+        if ((id = indexCartes.getId(entree)) >= 0) {
+            action.put((byte) ACTION_CARTE);
+        } else if ((id = indexRoutes.getId(entree)) >= 0) {
+            action.put((byte) ACTION_ROUTE);
+        } else if ((id = indexPorts.getId(entree)) >= 0) {
+            action.put((byte) ACTION_PORT);
+        } else if ((id = indexDestinations.getId(entree)) >= 0) {
+            action.put((byte) ACTION_DESTINATION);
+        } else {
+            try {
+                id = Integer.parseInt(entree);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (id < 0) {
+                return null;
+            }
+            action.put((byte) ACTION_NOMBRE);
+        }
+        ecrireEntier(action, id);
+        return action.flip();
+    }
+
+    /**
+     * Décode une action binaire envoyée par un client
+     *
+     * @return l'instruction de jeu correspondante, ou null si l'action n'est pas
+     * valide
+     */
+    public String decoderAction(ByteBuffer action) {
+        try {
+            int type = Byte.toUnsignedInt(action.get());
+            if (type < ENTREES_SANS_ARGUMENT.length && ENTREES_SANS_ARGUMENT[type] != null) {
+                return ENTREES_SANS_ARGUMENT[type];
+            }
+            int argument = lireEntier(action);
+            if (argument < 0) {
+                return null;
+            }
+            return switch (type) {
+                case ACTION_CARTE -> nom(indexCartes, argument, CarteTransport::getNom);
+                case ACTION_ROUTE -> nom(indexRoutes, argument, Route::getNom);
+                case ACTION_PORT -> nom(indexPorts, argument, Ville::nom);
+                case ACTION_DESTINATION -> nom(indexDestinations, argument, Destination::getNom);
+                case ACTION_NOMBRE -> String.valueOf(argument);
+                default -> null;
+            };
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static <T> String nom(Index<T> index, int id, Function<T, String> nom) {
+        return id < index.taille() ? nom.apply(index.get(id)) : null;
+    }
+
+    private static void ecrireEntier(ByteBuffer tampon, int n) {
+        while ((n & ~0x7F) != 0) {
+            tampon.put((byte) (n & 0x7F | 0x80));
+            n >>>= 7;
+        }
+        tampon.put((byte) n);
+    }
+
+    private static int lireEntier(ByteBuffer tampon) {
+        int n = 0;
+        for (int decalage = 0;; decalage += 7) {
+            byte b = tampon.get();
+            n |= (b & 0x7F) << decalage;
+            if (b >= 0) {
+                return n;
+            }
+        }
+    }
+
+    private static void ecrireChaine(ByteBuffer tampon, String chaine) {
+        if (chaine == null) {
+            ecrireEntier(tampon, 0);
+            return;
+        }
+        byte[] octets = chaine.getBytes(StandardCharsets.UTF_8);
+        ecrireEntier(tampon, octets.length + 1);
+        tampon.put(octets);
+    }
+
+    private static String lireChaine(ByteBuffer tampon) {
+        int longueur = lireEntier(tampon) - 1;
+        if (longueur < 0) {
+            return null;
+        }
+        byte[] octets = new byte[longueur];
+        tampon.get(octets);
+        return new String(octets, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Écrit le nombre d'éléments puis leurs identifiants
+     */
+    private static <T> void ecrireIds(ByteBuffer tampon, Collection<T> elements, Index<T> index) {
+        ecrireEntier(tampon, elements.size());
+        for (T element : elements) {
+            ecrireId(tampon, index.getId(element));
+        }
+    }
+
+    /**
+     * Écrit un identifiant (-1 pour un élément qui n'est pas dans le
+     * référentiel)
+     */
+    private static void ecrireId(ByteBuffer tampon, int id) {
+        ecrireEntier(tampon, id + 1);
+    }
+
+    private static <T> List<T> lireElements(ByteBuffer tampon, Index<T> index) {
+        int n = lireEntier(tampon);
+        List<T> elements = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int id = lireEntier(tampon) - 1;
+            elements.add(id < 0 ? null : index.get(id));
+        }
+        return elements;
+    }
+
+    private static JsonArray lireNoms(ByteBuffer tampon, Index<?> index) {
+        JsonArray noms = new JsonArray();
+        for (Object element : lireElements(tampon, index)) {
+            noms.add(element instanceof Ville v ? v.nom() : element instanceof Route r ? r.getNom() : null);
+        }
+        return noms;
+    }
+}
@@ -0,0 +1,186 @@
+package fr.umontpellier.iut.gui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import fr.umontpellier.iut.rails.Metriques;
+
+/**
+ * Publication des mesures du serveur (voir {@link Metriques}), avec les
+ * épinglages de threads virtuels du {@link ModeleThreads} :
+ * - par JMX, sous le nom {@link #NOM_JMX}, avec un attribut par valeur (par
+ * exemple {@code etat.construction.p99}), consultable avec jconsole ou
+ * VisualVM
+ * - en JSON, par une requête GET sur {@code http://localhost:<port>/metriques}
+ * (le serveur HTTP n'écoute que sur l'interface locale)
+ * <p>
+ * Les valeurs sont calculées à chaque lecture, sans aucun travail entre deux
+ * lectures.
+ */
+public final class ServeurMetriques {
+    public static final String NOM_JMX = "fr.umontpellier.iut.rails:type=Metriques";
+
+    private final ModeleThreads modeleThreads;
+    private final HttpServer serveurHttp;
+    private final ObjectName nomJmx;
+    private final Gson gson = new Gson();
+
+    private ServeurMetriques(int port, ModeleThreads modeleThreads) throws IOException {
+        this.modeleThreads = modeleThreads;
+        serveurHttp = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        serveurHttp.createContext("/metriques", this::repondre);
+        try {
+            nomJmx = new ObjectName(NOM_JMX);
+            MBeanServer serveurJmx = ManagementFactory.getPlatformMBeanServer();
+            if (serveurJmx.isRegistered(nomJmx)) {
+                serveurJmx.unregisterMBean(nomJmx);
+            }
+            serveurJmx.registerMBean(new MBeanMetriques(), nomJmx);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+        serveurHttp.start();
+    }
+
+    /**
+     * Démarre la publication des mesures
+     *
+     * @param port          le port du serveur HTTP (0 pour un port libre
+     *                      quelconque, voir {@link #getPort()})
+     * @param modeleThreads le modèle de threads dont les épinglages sont publiés
+     */
+    public static ServeurMetriques demarrer(int port, ModeleThreads modeleThreads) throws IOException {
+        return new ServeurMetriques(port, modeleThreads);
+    }
+
+    public int getPort() {
+        return serveurHttp.getAddress().getPort();
+    }
+
+    /**
+     * Arrête le serveur HTTP et retire les mesures du serveur JMX
+     */
+    public void arreter() {
+        serveurHttp.stop(0);
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(nomJmx);
+        } catch (JMException e) {
+            // déjà retiré
+        }
+    }
+
+    /**
+     * @return les mesures, avec les épinglages des threads virtuels
+     */
+    Map<String, Object> dataMap() {
+        Map<String, Object> donnees = new LinkedHashMap<>(Metriques.dataMap());
+        donnees.put("threads", Map.of(
+                "modele", modeleThreads.getType().name(),
+                "epinglages", modeleThreads.getNbEpinglages(),
+                "dureeEpinglagesNs", modeleThreads.getDureeEpinglages().toNanos()));
+        return donnees;
+    }
+
+    /**
+     * @return les mesures à plat, avec un nom par valeur (nom de la mesure,
+     *         suivi d'un point et du nom de la valeur)
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> valeurs() {
+        Map<String, Object> valeurs = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> mesure : dataMap().entrySet()) {
+            for (Map.Entry<String, Object> valeur : ((Map<String, Object>) mesure.getValue()).entrySet()) {
+                valeurs.put(mesure.getKey() + "." + valeur.getKey(), valeur.getValue());
+            }
+        }
+        return valeurs;
+    }
+
+    private void repondre(HttpExchange echange) throws IOException {
+        try {
+            if (!"GET".equals(echange.getRequestMethod())) {
+                echange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] corps = gson.toJson(dataMap()).getBytes(StandardCharsets.UTF_8);
+            echange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            echange.sendResponseHeaders(200, corps.length);
+            try (OutputStream sortie = echange.getResponseBody()) {
+                sortie.write(corps);
+            }
+        } finally {
+            echange.close();
+        }
+    }
+
+    /**
+     * Mesures publiées par JMX, en lecture seule
+     */
+    private final class MBeanMetriques implements DynamicMBean {
+        @Override
+        public Object getAttribute(String nom) throws AttributeNotFoundException {
+            Object valeur = valeurs().get(nom);
+            if (valeur == null) {
+                throw new AttributeNotFoundException(nom);
+            }
+            return valeur;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] noms) {
+            Map<String, Object> valeurs = valeurs();
+            AttributeList attributs = new AttributeList();
+            for (String nom : noms) {
+                if (valeurs.containsKey(nom)) {
+                    attributs.add(new Attribute(nom, valeurs.get(nom)));
+                }
+            }
+            return attributs;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribut) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Attribut en lecture seule : " + attribut.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributs) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String operation, Object[] parametres, String[] signature) {
+            throw new UnsupportedOperationException(operation);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] attributs = valeurs().entrySet().stream()
+                    .map(e -> new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(), e.getKey(),
+                            true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(ServeurMetriques.class.getName(), "Mesures du serveur", attributs, null, null,
+                    null);
+        }
+    }
+}
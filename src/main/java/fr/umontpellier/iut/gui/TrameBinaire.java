@@ -0,0 +1,146 @@
+package fr.umontpellier.iut.gui;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+
+/**
+ * Message binaire envoyé à un ou plusieurs clients (voir
+ * {@link ProtocoleBinaire}).
+ * <p>
+ * Les données sont écrites dans un tampon pris dans une réserve commune, et le
+ * tampon est rendu à la réserve lorsque la trame n'est plus utilisée : une même
+ * trame est partagée par tous les clients qui la reçoivent, et chacun la
+ * libère lorsque son envoi est terminé (compteur de références).
+ * <p>
+ * Une trame peut aussi contenir un message JSON déjà encodé en UTF-8 (et
+ * éventuellement compressé), pour les clients qui reçoivent le JSON dans des
+ * trames binaires (voir {@link #json(String, boolean)}).
+ */
+final class TrameBinaire {
+    /**
+     * Taille initiale des tampons (elle est doublée dès qu'une trame ne tient pas
+     * dans un tampon)
+     */
+    static final int TAILLE_INITIALE = 8 * 1024;
+    /**
+     * Nombre maximum de tampons conservés dans la réserve
+     */
+    static final int MAX_TAMPONS_RESERVE = 32;
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> reserve = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger nbTamponsEnReserve = new AtomicInteger();
+    private static volatile int tailleTampons = TAILLE_INITIALE;
+
+    private final ByteBuffer donnees;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private TrameBinaire(ByteBuffer donnees) {
+        this.donnees = donnees;
+    }
+
+    /**
+     * Crée une trame en écrivant ses données dans un tampon de la réserve (si les
+     * données ne tiennent pas dans le tampon, l'écriture est recommencée dans un
+     * tampon plus grand). La trame créée a une référence, qui appartient à
+     * l'appelant.
+     */
+    static TrameBinaire ecrire(Consumer<ByteBuffer> ecriture) {
+        while (true) {
+            ByteBuffer tampon = prendreTampon();
+            try {
+                ecriture.accept(tampon);
+            } catch (BufferOverflowException e) {
+                tailleTampons = Math.max(tailleTampons, 2 * tampon.capacity());
+                continue;
+            }
+            tampon.flip();
+            return new TrameBinaire(tampon);
+        }
+    }
+
+    /**
+     * Crée une trame contenant un message JSON encodé en UTF-8, compressé au
+     * format zlib (deflate) si {@code compresser} est vrai. Le message est encodé
+     * (et compressé) une seule fois, quel que soit le nombre de clients qui
+     * reçoivent la trame.
+     */
+    static TrameBinaire json(String message, boolean compresser) {
+        byte[] octets = message.getBytes(StandardCharsets.UTF_8);
+        if (!compresser) {
+            return ecrire(tampon -> tampon.put(octets));
+        }
+        return ecrire(tampon -> {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(octets);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (!tampon.hasRemaining()) {
+                        throw new BufferOverflowException();
+                    }
+                    deflater.deflate(tampon);
+                }
+            } finally {
+                deflater.end();
+            }
+        });
+    }
+
+    private static ByteBuffer prendreTampon() {
+        ByteBuffer tampon = reserve.poll();
+        if (tampon != null) {
+            nbTamponsEnReserve.decrementAndGet();
+            if (tampon.capacity() >= tailleTampons) {
+                return tampon.clear();
+            }
+        }
+        return ByteBuffer.allocate(tailleTampons);
+    }
+
+    private static void rendreTampon(ByteBuffer tampon) {
+        if (tampon.capacity() >= tailleTampons && nbTamponsEnReserve.incrementAndGet() <= MAX_TAMPONS_RESERVE) {
+            reserve.add(tampon);
+        } else if (tampon.capacity() >= tailleTampons) {
+            nbTamponsEnReserve.decrementAndGet();
+        }
+    }
+
+    /**
+     * Renvoie une vue en lecture seule des données de la trame (chaque vue a sa
+     * propre position, si bien que plusieurs envois peuvent lire la trame en même
+     * temps)
+     */
+    ByteBuffer vue() {
+        return donnees.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return le nombre d'octets de la trame
+     */
+    int taille() {
+        return donnees.limit();
+    }
+
+    /**
+     * Ajoute une référence à la trame (elle devra être libérée par
+     * {@link #liberer()})
+     */
+    void retenir() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Libère une référence à la trame. Lorsque la dernière référence est libérée,
+     * le tampon est rendu à la réserve et la trame ne doit plus être utilisée.
+     */
+    void liberer() {
+        if (references.decrementAndGet() == 0) {
+            rendreTampon(donnees);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package fr.umontpellier.iut.gui;
 
+import java.nio.ByteBuffer;
+
 import javax.websocket.*;
 import javax.websocket.server.ServerEndpoint;
 
@@ -12,6 +14,17 @@ public class WebSocketClient {
 
     @OnMessage
     public void onMessage(String message, Session session) {
+        if (message.startsWith("{")) {
+            // message de contrôle (les instructions de jeu ne commencent jamais par '{')
+            GameServer.traiterControle(message, session);
+        } else {
+            GameServer.addInput(message);
+        }
+    }
+
+    @OnMessage
+    public void onMessage(ByteBuffer message, Session session) {
+        // action envoyée par un client qui utilise le protocole binaire
         GameServer.addInput(message);
     }
 
@@ -0,0 +1,163 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Enregistrement d'une partie : graine du générateur aléatoire, noms des joueurs
+ * et suite des entrées acceptées par le jeu (voir {@link Joueur#choisir}).
+ * <p>
+ * Ces informations suffisent à rejouer exactement la partie (voir
+ * {@link JeuRejoue}). Les entrées qui désignent une carte, une route ou une
+ * destination sont enregistrées sous une forme canonique (voir
+ * {@link Jeu#versEntreeCanonique}) car les noms de ces éléments dépendent du
+ * nombre d'éléments créés auparavant dans la machine virtuelle.
+ * <p>
+ * Format du fichier (texte UTF-8) :
+ * <pre>
+ * rails-enregistrement 1
+ * &lt;graine&gt;
+ * &lt;nom joueur 1&gt;\t&lt;nom joueur 2&gt;...
+ * &lt;entrée 1&gt;
+ * &lt;entrée 2&gt;
+ * ...
+ * </pre>
+ * Les retours à la ligne et les barres obliques inverses des entrées sont
+ * échappés. Les entrées peuvent être écrites au fur et à mesure de la partie
+ * (voir {@link #ecrireAuFurEtAMesure}), si bien qu'un enregistrement est
+ * exploitable même si le serveur s'arrête avant la fin de la partie.
+ */
+public class Enregistrement {
+    private static final String ENTETE = "rails-enregistrement 1";
+
+    private final long graine;
+    private final List<String> nomsJoueurs;
+    private final List<String> entrees;
+    private BufferedWriter fichier;
+
+    public Enregistrement(long graine, List<String> nomsJoueurs) {
+        this(graine, nomsJoueurs, new ArrayList<>());
+    }
+
+    private Enregistrement(long graine, List<String> nomsJoueurs, List<String> entrees) {
+        this.graine = graine;
+        this.nomsJoueurs = List.copyOf(nomsJoueurs);
+        this.entrees = entrees;
+    }
+
+    public long getGraine() {
+        return graine;
+    }
+
+    public List<String> getNomsJoueurs() {
+        return nomsJoueurs;
+    }
+
+    /**
+     * @return les entrées enregistrées (sous forme canonique)
+     */
+    public synchronized List<String> getEntrees() {
+        return Collections.unmodifiableList(new ArrayList<>(entrees));
+    }
+
+    public synchronized int getNbEntrees() {
+        return entrees.size();
+    }
+
+    /**
+     * Ajoute une entrée (sous forme canonique) à la fin de l'enregistrement
+     */
+    public synchronized void ajouter(String entree) {
+        entrees.add(entree);
+        if (fichier != null) {
+            try {
+                fichier.write(echapper(entree));
+                fichier.newLine();
+                fichier.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Écrit l'enregistrement dans un fichier, puis y ajoute les entrées suivantes
+     * au fur et à mesure
+     */
+    public synchronized void ecrireAuFurEtAMesure(Path chemin) throws IOException {
+        fichier = Files.newBufferedWriter(chemin, StandardCharsets.UTF_8);
+        ecrire(fichier);
+        fichier.flush();
+    }
+
+    /**
+     * Écrit l'enregistrement complet dans un fichier
+     */
+    public synchronized void ecrire(Path chemin) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(chemin, StandardCharsets.UTF_8)) {
+            ecrire(writer);
+        }
+    }
+
+    private void ecrire(BufferedWriter writer) throws IOException {
+        writer.write(ENTETE);
+        writer.newLine();
+        writer.write(Long.toString(graine));
+        writer.newLine();
+        writer.write(String.join("\t", nomsJoueurs));
+        writer.newLine();
+        for (String entree : entrees) {
+            writer.write(echapper(entree));
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Lit un enregistrement dans un fichier
+     */
+    public static Enregistrement lire(Path chemin) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(chemin, StandardCharsets.UTF_8)) {
+            if (!ENTETE.equals(reader.readLine())) {
+                throw new IOException("Format d'enregistrement inconnu : " + chemin);
+            }
+            String ligneGraine = reader.readLine();
+            String ligneJoueurs = reader.readLine();
+            if (ligneGraine == null || ligneJoueurs == null) {
+                throw new IOException("Enregistrement incomplet : " + chemin);
+            }
+            List<String> entrees = new ArrayList<>();
+            String ligne;
+            while ((ligne = reader.readLine()) != null) {
+                entrees.add(desechapper(ligne));
+            }
+            return new Enregistrement(Long.parseLong(ligneGraine), Arrays.asList(ligneJoueurs.split("\t")), entrees);
+        }
+    }
+
+    private static String echapper(String entree) {
+        return entree.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String desechapper(String ligne) {
+        StringBuilder sb = new StringBuilder(ligne.length());
+        for (int i = 0; i < ligne.length(); i++) {
+            char c = ligne.charAt(i);
+            if (c == '\\' && i + 1 < ligne.length()) {
+                i++;
+                sb.append(ligne.charAt(i) == 'n' ? '\n' : ligne.charAt(i));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
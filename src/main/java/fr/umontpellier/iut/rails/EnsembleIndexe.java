@@ -0,0 +1,219 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Sous-ensemble des éléments d'un {@link Index}, représenté par un tableau de
+ * bits indexé par les identifiants des éléments.
+ * <p>
+ * Le test d'appartenance, l'ajout et le retrait (par élément ou par nom) se font
+ * en temps constant et sans allocation. L'ensemble est également vu comme une
+ * liste dont les éléments sont rangés dans l'ordre de leurs identifiants : un
+ * élément ajouté prend donc sa place dans cet ordre (et pas nécessairement à la
+ * fin), et un élément déjà présent n'est pas ajouté une seconde fois.
+ * L'accès par position ({@code get(i)}) utilise un tableau des identifiants
+ * présents, reconstruit (en temps linéaire) au premier accès qui suit une
+ * modification : un parcours par position d'un ensemble qui n'est pas modifié
+ * pendant le parcours est donc en temps linéaire au total. L'itérateur, lui, ne
+ * construit pas ce tableau.
+ *
+ * @param <T> le type des éléments
+ */
+public class EnsembleIndexe<T> extends AbstractList<T> {
+    private final Index<T> index;
+    private final BitSet presents;
+    private int taille;
+    private List<T> vueLectureSeule;
+    /**
+     * Identifiants des éléments présents, dans l'ordre (pour l'accès par
+     * position), et nombre de modifications de l'ensemble lorsqu'ils ont été
+     * calculés (-1 s'ils ne l'ont jamais été)
+     */
+    private int[] ids = new int[0];
+    private int modificationsIds = -1;
+
+    /**
+     * Construit un ensemble vide
+     */
+    public EnsembleIndexe(Index<T> index) {
+        this.index = index;
+        this.presents = new BitSet(index.taille());
+        this.taille = 0;
+    }
+
+    /**
+     * Construit un ensemble contenant tous les éléments de l'index
+     */
+    public static <T> EnsembleIndexe<T> complet(Index<T> index) {
+        EnsembleIndexe<T> ensemble = new EnsembleIndexe<>(index);
+        ensemble.presents.set(0, index.taille());
+        ensemble.taille = index.taille();
+        return ensemble;
+    }
+
+    public Index<T> getIndex() {
+        return index;
+    }
+
+    /**
+     * @return le nombre de modifications de l'ensemble depuis sa création (pour
+     * détecter qu'il a été modifié)
+     */
+    public int getNbModifications() {
+        return modCount;
+    }
+
+    /**
+     * @return une vue non modifiable de l'ensemble (qui reflète ses modifications)
+     */
+    public List<T> vueLectureSeule() {
+        if (vueLectureSeule == null) {
+            vueLectureSeule = Collections.unmodifiableList(this);
+        }
+        return vueLectureSeule;
+    }
+
+    /**
+     * @return true si l'élément d'identifiant {@code id} est dans l'ensemble
+     */
+    public boolean contientId(int id) {
+        return id >= 0 && presents.get(id);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return contientId(index.getId(o));
+    }
+
+    @Override
+    public int size() {
+        return taille;
+    }
+
+    @Override
+    public T get(int i) {
+        if (i < 0 || i >= taille) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        if (modificationsIds != modCount) {
+            if (ids.length < taille) {
+                ids = new int[index.taille()];
+            }
+            int k = 0;
+            for (int id = presents.nextSetBit(0); id >= 0; id = presents.nextSetBit(id + 1)) {
+                ids[k++] = id;
+            }
+            modificationsIds = modCount;
+        }
+        return index.get(ids[i]);
+    }
+
+    /**
+     * Ajoute un élément à l'ensemble (à sa place dans l'ordre des identifiants)
+     *
+     * @return true si l'élément n'était pas déjà présent
+     * @throws IllegalArgumentException si l'élément n'appartient pas à l'index
+     */
+    @Override
+    public boolean add(T element) {
+        int id = index.getId(element);
+        if (id < 0) {
+            throw new IllegalArgumentException("Élément non indexé : " + element);
+        }
+        if (presents.get(id)) {
+            return false;
+        }
+        presents.set(id);
+        taille++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Ajoute un élément à l'ensemble. La position est ignorée : l'élément est
+     * rangé dans l'ordre des identifiants.
+     */
+    @Override
+    public void add(int position, T element) {
+        add(element);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return retirerId(index.getId(o));
+    }
+
+    @Override
+    public T remove(int i) {
+        T element = get(i);
+        retirerId(index.getId(element));
+        return element;
+    }
+
+    /**
+     * Retire de l'ensemble l'élément dont le nom est passé en argument
+     *
+     * @return l'élément retiré, ou null s'il n'était pas dans l'ensemble
+     */
+    public T retirer(String nom) {
+        int id = index.getId(nom);
+        if (!retirerId(id)) {
+            return null;
+        }
+        return index.get(id);
+    }
+
+    private boolean retirerId(int id) {
+        if (!contientId(id)) {
+            return false;
+        }
+        presents.clear(id);
+        taille--;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        presents.clear();
+        taille = 0;
+        modCount++;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int prochain = presents.nextSetBit(0);
+            private int dernier = -1;
+
+            @Override
+            public boolean hasNext() {
+                return prochain >= 0;
+            }
+
+            @Override
+            public T next() {
+                if (prochain < 0) {
+                    throw new NoSuchElementException();
+                }
+                dernier = prochain;
+                prochain = presents.nextSetBit(prochain + 1);
+                return index.get(dernier);
+            }
+
+            @Override
+            public void remove() {
+                if (dernier < 0) {
+                    throw new IllegalStateException();
+                }
+                retirerId(dernier);
+                dernier = -1;
+            }
+        };
+    }
+}
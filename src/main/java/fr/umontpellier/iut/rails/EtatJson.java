@@ -0,0 +1,83 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.Arrays;
+
+/**
+ * État du jeu au format JSON (voir {@link Jeu#etatJson()}), découpé en
+ * sections : une section par joueur (chemins "/joueurs/0", "/joueurs/1", ...)
+ * puis une section par autre champ de l'état ("/joueurCourant",
+ * "/piocheWagon", ...). Chaque section est la valeur JSON complète désignée
+ * par son chemin (au format JSON Pointer), et les sections sont des parties du
+ * texte de l'état : elles ne sont pas recopiées.
+ * <p>
+ * Le serveur compare les sections de deux états successifs pour calculer leurs
+ * différences : seules les sections qui ont changé sont analysées.
+ * <p>
+ * Un état est immuable et peut être transmis à un autre thread.
+ */
+public final class EtatJson {
+    private final String texte;
+    private final String[] chemins;
+    /**
+     * Début et fin (exclue) de chaque section dans le texte
+     */
+    private final int[] bornes;
+
+    EtatJson(String texte, String[] chemins, int[] bornes) {
+        this.texte = texte;
+        this.chemins = chemins;
+        this.bornes = bornes;
+    }
+
+    /**
+     * @return l'état complet au format JSON
+     */
+    public String texte() {
+        return texte;
+    }
+
+    public int getNbSections() {
+        return chemins.length;
+    }
+
+    /**
+     * @return le chemin de la section (JSON Pointer, par exemple "/joueurs/1")
+     */
+    public String getChemin(int section) {
+        return chemins[section];
+    }
+
+    /**
+     * @return le texte JSON de la section
+     */
+    public String getSection(int section) {
+        return texte.substring(bornes[2 * section], bornes[2 * section + 1]);
+    }
+
+    /**
+     * @return true si les deux états ont les mêmes sections (mêmes chemins dans
+     *         le même ordre)
+     */
+    public boolean memesSections(EtatJson autre) {
+        return Arrays.equals(chemins, autre.chemins);
+    }
+
+    /**
+     * Compare une section à la section de même numéro d'un autre état ayant les
+     * mêmes sections, sans extraire leurs textes
+     *
+     * @return true si les deux sections ont le même texte
+     */
+    public boolean sectionEgale(int section, EtatJson autre) {
+        int debut = bornes[2 * section];
+        int longueur = bornes[2 * section + 1] - debut;
+        int debutAutre = autre.bornes[2 * section];
+        return longueur == autre.bornes[2 * section + 1] - debutAutre
+                && texte.regionMatches(debut, autre.texte, debutAutre, longueur);
+    }
+
+    @Override
+    public String toString() {
+        return texte;
+    }
+}
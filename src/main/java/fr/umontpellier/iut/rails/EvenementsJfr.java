@@ -0,0 +1,107 @@
+package fr.umontpellier.iut.rails;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Événements JDK Flight Recorder émis par le moteur du jeu, pour relier les
+ * pics de latence d'un enregistrement aux actions de la partie (par exemple
+ * avec {@code java -XX:StartFlightRecording ...}, puis JDK Mission Control).
+ * <p>
+ * Tous les événements portent le numéro de la partie
+ * ({@link Jeu#getIdPartie()}) et, s'il y a lieu, le numéro du joueur dans la
+ * partie. Ils sont émis sans pile d'appels, et les valeurs ne sont calculées que
+ * si l'événement est enregistré ({@code shouldCommit()}) : lorsque JFR est
+ * arrêté, un événement ne coûte qu'un objet que la JVM peut éviter d'allouer.
+ * Aucun événement n'est émis pendant qu'une partie rejoue des entrées déjà
+ * connues ({@link Jeu#estEnRattrapage()}).
+ */
+final class EvenementsJfr {
+    private static final String CATEGORIE = "Aventuriers du Rail";
+
+    private EvenementsJfr() {
+    }
+
+    @Name("fr.umontpellier.iut.rails.Tour")
+    @Label("Tour de jeu")
+    @Category(CATEGORIE)
+    @StackTrace(false)
+    static final class Tour extends Event {
+        @Label("Partie")
+        long partie;
+        @Label("Joueur")
+        int joueur;
+        @Label("Nom du joueur")
+        String nomJoueur;
+    }
+
+    @Name("fr.umontpellier.iut.rails.Choix")
+    @Label("Choix d'un joueur")
+    @Description("Instruction donnée à un joueur, jusqu'à l'obtention d'une réponse valide")
+    @Category(CATEGORIE)
+    @StackTrace(false)
+    static final class Choix extends Event {
+        @Label("Partie")
+        long partie;
+        @Label("Joueur")
+        int joueur;
+        @Label("Instruction")
+        String instruction;
+        @Label("Tentatives")
+        @Description("Nombre d'entrées lues (les entrées invalides sont redemandées)")
+        int tentatives;
+        @Label("Attente")
+        @Description("Temps passé à attendre les entrées")
+        @Timespan
+        long attente;
+        @Label("Traitement")
+        @Description("Temps passé dans le moteur (envoi de l'état, validation des entrées)")
+        @Timespan
+        long traitement;
+    }
+
+    @Name("fr.umontpellier.iut.rails.CaptureRoute")
+    @Label("Capture de route")
+    @Category(CATEGORIE)
+    @StackTrace(false)
+    static final class CaptureRoute extends Event {
+        @Label("Partie")
+        long partie;
+        @Label("Joueur")
+        int joueur;
+        @Label("Route")
+        String route;
+        @Label("Cartes payées")
+        @Description("Nombre de cartes posées pendant le paiement de la route")
+        int cartesPayees;
+    }
+
+    @Name("fr.umontpellier.iut.rails.MelangePioche")
+    @Label("Mélange de la défausse")
+    @Description("La défausse est mélangée pour reconstituer une pioche vide")
+    @Category(CATEGORIE)
+    @StackTrace(false)
+    static final class MelangePioche extends Event {
+        @Label("Partie")
+        long partie;
+        @Label("Cartes")
+        int nbCartes;
+    }
+
+    @Name("fr.umontpellier.iut.rails.Redistribution")
+    @Label("Redistribution des cartes visibles")
+    @Description("Les cartes visibles sont redistribuées parce que 3 jokers sont face visible")
+    @Category(CATEGORIE)
+    @StackTrace(false)
+    static final class Redistribution extends Event {
+        @Label("Partie")
+        long partie;
+        @Label("Redistributions")
+        int nbRedistributions;
+    }
+}
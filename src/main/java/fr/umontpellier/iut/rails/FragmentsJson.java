@@ -0,0 +1,130 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Destination;
+import fr.umontpellier.iut.rails.data.Ville;
+
+/**
+ * JSON des éléments d'une partie qui ne changent pas au cours de la partie
+ * (cartes transport, destinations, noms des routes et des ports), utilisé pour
+ * écrire l'état du jeu (voir {@link Jeu#etatJson()}).
+ * <p>
+ * Le JSON d'un élément est calculé à sa première utilisation (avec la même
+ * forme que la conversion de l'élément par Gson), puis recopié tel quel dans
+ * les états suivants. Les éléments sont retrouvés par leur identifiant dans les
+ * index de la partie ; un élément qui n'est pas indexé est converti à chaque
+ * fois.
+ * <p>
+ * Les fragments utilisent un tableau de travail pour trier les cartes : ils ne
+ * doivent être utilisés que par le thread de la partie.
+ */
+final class FragmentsJson {
+    private static final Gson gson = new Gson();
+
+    private final Index<CarteTransport> indexCartes;
+    private final Index<Destination> indexDestinations;
+    private final Index<Route> indexRoutes;
+    private final Index<Ville> indexPorts;
+    private final String[] cartes;
+    private final String[] destinations;
+    private final String[] routes;
+    private final String[] ports;
+    /**
+     * Tableau de travail pour écrire des cartes dans l'ordre sans copier la liste
+     */
+    private CarteTransport[] tri = new CarteTransport[32];
+
+    FragmentsJson(Index<CarteTransport> indexCartes, Index<Destination> indexDestinations, Index<Route> indexRoutes,
+            Index<Ville> indexPorts) {
+        this.indexCartes = indexCartes;
+        this.indexDestinations = indexDestinations;
+        this.indexRoutes = indexRoutes;
+        this.indexPorts = indexPorts;
+        this.cartes = new String[indexCartes.taille()];
+        this.destinations = new String[indexDestinations.taille()];
+        this.routes = new String[indexRoutes.taille()];
+        this.ports = new String[indexPorts.taille()];
+    }
+
+    /**
+     * Écrit le fragment d'un élément, en le calculant s'il ne l'a pas encore été
+     *
+     * @param id     l'identifiant de l'élément dans son index (-1 s'il n'est pas
+     *               indexé)
+     * @param valeur l'élément (converti par Gson)
+     */
+    private static void ecrire(JsonWriter sortie, String[] fragments, int id, Object valeur) throws IOException {
+        if (valeur == null) {
+            sortie.nullValue();
+        } else if (id < 0) {
+            sortie.jsonValue(gson.toJson(valeur));
+        } else {
+            if (fragments[id] == null) {
+                fragments[id] = gson.toJson(valeur);
+            }
+            sortie.jsonValue(fragments[id]);
+        }
+    }
+
+    void ecrireCarte(JsonWriter sortie, CarteTransport carte) throws IOException {
+        ecrire(sortie, cartes, carte == null ? -1 : indexCartes.getId(carte), carte);
+    }
+
+    /**
+     * Écrit un tableau de cartes, dans l'ordre de la liste
+     */
+    void ecrireCartes(JsonWriter sortie, List<CarteTransport> liste) throws IOException {
+        sortie.beginArray();
+        for (CarteTransport carte : liste) {
+            ecrireCarte(sortie, carte);
+        }
+        sortie.endArray();
+    }
+
+    /**
+     * Écrit un tableau de cartes triées (voir
+     * {@link CarteTransport#compareTo(CarteTransport)})
+     */
+    void ecrireCartesTriees(JsonWriter sortie, Collection<CarteTransport> collection) throws IOException {
+        if (tri.length < collection.size()) {
+            tri = new CarteTransport[2 * collection.size()];
+        }
+        int n = 0;
+        for (CarteTransport carte : collection) {
+            tri[n++] = carte;
+        }
+        Arrays.sort(tri, 0, n);
+        sortie.beginArray();
+        for (int i = 0; i < n; i++) {
+            ecrireCarte(sortie, tri[i]);
+            tri[i] = null;
+        }
+        sortie.endArray();
+    }
+
+    void ecrireDestination(JsonWriter sortie, Destination destination) throws IOException {
+        ecrire(sortie, destinations, destination == null ? -1 : indexDestinations.getId(destination), destination);
+    }
+
+    /**
+     * Écrit le nom d'une route
+     */
+    void ecrireRoute(JsonWriter sortie, Route route) throws IOException {
+        ecrire(sortie, routes, indexRoutes.getId(route), route.getNom());
+    }
+
+    /**
+     * Écrit le nom d'un port
+     */
+    void ecrirePort(JsonWriter sortie, Ville port) throws IOException {
+        ecrire(sortie, ports, indexPorts.getId(port), port.nom());
+    }
+}
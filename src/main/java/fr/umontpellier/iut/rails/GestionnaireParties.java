@@ -0,0 +1,267 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ensemble de parties reprenables (voir {@link PartieReprenable}) dont les
+ * parties inactives sont passivées : une partie qui n'a reçu aucune réponse
+ * depuis le délai d'inactivité est écrite sur disque (son
+ * {@link Enregistrement}, c'est-à-dire sa graine et ses entrées acceptées) puis
+ * retirée de la mémoire.
+ * <p>
+ * Une partie reprenable est déjà compacte en mémoire : elle ne conserve que son
+ * enregistrement et sa décision en attente (avec l'instantané de l'état, environ
+ * 1,6 Ko pour deux joueurs). Mesurée sur une partie à deux joueurs, elle occupe
+ * de 4 Ko (début de partie) à 16 Ko (fin de partie, près de 400 entrées) ; son
+ * fichier fait de 0,25 à 2 Ko, et une partie passivée n'occupe plus en mémoire
+ * que son identifiant dans le gestionnaire. La passivation économise donc ces
+ * quelques kilo-octets par partie inactive : elle sert surtout à conserver les
+ * parties abandonnées sans limite de durée, et à les retrouver après un
+ * redémarrage. Le serveur websocket ({@code gui.GameServer}) exécute une seule
+ * partie dans son propre thread et n'utilise pas ce gestionnaire.
+ * <p>
+ * Une partie passivée est restaurée automatiquement dès qu'elle est consultée
+ * ({@link #getDecision(String)}) ou qu'une réponse lui est soumise
+ * ({@link #soumettre(String, String)}) : la restauration relit l'enregistrement
+ * et rejoue la partie, ce qui prend de l'ordre de quelques millisecondes (le
+ * temps d'une réponse à une décision). Une partie, en mémoire ou passivée,
+ * n'occupe aucun thread : les parties inactives sont recherchées
+ * périodiquement par un unique thread commun à toutes les parties.
+ * <p>
+ * Les parties passivées sont conservées dans le répertoire donné à la
+ * création, un fichier {@code <identifiant>.rails} par partie : elles sont
+ * retrouvées par un nouveau gestionnaire créé sur le même répertoire (par
+ * exemple après un redémarrage du serveur). Le fichier d'une partie n'est pas
+ * supprimé lorsqu'elle est restaurée (il est remplacé à la passivation
+ * suivante) mais lorsqu'elle se termine ; une partie terminée est oubliée dès
+ * qu'elle devient inactive.
+ * <p>
+ * Les échecs d'écriture ou de suppression des fichiers sont signalés sur la
+ * sortie d'erreur et comptés ({@link Metriques#ECHECS_PASSIVATION}) : la partie
+ * concernée reste alors en mémoire.
+ */
+public final class GestionnaireParties implements AutoCloseable {
+    private static final String EXTENSION = ".rails";
+
+    /**
+     * Partie gérée, en mémoire ou passivée (les accès à la partie sont
+     * synchronisés sur la salle)
+     */
+    private static final class Salle {
+        /**
+         * La partie, ou null si elle est passivée
+         */
+        private PartieReprenable partie;
+        private volatile long derniereActivite = System.nanoTime();
+    }
+
+    private final Path repertoire;
+    private final Duration delaiInactivite;
+    private final Map<String, Salle> salles = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService passivation;
+
+    /**
+     * @param repertoire      le répertoire des parties passivées (les parties
+     *                        qu'il contient déjà sont reprises, passivées)
+     * @param delaiInactivite la durée sans réponse au-delà de laquelle une partie
+     *                        est passivée
+     */
+    public GestionnaireParties(Path repertoire, Duration delaiInactivite) throws IOException {
+        this.repertoire = Files.createDirectories(repertoire);
+        this.delaiInactivite = delaiInactivite;
+        try (DirectoryStream<Path> fichiers = Files.newDirectoryStream(repertoire, "*" + EXTENSION)) {
+            for (Path fichier : fichiers) {
+                String nom = fichier.getFileName().toString();
+                salles.put(nom.substring(0, nom.length() - EXTENSION.length()), new Salle());
+            }
+        }
+        passivation = Executors.newSingleThreadScheduledExecutor(tache -> {
+            Thread thread = new Thread(tache, "passivation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periode = Math.max(1, delaiInactivite.toMillis() / 2);
+        passivation.scheduleWithFixedDelay(this::passiverInactives, periode, periode, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Crée une nouvelle partie
+     *
+     * @return l'identifiant de la partie
+     */
+    public String creer(String[] nomJoueurs, long graine) {
+        String id = UUID.randomUUID().toString();
+        Salle salle = new Salle();
+        salle.partie = new PartieReprenable(nomJoueurs, graine);
+        salles.put(id, salle);
+        return id;
+    }
+
+    public Set<String> getIdentifiants() {
+        return Set.copyOf(salles.keySet());
+    }
+
+    /**
+     * @return la décision en attente de la partie (null si elle est terminée),
+     *         en restaurant la partie si elle est passivée
+     * @throws IllegalArgumentException si la partie n'existe pas
+     */
+    public PartieReprenable.Decision getDecision(String id) {
+        Salle salle = getSalle(id);
+        synchronized (salle) {
+            return restaurer(id, salle).getDecision();
+        }
+    }
+
+    /**
+     * Soumet une réponse à la décision en attente d'une partie (voir
+     * {@link PartieReprenable#soumettre(String)}), en restaurant la partie si
+     * elle est passivée
+     *
+     * @return la nouvelle décision en attente, ou null si la partie est terminée
+     * @throws IllegalArgumentException si la partie n'existe pas
+     * @throws IllegalStateException    si la partie est terminée
+     */
+    public PartieReprenable.Decision soumettre(String id, String entree) {
+        Salle salle = getSalle(id);
+        synchronized (salle) {
+            PartieReprenable partie = restaurer(id, salle);
+            PartieReprenable.Decision decision = partie.soumettre(entree);
+            salle.derniereActivite = System.nanoTime();
+            if (partie.estTerminee()) {
+                try {
+                    Files.deleteIfExists(fichier(id));
+                } catch (IOException e) {
+                    signalerEchec("suppression de la partie terminée " + id, e);
+                }
+            }
+            return decision;
+        }
+    }
+
+    /**
+     * @return true si la partie est actuellement passivée (sur disque)
+     */
+    public boolean estPassivee(String id) {
+        Salle salle = getSalle(id);
+        synchronized (salle) {
+            return salle.partie == null;
+        }
+    }
+
+    /**
+     * @return le nombre de parties actuellement en mémoire
+     */
+    public int getNbPartiesEnMemoire() {
+        int n = 0;
+        for (Salle salle : salles.values()) {
+            synchronized (salle) {
+                if (salle.partie != null) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Passive les parties en mémoire inactives depuis au moins le délai
+     * d'inactivité (appelée périodiquement). Les parties terminées inactives
+     * sont retirées du gestionnaire.
+     *
+     * @return le nombre de parties passivées
+     */
+    public int passiverInactives() {
+        int n = 0;
+        long limite = System.nanoTime() - delaiInactivite.toNanos();
+        for (Map.Entry<String, Salle> entree : salles.entrySet()) {
+            Salle salle = entree.getValue();
+            if (salle.derniereActivite - limite > 0) {
+                continue;
+            }
+            synchronized (salle) {
+                if (salle.partie != null && salle.derniereActivite - limite <= 0) {
+                    if (salle.partie.estTerminee()) {
+                        salles.remove(entree.getKey());
+                        continue;
+                    }
+                    try {
+                        passiver(entree.getKey(), salle);
+                        n++;
+                    } catch (IOException e) {
+                        // la partie reste en mémoire
+                        signalerEchec("passivation de la partie " + entree.getKey(), e);
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Arrête la recherche des parties inactives (les parties en mémoire ne sont
+     * pas passivées)
+     */
+    @Override
+    public void close() {
+        passivation.shutdownNow();
+    }
+
+    private Salle getSalle(String id) {
+        Salle salle = salles.get(id);
+        if (salle == null) {
+            throw new IllegalArgumentException("Partie inconnue : " + id);
+        }
+        return salle;
+    }
+
+    private static void signalerEchec(String operation, IOException e) {
+        Metriques.ECHECS_PASSIVATION.incrementer();
+        System.err.println("Échec de la " + operation + " : " + e);
+    }
+
+    private Path fichier(String id) {
+        return repertoire.resolve(id + EXTENSION);
+    }
+
+    /**
+     * Écrit la partie sur disque et la retire de la mémoire. Le fichier est
+     * d'abord écrit sous un nom temporaire puis renommé, pour qu'une interruption
+     * ne laisse pas de partie passivée incomplète.
+     */
+    private void passiver(String id, Salle salle) throws IOException {
+        Path temporaire = repertoire.resolve(id + EXTENSION + ".tmp");
+        salle.partie.getEnregistrement().ecrire(temporaire);
+        Files.move(temporaire, fichier(id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        salle.partie = null;
+    }
+
+    /**
+     * @return la partie, relue sur disque et rejouée si elle était passivée (le
+     *         fichier est conservé jusqu'à la fin de la partie)
+     */
+    private PartieReprenable restaurer(String id, Salle salle) {
+        salle.derniereActivite = System.nanoTime();
+        if (salle.partie == null) {
+            try {
+                salle.partie = new PartieReprenable(Enregistrement.lire(fichier(id)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return salle.partie;
+    }
+}
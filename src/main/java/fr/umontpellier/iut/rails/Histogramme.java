@@ -0,0 +1,162 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogramme de valeurs positives (durées en nanosecondes, tailles de file...)
+ * à précision relative constante, sur le modèle des histogrammes HDR : les
+ * valeurs inférieures à {@code 2^PRECISION} sont comptées exactement, et chaque
+ * puissance de 2 au-delà est découpée en {@code 2^PRECISION} intervalles de même
+ * largeur, si bien qu'une valeur est connue à 1/32 près (environ 3 %) quelle
+ * que soit sa grandeur.
+ * <p>
+ * Les compteurs sont répartis en un nombre fixe de bandes ({@link #NB_BANDES}),
+ * allouées à la création de l'histogramme : chaque thread enregistre dans la
+ * bande désignée par son identifiant, par deux additions atomiques, si bien
+ * que des threads qui enregistrent en même temps se gênent rarement. La mémoire
+ * occupée ne dépend pas du nombre de threads qui ont enregistré des valeurs
+ * (une partie peut être exécutée par un thread qui lui est propre). Les bandes
+ * sont additionnées lors de la lecture ({@link #instantane()}), qui peut donc ne
+ * pas voir les toutes dernières valeurs enregistrées par les autres threads.
+ */
+public final class Histogramme {
+    /**
+     * Nombre de bits significatifs conservés pour chaque valeur
+     */
+    static final int PRECISION = 5;
+    private static final int TAILLE_INTERVALLE = 1 << PRECISION;
+    /**
+     * Nombre d'intervalles nécessaires pour couvrir toutes les valeurs de type
+     * long positives
+     */
+    static final int NB_INTERVALLES = (64 - PRECISION) * TAILLE_INTERVALLE;
+
+    /**
+     * Résumé des valeurs enregistrées (les centiles et le maximum sont les plus
+     * grandes valeurs de leur intervalle)
+     */
+    public record Instantane(long nombre, double moyenne, long p50, long p90, long p99, long p999, long max) {
+    }
+
+    /**
+     * Nombre de bandes de compteurs (une puissance de 2)
+     */
+    static final int NB_BANDES = Math.min(8,
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+    private final String unite;
+    /**
+     * Bandes de compteurs : un compteur par intervalle, suivi de la somme des
+     * valeurs enregistrées
+     */
+    private final AtomicLongArray[] bandes = new AtomicLongArray[NB_BANDES];
+
+    /**
+     * @param unite l'unité des valeurs enregistrées ("ns" pour des durées)
+     */
+    public Histogramme(String unite) {
+        this.unite = unite;
+        for (int i = 0; i < bandes.length; i++) {
+            bandes[i] = new AtomicLongArray(NB_INTERVALLES + 1);
+        }
+    }
+
+    public String getUnite() {
+        return unite;
+    }
+
+    /**
+     * @return le nombre de compteurs de l'histogramme, qui ne dépend pas du
+     *         nombre de threads qui y ont enregistré des valeurs
+     */
+    int getNbCompteurs() {
+        int n = 0;
+        for (AtomicLongArray bande : bandes) {
+            n += bande.length();
+        }
+        return n;
+    }
+
+    /**
+     * @return l'indice de l'intervalle qui contient la valeur (positive)
+     */
+    static int intervalle(long valeur) {
+        if (valeur < TAILLE_INTERVALLE) {
+            return (int) valeur;
+        }
+        int exposant = 63 - Long.numberOfLeadingZeros(valeur);
+        int decalage = exposant - PRECISION;
+        return (decalage + 1) * TAILLE_INTERVALLE + (int) (valeur >>> decalage) - TAILLE_INTERVALLE;
+    }
+
+    /**
+     * @return la plus grande valeur de l'intervalle d'indice {@code i}
+     */
+    static long maxIntervalle(int i) {
+        if (i < TAILLE_INTERVALLE) {
+            return i;
+        }
+        int decalage = i / TAILLE_INTERVALLE - 1;
+        long mantisse = i % TAILLE_INTERVALLE + TAILLE_INTERVALLE;
+        return ((mantisse + 1) << decalage) - 1;
+    }
+
+    /**
+     * Enregistre une valeur (les valeurs négatives sont comptées comme nulles)
+     */
+    public void enregistrer(long valeur) {
+        valeur = Math.max(valeur, 0);
+        AtomicLongArray bande = bandes[(int) Thread.currentThread().getId() & (NB_BANDES - 1)];
+        bande.getAndIncrement(intervalle(valeur));
+        bande.getAndAdd(NB_INTERVALLES, valeur);
+    }
+
+    /**
+     * Enregistre la durée écoulée depuis {@code debut}, obtenu par
+     * {@link Metriques#debut()} : rien n'est enregistré si {@code debut} est nul
+     * (mesures désactivées)
+     */
+    public void enregistrerDepuis(long debut) {
+        if (debut != 0) {
+            enregistrer(System.nanoTime() - debut);
+        }
+    }
+
+    /**
+     * @return le résumé des valeurs enregistrées par tous les threads
+     */
+    public Instantane instantane() {
+        long[] total = new long[NB_INTERVALLES + 1];
+        for (AtomicLongArray bande : bandes) {
+            for (int i = 0; i < total.length; i++) {
+                total[i] += bande.get(i);
+            }
+        }
+        long nombre = 0;
+        int dernier = 0;
+        for (int i = 0; i < NB_INTERVALLES; i++) {
+            if (total[i] > 0) {
+                nombre += total[i];
+                dernier = i;
+            }
+        }
+        if (nombre == 0) {
+            return new Instantane(0, 0, 0, 0, 0, 0, 0);
+        }
+        return new Instantane(nombre, (double) total[NB_INTERVALLES] / nombre, centile(total, nombre, 0.5),
+                centile(total, nombre, 0.9), centile(total, nombre, 0.99), centile(total, nombre, 0.999),
+                maxIntervalle(dernier));
+    }
+
+    private static long centile(long[] total, long nombre, double fraction) {
+        long rang = Math.max(1, (long) Math.ceil(fraction * nombre));
+        long cumul = 0;
+        for (int i = 0; i < NB_INTERVALLES; i++) {
+            cumul += total[i];
+            if (cumul >= rang) {
+                return maxIntervalle(i);
+            }
+        }
+        return maxIntervalle(NB_INTERVALLES - 1);
+    }
+}
@@ -0,0 +1,83 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Numérotation d'un ensemble fixe d'éléments (par exemple les routes ou les
+ * ports du plateau).
+ * <p>
+ * Chaque élément reçoit un identifiant entier entre 0 et n-1 (dans l'ordre de la
+ * liste passée au constructeur). L'index permet de retrouver en temps constant
+ * l'identifiant d'un élément, l'identifiant correspondant à un nom, et
+ * l'élément correspondant à un identifiant.
+ *
+ * @param <T> le type des éléments indexés
+ */
+public class Index<T> {
+    private final List<T> elements;
+    /**
+     * Identifiants des éléments (les éléments sont comparés par référence)
+     */
+    private final Map<T, Integer> ids;
+    private final Map<String, Integer> idsParNom;
+
+    /**
+     * @param elements les éléments à indexer (sans doublons)
+     * @param nom      fonction qui renvoie le nom (unique) d'un élément
+     */
+    public Index(List<T> elements, Function<? super T, String> nom) {
+        this.elements = Collections.unmodifiableList(new ArrayList<>(elements));
+        this.ids = new IdentityHashMap<>();
+        this.idsParNom = new HashMap<>();
+        for (int i = 0; i < elements.size(); i++) {
+            T element = elements.get(i);
+            ids.put(element, i);
+            idsParNom.put(nom.apply(element), i);
+        }
+    }
+
+    /**
+     * @return le nombre d'éléments indexés
+     */
+    public int taille() {
+        return elements.size();
+    }
+
+    /**
+     * @return l'élément dont l'identifiant est passé en argument
+     */
+    public T get(int id) {
+        return elements.get(id);
+    }
+
+    /**
+     * @return l'identifiant de l'élément, ou -1 si l'élément n'est pas indexé
+     */
+    public int getId(Object element) {
+        Integer id = ids.get(element);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return l'identifiant de l'élément dont le nom est passé en argument, ou -1
+     *         s'il n'existe pas
+     */
+    public int getId(String nom) {
+        Integer id = idsParNom.get(nom);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return la liste (non modifiable) de tous les éléments, dans l'ordre des
+     *         identifiants
+     */
+    public List<T> getElements() {
+        return elements;
+    }
+}
@@ -1,12 +1,26 @@
 package fr.umontpellier.iut.rails;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
 import fr.umontpellier.iut.gui.GameServer;
 import fr.umontpellier.iut.rails.data.*;
+import fr.umontpellier.iut.rails.simulation.Coup;
+import fr.umontpellier.iut.rails.simulation.DonneesPlateau;
+import fr.umontpellier.iut.rails.simulation.EtatSimulation;
+import fr.umontpellier.iut.rails.simulation.MoteurRegles;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Jeu implements Runnable {
     /**
@@ -17,14 +31,22 @@ public class Jeu implements Runnable {
      * Le joueur dont c'est le tour
      */
     private Joueur joueurCourant;
+    /**
+     * Numérotation des ports du plateau
+     */
+    private final Index<Ville> indexPorts;
+    /**
+     * Numérotation des routes du plateau
+     */
+    private final Index<Route> indexRoutes;
     /**
      * Liste des villes disponibles sur le plateau de jeu
      */
-    private final List<Ville> portsLibres;
+    private final EnsembleIndexe<Ville> portsLibres;
     /**
      * Liste des routes disponibles sur le plateau de jeu
      */
-    private final List<Route> routesLibres;
+    private final EnsembleIndexe<Route> routesLibres;
     /**
      * Pile de pioche et défausse des cartes wagon
      */
@@ -36,7 +58,52 @@ public class Jeu implements Runnable {
     /**
      * Cartes de la pioche face visible (normalement il y a 6 cartes face visible)
      */
-    private final List<CarteTransport> cartesTransportVisibles;
+    private final ListeCartesTransport cartesTransportVisibles;
+    /**
+     * Nombre maximum de redistributions successives des cartes visibles (voir
+     * {@link #updateCartesTransportVisibles()})
+     */
+    private static final int MAX_REDISTRIBUTIONS = 10;
+    /**
+     * Entrée ajoutée à la file d'instructions pour réveiller {@link #lireLigne()}
+     * lorsque le délai de décision d'un joueur est dépassé. Elle est reconnue
+     * par son identité (aucune entrée reçue ne peut être cette instance), et
+     * l'échéance atteinte est indiquée séparément ({@link #echeanceAtteinte}).
+     */
+    private static final String REVEIL = new String("délai dépassé");
+    /**
+     * Nombre de délais de décision dépassés consécutivement (par n'importe quel
+     * joueur) au-delà duquel la partie est considérée comme abandonnée : tous
+     * les joueurs jouent alors automatiquement jusqu'à la fin de la partie
+     */
+    public static final int NB_MAX_DELAIS_DEPASSES = 10;
+
+    /**
+     * Réaction de la partie lorsqu'un joueur ne répond pas à une instruction dans
+     * le délai imparti (voir {@link #setDelaiDecision(Duration, ReactionDelaiDepasse)})
+     */
+    public enum ReactionDelaiDepasse {
+        /**
+         * Le joueur passe (ou fait le premier choix proposé s'il ne peut pas
+         * passer), et on attend à nouveau sa réponse à l'instruction suivante
+         * (sauf si la partie est abandonnée, voir {@link #NB_MAX_DELAIS_DEPASSES})
+         */
+        PASSER,
+        /**
+         * Le joueur est considéré comme absent : il fait le choix par défaut, puis
+         * joue automatiquement jusqu'à la fin de la partie sans que l'on attende
+         * ses réponses
+         */
+        JOUEUR_AUTOMATIQUE
+    }
+    /**
+     * Nombre de parties créées (utilisé pour numéroter les parties)
+     */
+    private static final AtomicLong nbParties = new AtomicLong();
+    /**
+     * Numéro de la partie dans la JVM (voir {@link EvenementsJfr})
+     */
+    private final long idPartie = nbParties.incrementAndGet();
     /**
      * Pile des cartes "Destination"
      */
@@ -46,22 +113,158 @@ public class Jeu implements Runnable {
      */
     private final BlockingQueue<String> inputQueue;
     /**
-     * Messages d'information du jeu
+     * Messages d'information du jeu (seuls les plus récents sont conservés en
+     * mémoire)
+     */
+    private final LogJeu log;
+    /**
+     * Générateur aléatoire de la partie (tous les tirages aléatoires du jeu en sont
+     * issus, ce qui permet de reproduire une partie à partir de sa graine)
+     */
+    private final SplittableRandom aleatoire;
+    /**
+     * Graine du générateur aléatoire (null si le générateur a été fourni
+     * directement, auquel cas la partie ne peut pas être enregistrée)
      */
-    private final List<String> log;
+    private final Long graine;
+    /**
+     * Numérotation de toutes les cartes transport et de toutes les destinations de
+     * la partie (dans l'ordre de création)
+     */
+    private final Index<CarteTransport> indexCartes;
+    private final Index<Destination> indexDestinations;
+    /**
+     * Enregistrement de la partie (null si l'enregistrement n'est pas activé)
+     */
+    private Enregistrement enregistrement;
+    /**
+     * Journal de la partie (null si la journalisation n'est pas activée)
+     */
+    private JournalPartie journal;
+    /**
+     * Nombre d'entrées acceptées depuis le début de la partie
+     */
+    private int nbEntreesAcceptees;
+    /**
+     * Entrées (sous forme canonique) à rejouer avant de lire les instructions
+     * reçues, lors de la reprise d'une partie journalisée
+     */
+    private final Deque<String> entreesARejouer = new ArrayDeque<>();
+    /**
+     * Délai accordé à un joueur pour répondre à une instruction (null si les
+     * joueurs ne sont pas limités dans le temps), et réaction lorsque le délai
+     * est dépassé
+     */
+    private Duration delaiDecision;
+    private ReactionDelaiDepasse reactionDelaiDepasse = ReactionDelaiDepasse.PASSER;
+    /**
+     * Numéro de la dernière échéance programmée par {@link #lireLigne()}, et
+     * numéro de la dernière échéance atteinte (écrit par le thread de la
+     * {@link RoueTemporelle})
+     */
+    private long numeroEcheance;
+    private volatile long echeanceAtteinte;
+    /**
+     * Nombre de délais de décision dépassés depuis la dernière entrée reçue
+     */
+    private int nbDelaisDepasses;
+    /**
+     * Instantané du journal à comparer à l'état de la partie reprise lorsque
+     * {@code numeroInstantaneAVerifier} entrées ont été rejouées
+     */
+    private byte[] instantaneAVerifier;
+    private int numeroInstantaneAVerifier = -1;
+
+    /**
+     * Nombre de tours restant avant la fin de la partie (-1 tant que la fin de la
+     * partie n'a pas été déclenchée)
+     */
+    private int nbToursRestants = -1;
+    /**
+     * Description du plateau pour les simulations (construite à la première
+     * utilisation)
+     */
+    private DonneesPlateau donneesPlateau;
+    /**
+     * Recherche des routes pour compléter les destinations, utilisée par les
+     * joueurs dans le thread de la partie (créée à la première utilisation)
+     */
+    private PlanificateurDestinations planificateurDestinations;
+    /**
+     * Routes en surbrillance pour les destinations dans le dernier état du
+     * plateau publié (voir {@link #getSurbrillanceDestinations()})
+     */
+    private SurbrillanceDestinations surbrillanceDestinations;
+    /**
+     * Recherche des routes en surbrillance, partagée par les
+     * {@link SurbrillanceDestinations} successifs (qui sont interrogés par le
+     * serveur dans un autre thread que celui de la partie)
+     */
+    private PlanificateurDestinations planificateurSurbrillance;
+    /**
+     * Nombre de modifications des routes (libres et des joueurs) et pions de
+     * chaque joueur (pions wagon puis pions bateau, réserve comprise) lors du
+     * calcul de {@link #surbrillanceDestinations} : tant qu'ils ne changent pas,
+     * l'objet est renvoyé sans examiner le plateau
+     */
+    private int modificationsRoutesSurbrillance;
+    private int[] pionsSurbrillance;
 
     private String instruction;
     private Collection<Bouton> boutons;
+    /**
+     * Tampon dans lequel l'état du jeu est écrit au format JSON (réutilisé d'un
+     * état à l'autre), et JSON des éléments qui ne changent pas (créé à la
+     * première utilisation)
+     */
+    private final StringWriter tamponEtat = new StringWriter(16 * 1024);
+    private FragmentsJson fragmentsJson;
+    /**
+     * Champs de l'état du jeu écrits après les joueurs, et chemins des sections
+     * de l'état (voir {@link #etatJson()}, calculés à la première utilisation)
+     */
+    private static final String[] CHAMPS_ETAT = { "joueurCourant", "piocheWagon", "piocheBateau",
+            "cartesTransportVisibles", "nbDestinations", "instruction", "boutons" };
+    private String[] cheminsEtat;
 
     public Jeu(String[] nomJoueurs) {
+        this(nomJoueurs, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * @param nomJoueurs les noms des joueurs
+     * @param graine     la graine du générateur aléatoire de la partie (deux
+     *                   parties de même graine qui reçoivent les mêmes entrées se
+     *                   déroulent de manière identique)
+     */
+    public Jeu(String[] nomJoueurs, long graine) {
+        this(nomJoueurs, new SplittableRandom(graine), graine);
+    }
+
+    /**
+     * @param nomJoueurs les noms des joueurs
+     * @param aleatoire  le générateur aléatoire utilisé pour mélanger les cartes
+     *                   (chaque partie doit avoir son propre générateur)
+     */
+    public Jeu(String[] nomJoueurs, SplittableRandom aleatoire) {
+        this(nomJoueurs, aleatoire, null);
+    }
+
+    private Jeu(String[] nomJoueurs, SplittableRandom aleatoire, Long graine) {
+        this.aleatoire = aleatoire;
+        this.graine = graine;
         // initialisation des entrées/sorties
         inputQueue = new LinkedBlockingQueue<>();
-        log = new ArrayList<>();
+        log = new LogJeu();
 
         // création des villes et des routes
-        Plateau plateau = Plateau.makePlateauMonde();
-        portsLibres = plateau.getPorts();
-        routesLibres = plateau.getRoutes();
+        // (le plateau du jeu, ou celui de -Drails.plateau=image, voir ImagePlateau)
+        ImagePlateau image = ImagePlateau.parDefaut();
+        Plateau plateau = Plateau.depuisImage(image);
+        indexPorts = new Index<>(plateau.getPorts(), Ville::nom);
+        indexRoutes = new Index<>(plateau.getRoutes(), Route::getNom);
+        portsLibres = EnsembleIndexe.complet(indexPorts);
+        routesLibres = EnsembleIndexe.complet(indexRoutes);
 
         // création des piles de pioche et défausses des cartes Transport (wagon et
         // bateau)
@@ -92,22 +295,28 @@ public class Jeu implements Runnable {
             // Cartes wagon joker
             cartesWagon.add(new CarteTransport(TypeCarteTransport.JOKER, Couleur.GRIS, false, true));
         }
-        pilesDeCartesWagon = new PilesCartesTransport(cartesWagon);
-        pilesDeCartesBateau = new PilesCartesTransport(cartesBateau);
+        List<CarteTransport> cartes = new ArrayList<>(cartesWagon);
+        cartes.addAll(cartesBateau);
+        indexCartes = new Index<>(cartes, CarteTransport::getNom);
+        pilesDeCartesWagon = new PilesCartesTransport(cartesWagon, aleatoire.split());
+        pilesDeCartesBateau = new PilesCartesTransport(cartesBateau, aleatoire.split());
+        pilesDeCartesWagon.setJeu(this);
+        pilesDeCartesBateau.setJeu(this);
 
         // création de la liste pile de cartes transport visibles
         // (les cartes seront retournées plus tard, au début de la partie dans run())
-        cartesTransportVisibles = new ArrayList<>();
+        cartesTransportVisibles = new ListeCartesTransport();
 
         // création des destinations
-        pileDestinations = Destination.makeDestinationsMonde();
-        Collections.shuffle(pileDestinations);
+        pileDestinations = Destination.depuisImage(image);
+        indexDestinations = new Index<>(pileDestinations, Destination::getNom);
+        melanger(pileDestinations);
 
         // création des joueurs
         // les cartes des joueurs sont distribuées lors de la préparation du jeu dans
         // run()
         ArrayList<Joueur.CouleurJouer> couleurs = new ArrayList<>(Arrays.asList(Joueur.CouleurJouer.values()));
-        Collections.shuffle(couleurs);
+        melanger(couleurs);
         joueurs = new ArrayList<>();
         for (String nomJoueur : nomJoueurs) {
             joueurs.add(new Joueur(nomJoueur, this, couleurs.remove(0)));
@@ -115,12 +324,477 @@ public class Jeu implements Runnable {
         this.joueurCourant = joueurs.get(0);
     }
 
+    /**
+     * Mélange une liste avec le générateur aléatoire de la partie (mélange de
+     * Fisher-Yates)
+     */
+    private <T> void melanger(List<T> liste) {
+        for (int i = liste.size() - 1; i > 0; i--) {
+            Collections.swap(liste, i, aleatoire.nextInt(i + 1));
+        }
+    }
+
+    public SplittableRandom getAleatoire() {
+        return aleatoire;
+    }
+
+    /**
+     * Active l'enregistrement de la partie (voir {@link Enregistrement}). La
+     * méthode doit être appelée avant le début de la partie.
+     *
+     * @return l'enregistrement, qui est complété au fur et à mesure de la partie
+     * @throws IllegalStateException si la graine de la partie n'est pas connue
+     */
+    public Enregistrement activerEnregistrement() {
+        if (graine == null) {
+            throw new IllegalStateException("La partie ne peut être enregistrée que si sa graine est connue");
+        }
+        if (enregistrement == null) {
+            enregistrement = new Enregistrement(graine, joueurs.stream().map(Joueur::getNom).toList());
+        }
+        return enregistrement;
+    }
+
+    /**
+     * Ajoute à l'enregistrement de la partie (s'il est activé) une entrée acceptée
+     * par le jeu
+     */
+    void enregistrerEntree(String entree) {
+        accepterEntree(enregistrement != null || journal != null ? versEntreeCanonique(entree) : null);
+    }
+
+    /**
+     * Ajoute à l'enregistrement de la partie un coup joué sans passer par
+     * {@link Joueur#choisir} (joueurs automatiques). Le coup est enregistré sous
+     * la forme des entrées qu'un joueur humain aurait saisies pour le jouer, si
+     * bien que la partie peut être rejouée normalement. Aucune chaîne n'est
+     * construite si la partie n'est ni enregistrée ni journalisée.
+     */
+    void enregistrerCoup(int coup) {
+        boolean memoriser = enregistrement != null || journal != null;
+        accepterEntree(memoriser ? versEntreeCanonique(coup) : null);
+        int type = Coup.type(coup);
+        int argument = Coup.argument(coup);
+        if ((type == Coup.PIONS_WAGON || type == Coup.PIONS_BATEAU) && argument > 0) {
+            // nombre de pions, demandé séparément à un joueur humain
+            accepterEntree(memoriser ? String.valueOf(argument) : null);
+        }
+    }
+
+    /**
+     * Compte une entrée acceptée et l'ajoute à l'enregistrement et au journal
+     *
+     * @param canonique forme canonique de l'entrée (null si la partie n'est ni
+     *                  enregistrée ni journalisée)
+     */
+    private void accepterEntree(String canonique) {
+        if (enregistrement != null) {
+            enregistrement.ajouter(canonique);
+        }
+        nbEntreesAcceptees++;
+        if (journal != null && nbEntreesAcceptees > journal.getNbEntrees()) {
+            journal.ajouterEntree(canonique);
+            if (journal.instantaneAttendu()) {
+                journal.ajouterInstantane(instantane());
+            }
+        }
+        if (nbEntreesAcceptees == numeroInstantaneAVerifier) {
+            if (!Arrays.equals(instantaneAVerifier, instantane())) {
+                throw new IllegalStateException(String.format(
+                        "La partie reprise ne correspond pas au journal (après %d entrées)", nbEntreesAcceptees));
+            }
+            instantaneAVerifier = null;
+        }
+    }
+
+    /**
+     * Active la journalisation de la partie dans un nouveau fichier (voir
+     * {@link JournalPartie}). La méthode doit être appelée avant le début de la
+     * partie.
+     *
+     * @param intervalleInstantanes nombre d'entrées entre deux instantanés de
+     *                              l'état de la partie
+     * @throws IllegalStateException si la graine de la partie n'est pas connue
+     */
+    public void activerJournal(Path fichier, int intervalleInstantanes) throws IOException {
+        if (graine == null) {
+            throw new IllegalStateException("La partie ne peut être journalisée que si sa graine est connue");
+        }
+        journal = JournalPartie.creer(fichier, graine, joueurs.stream().map(Joueur::getNom).toList(),
+                intervalleInstantanes);
+    }
+
+    /**
+     * Reconstruit une partie à partir de son journal.
+     * <p>
+     * La partie est recréée avec la même graine, et les entrées journalisées sont
+     * rejouées (sans affichage ni diffusion de l'état) au début de l'exécution de
+     * {@link #run()}, avant de lire les nouvelles instructions. L'état atteint
+     * est comparé au dernier instantané du journal, et les nouvelles entrées sont
+     * ajoutées à la suite du journal.
+     */
+    public static Jeu reprendre(Path fichier, int intervalleInstantanes) throws IOException {
+        JournalPartie journal = JournalPartie.rouvrir(fichier, intervalleInstantanes);
+        JournalPartie.Contenu contenu = journal.getContenuInitial();
+        Jeu jeu = new Jeu(contenu.nomsJoueurs().toArray(new String[0]), contenu.graine());
+        jeu.journal = journal;
+        jeu.entreesARejouer.addAll(contenu.entrees());
+        jeu.instantaneAVerifier = contenu.instantane();
+        jeu.numeroInstantaneAVerifier = contenu.numeroInstantane();
+        return jeu;
+    }
+
+    /**
+     * @return true si la partie est en train de rejouer des entrées déjà connues
+     *         (entrées de son journal, ou d'un enregistrement pour les
+     *         sous-classes qui rejouent une partie) : l'état n'est alors pas
+     *         envoyé et aucun événement JFR n'est émis
+     */
+    public boolean estEnRattrapage() {
+        return !entreesARejouer.isEmpty();
+    }
+
+    /**
+     * Renvoie un instantané binaire de l'état de la partie (joueurs, piles de
+     * cartes, cartes visibles, routes et ports libres). Les éléments sont désignés
+     * par leurs numéros dans la partie, si bien que deux parties identiques ont
+     * le même instantané.
+     */
+    public byte[] instantane() {
+        ByteArrayOutputStream octets = new ByteArrayOutputStream(1024);
+        try (DataOutputStream sortie = new DataOutputStream(octets)) {
+            sortie.writeInt(nbEntreesAcceptees);
+            sortie.writeInt(joueurs.indexOf(joueurCourant));
+            for (Joueur joueur : joueurs) {
+                joueur.ecrireInstantane(sortie);
+            }
+            pilesDeCartesWagon.ecrireInstantane(sortie, indexCartes);
+            pilesDeCartesBateau.ecrireInstantane(sortie, indexCartes);
+            ecrireIds(sortie, cartesTransportVisibles, indexCartes);
+            ecrireIds(sortie, pileDestinations, indexDestinations);
+            ecrireIds(sortie, routesLibres, indexRoutes);
+            ecrireIds(sortie, portsLibres, indexPorts);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return octets.toByteArray();
+    }
+
+    /**
+     * Écrit le nombre d'éléments d'une liste puis leurs numéros dans l'index (sur
+     * 4 octets : un plateau peut avoir plus de 65 536 routes)
+     */
+    static <T> void ecrireIds(DataOutputStream sortie, List<T> elements, Index<T> index) throws IOException {
+        sortie.writeInt(elements.size());
+        for (T element : elements) {
+            sortie.writeInt(index.getId(element));
+        }
+    }
+
+    /**
+     * Renvoie la forme canonique d'une entrée, qui ne dépend pas des noms attribués
+     * aux cartes, routes et destinations lors de leur création : un nom de carte
+     * devient "#C" suivi du numéro de la carte dans la partie (de même "#R" pour
+     * les routes et "#D" pour les destinations). Les autres entrées sont
+     * inchangées (un '#' est ajouté au début de celles qui commencent par '#').
+     */
+    String versEntreeCanonique(String entree) {
+        int id = indexCartes.getId(entree);
+        if (id >= 0) {
+            return "#C" + id;
+        }
+        id = indexRoutes.getId(entree);
+        if (id >= 0) {
+            return "#R" + id;
+        }
+        id = indexDestinations.getId(entree);
+        if (id >= 0) {
+            return "#D" + id;
+        }
+        return entree.startsWith("#") ? "#" + entree : entree;
+    }
+
+    /**
+     * Renvoie l'entrée qu'un joueur doit saisir pour jouer un coup (voir
+     * {@link Joueur#genererCoups}) : nom de la carte visible, de la route ou du
+     * port, "WAGON", "BATEAU", "DESTINATION", "PIONS WAGON", "PIONS BATEAU" ou la
+     * chaîne vide pour passer. Le nombre de pions d'un échange n'en fait pas
+     * partie.
+     */
+    String versEntree(int coup) {
+        int argument = Coup.argument(coup);
+        return switch (Coup.type(coup)) {
+            case Coup.PIOCHER_WAGON -> "WAGON";
+            case Coup.PIOCHER_BATEAU -> "BATEAU";
+            case Coup.PRENDRE_VISIBLE -> cartesTransportVisibles.get(argument).getNom();
+            case Coup.CAPTURER_ROUTE -> indexRoutes.get(argument).getNom();
+            case Coup.CONSTRUIRE_PORT -> indexPorts.get(argument).nom();
+            case Coup.PIONS_WAGON -> "PIONS WAGON";
+            case Coup.PIONS_BATEAU -> "PIONS BATEAU";
+            case Coup.DESTINATIONS -> "DESTINATION";
+            default -> "";
+        };
+    }
+
+    /**
+     * Forme canonique de l'entrée correspondant à un coup (voir
+     * {@link #versEntree(int)} et {@link #versEntreeCanonique(String)})
+     */
+    String versEntreeCanonique(int coup) {
+        return switch (Coup.type(coup)) {
+            case Coup.CAPTURER_ROUTE -> "#R" + Coup.argument(coup);
+            default -> versEntreeCanonique(versEntree(coup));
+        };
+    }
+
+    /**
+     * Opération inverse de {@link #versEntreeCanonique(String)}
+     */
+    String depuisEntreeCanonique(String entree) {
+        if (!entree.startsWith("#")) {
+            return entree;
+        }
+        if (entree.startsWith("##")) {
+            return entree.substring(1);
+        }
+        int id = Integer.parseInt(entree.substring(2));
+        return switch (entree.charAt(1)) {
+            case 'C' -> indexCartes.get(id).getNom();
+            case 'R' -> indexRoutes.get(id).getNom();
+            case 'D' -> indexDestinations.get(id).getNom();
+            default -> throw new IllegalArgumentException("Entrée canonique invalide : " + entree);
+        };
+    }
+
+    /**
+     * Renvoie la description du plateau utilisée par les états de simulation de
+     * la partie
+     */
+    public DonneesPlateau getDonneesPlateau() {
+        if (donneesPlateau == null) {
+            donneesPlateau = new DonneesPlateau(indexRoutes.getElements(), indexPorts.getElements(),
+                    indexDestinations.getElements(), indexCartes.getElements());
+        }
+        return donneesPlateau;
+    }
+
+    PlanificateurDestinations getPlanificateurDestinations() {
+        if (planificateurDestinations == null) {
+            planificateurDestinations = new PlanificateurDestinations(getDonneesPlateau());
+        }
+        return planificateurDestinations;
+    }
+
+    /**
+     * Renvoie les routes en surbrillance pour les destinations des joueurs dans
+     * l'état actuel du plateau. Tant que le plateau ne change pas (mêmes
+     * propriétaires des routes et mêmes pions des joueurs), c'est le même objet
+     * qui est renvoyé, si bien que les routes déjà calculées sont conservées.
+     * <p>
+     * La méthode est appelée par le thread de la partie à chaque instruction :
+     * l'état du plateau n'est recopié (dans les tableaux du nouvel objet, qui
+     * peut être lu par d'autres threads) que si une route a changé de
+     * propriétaire ou si les pions d'un joueur ont changé, sans allocation sinon.
+     */
+    public SurbrillanceDestinations getSurbrillanceDestinations() {
+        if (pionsSurbrillance == null) {
+            pionsSurbrillance = new int[2 * joueurs.size()];
+        }
+        int modificationsRoutes = routesLibres.getNbModifications();
+        boolean inchange = surbrillanceDestinations != null;
+        for (int i = 0; i < joueurs.size(); i++) {
+            Joueur joueur = joueurs.get(i);
+            modificationsRoutes += joueur.getNbModificationsRoutes();
+            int wagons = joueur.getNbPionsWagon() + joueur.getNbPionsWagonEnReserve();
+            int bateaux = joueur.getNbPionsBateau() + joueur.getNbPionsBateauEnReserve();
+            inchange &= pionsSurbrillance[2 * i] == wagons && pionsSurbrillance[2 * i + 1] == bateaux;
+            pionsSurbrillance[2 * i] = wagons;
+            pionsSurbrillance[2 * i + 1] = bateaux;
+        }
+        inchange &= modificationsRoutes == modificationsRoutesSurbrillance;
+        modificationsRoutesSurbrillance = modificationsRoutes;
+        if (inchange) {
+            return surbrillanceDestinations;
+        }
+        byte[] proprietaires = new byte[indexRoutes.taille()];
+        Arrays.fill(proprietaires, SurbrillanceDestinations.SANS_PROPRIETAIRE);
+        int[] maxWagons = new int[joueurs.size()];
+        int[] maxBateaux = new int[joueurs.size()];
+        for (int i = 0; i < joueurs.size(); i++) {
+            Joueur joueur = joueurs.get(i);
+            for (Route r : joueur.getRoutes()) {
+                int id = indexRoutes.getId(r);
+                if (id >= 0) {
+                    proprietaires[id] = (byte) i;
+                }
+            }
+            maxWagons[i] = joueur.getNbPionsWagon() + joueur.getNbPionsWagonEnReserve();
+            maxBateaux[i] = joueur.getNbPionsBateau() + joueur.getNbPionsBateauEnReserve();
+        }
+        if (surbrillanceDestinations == null
+                || !surbrillanceDestinations.estPourLePlateau(proprietaires, maxWagons, maxBateaux)) {
+            if (planificateurSurbrillance == null) {
+                planificateurSurbrillance = new PlanificateurDestinations(getDonneesPlateau());
+            }
+            surbrillanceDestinations = new SurbrillanceDestinations(planificateurSurbrillance, indexRoutes,
+                    indexDestinations, proprietaires, maxWagons, maxBateaux);
+        }
+        return surbrillanceDestinations;
+    }
+
+    /**
+     * Renvoie l'état courant de la partie sous une forme compacte et copiable,
+     * destinée aux joueurs automatiques qui simulent la suite de la partie (voir
+     * {@link MoteurRegles}).
+     * <p>
+     * L'état doit être exporté entre deux tours ou au début du tour d'un joueur :
+     * les cartes qu'un joueur est en train de poser sont comptées dans sa main.
+     */
+    public EtatSimulation exporterEtatSimulation() {
+        DonneesPlateau plateau = getDonneesPlateau();
+        EtatSimulation etat = new EtatSimulation(plateau, joueurs.size());
+        for (int i = 0; i < joueurs.size(); i++) {
+            joueurs.get(i).exporterEtatSimulation(etat, i);
+        }
+        pilesDeCartesWagon.exporterEtatSimulation(etat, plateau, indexCartes);
+        pilesDeCartesBateau.exporterEtatSimulation(etat, plateau, indexCartes);
+        for (CarteTransport c : cartesTransportVisibles) {
+            etat.ajouterCartesVisibles(plateau.getSorte(indexCartes.getId(c)), 1);
+        }
+        for (Destination d : pileDestinations) {
+            etat.ajouterPileDestinations(indexDestinations.getId(d));
+        }
+        etat.setJoueurCourant(joueurs.indexOf(joueurCourant));
+        etat.setToursRestants(nbToursRestants);
+        return etat;
+    }
+
+    /**
+     * Remplace l'état de la partie par un état de simulation (par exemple pour
+     * reprendre une partie à partir d'une position calculée). Les cartes sont
+     * réparties selon les nombres de cartes de chaque sorte de l'état, l'ordre des
+     * cartes de la pioche et de la pile de destinations est tiré au hasard.
+     * <p>
+     * L'état doit être dans la phase {@link EtatSimulation#DEBUT_TOUR} et la
+     * méthode ne doit pas être appelée pendant l'exécution de {@link #run()}.
+     */
+    public void importerEtatSimulation(EtatSimulation etat) {
+        DonneesPlateau plateau = getDonneesPlateau();
+        if (etat.getPlateau() != plateau || etat.getNbJoueurs() != joueurs.size()) {
+            throw new IllegalArgumentException("L'état ne correspond pas à cette partie");
+        }
+        if (etat.getPhase() != EtatSimulation.DEBUT_TOUR) {
+            throw new IllegalStateException("L'état doit être importé au début d'un tour");
+        }
+        // cartes disponibles de chaque sorte
+        List<Deque<CarteTransport>> cartes = new ArrayList<>();
+        for (int s = 0; s < plateau.getNbSortes(); s++) {
+            cartes.add(new ArrayDeque<>());
+        }
+        for (int id = 0; id < indexCartes.taille(); id++) {
+            cartes.get(plateau.getSorte(id)).add(indexCartes.get(id));
+        }
+        for (int i = 0; i < joueurs.size(); i++) {
+            joueurs.get(i).importerEtatSimulation(etat, i, s -> cartes.get(s).remove());
+        }
+        List<CarteTransport> piocheWagon = new ArrayList<>();
+        List<CarteTransport> defausseWagon = new ArrayList<>();
+        List<CarteTransport> piocheBateau = new ArrayList<>();
+        List<CarteTransport> defausseBateau = new ArrayList<>();
+        cartesTransportVisibles.clear();
+        for (int s = 0; s < plateau.getNbSortes(); s++) {
+            boolean wagon = plateau.estSorteWagon(s);
+            for (int k = etat.getNbCartesPioche(s); k > 0; k--) {
+                (wagon ? piocheWagon : piocheBateau).add(cartes.get(s).remove());
+            }
+            for (int k = etat.getNbCartesDefausse(s); k > 0; k--) {
+                (wagon ? defausseWagon : defausseBateau).add(cartes.get(s).remove());
+            }
+            for (int k = etat.getNbCartesVisibles(s); k > 0; k--) {
+                cartesTransportVisibles.add(cartes.get(s).remove());
+            }
+        }
+        pilesDeCartesWagon.remplacer(piocheWagon, defausseWagon);
+        pilesDeCartesBateau.remplacer(piocheBateau, defausseBateau);
+
+        pileDestinations.clear();
+        for (int d = 0; d < plateau.getNbDestinations(); d++) {
+            if (etat.estDansPileDestinations(d)) {
+                pileDestinations.add(indexDestinations.get(d));
+            }
+        }
+        melanger(pileDestinations);
+        routesLibres.clear();
+        for (int r = 0; r < plateau.getNbRoutes(); r++) {
+            if (etat.getProprietaireRoute(r) < 0) {
+                routesLibres.add(indexRoutes.get(r));
+            }
+        }
+        portsLibres.clear();
+        for (int p = 0; p < plateau.getNbPorts(); p++) {
+            if (etat.getProprietairePort(p) < 0) {
+                portsLibres.add(indexPorts.get(p));
+            }
+        }
+        joueurCourant = joueurs.get(etat.getJoueurCourant());
+        nbToursRestants = etat.getToursRestants();
+    }
+
     public List<Joueur> getJoueurs() {
         return joueurs;
     }
 
+    /**
+     * @return le numéro de la partie, unique dans la JVM (porté par les
+     *         événements JFR de la partie)
+     */
+    public long getIdPartie() {
+        return idPartie;
+    }
+
+    public Joueur getJoueurCourant() {
+        return joueurCourant;
+    }
+
+    public Index<Ville> getIndexPorts() {
+        return indexPorts;
+    }
+
+    public Index<Route> getIndexRoutes() {
+        return indexRoutes;
+    }
+
+    public Index<CarteTransport> getIndexCartes() {
+        return indexCartes;
+    }
+
+    public Index<Destination> getIndexDestinations() {
+        return indexDestinations;
+    }
+
+    /**
+     * Renvoie une vue non modifiable des ports disponibles. Ce n'est pas une
+     * copie : la vue reflète les ports construits par la suite, si bien qu'un
+     * appelant qui construit des ports en parcourant la liste, ou qui doit
+     * conserver les ports libres à un instant donné, doit d'abord la copier.
+     */
     public List<Ville> getPortsLibres() {
-        return new ArrayList<>(portsLibres);
+        return portsLibres.vueLectureSeule();
+    }
+
+    /**
+     * @return true si aucun port n'a encore été construit sur la ville
+     */
+    public boolean estPortLibre(Ville ville) {
+        return portsLibres.contains(ville);
+    }
+
+    /**
+     * @return true si aucun port n'a encore été construit sur la ville dont
+     * l'identifiant est passé en argument
+     */
+    boolean estPortLibre(int id) {
+        return portsLibres.contientId(id);
     }
 
     /**
@@ -130,17 +804,54 @@ public class Jeu implements Runnable {
      * @return la ville du port supprimé ou null
      */
     public Ville retirerPortLibre(String nom) {
-        for (Ville v : portsLibres) {
-            if (v.nom().equals(nom)) {
-                portsLibres.remove(v);
-                return v;
-            }
-        }
-        return null;
+        return portsLibres.retirer(nom);
     }
 
+    /**
+     * Renvoie une vue non modifiable des routes disponibles. Ce n'est pas une
+     * copie : la vue reflète les routes capturées par la suite, si bien qu'un
+     * appelant qui capture des routes en parcourant la liste, ou qui doit
+     * conserver les routes libres à un instant donné, doit d'abord la copier.
+     */
     public List<Route> getRoutesLibres() {
-        return new ArrayList<>(routesLibres);
+        return routesLibres.vueLectureSeule();
+    }
+
+    /**
+     * @return true si la route n'a pas encore été capturée
+     */
+    public boolean estRouteLibre(Route route) {
+        return routesLibres.contains(route);
+    }
+
+    /**
+     * @return true si la route dont l'identifiant est passé en argument n'a pas
+     * encore été capturée
+     */
+    boolean estRouteLibre(int id) {
+        return routesLibres.contientId(id);
+    }
+
+    /**
+     * @return le nombre de modifications de l'ensemble des routes libres (il
+     * change à chaque fois qu'une route est capturée)
+     */
+    int getNbModificationsRoutesLibres() {
+        return routesLibres.getNbModifications();
+    }
+
+    /**
+     * Renvoie le joueur qui a capturé la route passée en argument
+     *
+     * @return le propriétaire de la route, ou null si la route est libre
+     */
+    public Joueur getProprietaire(Route route) {
+        for (Joueur joueur : joueurs) {
+            if (joueur.possedeRoute(route)) {
+                return joueur;
+            }
+        }
+        return null;
     }
 
     /**
@@ -150,13 +861,37 @@ public class Jeu implements Runnable {
      * @return la route supprimée ou null
      */
     public Route retirerRouteLibre(String nom) {
-        for (Route r : routesLibres) {
-            if (r.getNom().equals(nom)) {
-                routesLibres.remove(r);
-                return r;
-            }
-        }
-        return null;
+        return routesLibres.retirer(nom);
+    }
+
+    public PilesCartesTransport getPilesDeCartesWagon() {
+        return pilesDeCartesWagon;
+    }
+
+    public PilesCartesTransport getPilesDeCartesBateau() {
+        return pilesDeCartesBateau;
+    }
+
+    /**
+     * @return le nombre de destinations dans la pile
+     */
+    public int getNbDestinations() {
+        return pileDestinations.size();
+    }
+
+    /**
+     * @return la dernière instruction donnée aux joueurs (voir {@link #prompt})
+     */
+    public String getInstruction() {
+        return instruction;
+    }
+
+    /**
+     * @return les boutons proposés avec la dernière instruction (null si aucune
+     *         instruction n'a encore été donnée)
+     */
+    public Collection<Bouton> getBoutons() {
+        return boutons;
     }
 
     /**
@@ -166,6 +901,20 @@ public class Jeu implements Runnable {
         return new ArrayList<>(cartesTransportVisibles);
     }
 
+    /**
+     * @return le nombre de cartes transport visibles
+     */
+    int getNbCartesTransportVisibles() {
+        return cartesTransportVisibles.size();
+    }
+
+    /**
+     * Renvoie la i-ième carte transport visible (sans copier la liste)
+     */
+    CarteTransport getCarteTransportVisible(int i) {
+        return cartesTransportVisibles.get(i);
+    }
+
     /**
      * Retire une carte transport de la liste des cartes visibles.
      */
@@ -185,9 +934,30 @@ public class Jeu implements Runnable {
     }
 
     /**
-     * Exécute la partie
+     * Exécute la partie, puis ferme son journal (s'il est activé), y compris si
+     * la partie est interrompue
      */
     public void run() {
+        try {
+            jouerPartie();
+        } finally {
+            fermerJournal();
+        }
+    }
+
+    private void fermerJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                journal = null;
+            }
+        }
+    }
+
+    private void jouerPartie() {
         // Retourner 3 cartes wagon et 3 cartes bateau
         for (int i = 0; i < 3; i++) {
             cartesTransportVisibles.add(piocherCarteWagon());
@@ -203,22 +973,28 @@ public class Jeu implements Runnable {
         }
 
         // Boucle principale (tours des joueurs)
-        while (true) {
-            log(String.format("    --- %s ---", joueurCourant.toLog()));
+        while (nbToursRestants != 0) {
+            if (nbToursRestants < 0) {
+                log(String.format("    --- %s ---", joueurCourant.toLog()));
+            }
+            EvenementsJfr.Tour evenement = new EvenementsJfr.Tour();
+            evenement.begin();
             joueurCourant.jouerTour();
-            if (joueurCourant.getNbPionsWagon() + joueurCourant.getNbPionsBateau() <= 6) {
+            if (!estEnRattrapage() && evenement.shouldCommit()) {
+                evenement.partie = idPartie;
+                evenement.joueur = joueurs.indexOf(joueurCourant);
+                evenement.nomJoueur = joueurCourant.getNom();
+                evenement.commit();
+            }
+            if (nbToursRestants > 0) {
+                nbToursRestants--;
+            } else if (joueurCourant.getNbPionsWagon() + joueurCourant.getNbPionsBateau() <= 6) {
                 // un joueur a moins de 6 pions restants à la fin de son tour
                 // chaque joueur joue encore 2 tours et la partie s'arrête
-                passeAuJoueurSuivant();
-                break;
+                nbToursRestants = 2 * joueurs.size();
             }
             passeAuJoueurSuivant();
         }
-        // 2 derniers tours de jeu
-        for (int i = 0; i < 2 * joueurs.size(); i++) {
-            joueurCourant.jouerTour();
-            passeAuJoueurSuivant();
-        }
         // Fin de la partie
         log("Fin de la partie.");
         for (Joueur j : joueurs) {
@@ -257,14 +1033,27 @@ public class Jeu implements Runnable {
      * @return la carte qui a été retournée (ou null si aucune carte disponible)
      */
     public CarteTransport revelerCarteWagon() {
-        CarteTransport c = pilesDeCartesWagon.piocher();
+        CarteTransport c = reveler(pilesDeCartesWagon);
         if (c != null) {
-            cartesTransportVisibles.add(c);
             updateCartesTransportVisibles();
         }
         return c;
     }
 
+    /**
+     * Révèle une carte de la pile sans vérifier s'il faut redistribuer les cartes
+     * visibles
+     *
+     * @return la carte qui a été retournée (ou null si aucune carte disponible)
+     */
+    private CarteTransport reveler(PilesCartesTransport piles) {
+        CarteTransport c = piles.piocher();
+        if (c != null) {
+            cartesTransportVisibles.add(c);
+        }
+        return c;
+    }
+
     /**
      * @return true si les piles de cartes wagon sont vides
      */
@@ -288,9 +1077,8 @@ public class Jeu implements Runnable {
      * @return la carte qui a été retournée (ou null si aucune carte disponible)
      */
     public CarteTransport revelerCarteBateau() {
-        CarteTransport c = pilesDeCartesBateau.piocher();
+        CarteTransport c = reveler(pilesDeCartesBateau);
         if (c != null) {
-            cartesTransportVisibles.add(c);
             updateCartesTransportVisibles();
         }
         return c;
@@ -340,60 +1128,69 @@ public class Jeu implements Runnable {
      * retournée face visible, et au début du tour de chaque joueur.
      */
     public void updateCartesTransportVisibles() {
-        if (cartesTransportVisibles
-                .stream()
-                .filter(c -> c.getType() == TypeCarteTransport.JOKER).count() < 3) {
-            // il y a < 3 cartes Joker face visible
-            // pas besoin de redistribuer les cartes transport visibles
-            return;
-        }
-
-        int nbCartesWagonSimples = 0;
-        int nbCartesBateau = 0;
-        List<CarteTransport> cartesTransport = new ArrayList<>();
-        cartesTransport.addAll(cartesTransportVisibles);
-        cartesTransport.addAll(pilesDeCartesWagon.getCartes());
-        cartesTransport.addAll(pilesDeCartesBateau.getCartes());
-        for (CarteTransport c : cartesTransport) {
-            switch (c.getType()) {
-                case WAGON:
-                    nbCartesWagonSimples += 1;
-                    break;
-                case BATEAU:
-                    nbCartesBateau += 1;
-                    break;
-                default:
-                    break;
+        // chaque redistribution peut à nouveau faire apparaître 3 jokers : on
+        // recommence (au plus MAX_REDISTRIBUTIONS fois, pour que la boucle se
+        // termine même si les pioches ne contiennent presque que des jokers)
+        EvenementsJfr.Redistribution evenement = null;
+        int n = 0;
+        for (; n < MAX_REDISTRIBUTIONS && doitRedistribuerCartesTransportVisibles(); n++) {
+            if (evenement == null) {
+                evenement = new EvenementsJfr.Redistribution();
+                evenement.begin();
+            }
+            // défausser les 6 cartes transport visibles
+            while (!cartesTransportVisibles.isEmpty()) {
+                defausserCarteTransport(cartesTransportVisibles.remove(0));
             }
+            // retourner des nouvelles cartes
+            completerCartesTransportVisibles();
         }
-
-        if (nbCartesWagonSimples == 0 || nbCartesWagonSimples + nbCartesBateau <= 3) {
-            // il n'y a pas assez d'autres cartes pour pouvoir avoir moins de 3 cartes
-            // Joker face visible. Ce n'est pas la peine de redistribuer les cartes
-            return;
+        if (evenement != null && !estEnRattrapage() && evenement.shouldCommit()) {
+            evenement.partie = idPartie;
+            evenement.nbRedistributions = n;
+            evenement.commit();
         }
+    }
 
-        // défausser les 6 cartes transport visibles
-        while (!cartesTransportVisibles.isEmpty()) {
-            defausserCarteTransport(cartesTransportVisibles.remove(0));
+    /**
+     * @return true si 3 jokers (ou plus) sont face visible et qu'il reste assez
+     * d'autres cartes pour qu'une redistribution puisse en faire apparaître moins
+     * (calculé en temps constant à partir des compteurs des listes de cartes)
+     */
+    private boolean doitRedistribuerCartesTransportVisibles() {
+        if (cartesTransportVisibles.getNombre(TypeCarteTransport.JOKER) < 3) {
+            // il y a < 3 cartes Joker face visible
+            // pas besoin de redistribuer les cartes transport visibles
+            return false;
         }
-        // retourner des nouvelles cartes
-        remplirCartesTransportVisibles();
+        int nbCartesWagonSimples = pilesDeCartesWagon.getNombre(TypeCarteTransport.WAGON)
+                + cartesTransportVisibles.getNombre(TypeCarteTransport.WAGON);
+        int nbCartesBateau = pilesDeCartesBateau.getNombre(TypeCarteTransport.BATEAU)
+                + cartesTransportVisibles.getNombre(TypeCarteTransport.BATEAU);
+        // s'il n'y a pas assez d'autres cartes pour pouvoir avoir moins de 3 cartes
+        // Joker face visible, ce n'est pas la peine de redistribuer les cartes
+        return nbCartesWagonSimples > 0 && nbCartesWagonSimples + nbCartesBateau > 3;
     }
 
     /**
      * Retourne 3 cartes wagon et 3 cartes bateau face visible.
      * Si l'une des deux piles contient moins de 3 cartes, on ajoute des cartes de
      * l'autre pile jusqu'à avoir retourné 6 cartes ou épuisé les deux piles.
+     * Les cartes sont ensuite redistribuées s'il y a 3 jokers face visible.
      */
     public void remplirCartesTransportVisibles() {
+        completerCartesTransportVisibles();
+        updateCartesTransportVisibles();
+    }
+
+    private void completerCartesTransportVisibles() {
         for (int i = 0; i < 3; i++) {
-            CarteTransport c = revelerCarteBateau();
+            CarteTransport c = reveler(pilesDeCartesBateau);
             if (c == null)
                 break;
         }
         for (int i = 0; i < 3; i++) {
-            CarteTransport c = revelerCarteWagon();
+            CarteTransport c = reveler(pilesDeCartesWagon);
             if (c == null)
                 break;
         }
@@ -401,19 +1198,22 @@ public class Jeu implements Runnable {
         // Si une pioche est vide, on complète à 6 cartes avec des cartes de l'autre
         // pioche
         while (cartesTransportVisibles.size() < 6 && !pilesDeCartesWagon.estVide()) {
-            revelerCarteWagon();
+            reveler(pilesDeCartesWagon);
         }
         while (cartesTransportVisibles.size() < 6 && !pilesDeCartesBateau.estVide()) {
-            revelerCarteBateau();
+            reveler(pilesDeCartesBateau);
         }
-        updateCartesTransportVisibles();
     }
 
     /**
      * Ajoute un message au log du jeu
      */
     public void log(String message) {
-        log.add(message);
+        log.ajouter(message);
+    }
+
+    public LogJeu getLog() {
+        return log;
     }
 
     /**
@@ -421,6 +1221,9 @@ public class Jeu implements Runnable {
      */
     public void addInput(String message) {
         inputQueue.add(message);
+        if (Metriques.sontActives()) {
+            Metriques.FILE_ENTREES.enregistrer(inputQueue.size());
+        }
     }
 
     /**
@@ -429,17 +1232,100 @@ public class Jeu implements Runnable {
      * l'entrée clavier de l'utilisateur (par exemple dans {@code Player.choisir})
      *
      * @return une chaîne de caractères correspondant à l'entrée suivante dans la
-     *         file
+     *         file, ou null si le délai de décision est dépassé (voir
+     *         {@link #setDelaiDecision(Duration, ReactionDelaiDepasse)})
+     * @throws CancellationException si le thread de la partie est interrompu
+     *                               pendant l'attente (l'interruption est
+     *                               conservée et la partie s'arrête)
      */
     public String lireLigne() {
+        if (!entreesARejouer.isEmpty()) {
+            return depuisEntreeCanonique(entreesARejouer.poll());
+        }
+        if (journal != null) {
+            // les entrées acceptées jusqu'ici sont écrites sur le disque avant
+            // d'attendre le joueur (une seule écriture par décision)
+            journal.forcer();
+        }
         try {
-            return inputQueue.take();
+            if (delaiDecision == null) {
+                return inputQueue.take();
+            }
+            // à l'échéance, le numéro de cette lecture est noté puis la lecture est
+            // réveillée (les réveils des lectures précédentes sont ignorés)
+            long numero = ++numeroEcheance;
+            RoueTemporelle.Echeance echeance = RoueTemporelle.getInstance().planifier(delaiDecision, () -> {
+                echeanceAtteinte = numero;
+                inputQueue.add(REVEIL);
+            });
+            try {
+                while (true) {
+                    String entree = inputQueue.take();
+                    if (entree != REVEIL) {
+                        nbDelaisDepasses = 0;
+                        return entree;
+                    }
+                    if (echeanceAtteinte == numero) {
+                        nbDelaisDepasses++;
+                        return null;
+                    }
+                }
+            } finally {
+                echeance.annuler();
+            }
         } catch (InterruptedException e) {
-            e.printStackTrace();
-            return null;
+            Thread.currentThread().interrupt();
+            CancellationException annulation = new CancellationException("La partie a été interrompue");
+            annulation.initCause(e);
+            throw annulation;
         }
     }
 
+    /**
+     * @return true si les joueurs ont dépassé consécutivement
+     *         {@link #NB_MAX_DELAIS_DEPASSES} délais de décision : la partie est
+     *         alors terminée par des joueurs automatiques, quelle que soit la
+     *         réaction choisie
+     */
+    public boolean estAbandonnee() {
+        return nbDelaisDepasses >= NB_MAX_DELAIS_DEPASSES;
+    }
+
+    /**
+     * Limite le temps dont disposent les joueurs pour répondre à chaque
+     * instruction. Lorsque le délai est dépassé, {@link #lireLigne()} renvoie
+     * null et le joueur joue un choix par défaut (voir
+     * {@link ReactionDelaiDepasse}).
+     * <p>
+     * Les échéances sont gérées par la {@link RoueTemporelle} partagée : aucun
+     * thread n'est créé pour la partie.
+     *
+     * @param delai    le délai accordé pour chaque instruction (null pour ne pas
+     *                 limiter le temps des joueurs)
+     * @param reaction ce qui se passe lorsqu'un joueur dépasse le délai
+     */
+    public void setDelaiDecision(Duration delai, ReactionDelaiDepasse reaction) {
+        this.delaiDecision = delai;
+        this.reactionDelaiDepasse = reaction;
+    }
+
+    public ReactionDelaiDepasse getReactionDelaiDepasse() {
+        return reactionDelaiDepasse;
+    }
+
+    /**
+     * Envoie l'état de la partie avant un choix (voir
+     * {@link #prompt(String, Collection, boolean)}). Les choix qui ne sont pas
+     * proposés par des boutons (noms de cartes, routes, destinations, etc.) ne
+     * sont pas transmis à l'interface graphique, qui les déduit de l'état de la
+     * partie, mais sont disponibles pour les sous-classes.
+     *
+     * @param choix les choix valides autres que les boutons
+     */
+    void prompt(String instruction, Collection<String> choix, Collection<Bouton> boutons, boolean peutPasser) {
+        prompt(instruction, boutons, peutPasser);
+    }
+
     /**
      * Envoie l'état de la partie pour affichage aux joueurs avant de faire un choix
      *
@@ -448,8 +1334,13 @@ public class Jeu implements Runnable {
      * @param peutPasser  indique si le joueur peut passer sans faire de choix
      */
     public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+        if (estEnRattrapage()) {
+            // reprise d'une partie : les entrées sont déjà connues
+            return;
+        }
         this.instruction = instruction;
         this.boutons = boutons;
+        Metriques.PROMPTS.incrementer();
 
         System.out.println();
         System.out.println(this);
@@ -462,7 +1353,10 @@ public class Jeu implements Runnable {
             }
             System.out.printf(">>> %s: %s [%s] <<<\n", joueurCourant.getNom(), instruction, joiner);
         }
-        GameServer.setEtatJeu(new Gson().toJson(dataMap()));
+        long debut = Metriques.debut();
+        EtatJson etat = etatJson();
+        Metriques.CONSTRUCTION_ETAT.enregistrerDepuis(debut);
+        GameServer.setEtatJeu(this, etat, getSurbrillanceDestinations());
     }
 
     @Override
@@ -475,20 +1369,81 @@ public class Jeu implements Runnable {
     }
 
     /**
-     * Renvoie une représentation du jeu sous la forme d'un dictionnaire de
-     * valeurs sérialisables (qui sera converti en JSON pour l'envoyer à l'interface
-     * graphique)
+     * Renvoie l'état du jeu au format JSON, envoyé à l'interface graphique, et
+     * découpé en sections (voir {@link EtatJson}).
+     * <p>
+     * Les messages du log ne font pas partie de l'état : ils sont transmis
+     * séparément au fur et à mesure qu'ils sont ajoutés (cf. {@link LogJeu}).
+     * <p>
+     * L'état est écrit directement dans un tampon réutilisé d'un appel à
+     * l'autre, sans construire de dictionnaire ni de liste intermédiaire, et le
+     * JSON des cartes, destinations, routes et ports est calculé une seule fois
+     * par partie (voir {@link FragmentsJson}). L'état renvoyé est immuable et
+     * peut être transmis à un autre thread.
+     */
+    public EtatJson etatJson() {
+        if (fragmentsJson == null) {
+            fragmentsJson = new FragmentsJson(indexCartes, indexDestinations, indexRoutes, indexPorts);
+            cheminsEtat = new String[joueurs.size() + CHAMPS_ETAT.length];
+            for (int i = 0; i < joueurs.size(); i++) {
+                cheminsEtat[i] = "/joueurs/" + i;
+            }
+            for (int c = 0; c < CHAMPS_ETAT.length; c++) {
+                cheminsEtat[joueurs.size() + c] = "/" + CHAMPS_ETAT[c];
+            }
+        }
+        StringBuffer texte = tamponEtat.getBuffer();
+        texte.setLength(0);
+        int[] bornes = new int[2 * cheminsEtat.length];
+        try {
+            texte.append("{\"joueurs\":[");
+            for (int i = 0; i < joueurs.size(); i++) {
+                if (i > 0) {
+                    texte.append(',');
+                }
+                bornes[2 * i] = texte.length();
+                joueurs.get(i).ecrireEtat(new JsonWriter(tamponEtat), fragmentsJson);
+                bornes[2 * i + 1] = texte.length();
+            }
+            texte.append(']');
+            for (int c = 0; c < CHAMPS_ETAT.length; c++) {
+                int section = joueurs.size() + c;
+                texte.append(",\"").append(CHAMPS_ETAT[c]).append("\":");
+                bornes[2 * section] = texte.length();
+                ecrireChampEtat(CHAMPS_ETAT[c], new JsonWriter(tamponEtat));
+                bornes[2 * section + 1] = texte.length();
+            }
+            texte.append('}');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new EtatJson(texte.toString(), cheminsEtat, bornes);
+    }
+
+    /**
+     * Écrit la valeur d'un champ de l'état du jeu (autre que les joueurs)
      */
-    public Map<String, Object> dataMap() {
-        return Map.ofEntries(
-                Map.entry("joueurs", joueurs.stream().map(Joueur::dataMap).toList()),
-                Map.entry("joueurCourant", joueurs.indexOf(joueurCourant)),
-                Map.entry("piocheWagon", pilesDeCartesWagon.dataMap()),
-                Map.entry("piocheBateau", pilesDeCartesBateau.dataMap()),
-                Map.entry("cartesTransportVisibles", cartesTransportVisibles),
-                Map.entry("nbDestinations", pileDestinations.size()),
-                Map.entry("instruction", instruction),
-                Map.entry("boutons", boutons),
-                Map.entry("log", log));
+    private void ecrireChampEtat(String champ, JsonWriter sortie) throws IOException {
+        switch (champ) {
+            case "joueurCourant" -> sortie.value(joueurs.indexOf(joueurCourant));
+            case "piocheWagon" -> pilesDeCartesWagon.ecrireEtat(sortie, fragmentsJson);
+            case "piocheBateau" -> pilesDeCartesBateau.ecrireEtat(sortie, fragmentsJson);
+            case "cartesTransportVisibles" -> fragmentsJson.ecrireCartes(sortie, cartesTransportVisibles);
+            case "nbDestinations" -> sortie.value(pileDestinations.size());
+            case "instruction" -> sortie.value(instruction);
+            case "boutons" -> {
+                sortie.beginArray();
+                if (boutons != null) {
+                    for (Bouton bouton : boutons) {
+                        sortie.beginObject();
+                        sortie.name("label").value(bouton.label());
+                        sortie.name("valeur").value(bouton.valeur());
+                        sortie.endObject();
+                    }
+                }
+                sortie.endArray();
+            }
+            default -> throw new IllegalArgumentException("Champ inconnu : " + champ);
+        }
     }
 }
@@ -0,0 +1,110 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Partie rejouée à partir d'un {@link Enregistrement}.
+ * <p>
+ * Les entrées des joueurs sont lues dans l'enregistrement au lieu d'être
+ * attendues sur la file d'instructions, et l'état n'est ni affiché ni envoyé
+ * aux clients, si bien que la partie est rejouée aussi vite que possible.
+ */
+public class JeuRejoue extends Jeu {
+    /**
+     * Levée lorsque toutes les entrées de l'enregistrement ont été lues (la partie
+     * enregistrée n'était pas terminée)
+     */
+    private static class FinEnregistrement extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        FinEnregistrement() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final Iterator<String> entrees;
+    private int nbEntreesLues;
+
+    public JeuRejoue(Enregistrement enregistrement) {
+        super(enregistrement.getNomsJoueurs().toArray(new String[0]), enregistrement.getGraine());
+        this.entrees = enregistrement.getEntrees().iterator();
+    }
+
+    /**
+     * Rejoue une partie enregistrée jusqu'à sa fin (ou jusqu'à la dernière entrée
+     * enregistrée si la partie n'était pas terminée)
+     *
+     * @return la partie dans l'état atteint
+     */
+    public static JeuRejoue rejouer(Enregistrement enregistrement) {
+        JeuRejoue jeu = new JeuRejoue(enregistrement);
+        try {
+            jeu.run();
+        } catch (FinEnregistrement e) {
+            // la partie enregistrée s'arrête ici
+        }
+        return jeu;
+    }
+
+    /**
+     * @return le nombre d'entrées de l'enregistrement utilisées
+     */
+    public int getNbEntreesLues() {
+        return nbEntreesLues;
+    }
+
+    @Override
+    public String lireLigne() {
+        if (!entrees.hasNext()) {
+            throw new FinEnregistrement();
+        }
+        nbEntreesLues++;
+        return depuisEntreeCanonique(entrees.next());
+    }
+
+    @Override
+    public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+    }
+
+    /**
+     * @return true : toutes les entrées de la partie sont déjà connues
+     */
+    @Override
+    public boolean estEnRattrapage() {
+        return true;
+    }
+
+    /**
+     * Rejoue les enregistrements passés en argument (chemins de fichiers) et affiche
+     * le temps d'exécution, pour servir de charge de travail réaliste aux mesures
+     * de performance.
+     * Utilisation : {@code JeuRejoue [-n <répétitions>] fichier...}
+     */
+    public static void main(String[] args) throws IOException {
+        int repetitions = 1;
+        List<Enregistrement> enregistrements = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+                repetitions = Integer.parseInt(args[++i]);
+            } else {
+                enregistrements.add(Enregistrement.lire(Path.of(args[i])));
+            }
+        }
+
+        long debut = System.nanoTime();
+        long nbEntrees = 0;
+        for (int r = 0; r < repetitions; r++) {
+            for (Enregistrement enregistrement : enregistrements) {
+                nbEntrees += rejouer(enregistrement).getNbEntreesLues();
+            }
+        }
+        double duree = (System.nanoTime() - debut) / 1e9;
+        System.out.printf("%d parties rejouées (%d entrées) en %.3f s%n",
+                repetitions * enregistrements.size(), nbEntrees, duree);
+    }
+}
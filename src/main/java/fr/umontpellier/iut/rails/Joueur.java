@@ -1,18 +1,29 @@
 package fr.umontpellier.iut.rails;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.function.IntFunction;
+
+import com.google.gson.stream.JsonWriter;
 
 import fr.umontpellier.iut.rails.data.CarteTransport;
 import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.ListeCartesTransport;
 import fr.umontpellier.iut.rails.data.Destination;
 import fr.umontpellier.iut.rails.data.TypeCarteTransport;
 import fr.umontpellier.iut.rails.data.Ville;
+import fr.umontpellier.iut.rails.simulation.Coup;
+import fr.umontpellier.iut.rails.simulation.DonneesPlateau;
+import fr.umontpellier.iut.rails.simulation.EtatSimulation;
 
 public class Joueur {
     public enum CouleurJouer {
@@ -32,13 +43,15 @@ public class Joueur {
      */
     private final CouleurJouer couleur;
     /**
-     * Liste des villes sur lesquelles le joueur a construit un port
+     * Liste des villes sur lesquelles le joueur a construit un port (indexée par
+     * les identifiants des ports du jeu)
      */
-    private final List<Ville> ports;
+    private final EnsembleIndexe<Ville> ports;
     /**
-     * Liste des routes capturées par le joueur
+     * Liste des routes capturées par le joueur (indexée par les identifiants des
+     * routes du jeu)
      */
-    private final List<Route> routes;
+    private final EnsembleIndexe<Route> routes;
     /**
      * Nombre de pions wagons que le joueur peut encore poser sur le plateau
      */
@@ -58,36 +71,66 @@ public class Joueur {
     /**
      * Liste des destinations à réaliser pendant la partie
      */
-    private final List<Destination> destinations;
+    private final ScoreProjete.Destinations destinations;
     /**
      * Liste des cartes que le joueur a en main
      */
-    private final List<CarteTransport> cartesTransport;
+    private final ListeCartesTransport cartesTransport;
     /**
      * Liste temporaire de cartes transport que le joueur est en train de jouer pour
      * payer la capture d'une route ou la construction d'un port
      */
-    private final List<CarteTransport> cartesTransportPosees;
+    private final ListeCartesTransport cartesTransportPosees;
     /**
      * Score courant du joueur (somme des valeurs des routes capturées, et points
      * perdus lors des échanges de pions)
      */
     private int score;
+    /**
+     * Tableau réutilisé pour générer les coups possibles du joueur
+     */
+    private final int[] coups;
+    /**
+     * Points des destinations et des ports si la partie s'arrêtait maintenant
+     * (maintenus au fur et à mesure de la partie)
+     */
+    private final ScoreProjete scoreProjete;
+    /**
+     * Routes à capturer pour compléter les destinations, déjà calculées pour les
+     * routes actuelles (voir {@link #routesPourCompleter(Destination, int, int)})
+     */
+    private final Map<CleRoutesDestination, List<Route>> routesPourDestinations = new HashMap<>();
+    private int nbModificationsRoutesPourDestinations = -1;
+
+    private record CleRoutesDestination(Destination destination, int maxWagons, int maxBateaux) {
+    }
+    /**
+     * Indique si le joueur choisit le premier coup de son tour (ou sa deuxième
+     * carte transport)
+     */
+    private boolean premierCoupDuTour;
+    /**
+     * Indique si le joueur joue automatiquement parce qu'il a dépassé le délai de
+     * décision (voir {@link Jeu#setDelaiDecision})
+     */
+    private boolean automatique;
 
     public Joueur(String nom, Jeu jeu, CouleurJouer couleur) {
         this.nom = nom;
         this.jeu = jeu;
         this.couleur = couleur;
-        this.ports = new ArrayList<>();
-        this.routes = new ArrayList<>();
+        this.ports = new EnsembleIndexe<>(jeu.getIndexPorts());
+        this.routes = new EnsembleIndexe<>(jeu.getIndexRoutes());
         this.nbPionsWagon = 0;
         this.nbPionsWagonEnReserve = 25;
         this.nbPionsBateau = 0;
         this.nbPionsBateauEnReserve = 50;
-        this.cartesTransport = new ArrayList<>();
-        this.cartesTransportPosees = new ArrayList<>();
-        this.destinations = new ArrayList<>();
+        this.cartesTransport = new ListeCartesTransport();
+        this.cartesTransportPosees = new ListeCartesTransport();
+        this.destinations = new ScoreProjete.Destinations();
         this.score = 0;
+        this.scoreProjete = new ScoreProjete(routes, ports, destinations);
+        this.coups = new int[jeu.getIndexRoutes().taille() + jeu.getIndexPorts().taille() + 16];
     }
 
     public String getNom() {
@@ -102,6 +145,21 @@ public class Joueur {
         return routes;
     }
 
+    /**
+     * @return le nombre de modifications des routes du joueur (voir
+     *         {@link EnsembleIndexe#getNbModifications()})
+     */
+    int getNbModificationsRoutes() {
+        return routes.getNbModifications();
+    }
+
+    /**
+     * @return true si le joueur a capturé la route passée en argument
+     */
+    public boolean possedeRoute(Route route) {
+        return routes.contains(route);
+    }
+
     public CouleurJouer getCouleur() {
         return couleur;
     }
@@ -110,11 +168,23 @@ public class Joueur {
         return destinations;
     }
 
-    public List<CarteTransport> getCartesTransport() {
+    /**
+     * @return true si la destination à la position {@code i} de la liste des
+     *         destinations du joueur est complète
+     */
+    public boolean estDestinationComplete(int i) {
+        return scoreProjete.estComplete(i);
+    }
+
+    public List<Ville> getPorts() {
+        return ports;
+    }
+
+    public ListeCartesTransport getCartesTransport() {
         return cartesTransport;
     }
 
-    public List<CarteTransport> getCartesTransportPosees() {
+    public ListeCartesTransport getCartesTransportPosees() {
         return cartesTransportPosees;
     }
 
@@ -134,6 +204,14 @@ public class Joueur {
         return nbPionsBateauEnReserve;
     }
 
+    /**
+     * Renvoie le score qu'aurait le joueur si la partie s'arrêtait maintenant
+     * (égal à {@link #calculerScoreFinal()}, mais calculé en temps constant)
+     */
+    public int getScoreProjete() {
+        return score + scoreProjete.getBonus();
+    }
+
     public int getScore() {
         return score;
     }
@@ -233,27 +311,99 @@ public class Joueur {
      * d'un élément de {@code boutons} ou la chaîne vide)
      */
     public String choisir(String instruction, Collection<String> choix, Collection<Bouton> boutons, boolean peutPasser) {
-        if (choix == null) choix = new ArrayList<>();
-        if (boutons == null) boutons = new ArrayList<>();
-
-        HashSet<String> choixDistincts = new HashSet<>(choix);
-        choixDistincts.addAll(boutons.stream().map(Bouton::valeur).toList());
-        if (peutPasser || choixDistincts.isEmpty()) {
-            choixDistincts.add("");
-        }
+        if (choix == null) choix = List.of();
+        if (boutons == null) boutons = List.of();
 
         String entree;
+        EvenementsJfr.Choix evenement = new EvenementsJfr.Choix();
+        evenement.begin();
+        boolean mesure = evenement.isEnabled();
+        long debut = mesure ? System.nanoTime() : 0;
+        long attente = 0;
+        int tentatives = 0;
         // Lit l'entrée de l'utilisateur jusqu'à obtenir un choix valide
         while (true) {
-            jeu.prompt(instruction, boutons, peutPasser);
-            entree = jeu.lireLigne();
+            jeu.prompt(instruction, choix, boutons, peutPasser);
+            long debutLecture = mesure ? System.nanoTime() : 0;
+            entree = automatique ? null : jeu.lireLigne();
+            if (mesure) {
+                attente += System.nanoTime() - debutLecture;
+            }
+            tentatives++;
+            if (entree == null) {
+                // le joueur n'a pas répondu à temps (ou ne joue plus lui-même)
+                if (!automatique && (jeu.getReactionDelaiDepasse() == Jeu.ReactionDelaiDepasse.JOUEUR_AUTOMATIQUE
+                        || jeu.estAbandonnee())) {
+                    automatique = true;
+                    log(String.format("%s ne répond plus et joue désormais automatiquement", toLog()));
+                }
+                entree = choixParDefaut(choix, boutons, peutPasser);
+            }
             // si une réponse valide est obtenue, elle est renvoyée
-            if (choixDistincts.contains(entree)) {
+            if (estChoixValide(entree, choix, boutons, peutPasser)) {
+                jeu.enregistrerEntree(entree);
+                if (mesure && !jeu.estEnRattrapage() && evenement.shouldCommit()) {
+                    evenement.partie = jeu.getIdPartie();
+                    evenement.joueur = jeu.getJoueurs().indexOf(this);
+                    evenement.instruction = instruction;
+                    evenement.tentatives = tentatives;
+                    evenement.attente = attente;
+                    evenement.traitement = System.nanoTime() - debut - attente;
+                    evenement.commit();
+                }
                 return entree;
             }
+            Metriques.CHOIX_INVALIDES.incrementer();
         }
     }
 
+    /**
+     * Renvoie le choix fait à la place du joueur lorsqu'il ne répond pas : il
+     * passe si c'est possible, sinon il fait le premier choix proposé. Un joueur
+     * automatique capture une route dès qu'il le peut, et sinon fait le premier
+     * choix proposé plutôt que de passer (pour que la partie progresse).
+     */
+    private String choixParDefaut(Collection<String> choix, Collection<Bouton> boutons, boolean peutPasser) {
+        if (automatique) {
+            for (String c : choix) {
+                if (jeu.getIndexRoutes().getId(c) >= 0) {
+                    return c;
+                }
+            }
+            if (!choix.isEmpty()) {
+                return choix.iterator().next();
+            }
+        }
+        if (peutPasser) {
+            return "";
+        }
+        if (!choix.isEmpty()) {
+            return choix.iterator().next();
+        }
+        if (!boutons.isEmpty()) {
+            return boutons.iterator().next().valeur();
+        }
+        return "";
+    }
+
+    private static boolean estChoixValide(String entree, Collection<String> choix, Collection<Bouton> boutons, boolean peutPasser) {
+        if (entree == null) {
+            return false;
+        }
+        if (entree.isEmpty() && (peutPasser || (choix.isEmpty() && boutons.isEmpty()))) {
+            return true;
+        }
+        if (choix.contains(entree)) {
+            return true;
+        }
+        for (Bouton b : boutons) {
+            if (b.valeur().equals(entree)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Affiche un message dans le log du jeu (visible sur l'interface graphique)
      *
@@ -314,6 +464,7 @@ public class Joueur {
 
         log(String.format("%s prend %d destinations", toLog(), destinationsPiochees.size()));
         destinations.addAll(destinationsPiochees);
+        scoreProjete.destinationsAjoutees(destinationsPiochees);
     }
 
     /**
@@ -402,67 +553,153 @@ public class Joueur {
      */
     void jouerTour() {
         remplirCartesTransportVisibles();
-        List<Bouton> boutons = new ArrayList<>();
-
-        List<String> optionsPioche = getOptionsPiocherCarteTransport(true);
-        List<String> optionsPorts = getOptionsPorts();
-        List<String> optionsRoutes = getOptionsRoutes();
-        List<String> optionsChoix = new ArrayList<>(optionsPioche);
-        optionsChoix.addAll(optionsPorts);
-        optionsChoix.addAll(optionsRoutes);
+        premierCoupDuTour = true;
+        long debut = Metriques.debut();
+        int n = genererCoups(coups, true);
+        Metriques.GENERATION_COUPS.enregistrerDepuis(debut);
+        jouerCoup(choisirCoup("Début du tour", coups, n, true));
+    }
 
+    /**
+     * Écrit dans le tableau {@code coups} les coups que le joueur peut jouer (codés
+     * comme dans {@link Coup}) et renvoie leur nombre. Le coup
+     * {@link Coup#PASSER} n'en fait pas partie.
+     * <p>
+     * Pour un coup {@link Coup#PRENDRE_VISIBLE}, l'argument est la position de la
+     * carte parmi les cartes visibles du jeu. Les échanges de pions sont générés avec un nombre
+     * de pions nul, qui est demandé au joueur au moment de jouer le coup.
+     *
+     * @param coups     tableau de taille suffisante (il est réutilisé d'un appel à
+     *                  l'autre, la méthode n'alloue rien)
+     * @param debutTour true pour les coups du début du tour, false pour le choix
+     *                  de la deuxième carte transport
+     */
+    int genererCoups(int[] coups, boolean debutTour) {
+        int n = 0;
+        for (int i = 0; i < jeu.getNbCartesTransportVisibles(); i++) {
+            CarteTransport c = jeu.getCarteTransportVisible(i);
+            if (c.getType() != TypeCarteTransport.JOKER || debutTour) {
+                coups[n++] = Coup.creer(Coup.PRENDRE_VISIBLE, i);
+            }
+        }
+        if (!jeu.piocheBateauEstVide()) {
+            coups[n++] = Coup.creer(Coup.PIOCHER_BATEAU);
+        }
+        if (!jeu.piocheWagonEstVide()) {
+            coups[n++] = Coup.creer(Coup.PIOCHER_WAGON);
+        }
+        if (!debutTour) {
+            return n;
+        }
+        if (ports.size() < 3 && peutPayerPort()) {
+            int debutPorts = n;
+            for (Route r : routes) {
+                n = ajouterCoupPort(coups, debutPorts, n, r.getVille1());
+                n = ajouterCoupPort(coups, debutPorts, n, r.getVille2());
+            }
+        }
+        Index<Route> indexRoutes = jeu.getIndexRoutes();
+        for (int id = 0; id < indexRoutes.taille(); id++) {
+            if (jeu.estRouteLibre(id) && indexRoutes.get(id).peutEtreCaptureePar(this)) {
+                coups[n++] = Coup.creer(Coup.CAPTURER_ROUTE, id);
+            }
+        }
         if (nbPionsBateau > 0 && nbPionsWagonEnReserve > 0) {
-            boutons.add(new Bouton("Prendre des pions wagon", "PIONS WAGON"));
+            coups[n++] = Coup.creer(Coup.PIONS_WAGON);
         }
         if (nbPionsWagon > 0 && nbPionsBateauEnReserve > 0) {
-            boutons.add(new Bouton("Prendre des pions bateau", "PIONS BATEAU"));
+            coups[n++] = Coup.creer(Coup.PIONS_BATEAU);
         }
-
         if (!jeu.pileDestinationsEstVide()) {
-            optionsChoix.add("DESTINATION");
+            coups[n++] = Coup.creer(Coup.DESTINATIONS);
         }
-        String choix = choisir("Début du tour", optionsChoix, boutons, true);
+        return n;
+    }
 
-        if (choix.equals("DESTINATION")) {
-            prendreDestinations(4, 1);
-        } else if (choix.equals("PIONS WAGON")) {
-            prendrePionsWagon();
-        } else if (choix.equals("PIONS BATEAU")) {
-            prendrePionsBateau();
-        } else if (optionsPioche.contains(choix)) {
-            piocherCarteTransport(choix, true);
-        } else if (optionsPorts.contains(choix)) {
-            construirePort(choix);
-        } else if (optionsRoutes.contains(choix)) {
-            capturerRoute(choix);
+    private int ajouterCoupPort(int[] coups, int debutPorts, int n, Ville ville) {
+        int id = jeu.getIndexPorts().getId(ville);
+        if (id < 0 || !jeu.estPortLibre(id)) {
+            return n;
+        }
+        int coup = Coup.creer(Coup.CONSTRUIRE_PORT, id);
+        for (int i = debutPorts; i < n; i++) {
+            if (coups[i] == coup) {
+                return n;
+            }
         }
+        coups[n] = coup;
+        return n + 1;
     }
 
-    private List<String> getOptionsPiocherCarteTransport(boolean premiereCarte) {
-        ArrayList<String> choix = new ArrayList<>();
-        for (CarteTransport c : jeu.getCartesTransportVisibles()) {
-            if (c.getType() != TypeCarteTransport.JOKER || premiereCarte) {
-                choix.add(c.getNom());
+    /**
+     * Demande au joueur de choisir un des coups générés par
+     * {@link #genererCoups}. C'est ici seulement que les coups sont traduits en
+     * chaînes de caractères pour {@link #choisir} (les échanges de pions sont
+     * proposés par des boutons).
+     *
+     * @return le coup choisi, ou {@link Coup#PASSER} si le joueur passe
+     */
+    int choisirCoup(String instruction, int[] coups, int n, boolean peutPasser) {
+        // chaque coup est traduit une seule fois, la réponse est retrouvée par
+        // son indice
+        String[] entrees = new String[n];
+        List<String> choix = new ArrayList<>(n);
+        List<Bouton> boutons = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            entrees[i] = jeu.versEntree(coups[i]);
+            int type = Coup.type(coups[i]);
+            if (type == Coup.PIONS_WAGON) {
+                boutons.add(new Bouton("Prendre des pions wagon", entrees[i]));
+            } else if (type == Coup.PIONS_BATEAU) {
+                boutons.add(new Bouton("Prendre des pions bateau", entrees[i]));
+            } else {
+                choix.add(entrees[i]);
             }
         }
-        if (!jeu.piocheBateauEstVide()) {
-            choix.add("BATEAU");
+        String reponse = choisir(instruction, choix, boutons, peutPasser);
+        for (int i = 0; i < n; i++) {
+            if (entrees[i].equals(reponse)) {
+                return coups[i];
+            }
         }
-        if (!jeu.piocheWagonEstVide()) {
-            choix.add("WAGON");
+        return Coup.creer(Coup.PASSER);
+    }
+
+    /**
+     * @return true si le coup en cours de choix est le premier du tour (et false
+     * s'il s'agit de la deuxième carte transport)
+     */
+    boolean estPremierCoupDuTour() {
+        return premierCoupDuTour;
+    }
+
+    /**
+     * Exécute un coup choisi parmi ceux de {@link #genererCoups}
+     */
+    void jouerCoup(int coup) {
+        int argument = Coup.argument(coup);
+        switch (Coup.type(coup)) {
+            case Coup.DESTINATIONS -> prendreDestinations(4, 1);
+            case Coup.PIONS_WAGON -> prendrePionsWagon(argument);
+            case Coup.PIONS_BATEAU -> prendrePionsBateau(argument);
+            case Coup.PIOCHER_WAGON, Coup.PIOCHER_BATEAU, Coup.PRENDRE_VISIBLE -> piocherCarteTransport(coup, true);
+            case Coup.CONSTRUIRE_PORT -> construirePort(argument);
+            case Coup.CAPTURER_ROUTE -> capturerRoute(argument);
+            default -> {
+                // le joueur passe
+            }
         }
-        return choix;
     }
 
-    private void prendrePionsBateau() {
-        List<Bouton> boutons = new ArrayList<>();
+    /**
+     * @param n nombre de pions à prendre (s'il n'est pas valide, par exemple 0, le
+     *          nombre est demandé au joueur)
+     */
+    private void prendrePionsBateau(int n) {
         int max = Math.min(nbPionsBateauEnReserve, nbPionsWagon);
-        for (int i = 1; i <= max; i++) {
-            boutons.add(new Bouton(String.valueOf(i)));
+        if (n < 1 || n > max) {
+            n = choisirNombrePions("Choisissez le nombre de pions bateau à prendre", max);
         }
-        String choix = choisir("Choisissez le nombre de pions bateau à prendre", null, boutons, false);
-
-        int n = Integer.parseInt(choix);
         nbPionsBateau += n;
         nbPionsBateauEnReserve -= n;
         nbPionsWagon -= n;
@@ -471,13 +708,20 @@ public class Joueur {
         log(String.format("%s prend %d pions bateau", toLog(), n));
     }
 
-    private boolean peutPayerPort() {
-        CarteTransport.Catalogue catalogue = new CarteTransport.Catalogue(cartesTransport.stream().filter(CarteTransport::getAncre).toList());
+    private int choisirNombrePions(String instruction, int max) {
+        List<Bouton> boutons = new ArrayList<>();
+        for (int i = 1; i <= max; i++) {
+            boutons.add(new Bouton(String.valueOf(i)));
+        }
+        return Integer.parseInt(choisir(instruction, null, boutons, false));
+    }
 
-        int nbJokers = catalogue.getValeur(TypeCarteTransport.JOKER);
+    private boolean peutPayerPort() {
+        // on ne compte que les cartes en main ayant une ancre
+        int nbJokers = cartesTransport.getValeurAvecAncre(TypeCarteTransport.JOKER, Couleur.GRIS);
         for (Couleur c : Couleur.getCouleursSimples()) {
-            int valeurWagon = Math.min(2, catalogue.getValeur(TypeCarteTransport.WAGON, c));
-            int valeurBateau = Math.min(2, catalogue.getValeur(TypeCarteTransport.BATEAU, c));
+            int valeurWagon = Math.min(2, cartesTransport.getValeurAvecAncre(TypeCarteTransport.WAGON, c));
+            int valeurBateau = Math.min(2, cartesTransport.getValeurAvecAncre(TypeCarteTransport.BATEAU, c));
             if (valeurWagon + valeurBateau + nbJokers >= 4) {
                 return true;
             }
@@ -487,35 +731,33 @@ public class Joueur {
 
     private void payerPort(Ville ville) {
         while (true) {
-            CarteTransport.Catalogue catalogueCartesPosees = new CarteTransport.Catalogue(cartesTransportPosees);
-            if (catalogueCartesPosees.getValeur() >= 4) {
+            if (cartesTransportPosees.getValeur() >= 4) {
                 // le port est entièrement payé
                 break;
             }
+            Couleur couleur = cartesTransportPosees.getCouleur();
             // on ne compte que les cartes en main ayant une ancre
-            CarteTransport.Catalogue catalogueCartesEnMain = new CarteTransport.Catalogue(cartesTransport.stream().filter(CarteTransport::getAncre).toList());
-            Couleur couleur = catalogueCartesPosees.getCouleur();
-            int nbJokersPoses = catalogueCartesPosees.get(TypeCarteTransport.JOKER, Couleur.GRIS).size();
-            int nbJokersEnMain = catalogueCartesEnMain.get(TypeCarteTransport.JOKER, Couleur.GRIS).size();
+            int nbJokersPoses = cartesTransportPosees.getNombre(TypeCarteTransport.JOKER, Couleur.GRIS);
+            int nbJokersEnMain = cartesTransport.getNombreAvecAncre(TypeCarteTransport.JOKER, Couleur.GRIS);
 
-            List<CarteTransport> optionsCartes = new ArrayList<>(catalogueCartesEnMain.get(TypeCarteTransport.JOKER, Couleur.GRIS));
+            List<CarteTransport> optionsCartes = new ArrayList<>(cartesTransport.getAvecAncre(TypeCarteTransport.JOKER, Couleur.GRIS));
             if (couleur == Couleur.GRIS) {
                 // aucune carte simple (non-joker) posée
                 for (Couleur c : Couleur.getCouleursSimples()) {
-                    int valeurWagonEnMain = Math.min(2, catalogueCartesEnMain.getValeur(TypeCarteTransport.WAGON, c));
-                    int valeurBateauEnMain = Math.min(2, catalogueCartesEnMain.getValeur(TypeCarteTransport.BATEAU, c));
+                    int valeurWagonEnMain = Math.min(2, cartesTransport.getValeurAvecAncre(TypeCarteTransport.WAGON, c));
+                    int valeurBateauEnMain = Math.min(2, cartesTransport.getValeurAvecAncre(TypeCarteTransport.BATEAU, c));
                     if (valeurWagonEnMain + valeurBateauEnMain + nbJokersEnMain + nbJokersPoses >= 4) {
                         // le joueur peut payer le port avec des cartes de la couleur c
-                        optionsCartes.addAll(catalogueCartesEnMain.get(TypeCarteTransport.WAGON, c));
-                        optionsCartes.addAll(catalogueCartesEnMain.get(TypeCarteTransport.BATEAU, c));
+                        optionsCartes.addAll(cartesTransport.getAvecAncre(TypeCarteTransport.WAGON, c));
+                        optionsCartes.addAll(cartesTransport.getAvecAncre(TypeCarteTransport.BATEAU, c));
                     }
                 }
             } else {
-                if (catalogueCartesPosees.getValeur(TypeCarteTransport.WAGON, couleur) < 2) {
-                    optionsCartes.addAll(catalogueCartesEnMain.get(TypeCarteTransport.WAGON, couleur));
+                if (cartesTransportPosees.getValeur(TypeCarteTransport.WAGON, couleur) < 2) {
+                    optionsCartes.addAll(cartesTransport.getAvecAncre(TypeCarteTransport.WAGON, couleur));
                 }
-                if (catalogueCartesPosees.getValeur(TypeCarteTransport.BATEAU, couleur) < 2) {
-                    optionsCartes.addAll(catalogueCartesEnMain.get(TypeCarteTransport.BATEAU, couleur));
+                if (cartesTransportPosees.getValeur(TypeCarteTransport.BATEAU, couleur) < 2) {
+                    optionsCartes.addAll(cartesTransport.getAvecAncre(TypeCarteTransport.BATEAU, couleur));
                 }
             }
 
@@ -524,40 +766,15 @@ public class Joueur {
         }
     }
 
-    private List<String> getOptionsPorts() {
-        List<String> options = new ArrayList<>();
-        if (ports.size() < 3 && peutPayerPort()) {
-            for (Ville v : jeu.getPortsLibres()) {
-                for (Route r : routes) {
-                    if (r.getVille1() == v || r.getVille2() == v) {
-                        options.add(v.nom());
-                        break;
-                    }
-                }
-            }
-        }
-        return options;
-    }
-
-    private List<String> getOptionsRoutes() {
-        List<String> options = new ArrayList<>();
-        for (Route r : jeu.getRoutesLibres()) {
-            if (r.peutEtreCaptureePar(this)) {
-                options.add(r.getNom());
-            }
-        }
-        return options;
-    }
-
-    private void prendrePionsWagon() {
-        List<Bouton> boutons = new ArrayList<>();
+    /**
+     * @param n nombre de pions à prendre (s'il n'est pas valide, par exemple 0, le
+     *          nombre est demandé au joueur)
+     */
+    private void prendrePionsWagon(int n) {
         int max = Math.min(nbPionsWagonEnReserve, nbPionsBateau);
-        for (int i = 1; i <= max; i++) {
-            boutons.add(new Bouton(String.valueOf(i)));
+        if (n < 1 || n > max) {
+            n = choisirNombrePions("Choisissez le nombre de pions wagon à prendre", max);
         }
-        String choix = choisir("Choisissez le nombre de pions wagon à prendre", null, boutons, false);
-
-        int n = Integer.parseInt(choix);
         nbPionsBateau -= n;
         nbPionsBateauEnReserve += n;
         nbPionsWagon += n;
@@ -566,18 +783,19 @@ public class Joueur {
         log(String.format("%s prend %d pions wagon", toLog(), n));
     }
 
-    private void piocherCarteTransport(String choix, boolean premiereCarte) {
-        if (choix.equals("WAGON")) {
-            log(String.format("%s pioche une carte wagon", toLog()));
-            CarteTransport c = jeu.piocherCarteWagon();
-            cartesTransport.add(c);
-        } else if (choix.equals("BATEAU")) {
-            log(String.format("%s pioche une carte bateau", toLog()));
-            CarteTransport c = jeu.piocherCarteBateau();
-            cartesTransport.add(c);
-        } else {
-            for (CarteTransport c : jeu.getCartesTransportVisibles()) {
-                if (c.getNom().equals(choix)) {
+    private void piocherCarteTransport(int coup, boolean premiereCarte) {
+        switch (Coup.type(coup)) {
+            case Coup.PIOCHER_WAGON -> {
+                log(String.format("%s pioche une carte wagon", toLog()));
+                cartesTransport.add(jeu.piocherCarteWagon());
+            }
+            case Coup.PIOCHER_BATEAU -> {
+                log(String.format("%s pioche une carte bateau", toLog()));
+                cartesTransport.add(jeu.piocherCarteBateau());
+            }
+            case Coup.PRENDRE_VISIBLE -> {
+                if (Coup.argument(coup) < jeu.getNbCartesTransportVisibles()) {
+                    CarteTransport c = jeu.getCarteTransportVisible(Coup.argument(coup));
                     log(String.format("%s prend %s", toLog(), c.toLog()));
                     jeu.retirerCarteTransportVisible(c);
                     cartesTransport.add(c);
@@ -585,37 +803,53 @@ public class Joueur {
                         premiereCarte = false; // si on prend un Joker, on ne peut pas piocher une seconde carte
                     }
                     remplirCartesTransportVisibles();
-                    break;
                 }
             }
+            default -> {
+                return;
+            }
         }
         if (premiereCarte) {
-            List<String> optionsPioche = getOptionsPiocherCarteTransport(false);
-            choix = choisir("Vous pouvez prendre une deuxième carte", optionsPioche, new ArrayList<>(), true);
-            piocherCarteTransport(choix, false);
+            premierCoupDuTour = false;
+            long debut = Metriques.debut();
+            int n = genererCoups(coups, false);
+            Metriques.GENERATION_COUPS.enregistrerDepuis(debut);
+            piocherCarteTransport(choisirCoup("Vous pouvez prendre une deuxième carte", coups, n, true), false);
         }
     }
 
-    private void construirePort(String nom) {
-        Ville ville = jeu.retirerPortLibre(nom);
+    private void construirePort(int id) {
+        Ville ville = jeu.retirerPortLibre(jeu.getIndexPorts().get(id).nom());
         if (ville != null) {
             log(String.format("%s construit un port à %s", toLog(), ville.toLog()));
             payerPort(ville);
             defausserCartesTransportPosees();
             ports.add(ville);
+            scoreProjete.portAjoute(ville);
         }
     }
 
-    private void capturerRoute(String nom) {
-        Route r = jeu.retirerRouteLibre(nom);
+    private void capturerRoute(int id) {
+        Route r = jeu.retirerRouteLibre(jeu.getIndexRoutes().get(id).getNom());
         if (r != null) {
             log(String.format("%s capture la route %s", toLog(), r.toLog()));
+            EvenementsJfr.CaptureRoute evenement = new EvenementsJfr.CaptureRoute();
+            evenement.begin();
+            int cartesDejaPosees = cartesTransportPosees.size();
             r.payerPar(this);
+            if (!jeu.estEnRattrapage() && evenement.shouldCommit()) {
+                evenement.partie = jeu.getIdPartie();
+                evenement.joueur = jeu.getJoueurs().indexOf(this);
+                evenement.route = r.getNom();
+                evenement.cartesPayees = cartesTransportPosees.size() - cartesDejaPosees;
+                evenement.commit();
+            }
             defausserCartesTransportPosees();
             this.nbPionsBateau -= r.getNbPionsBateau();
             this.nbPionsWagon -= r.getNbPionsWagon();
             this.score += r.getScore();
             routes.add(r);
+            scoreProjete.routeAjoutee(r);
         }
     }
 
@@ -702,24 +936,136 @@ public class Joueur {
     }
 
     /**
-     * Renvoie une représentation du joueur sous la forme d'un dictionnaire de
-     * valeurs sérialisables (qui sera converti en JSON pour l'envoyer à l'interface
-     * graphique)
+     * Écrit l'état du joueur dans un instantané de la partie (voir
+     * {@link Jeu#instantane()})
      */
-    Map<String, Object> dataMap() {
-        List<Destination> destinationsCompletes = destinations.stream().filter(this::destinationEstComplete).toList();
-        List<Destination> destinationsIncompletes = destinations.stream().filter(d -> !destinationEstComplete(d)).toList();
-        List<List<String>> routesPourDestinationsIncompletes = new ArrayList<>();
-        for (Destination d : destinationsIncompletes) {
-            Collection<Route> routes = routesEnSurbrillancePourDestination(d);
-            if (routes == null) {
-                routesPourDestinationsIncompletes.add(new ArrayList<>());
-            } else {
-                routesPourDestinationsIncompletes.add(routes.stream().map(Route::getNom).toList());
+    void ecrireInstantane(DataOutputStream sortie) throws IOException {
+        sortie.writeInt(score);
+        sortie.writeInt(nbPionsWagon);
+        sortie.writeInt(nbPionsWagonEnReserve);
+        sortie.writeInt(nbPionsBateau);
+        sortie.writeInt(nbPionsBateauEnReserve);
+        Jeu.ecrireIds(sortie, routes, jeu.getIndexRoutes());
+        Jeu.ecrireIds(sortie, ports, jeu.getIndexPorts());
+        Jeu.ecrireIds(sortie, destinations, jeu.getIndexDestinations());
+        Jeu.ecrireIds(sortie, cartesTransport, jeu.getIndexCartes());
+        Jeu.ecrireIds(sortie, cartesTransportPosees, jeu.getIndexCartes());
+    }
+
+    /**
+     * Ajoute l'état du joueur à un état de simulation (voir
+     * {@link Jeu#exporterEtatSimulation()}). Les cartes en train d'être posées
+     * sont comptées dans la main du joueur.
+     */
+    void exporterEtatSimulation(EtatSimulation etat, int numero) {
+        DonneesPlateau plateau = etat.getPlateau();
+        Index<CarteTransport> indexCartes = jeu.getIndexCartes();
+        for (CarteTransport c : cartesTransport) {
+            etat.ajouterCartesMain(numero, plateau.getSorte(indexCartes.getId(c)), 1);
+        }
+        for (CarteTransport c : cartesTransportPosees) {
+            etat.ajouterCartesMain(numero, plateau.getSorte(indexCartes.getId(c)), 1);
+        }
+        for (Route r : routes) {
+            etat.setProprietaireRoute(jeu.getIndexRoutes().getId(r), numero);
+        }
+        for (Ville v : ports) {
+            etat.setProprietairePort(jeu.getIndexPorts().getId(v), numero);
+        }
+        for (Destination d : destinations) {
+            etat.ajouterDestination(numero, jeu.getIndexDestinations().getId(d));
+        }
+        etat.setPions(numero, EtatSimulation.PIONS_WAGON, nbPionsWagon);
+        etat.setPions(numero, EtatSimulation.RESERVE_WAGON, nbPionsWagonEnReserve);
+        etat.setPions(numero, EtatSimulation.PIONS_BATEAU, nbPionsBateau);
+        etat.setPions(numero, EtatSimulation.RESERVE_BATEAU, nbPionsBateauEnReserve);
+        etat.setScore(numero, score);
+    }
+
+    /**
+     * Remplace l'état du joueur par celui qu'il a dans un état de simulation (voir
+     * {@link Jeu#importerEtatSimulation(EtatSimulation)})
+     *
+     * @param cartes renvoie une carte de la sorte demandée (parmi les cartes qui
+     *               n'ont pas encore été distribuées)
+     */
+    void importerEtatSimulation(EtatSimulation etat, int numero, IntFunction<CarteTransport> cartes) {
+        DonneesPlateau plateau = etat.getPlateau();
+        cartesTransport.clear();
+        cartesTransportPosees.clear();
+        for (int s = 0; s < plateau.getNbSortes(); s++) {
+            for (int k = etat.getNbCartesMain(numero, s); k > 0; k--) {
+                cartesTransport.add(cartes.apply(s));
+            }
+        }
+        routes.clear();
+        for (int r = 0; r < plateau.getNbRoutes(); r++) {
+            if (etat.getProprietaireRoute(r) == numero) {
+                routes.add(jeu.getIndexRoutes().get(r));
+            }
+        }
+        ports.clear();
+        for (int p = 0; p < plateau.getNbPorts(); p++) {
+            if (etat.getProprietairePort(p) == numero) {
+                ports.add(jeu.getIndexPorts().get(p));
             }
         }
+        destinations.clear();
+        for (int d = 0; d < plateau.getNbDestinations(); d++) {
+            if (etat.possedeDestination(numero, d)) {
+                destinations.add(jeu.getIndexDestinations().get(d));
+            }
+        }
+        nbPionsWagon = etat.getPions(numero, EtatSimulation.PIONS_WAGON);
+        nbPionsWagonEnReserve = etat.getPions(numero, EtatSimulation.RESERVE_WAGON);
+        nbPionsBateau = etat.getPions(numero, EtatSimulation.PIONS_BATEAU);
+        nbPionsBateauEnReserve = etat.getPions(numero, EtatSimulation.RESERVE_BATEAU);
+        score = etat.getScore(numero);
+    }
+
+    /**
+     * Écrit l'état du joueur envoyé à l'interface graphique au format JSON (voir
+     * {@link Jeu#etatJson()})
+     */
+    void ecrireEtat(JsonWriter sortie, FragmentsJson fragments) throws IOException {
+        sortie.beginObject();
+        sortie.name("nom").value(nom);
+        sortie.name("couleur").value(couleur.name());
+        sortie.name("score").value(score);
+        sortie.name("scoreProjete").value(getScoreProjete());
+        sortie.name("pionsWagon").value(nbPionsWagon);
+        sortie.name("pionsWagonReserve").value(nbPionsWagonEnReserve);
+        sortie.name("pionsBateau").value(nbPionsBateau);
+        sortie.name("pionsBateauReserve").value(nbPionsBateauEnReserve);
+        sortie.name("destinationsIncompletes");
+        ecrireDestinations(sortie, fragments, false);
+        sortie.name("destinationsCompletes");
+        ecrireDestinations(sortie, fragments, true);
+        sortie.name("main");
+        fragments.ecrireCartesTriees(sortie, cartesTransport);
+        sortie.name("inPlay");
+        fragments.ecrireCartesTriees(sortie, cartesTransportPosees);
+        sortie.name("ports").beginArray();
+        for (Ville port : ports) {
+            fragments.ecrirePort(sortie, port);
+        }
+        sortie.endArray();
+        sortie.name("routes").beginArray();
+        for (Route route : routes) {
+            fragments.ecrireRoute(sortie, route);
+        }
+        sortie.endArray();
+        sortie.endObject();
+    }
 
-        return Map.ofEntries(Map.entry("nom", nom), Map.entry("couleur", couleur), Map.entry("score", score), Map.entry("pionsWagon", nbPionsWagon), Map.entry("pionsWagonReserve", nbPionsWagonEnReserve), Map.entry("pionsBateau", nbPionsBateau), Map.entry("pionsBateauReserve", nbPionsBateauEnReserve), Map.entry("routesPourDestinations", routesPourDestinationsIncompletes), Map.entry("destinationsIncompletes", destinationsIncompletes), Map.entry("destinationsCompletes", destinationsCompletes), Map.entry("main", cartesTransport.stream().sorted().toList()), Map.entry("inPlay", cartesTransportPosees.stream().sorted().toList()), Map.entry("ports", ports.stream().map(Ville::nom).toList()), Map.entry("routes", routes.stream().map(Route::getNom).toList()));
+    private void ecrireDestinations(JsonWriter sortie, FragmentsJson fragments, boolean completes) throws IOException {
+        sortie.beginArray();
+        for (int i = 0; i < destinations.size(); i++) {
+            if (scoreProjete.estComplete(i) == completes) {
+                fragments.ecrireDestination(sortie, destinations.get(i));
+            }
+        }
+        sortie.endArray();
     }
 
     /**
@@ -731,31 +1077,31 @@ public class Joueur {
      * s'il n'est pas possible de la compléter
      */
     public Collection<Route> routesPourCompleterDestination(Destination d) {
-        if (destinationEstComplete(d)) {
-            return new ArrayList<>();
-        }
-        List<Route> routes = new ArrayList<>();
-        List<String> villes = d.getVilles();
-        for (int i = 0; i < villes.size() - 1; i++) {
-            String ville1 = villes.get(i);
-            String ville2 = villes.get(i + 1);
-            List<Route> routesEntreVilles = routesEntreVilles(ville1, ville2);
-            if (routesEntreVilles.isEmpty()) {
-                return new ArrayList<>();
-            }
-            routes.add(routesEntreVilles.get(0));
-        }
-        return routes;
+        return routesPourCompleter(d, Integer.MAX_VALUE, Integer.MAX_VALUE);
     }
 
-    private List<Route> routesEntreVilles(String ville1, String ville2) {
-        List<Route> routes = new ArrayList<>();
-        for (Route r : this.routes) {
-            if (r.getNom().contains(ville1) && r.getNom().contains(ville2)) {
-                routes.add(r);
-            }
+    /**
+     * Renvoie un plus court ensemble de routes pour compléter la destination avec
+     * au plus {@code maxWagons} pions wagon et {@code maxBateaux} pions bateau
+     * (voir {@link PlanificateurDestinations}). Les résultats sont conservés
+     * jusqu'à ce qu'une route change de propriétaire.
+     */
+    private List<Route> routesPourCompleter(Destination d, int maxWagons, int maxBateaux) {
+        int nbModifications = jeu.getNbModificationsRoutesLibres() + routes.getNbModifications();
+        if (nbModifications != nbModificationsRoutesPourDestinations) {
+            routesPourDestinations.clear();
+            nbModificationsRoutesPourDestinations = nbModifications;
         }
-        return routes;
+        return routesPourDestinations.computeIfAbsent(new CleRoutesDestination(d, maxWagons, maxBateaux), cle -> {
+            Index<Route> indexRoutes = jeu.getIndexRoutes();
+            byte[] etatsRoutes = new byte[indexRoutes.taille()];
+            for (int r = 0; r < etatsRoutes.length; r++) {
+                etatsRoutes[r] = routes.contientId(r) ? PlanificateurDestinations.POSSEDEE
+                        : jeu.estRouteLibre(r) ? PlanificateurDestinations.LIBRE : PlanificateurDestinations.PRISE;
+            }
+            int[] ids = jeu.getPlanificateurDestinations().planifier(d.getVilles(), etatsRoutes, maxWagons, maxBateaux);
+            return Arrays.stream(ids).mapToObj(indexRoutes::get).toList();
+        });
     }
 
     /**
@@ -768,33 +1114,18 @@ public class Joueur {
      * s'il n'est pas possible de la compléter.
      */
     public Collection<Route> routesPourCompleterDestinationAvecPions(Destination d) {
-        Collection<Route> routes = routesPourCompleterDestination(d);
-        if (routes.isEmpty()) {
-            return routes;
-        }
-        int nbPionsNecessaires = routes.stream().mapToInt(Route::getLongueur).sum();
-        if (nbPionsNecessaires > nbPionsWagon) {
-            return new ArrayList<>();
-        }
-        return routes;
+        return routesPourCompleter(d, nbPionsWagon, nbPionsBateau);
     }
 
     /**
      * Renvoie une collection de routes que l'on souhaite mettre en surbrillance
      * dans l'interface graphique lorsque le curseur passe sur le nom d'une
-     * destination.
-     *
-     * @return
+     * destination : un plus court ensemble de routes pour compléter la
+     * destination avec les pions du joueur et ceux de sa réserve (qu'il peut
+     * encore échanger)
      */
     public Collection<Route> routesEnSurbrillancePourDestination(Destination d) {
-        Collection<Route> routes = routesPourCompleterDestinationAvecPions(d);
-        if (routes.isEmpty()) {
-            return routes;
-        }
-        int nbPionsNecessaires = routes.stream().mapToInt(Route::getLongueur).sum();
-        if (nbPionsNecessaires > nbPionsWagon + nbPionsWagonEnReserve) {
-            return new ArrayList<>();
-        }
-        return routes;
+        return routesPourCompleter(d, nbPionsWagon + nbPionsWagonEnReserve,
+                nbPionsBateau + nbPionsBateauEnReserve);
     }
 }
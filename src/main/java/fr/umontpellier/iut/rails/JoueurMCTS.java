@@ -0,0 +1,202 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Destination;
+import fr.umontpellier.iut.rails.data.TypeCarteTransport;
+import fr.umontpellier.iut.rails.simulation.Coup;
+import fr.umontpellier.iut.rails.simulation.DonneesPlateau;
+import fr.umontpellier.iut.rails.simulation.EtatSimulation;
+import fr.umontpellier.iut.rails.simulation.RechercheMCTS;
+
+/**
+ * Joueur automatique qui choisit ses coups par une recherche de Monte-Carlo
+ * (voir {@link RechercheMCTS}).
+ * <p>
+ * Au début de son tour, et lorsqu'il peut prendre une deuxième carte, le joueur
+ * exporte l'état de la partie, cherche le meilleur coup et le joue directement
+ * parmi les coups générés par {@link Joueur#genererCoups}, sans passer par les
+ * chaînes de caractères de {@link Joueur#choisir}. Les choix secondaires (cartes
+ * à défausser pour payer, carte à retourner, destinations à défausser) sont
+ * faits par des règles simples, les mêmes que celles des simulations.
+ * <p>
+ * Le budget de la recherche ({@link RechercheMCTS#getBudget()}) est compté à
+ * partir du début du choix du coup : l'export de l'état fait partie du temps
+ * de réponse du joueur.
+ */
+public class JoueurMCTS extends Joueur {
+    private final RechercheMCTS recherche;
+    private final SplittableRandom aleatoire;
+
+    public JoueurMCTS(String nom, Jeu jeu, CouleurJouer couleur, RechercheMCTS recherche) {
+        super(nom, jeu, couleur);
+        this.recherche = recherche;
+        // le générateur de la partie n'est pas utilisé pour que les parties
+        // enregistrées puissent être rejouées sans ce joueur
+        this.aleatoire = new SplittableRandom();
+    }
+
+    public JoueurMCTS(String nom, Jeu jeu, CouleurJouer couleur) {
+        this(nom, jeu, couleur, new RechercheMCTS());
+    }
+
+    @Override
+    int choisirCoup(String instruction, int[] coups, int n, boolean peutPasser) {
+        Jeu jeu = getJeu();
+        if (jeu.estEnRattrapage()) {
+            // reprise d'une partie journalisée : les réponses sont déjà connues
+            return super.choisirCoup(instruction, coups, n, peutPasser);
+        }
+        long fin = System.nanoTime() + recherche.getBudget() * 1_000_000;
+        EtatSimulation etat = jeu.exporterEtatSimulation();
+        etat.setPhase(estPremierCoupDuTour() ? EtatSimulation.DEBUT_TOUR : EtatSimulation.DEUXIEME_CARTE);
+        int coup = coupPropose(recherche.choisirCoup(etat, aleatoire, fin), coups, n);
+        jeu.enregistrerCoup(coup);
+        return coup;
+    }
+
+    /**
+     * Traduit un coup de la simulation en un des coups proposés par le jeu (ou
+     * {@link Coup#PASSER} si le coup n'est pas proposé, ce qui ne devrait pas
+     * arriver)
+     */
+    private int coupPropose(int coup, int[] coups, int n) {
+        int type = Coup.type(coup);
+        int argument = Coup.argument(coup);
+        DonneesPlateau plateau = getJeu().getDonneesPlateau();
+        for (int i = 0; i < n; i++) {
+            if (Coup.type(coups[i]) != type) {
+                continue;
+            }
+            switch (type) {
+                case Coup.PRENDRE_VISIBLE -> {
+                    // dans la simulation, l'argument est la sorte de la carte
+                    CarteTransport c = getJeu().getCarteTransportVisible(Coup.argument(coups[i]));
+                    if (plateau.getSorte(getJeu().getIndexCartes().getId(c)) == argument) {
+                        return coups[i];
+                    }
+                }
+                // le nombre de pions est choisi par la recherche
+                case Coup.PIONS_WAGON, Coup.PIONS_BATEAU -> {
+                    return coup;
+                }
+                default -> {
+                    if (coups[i] == coup) {
+                        return coup;
+                    }
+                }
+            }
+        }
+        return Coup.creer(Coup.PASSER);
+    }
+
+    @Override
+    public String choisir(String instruction, Collection<String> choix, Collection<Bouton> boutons, boolean peutPasser) {
+        if (getJeu().estEnRattrapage()) {
+            return super.choisir(instruction, choix, boutons, peutPasser);
+        }
+        Set<String> options = new HashSet<>();
+        if (choix != null) {
+            options.addAll(choix);
+        }
+        if (boutons != null) {
+            for (Bouton b : boutons) {
+                options.add(b.valeur());
+            }
+        }
+        if (peutPasser || options.isEmpty()) {
+            options.add("");
+        }
+        String reponse = repondre(options);
+        getJeu().enregistrerEntree(reponse);
+        return reponse;
+    }
+
+    private String repondre(Set<String> options) {
+        if (options.contains("WAGON") || options.contains("BATEAU")) {
+            return pileARetourner(options);
+        }
+        String destination = destinationADefausser(options);
+        if (destination != null) {
+            return destination;
+        }
+        String carte = carteAPoser(options);
+        if (carte != null) {
+            return carte;
+        }
+        return options.contains("") ? "" : options.stream().sorted().findFirst().orElse("");
+    }
+
+    /**
+     * Retourne une carte de la pioche qui a le moins de cartes visibles
+     */
+    private String pileARetourner(Set<String> options) {
+        int nbWagon = 0;
+        int nbBateau = 0;
+        for (CarteTransport c : getJeu().getCartesTransportVisibles()) {
+            if (c.getType() == TypeCarteTransport.BATEAU) {
+                nbBateau++;
+            } else {
+                nbWagon++;
+            }
+        }
+        if (options.contains("WAGON") && (nbWagon <= nbBateau || !options.contains("BATEAU"))) {
+            return "WAGON";
+        }
+        return "BATEAU";
+    }
+
+    /**
+     * Si les options sont des destinations, renvoie celle qui a la plus grande
+     * pénalité (sinon renvoie null)
+     */
+    private String destinationADefausser(Set<String> options) {
+        Jeu jeu = getJeu();
+        Destination pire = null;
+        for (String option : options) {
+            if (option.isEmpty()) {
+                continue;
+            }
+            int id = jeu.getIndexDestinations().getId(option);
+            if (id < 0) {
+                return null;
+            }
+            Destination d = jeu.getIndexDestinations().get(id);
+            if (pire == null || d.getPenalite() > pire.getPenalite()) {
+                pire = d;
+            }
+        }
+        return pire == null ? null : pire.getNom();
+    }
+
+    /**
+     * Si les options sont des cartes transport (paiement d'une route ou d'un
+     * port), renvoie la carte à poser : les cartes doubles, puis les cartes sans
+     * ancre, puis les autres cartes et enfin les jokers (sinon renvoie null)
+     */
+    private String carteAPoser(Set<String> options) {
+        Jeu jeu = getJeu();
+        CarteTransport meilleure = null;
+        int meilleurePriorite = Integer.MAX_VALUE;
+        for (String option : options) {
+            if (option.isEmpty()) {
+                continue;
+            }
+            int id = jeu.getIndexCartes().getId(option);
+            if (id < 0) {
+                return null;
+            }
+            CarteTransport c = jeu.getIndexCartes().get(id);
+            int priorite = c.getType() == TypeCarteTransport.JOKER ? 3 : c.estDouble() ? 0 : c.getAncre() ? 2 : 1;
+            if (priorite < meilleurePriorite || (priorite == meilleurePriorite && c.getNom().compareTo(meilleure.getNom()) < 0)) {
+                meilleure = c;
+                meilleurePriorite = priorite;
+            }
+        }
+        return meilleure == null ? null : meilleure.getNom();
+    }
+}
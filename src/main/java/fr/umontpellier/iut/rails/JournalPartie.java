@@ -0,0 +1,263 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Journal d'une partie, écrit dans un fichier projeté en mémoire pour que
+ * l'ajout d'un événement ne coûte que quelques écritures en mémoire (le système
+ * se charge de recopier les pages modifiées sur le disque, y compris si le
+ * processus s'arrête brutalement).
+ * <p>
+ * Le journal contient la graine et les noms des joueurs, puis la suite des
+ * entrées acceptées par le jeu (sous forme canonique, voir
+ * {@link Jeu#versEntreeCanonique}) : le jeu étant déterministe, ces entrées
+ * suffisent à reconstruire la partie (voir {@link Jeu#reprendre}). Un instantané
+ * binaire de l'état (voir {@link Jeu#instantane()}) est ajouté toutes les
+ * {@code intervalleInstantanes} entrées ; lors de la reprise, il sert de point de
+ * contrôle pour vérifier que la partie reconstruite est bien identique à la
+ * partie journalisée.
+ * <p>
+ * Format : un en-tête (numéro magique, version, graine, noms des joueurs) suivi
+ * d'enregistrements {@code [type (1 octet)][longueur (int)][CRC32 (int)][données]}.
+ * L'octet de type est écrit en dernier : un enregistrement incomplet (ou dont la
+ * somme de contrôle est fausse) marque la fin du journal.
+ * <p>
+ * Une partie journalisée force l'écriture du journal sur le disque chaque fois
+ * qu'elle attend la réponse d'un joueur (voir {@link Jeu#lireLigne()}), et le
+ * ferme à la fin de la partie.
+ */
+public class JournalPartie implements AutoCloseable {
+    /**
+     * Contenu d'un journal relu depuis un fichier
+     *
+     * @param graine           graine de la partie
+     * @param nomsJoueurs      noms des joueurs
+     * @param entrees          entrées acceptées (sous forme canonique)
+     * @param numeroInstantane nombre d'entrées journalisées au moment du dernier
+     *                         instantané (-1 s'il n'y en a pas)
+     * @param instantane       dernier instantané (ou null)
+     */
+    public record Contenu(long graine, List<String> nomsJoueurs, List<String> entrees,
+            int numeroInstantane, byte[] instantane) {
+    }
+
+    private static final int MAGIQUE = 0x524A4E4C; // "RJNL"
+    /**
+     * Version du format (2 : identifiants des instantanés sur 4 octets)
+     */
+    private static final int VERSION = 2;
+    private static final byte TYPE_ENTREE = 1;
+    private static final byte TYPE_INSTANTANE = 2;
+    private static final int TAILLE_ENTETE_ENREGISTREMENT = 9;
+    private static final int CAPACITE_INITIALE = 1 << 16;
+    /**
+     * Nombre d'entrées entre deux instantanés par défaut
+     */
+    public static final int INTERVALLE_INSTANTANES_PAR_DEFAUT = 100;
+
+    private final FileChannel canal;
+    private MappedByteBuffer tampon;
+    private final CRC32 crc = new CRC32();
+    private final int intervalleInstantanes;
+    private int nbEntrees;
+    /**
+     * Contenu du journal au moment de son ouverture (null pour un nouveau journal)
+     */
+    private Contenu contenuInitial;
+
+    private JournalPartie(FileChannel canal, int position, int nbEntrees, int intervalleInstantanes) throws IOException {
+        this.canal = canal;
+        this.intervalleInstantanes = intervalleInstantanes;
+        this.nbEntrees = nbEntrees;
+        this.tampon = canal.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(CAPACITE_INITIALE, canal.size()));
+        this.tampon.position(position);
+    }
+
+    /**
+     * Crée un nouveau journal (le fichier est écrasé s'il existe)
+     */
+    public static JournalPartie creer(Path fichier, long graine, List<String> nomsJoueurs,
+            int intervalleInstantanes) throws IOException {
+        FileChannel canal = FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        JournalPartie journal = new JournalPartie(canal, 0, 0, intervalleInstantanes);
+        MappedByteBuffer tampon = journal.tampon;
+        tampon.putInt(MAGIQUE);
+        tampon.putInt(VERSION);
+        tampon.putLong(graine);
+        tampon.putInt(nomsJoueurs.size());
+        for (String nom : nomsJoueurs) {
+            byte[] octets = nom.getBytes(StandardCharsets.UTF_8);
+            tampon.putInt(octets.length);
+            tampon.put(octets);
+        }
+        return journal;
+    }
+
+    /**
+     * Relit un journal existant (voir {@link #getContenuInitial()}) et le rouvre
+     * pour y ajouter des événements à la suite des événements valides
+     */
+    public static JournalPartie rouvrir(Path fichier, int intervalleInstantanes) throws IOException {
+        FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer lecture = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        Contenu contenu = lire(lecture);
+        JournalPartie journal = new JournalPartie(canal, lecture.position(), contenu.entrees().size(),
+                intervalleInstantanes);
+        journal.contenuInitial = contenu;
+        // efface un éventuel enregistrement incomplet à la fin du journal
+        if (journal.tampon.remaining() > 0) {
+            journal.tampon.put(journal.tampon.position(), (byte) 0);
+        }
+        return journal;
+    }
+
+    /**
+     * Relit le contenu d'un journal
+     */
+    public static Contenu lire(Path fichier) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            return lire(canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()));
+        }
+    }
+
+    /**
+     * Lit le contenu du journal à partir du début du tampon, et laisse la position
+     * du tampon à la fin du dernier enregistrement valide
+     */
+    private static Contenu lire(MappedByteBuffer tampon) throws IOException {
+        if (tampon.remaining() < 20 || tampon.getInt() != MAGIQUE || tampon.getInt() != VERSION) {
+            throw new IOException("Journal de partie invalide");
+        }
+        long graine = tampon.getLong();
+        int nbJoueurs = tampon.getInt();
+        List<String> noms = new ArrayList<>();
+        for (int i = 0; i < nbJoueurs; i++) {
+            byte[] octets = new byte[tampon.getInt()];
+            tampon.get(octets);
+            noms.add(new String(octets, StandardCharsets.UTF_8));
+        }
+
+        List<String> entrees = new ArrayList<>();
+        int numeroInstantane = -1;
+        byte[] instantane = null;
+        CRC32 crc = new CRC32();
+        while (tampon.remaining() >= TAILLE_ENTETE_ENREGISTREMENT) {
+            int debut = tampon.position();
+            byte type = tampon.get();
+            int longueur = tampon.getInt();
+            int somme = tampon.getInt();
+            if ((type != TYPE_ENTREE && type != TYPE_INSTANTANE) || longueur < 0 || longueur > tampon.remaining()) {
+                tampon.position(debut);
+                break;
+            }
+            byte[] donnees = new byte[longueur];
+            tampon.get(donnees);
+            crc.reset();
+            crc.update(donnees);
+            if ((int) crc.getValue() != somme) {
+                tampon.position(debut);
+                break;
+            }
+            if (type == TYPE_ENTREE) {
+                entrees.add(new String(donnees, StandardCharsets.UTF_8));
+            } else {
+                numeroInstantane = entrees.size();
+                instantane = donnees;
+            }
+        }
+        return new Contenu(graine, noms, entrees, numeroInstantane, instantane);
+    }
+
+    /**
+     * @return le contenu du journal lors de sa réouverture (null si le journal a
+     *         été créé)
+     */
+    public Contenu getContenuInitial() {
+        return contenuInitial;
+    }
+
+    /**
+     * @return le nombre d'entrées du journal
+     */
+    public int getNbEntrees() {
+        return nbEntrees;
+    }
+
+    /**
+     * @return true si un instantané doit être ajouté après la dernière entrée
+     */
+    public boolean instantaneAttendu() {
+        return intervalleInstantanes > 0 && nbEntrees % intervalleInstantanes == 0;
+    }
+
+    /**
+     * Ajoute une entrée (sous forme canonique) à la fin du journal
+     */
+    public void ajouterEntree(String entree) {
+        ajouter(TYPE_ENTREE, entree.getBytes(StandardCharsets.UTF_8));
+        nbEntrees++;
+    }
+
+    /**
+     * Ajoute un instantané de l'état de la partie à la fin du journal
+     */
+    public void ajouterInstantane(byte[] instantane) {
+        ajouter(TYPE_INSTANTANE, instantane);
+    }
+
+    private void ajouter(byte type, byte[] donnees) {
+        int taille = TAILLE_ENTETE_ENREGISTREMENT + donnees.length;
+        // on garde toujours un octet nul après le dernier enregistrement
+        if (tampon.remaining() < taille + 1) {
+            agrandir(taille + 1);
+        }
+        int debut = tampon.position();
+        crc.reset();
+        crc.update(donnees);
+        tampon.position(debut + 1);
+        tampon.putInt(donnees.length);
+        tampon.putInt((int) crc.getValue());
+        tampon.put(donnees);
+        tampon.put(tampon.position(), (byte) 0);
+        // l'octet de type valide l'enregistrement : il est écrit en dernier
+        tampon.put(debut, type);
+    }
+
+    private void agrandir(int necessaire) {
+        int position = tampon.position();
+        long capacite = tampon.capacity();
+        while (capacite - position < necessaire) {
+            capacite *= 2;
+        }
+        try {
+            tampon.force();
+            tampon = canal.map(FileChannel.MapMode.READ_WRITE, 0, capacite);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        tampon.position(position);
+    }
+
+    /**
+     * Force l'écriture sur le disque des événements ajoutés au journal
+     */
+    public void forcer() {
+        tampon.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        tampon.force();
+        canal.close();
+    }
+}
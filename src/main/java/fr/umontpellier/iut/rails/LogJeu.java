@@ -0,0 +1,199 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Messages d'information du jeu.
+ * <p>
+ * Les messages sont numérotés dans l'ordre d'ajout (à partir de 0) et seuls les
+ * {@code capacite} derniers sont conservés en mémoire (tampon circulaire), ce qui
+ * borne la mémoire utilisée par une partie quelle que soit sa durée.
+ * Optionnellement, tous les messages peuvent être écrits dans un fichier
+ * d'archive (une ligne par message) pour pouvoir consulter l'historique complet.
+ * <p>
+ * Les méthodes sont synchronisées car les messages sont ajoutés par le thread du
+ * jeu et lus par le thread qui envoie l'état aux clients.
+ */
+public class LogJeu {
+    /**
+     * Suite de messages consécutifs du log
+     *
+     * @param premier  numéro du premier message de l'extrait
+     * @param messages les messages (du plus ancien au plus récent)
+     */
+    public record Extrait(long premier, List<String> messages) {
+    }
+
+    /**
+     * Nombre de messages conservés en mémoire par défaut
+     */
+    public static final int CAPACITE_PAR_DEFAUT = 100;
+
+    private final String[] messages;
+    /**
+     * Numéro du prochain message ajouté (égal au nombre total de messages)
+     */
+    private long prochainNumero;
+    /**
+     * Fichier d'archive (ou null si l'archivage n'est pas activé)
+     */
+    private Path archive;
+    private BufferedWriter archiveWriter;
+
+    public LogJeu(int capacite) {
+        this.messages = new String[capacite];
+        this.prochainNumero = 0;
+    }
+
+    public LogJeu() {
+        this(CAPACITE_PAR_DEFAUT);
+    }
+
+    /**
+     * Active l'archivage des messages dans un fichier (les messages sont ajoutés à
+     * la fin du fichier au fur et à mesure).
+     * La numérotation des lignes du fichier correspond à celle des messages : la
+     * méthode doit donc être appelée avant l'ajout du premier message.
+     */
+    public synchronized void activerArchive(Path fichier) throws IOException {
+        if (prochainNumero > 0) {
+            throw new IllegalStateException("L'archive doit être activée avant le premier message");
+        }
+        archive = fichier;
+        archiveWriter = Files.newBufferedWriter(fichier, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Ajoute un message à la fin du log
+     *
+     * @return le numéro du message ajouté
+     */
+    public synchronized long ajouter(String message) {
+        messages[(int) (prochainNumero % messages.length)] = message;
+        if (archiveWriter != null) {
+            try {
+                archiveWriter.write(echapper(message));
+                archiveWriter.newLine();
+                archiveWriter.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return prochainNumero++;
+    }
+
+    /**
+     * @return le numéro du dernier message ajouté (-1 si le log est vide)
+     */
+    public synchronized long getDernierNumero() {
+        return prochainNumero - 1;
+    }
+
+    /**
+     * @return le numéro du plus ancien message encore conservé en mémoire
+     */
+    public synchronized long getPremierNumeroEnMemoire() {
+        return Math.max(0, prochainNumero - messages.length);
+    }
+
+    /**
+     * Renvoie les messages conservés en mémoire (du plus ancien au plus récent)
+     */
+    public synchronized Extrait getMessages() {
+        return entre(getPremierNumeroEnMemoire(), prochainNumero);
+    }
+
+    /**
+     * Renvoie les messages encore en mémoire dont le numéro est strictement
+     * supérieur à {@code numero} (du plus ancien au plus récent).
+     * Si certains de ces messages ne sont plus en mémoire, la liste commence au
+     * plus ancien message conservé (voir {@link #getPremierNumeroEnMemoire()}).
+     */
+    public synchronized Extrait depuis(long numero) {
+        return entre(Math.max(numero + 1, getPremierNumeroEnMemoire()), prochainNumero);
+    }
+
+    /**
+     * Renvoie au plus {@code nombre} messages dont le numéro est strictement
+     * inférieur à {@code numero} (du plus ancien au plus récent), pour consulter
+     * l'historique. Les messages qui ne sont plus en mémoire sont relus dans le
+     * fichier d'archive s'il est activé (sinon ils ne sont pas renvoyés). Le
+     * fichier est lu sans bloquer les autres méthodes : les messages qui y sont
+     * relus ne changent plus.
+     */
+    public Extrait avant(long numero, int nombre) {
+        long debut;
+        Path fichier;
+        Extrait enMemoire;
+        synchronized (this) {
+            long fin = Math.max(0, Math.min(numero, prochainNumero));
+            debut = Math.max(0, fin - nombre);
+            long premierEnMemoire = getPremierNumeroEnMemoire();
+            if (debut >= premierEnMemoire) {
+                return entre(debut, fin);
+            }
+            enMemoire = entre(Math.min(premierEnMemoire, fin), fin);
+            if (archive == null) {
+                // les messages plus anciens ne sont plus disponibles
+                return enMemoire;
+            }
+            fichier = archive;
+        }
+        List<String> resultat = new ArrayList<>(lireArchive(fichier, debut, enMemoire.premier()));
+        resultat.addAll(enMemoire.messages());
+        return new Extrait(debut, resultat);
+    }
+
+    private Extrait entre(long debut, long fin) {
+        List<String> resultat = new ArrayList<>();
+        for (long i = debut; i < fin; i++) {
+            resultat.add(messages[(int) (i % messages.length)]);
+        }
+        return new Extrait(debut, resultat);
+    }
+
+    private static List<String> lireArchive(Path archive, long debut, long fin) {
+        List<String> resultat = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(archive, StandardCharsets.UTF_8)) {
+            long numero = 0;
+            String ligne;
+            while (numero < fin && (ligne = reader.readLine()) != null) {
+                if (numero >= debut) {
+                    resultat.add(desechapper(ligne));
+                }
+                numero++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return resultat;
+    }
+
+    private static String echapper(String message) {
+        return message.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String desechapper(String ligne) {
+        StringBuilder sb = new StringBuilder(ligne.length());
+        for (int i = 0; i < ligne.length(); i++) {
+            char c = ligne.charAt(i);
+            if (c == '\\' && i + 1 < ligne.length()) {
+                i++;
+                sb.append(ligne.charAt(i) == 'n' ? '\n' : ligne.charAt(i));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,170 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mesures des chemins critiques du moteur et du serveur : compteurs et
+ * histogrammes de durées, exposés par {@code gui.ServeurMetriques} (JMX et HTTP).
+ * <p>
+ * Les mesures sont désactivées par défaut, et activées avec
+ * {@code -Drails.metriques=true} (ou {@link #activer(boolean)}). Désactivées,
+ * elles ne coûtent que la lecture d'un booléen à chaque point de mesure : les
+ * durées sont mesurées entre {@link #debut()}, qui renvoie 0 sans lire
+ * l'horloge, et {@link Histogramme#enregistrerDepuis(long)}, qui n'enregistre
+ * rien dans ce cas. Les compteurs d'erreurs, qui ne coûtent rien tant qu'il
+ * n'y a pas d'erreur, sont toujours comptés.
+ */
+public final class Metriques {
+    /**
+     * Compteur d'événements partagé par tous les threads
+     */
+    public static final class Compteur {
+        private final LongAdder total = new LongAdder();
+        /**
+         * Indique si les événements sont comptés même lorsque les mesures sont
+         * désactivées
+         */
+        private final boolean toujoursCompte;
+        /**
+         * Début de la période de mesure du débit, et total à ce moment
+         */
+        private long debutPeriode = System.nanoTime();
+        private long totalDebutPeriode;
+        private double debit;
+
+        private Compteur(boolean toujoursCompte) {
+            this.toujoursCompte = toujoursCompte;
+        }
+
+        /**
+         * Compte un événement (sans effet si les mesures sont désactivées, sauf
+         * pour les compteurs d'erreurs)
+         */
+        public void incrementer() {
+            if (actives || toujoursCompte) {
+                total.increment();
+            }
+        }
+
+        public long getTotal() {
+            return total.sum();
+        }
+
+        /**
+         * @return le nombre d'événements par seconde, mesuré entre deux lectures
+         *         espacées d'au moins une seconde
+         */
+        public synchronized double getDebit() {
+            long maintenant = System.nanoTime();
+            if (maintenant - debutPeriode >= 1_000_000_000L) {
+                long courant = total.sum();
+                debit = (courant - totalDebutPeriode) * 1e9 / (maintenant - debutPeriode);
+                debutPeriode = maintenant;
+                totalDebutPeriode = courant;
+            }
+            return debit;
+        }
+    }
+
+    private static volatile boolean actives = Boolean.getBoolean("rails.metriques");
+
+    /**
+     * Instructions données aux joueurs ({@link Jeu#prompt})
+     */
+    public static final Compteur PROMPTS = new Compteur(false);
+    /**
+     * Entrées refusées par {@link Joueur#choisir} (le joueur doit recommencer)
+     */
+    public static final Compteur CHOIX_INVALIDES = new Compteur(false);
+    /**
+     * Écritures ou suppressions de parties passivées qui ont échoué (voir
+     * {@link GestionnaireParties}), comptées même lorsque les mesures sont
+     * désactivées
+     */
+    public static final Compteur ECHECS_PASSIVATION = new Compteur(true);
+    /**
+     * Construction de l'état JSON de la partie ({@link Jeu#etatJson()})
+     */
+    public static final Histogramme CONSTRUCTION_ETAT = new Histogramme("ns");
+    /**
+     * Préparation des messages de diffusion d'un état (lecture du JSON, calcul
+     * et sérialisation des différences, trame binaire)
+     */
+    public static final Histogramme SERIALISATION_DIFFUSION = new Histogramme("ns");
+    /**
+     * Distribution d'un état à tous les clients connectés
+     */
+    public static final Histogramme ENVOI_DIFFUSION = new Histogramme("ns");
+    /**
+     * Taille de la file d'entrées d'une partie après chaque ajout
+     */
+    public static final Histogramme FILE_ENTREES = new Histogramme("entrées");
+    /**
+     * Génération des coups possibles d'un joueur
+     */
+    public static final Histogramme GENERATION_COUPS = new Histogramme("ns");
+
+    private static final Map<String, Compteur> compteurs = new LinkedHashMap<>();
+    private static final Map<String, Histogramme> histogrammes = new LinkedHashMap<>();
+
+    static {
+        compteurs.put("prompts", PROMPTS);
+        compteurs.put("choix.invalides", CHOIX_INVALIDES);
+        compteurs.put("passivation.echecs", ECHECS_PASSIVATION);
+        histogrammes.put("etat.construction", CONSTRUCTION_ETAT);
+        histogrammes.put("diffusion.serialisation", SERIALISATION_DIFFUSION);
+        histogrammes.put("diffusion.envoi", ENVOI_DIFFUSION);
+        histogrammes.put("entrees.file", FILE_ENTREES);
+        histogrammes.put("coups.generation", GENERATION_COUPS);
+    }
+
+    private Metriques() {
+    }
+
+    public static boolean sontActives() {
+        return actives;
+    }
+
+    public static void activer(boolean actives) {
+        Metriques.actives = actives;
+    }
+
+    /**
+     * @return l'instant de début d'une mesure de durée (à passer à
+     *         {@link Histogramme#enregistrerDepuis(long)}), ou 0 si les mesures
+     *         sont désactivées
+     */
+    public static long debut() {
+        return actives ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Renvoie une représentation des mesures sous la forme d'un dictionnaire de
+     * valeurs sérialisables : pour chaque compteur son total et son débit par
+     * seconde, et pour chaque histogramme son unité et le résumé de ses valeurs
+     */
+    public static Map<String, Object> dataMap() {
+        Map<String, Object> donnees = new LinkedHashMap<>();
+        for (Map.Entry<String, Compteur> entree : compteurs.entrySet()) {
+            Compteur compteur = entree.getValue();
+            donnees.put(entree.getKey(), Map.of("total", compteur.getTotal(), "parSeconde", compteur.getDebit()));
+        }
+        for (Map.Entry<String, Histogramme> entree : histogrammes.entrySet()) {
+            Histogramme histogramme = entree.getValue();
+            Histogramme.Instantane instantane = histogramme.instantane();
+            Map<String, Object> resume = new LinkedHashMap<>();
+            resume.put("unite", histogramme.getUnite());
+            resume.put("nombre", instantane.nombre());
+            resume.put("moyenne", instantane.moyenne());
+            resume.put("p50", instantane.p50());
+            resume.put("p90", instantane.p90());
+            resume.put("p99", instantane.p99());
+            resume.put("p999", instantane.p999());
+            resume.put("max", instantane.max());
+            donnees.put(entree.getKey(), resume);
+        }
+        return donnees;
+    }
+}
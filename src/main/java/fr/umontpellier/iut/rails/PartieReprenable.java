@@ -0,0 +1,265 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Partie exécutée sans thread dédié, sous la forme d'une machine à états : la
+ * partie s'arrête à chaque instruction donnée à un joueur, et reprend lorsque la
+ * réponse est soumise ({@link #soumettre(String)}).
+ * <p>
+ * Le moteur du jeu ({@link Jeu#run()}) attend les réponses des joueurs en
+ * bloquant le thread qui l'exécute. Une partie reprenable ne conserve entre deux
+ * décisions que son {@link Enregistrement} (graine et entrées acceptées) et la
+ * décision en attente : à chaque réponse, la partie est rejouée à partir de
+ * l'enregistrement, comme lors de la reprise d'une partie journalisée, jusqu'à
+ * ce que le moteur demande une entrée qui n'est pas encore connue. Le moteur est
+ * alors interrompu (la pile est déroulée par une exception) et la nouvelle
+ * décision en attente est conservée.
+ * <p>
+ * Le moteur n'étant pas reprenable au milieu d'un tour (Java ne permet pas de
+ * conserver une pile d'appels sans son thread), rien n'est gardé d'une relecture
+ * à l'autre : le coût d'une réponse est proportionnel au nombre d'entrées déjà
+ * acceptées, donc quadratique sur l'ensemble d'une partie (qui compte quelques
+ * centaines d'entrées). Une réponse invalide, qui ne fait pas partie des choix
+ * de la décision en attente, est refusée sans relecture.
+ * <p>
+ * Une partie en attente n'occupe donc ni thread ni état de jeu en mémoire, et
+ * n'importe quel thread (par exemple ceux d'un petit groupe de threads qui
+ * traitent les messages de nombreuses parties) peut soumettre une réponse. En
+ * contrepartie, chaque réponse coûte une relecture de la partie depuis le début
+ * (quelques millisecondes pour une partie complète), ce qui convient à
+ * des parties dont les joueurs répondent rarement.
+ * <p>
+ * Les cartes, routes et destinations sont désignées par leur forme canonique
+ * (voir {@link Jeu#versEntreeCanonique(String)}) dans les décisions et dans les
+ * réponses, car les noms attribués aux éléments changent d'une relecture à
+ * l'autre.
+ */
+public final class PartieReprenable {
+    /**
+     * Instruction à laquelle un joueur doit répondre
+     *
+     * @param joueur      le numéro du joueur qui doit répondre
+     * @param instruction l'instruction donnée au joueur
+     * @param choix       les choix valides qui ne sont pas proposés par des
+     *                    boutons : cartes, routes, destinations, etc. (sous forme
+     *                    canonique)
+     * @param boutons     les choix proposés par des boutons (valeurs sous forme
+     *                    canonique)
+     * @param peutPasser  indique si le joueur peut passer (en répondant par la
+     *                    chaîne vide)
+     * @param etat        l'état de la partie au moment de la décision (voir
+     *                    {@link Jeu#instantane()}), dans lequel les éléments
+     *                    sont désignés par les numéros de leurs formes
+     *                    canoniques
+     */
+    public record Decision(int joueur, String instruction, List<String> choix, List<Bouton> boutons,
+            boolean peutPasser, byte[] etat) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Decision d && joueur == d.joueur && instruction.equals(d.instruction)
+                    && choix.equals(d.choix) && boutons.equals(d.boutons) && peutPasser == d.peutPasser
+                    && Arrays.equals(etat, d.etat);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hash(joueur, instruction, choix, boutons, peutPasser) + Arrays.hashCode(etat);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Decision[joueur=%d, instruction=%s, choix=%s, boutons=%s, peutPasser=%b]",
+                    joueur, instruction, choix, boutons, peutPasser);
+        }
+
+        /**
+         * @return true si la réponse (sous forme canonique) fait partie des choix
+         *         valides de la décision, c'est-à-dire si le moteur l'accepte
+         */
+        public boolean estReponseValide(String reponse) {
+            return reponse != null && (choix.contains(reponse) || boutons.stream().anyMatch(b -> b.valeur().equals(reponse))
+                    || peutPasser && reponse.isEmpty());
+        }
+    }
+
+    /**
+     * Levée lorsque le moteur demande une entrée qui n'a pas encore été soumise.
+     * C'est une exception de contrôle, qui ne sert qu'à dérouler la pile du
+     * moteur : une unique instance est créée, sans pile d'appels ni suppression.
+     */
+    private static final class Suspension extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Suspension() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Suspension SUSPENSION = new Suspension();
+
+    /**
+     * Partie rejouée à partir des entrées acceptées, jusqu'à la première entrée
+     * manquante
+     */
+    private static final class Reprise extends Jeu {
+        private final Iterator<String> entrees;
+        /**
+         * Nombre d'entrées déjà acceptées lors des relectures précédentes, et
+         * nombre d'entrées lues depuis le début de cette relecture
+         */
+        private final int nbEntreesConnues;
+        private final boolean nouvelleEntreeSoumise;
+        private int nbEntreesLues;
+        private String instruction;
+        private Collection<String> choix;
+        private Collection<Bouton> boutons;
+        private boolean peutPasser;
+
+        Reprise(Enregistrement enregistrement, String nouvelleEntree) {
+            super(enregistrement.getNomsJoueurs().toArray(new String[0]), enregistrement.getGraine());
+            List<String> entrees = enregistrement.getEntrees();
+            if (nouvelleEntree != null) {
+                entrees = new ArrayList<>(entrees);
+                entrees.add(nouvelleEntree);
+            }
+            this.entrees = entrees.iterator();
+            this.nbEntreesConnues = enregistrement.getNbEntrees();
+            this.nouvelleEntreeSoumise = nouvelleEntree != null;
+        }
+
+        /**
+         * @return true tant que la partie refait ce qui a déjà été exécuté lors
+         *         des relectures précédentes : seul le traitement d'une nouvelle
+         *         entrée est exécuté pour la première fois (de même que le début
+         *         de la partie à sa création)
+         */
+        @Override
+        public boolean estEnRattrapage() {
+            return nouvelleEntreeSoumise ? nbEntreesLues <= nbEntreesConnues : nbEntreesConnues > 0;
+        }
+
+        @Override
+        public String lireLigne() {
+            if (!entrees.hasNext()) {
+                throw SUSPENSION;
+            }
+            String entree = entrees.next();
+            nbEntreesLues++;
+            try {
+                return depuisEntreeCanonique(entree);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // élément inconnu : l'entrée ne correspond à aucun choix et sera
+                // refusée par le joueur
+                return entree;
+            }
+        }
+
+        @Override
+        void prompt(String instruction, Collection<String> choix, Collection<Bouton> boutons, boolean peutPasser) {
+            this.instruction = instruction;
+            this.choix = choix;
+            this.boutons = boutons;
+            this.peutPasser = peutPasser;
+        }
+
+        @Override
+        public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+        }
+
+        Decision getDecision() {
+            List<String> choixCanoniques = choix.stream().map(this::versEntreeCanonique).toList();
+            List<Bouton> boutonsCanoniques = boutons.stream()
+                    .map(b -> new Bouton(b.label(), versEntreeCanonique(b.valeur())))
+                    .toList();
+            return new Decision(getJoueurs().indexOf(getJoueurCourant()), instruction, choixCanoniques,
+                    boutonsCanoniques, peutPasser, instantane());
+        }
+    }
+
+    /**
+     * Entrées acceptées depuis le début de la partie (sous forme canonique)
+     */
+    private Enregistrement enregistrement;
+    /**
+     * Décision en attente (null si la partie est terminée)
+     */
+    private Decision decision;
+
+    /**
+     * Crée une partie et l'exécute jusqu'à la première décision
+     */
+    public PartieReprenable(String[] nomJoueurs, long graine) {
+        this(new Enregistrement(graine, List.of(nomJoueurs)));
+    }
+
+    /**
+     * Reprend une partie enregistrée (par exemple une partie conservée sur disque
+     * pendant que ses joueurs ne jouaient pas, voir {@link #getEnregistrement()})
+     */
+    public PartieReprenable(Enregistrement enregistrement) {
+        reprendre(enregistrement, null);
+    }
+
+    /**
+     * @return la décision en attente, ou null si la partie est terminée
+     */
+    public synchronized Decision getDecision() {
+        return decision;
+    }
+
+    public synchronized boolean estTerminee() {
+        return decision == null;
+    }
+
+    /**
+     * @return les entrées acceptées depuis le début de la partie, qui suffisent à
+     *         la reprendre
+     */
+    public synchronized Enregistrement getEnregistrement() {
+        return enregistrement;
+    }
+
+    /**
+     * Soumet la réponse du joueur à la décision en attente, et exécute la partie
+     * jusqu'à la décision suivante. Une réponse invalide est ignorée (la même
+     * décision reste en attente).
+     * <p>
+     * La partie est rejouée depuis le début : le coût de l'appel est
+     * proportionnel au nombre d'entrées déjà acceptées. Une réponse invalide
+     * (voir {@link Decision#estReponseValide(String)}) est ignorée sans
+     * relecture.
+     *
+     * @param entree la réponse (les cartes, routes et destinations sont désignées
+     *               par leur forme canonique)
+     * @return la nouvelle décision en attente, ou null si la partie est terminée
+     * @throws IllegalStateException si la partie est terminée
+     */
+    public synchronized Decision soumettre(String entree) {
+        if (decision == null) {
+            throw new IllegalStateException("La partie est terminée");
+        }
+        if (decision.estReponseValide(entree)) {
+            reprendre(enregistrement, entree);
+        }
+        return decision;
+    }
+
+    private void reprendre(Enregistrement entrees, String nouvelleEntree) {
+        Reprise jeu = new Reprise(entrees, nouvelleEntree);
+        // seules les entrées acceptées par le moteur sont conservées
+        Enregistrement acceptees = jeu.activerEnregistrement();
+        try {
+            jeu.run();
+            decision = null;
+        } catch (Suspension e) {
+            decision = jeu.getDecision();
+        }
+        enregistrement = acceptees;
+    }
+}
@@ -1,21 +1,45 @@
 package fr.umontpellier.iut.rails;
 
+import com.google.gson.stream.JsonWriter;
+
 import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.ListeCartesTransport;
+import fr.umontpellier.iut.rails.data.TypeCarteTransport;
+import fr.umontpellier.iut.rails.simulation.DonneesPlateau;
+import fr.umontpellier.iut.rails.simulation.EtatSimulation;
 
-import java.util.ArrayList;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.SplittableRandom;
 
 public class PilesCartesTransport {
-    private final List<CarteTransport> pilePioche;
-    private final List<CarteTransport> pileDefausse;
+    /**
+     * Pile de pioche (la carte du dessus est la carte d'indice 0)
+     */
+    private final ListeCartesTransport pilePioche;
+    private final ListeCartesTransport pileDefausse;
+    /**
+     * Générateur aléatoire utilisé pour mélanger les cartes
+     */
+    private final SplittableRandom aleatoire;
+    /**
+     * Partie à laquelle appartiennent les piles, pour les événements JFR (null
+     * si les piles sont utilisées hors d'une partie)
+     */
+    private Jeu jeu;
 
-    public PilesCartesTransport(List<CarteTransport> cartes) {
-        pilePioche = cartes;
-        pileDefausse = new ArrayList<>();
+    public PilesCartesTransport(List<CarteTransport> cartes, SplittableRandom aleatoire) {
+        this.aleatoire = aleatoire;
+        pilePioche = new ListeCartesTransport(cartes);
+        pileDefausse = new ListeCartesTransport();
         // on mélange la pile de pioche
-        Collections.shuffle(pilePioche);
+        pilePioche.melanger(aleatoire);
+    }
+
+    public PilesCartesTransport(List<CarteTransport> cartes) {
+        this(cartes, new SplittableRandom());
     }
 
     /**
@@ -25,9 +49,16 @@ public class PilesCartesTransport {
      */
     public CarteTransport piocher() {
         if (pilePioche.isEmpty()) {
+            EvenementsJfr.MelangePioche evenement = new EvenementsJfr.MelangePioche();
+            evenement.begin();
             pilePioche.addAll(pileDefausse);
             pileDefausse.clear();
-            Collections.shuffle(pilePioche);
+            pilePioche.melanger(aleatoire);
+            if (jeu != null && !jeu.estEnRattrapage() && evenement.shouldCommit()) {
+                evenement.partie = jeu.getIdPartie();
+                evenement.nbCartes = pilePioche.size();
+                evenement.commit();
+            }
         }
         if (pilePioche.isEmpty()) {
             return null;
@@ -35,6 +66,10 @@ public class PilesCartesTransport {
         return pilePioche.remove(0);
     }
 
+    void setJeu(Jeu jeu) {
+        this.jeu = jeu;
+    }
+
     public void defausser(CarteTransport carte) {
         pileDefausse.add(carte);
     }
@@ -46,16 +81,79 @@ public class PilesCartesTransport {
         return pilePioche.isEmpty() && pileDefausse.isEmpty();
     }
 
+    /**
+     * Renvoie une copie de la liste des cartes de la pioche et de la défausse
+     */
     public List<CarteTransport> getCartes() {
-        ArrayList<CarteTransport> cartes = new ArrayList<>();
-        cartes.addAll(pilePioche);
+        ListeCartesTransport cartes = new ListeCartesTransport(pilePioche);
         cartes.addAll(pileDefausse);
         return cartes;
     }
 
-    public Map<String, Object> dataMap() {
-        return Map.ofEntries(
-                Map.entry("pioche", pilePioche.size()),
-                Map.entry("defausse", pileDefausse));
+    /**
+     * @return le nombre de cartes dans la pioche (sans la défausse)
+     */
+    public int getNbCartesPioche() {
+        return pilePioche.size();
+    }
+
+    /**
+     * Renvoie les cartes de la défausse (vue non modifiable)
+     */
+    public List<CarteTransport> getDefausse() {
+        return Collections.unmodifiableList(pileDefausse);
+    }
+
+    /**
+     * Renvoie le nombre de cartes d'un type dans la pioche et la défausse (sans
+     * recopier les piles)
+     */
+    public int getNombre(TypeCarteTransport type) {
+        return pilePioche.getNombre(type) + pileDefausse.getNombre(type);
+    }
+
+    /**
+     * Ajoute à l'état de simulation les cartes de la pioche et de la défausse
+     * (voir {@link Jeu#exporterEtatSimulation()})
+     */
+    void exporterEtatSimulation(EtatSimulation etat, DonneesPlateau plateau, Index<CarteTransport> index) {
+        for (CarteTransport c : pilePioche) {
+            etat.ajouterCartesPioche(plateau.getSorte(index.getId(c)), 1);
+        }
+        for (CarteTransport c : pileDefausse) {
+            etat.ajouterCartesDefausse(plateau.getSorte(index.getId(c)), 1);
+        }
+    }
+
+    /**
+     * Remplace le contenu des piles (la nouvelle pioche est mélangée)
+     */
+    void remplacer(List<CarteTransport> pioche, List<CarteTransport> defausse) {
+        pilePioche.clear();
+        pilePioche.addAll(pioche);
+        pilePioche.melanger(aleatoire);
+        pileDefausse.clear();
+        pileDefausse.addAll(defausse);
+    }
+
+    /**
+     * Écrit le contenu des piles dans un instantané de la partie (voir
+     * {@link Jeu#instantane()})
+     */
+    void ecrireInstantane(DataOutputStream sortie, Index<CarteTransport> index) throws IOException {
+        Jeu.ecrireIds(sortie, pilePioche, index);
+        Jeu.ecrireIds(sortie, pileDefausse, index);
+    }
+
+    /**
+     * Écrit le nombre de cartes de la pioche et les cartes de la défausse au
+     * format JSON (voir {@link Jeu#etatJson()})
+     */
+    void ecrireEtat(JsonWriter sortie, FragmentsJson fragments) throws IOException {
+        sortie.beginObject();
+        sortie.name("pioche").value(pilePioche.size());
+        sortie.name("defausse");
+        fragments.ecrireCartes(sortie, pileDefausse);
+        sortie.endObject();
     }
 }
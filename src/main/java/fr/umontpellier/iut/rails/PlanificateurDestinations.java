@@ -0,0 +1,229 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.Arrays;
+import java.util.List;
+
+import fr.umontpellier.iut.rails.simulation.DonneesPlateau;
+
+/**
+ * Recherche des routes à capturer par un joueur pour compléter une destination.
+ * <p>
+ * Le plateau est vu comme un graphe dont les arêtes sont les routes libres et
+ * les routes du joueur (les routes capturées par les autres joueurs sont
+ * ignorées). Une route du joueur ne coûte rien, une route libre coûte autant de
+ * pions que sa longueur (des pions bateau pour une route maritime, des pions
+ * wagon sinon). Pour chaque étape d'une destination (deux villes consécutives),
+ * on cherche un chemin qui utilise le moins de pions au total sans dépasser les
+ * nombres de pions wagon et bateau disponibles : c'est un plus court chemin
+ * (algorithme de Dijkstra) dans le graphe des couples (ville, nombre de pions
+ * wagon utilisés). Lorsque les pions ne sont pas limités (le joueur en a assez
+ * pour capturer toutes les routes du plateau), le nombre de pions wagon utilisés
+ * n'a pas besoin d'être suivi et la recherche se fait dans le graphe des villes.
+ * Les routes choisies pour une étape ne coûtent plus rien pour les étapes
+ * suivantes.
+ * <p>
+ * Le planificateur conserve ses tableaux de travail d'une recherche à l'autre :
+ * il ne doit pas être utilisé par plusieurs threads en même temps.
+ */
+final class PlanificateurDestinations {
+    /**
+     * États possibles d'une route pour le joueur dont on planifie les
+     * destinations
+     */
+    static final byte LIBRE = 0;
+    static final byte POSSEDEE = 1;
+    static final byte PRISE = 2;
+
+    private final DonneesPlateau plateau;
+    /**
+     * Nombre total de pions wagon et de pions bateau nécessaires pour capturer
+     * toutes les routes du plateau (au-delà, une limite de pions ne change rien)
+     */
+    private final int nbPionsWagonPlateau;
+    private final int nbPionsBateauPlateau;
+
+    // tableaux de travail de la recherche (indexés par état)
+    private int[] distance = new int[0];
+    private int[] routeArrivee = new int[0];
+    private int[] etatPrecedent = new int[0];
+    private int[] marque = new int[0];
+    private int generation;
+    private long[] tas = new long[64];
+    private int tailleTas;
+    /**
+     * États des routes pendant la planification (les routes choisies pour les
+     * étapes précédentes sont considérées comme possédées)
+     */
+    private final byte[] etatsRoutes;
+
+    PlanificateurDestinations(DonneesPlateau plateau) {
+        this.plateau = plateau;
+        int nbWagons = 0;
+        int nbBateaux = 0;
+        for (int r = 0; r < plateau.getNbRoutes(); r++) {
+            if (plateau.getGenre(r) == DonneesPlateau.MARITIME) {
+                nbBateaux += plateau.getLongueur(r);
+            } else {
+                nbWagons += plateau.getLongueur(r);
+            }
+        }
+        this.nbPionsWagonPlateau = nbWagons;
+        this.nbPionsBateauPlateau = nbBateaux;
+        this.etatsRoutes = new byte[plateau.getNbRoutes()];
+    }
+
+    /**
+     * Renvoie un ensemble de routes libres de longueur totale minimale que le
+     * joueur peut capturer pour relier les villes, en utilisant au plus
+     * {@code maxWagons} pions wagon et {@code maxBateaux} pions bateau.
+     *
+     * @param villes      les villes de la destination, dans l'ordre
+     * @param etatsRoutes l'état de chaque route pour le joueur ({@link #LIBRE},
+     *                    {@link #POSSEDEE} ou {@link #PRISE}, indexé par
+     *                    identifiant de route)
+     * @return les identifiants des routes à capturer (tableau vide si les villes
+     *         sont déjà reliées ou s'il n'est pas possible de les relier)
+     */
+    int[] planifier(List<String> villes, byte[] etatsRoutes, int maxWagons, int maxBateaux) {
+        System.arraycopy(etatsRoutes, 0, this.etatsRoutes, 0, this.etatsRoutes.length);
+        maxWagons = Math.min(maxWagons, nbPionsWagonPlateau);
+        maxBateaux = Math.min(maxBateaux, nbPionsBateauPlateau);
+        // les pions restants suffisent toujours pour les routes encore libres
+        boolean illimite = maxWagons == nbPionsWagonPlateau && maxBateaux == nbPionsBateauPlateau;
+        int[] routes = new int[plateau.getNbRoutes()];
+        int nbRoutes = 0;
+        for (int i = 0; i + 1 < villes.size(); i++) {
+            int depart = plateau.getIdVille(villes.get(i));
+            int arrivee = plateau.getIdVille(villes.get(i + 1));
+            if (depart < 0 || arrivee < 0) {
+                return new int[0];
+            }
+            int etat = chercher(depart, arrivee, maxWagons, maxBateaux, illimite);
+            if (etat < 0) {
+                return new int[0];
+            }
+            // les routes du chemin sont retrouvées en remontant les états
+            for (; routeArrivee[etat] >= 0; etat = etatPrecedent[etat]) {
+                int r = routeArrivee[etat];
+                if (this.etatsRoutes[r] == LIBRE) {
+                    this.etatsRoutes[r] = POSSEDEE;
+                    routes[nbRoutes++] = r;
+                    if (plateau.getGenre(r) == DonneesPlateau.MARITIME) {
+                        maxBateaux -= plateau.getLongueur(r);
+                    } else {
+                        maxWagons -= plateau.getLongueur(r);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(routes, nbRoutes);
+    }
+
+    /**
+     * Cherche un chemin de {@code depart} à {@code arrivee} utilisant le moins de
+     * pions possible. L'état {@code ville * (maxWagons + 1) + w} correspond à la
+     * ville atteinte en ayant utilisé {@code w} pions wagon, et sa distance est le
+     * nombre total de pions utilisés. Si les pions ne sont pas limités, l'état est
+     * simplement la ville.
+     *
+     * @return l'état d'arrivée du meilleur chemin, ou -1 s'il n'y a pas de chemin
+     *         respectant les limites de pions
+     */
+    private int chercher(int depart, int arrivee, int maxWagons, int maxBateaux, boolean illimite) {
+        int largeur = illimite ? 1 : maxWagons + 1;
+        preparer(plateau.getNbVilles() * largeur);
+        tailleTas = 0;
+        atteindre(depart * largeur, 0, -1, -1);
+        while (tailleTas > 0) {
+            long sommet = retirer();
+            int total = (int) (sommet >>> 32);
+            int etat = (int) sommet;
+            if (total > distance[etat]) {
+                continue;
+            }
+            int ville = etat / largeur;
+            int wagons = etat % largeur;
+            if (ville == arrivee) {
+                return etat;
+            }
+            for (int k = 0; k < plateau.getNbRoutesVille(ville); k++) {
+                int r = plateau.getRouteVille(ville, k);
+                int voisine = plateau.getVille1(r) == ville ? plateau.getVille2(r) : plateau.getVille1(r);
+                if (etatsRoutes[r] == POSSEDEE) {
+                    atteindre(voisine * largeur + wagons, total, r, etat);
+                } else if (etatsRoutes[r] == LIBRE) {
+                    int longueur = plateau.getLongueur(r);
+                    if (illimite) {
+                        atteindre(voisine, total + longueur, r, etat);
+                    } else if (plateau.getGenre(r) == DonneesPlateau.MARITIME) {
+                        if (total - wagons + longueur <= maxBateaux) {
+                            atteindre(voisine * largeur + wagons, total + longueur, r, etat);
+                        }
+                    } else if (wagons + longueur <= maxWagons) {
+                        atteindre(voisine * largeur + wagons + longueur, total + longueur, r, etat);
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void preparer(int nbEtats) {
+        if (distance.length < nbEtats) {
+            distance = new int[nbEtats];
+            routeArrivee = new int[nbEtats];
+            etatPrecedent = new int[nbEtats];
+            marque = new int[nbEtats];
+            generation = 0;
+        }
+        // les états marqués lors des recherches précédentes sont considérés comme
+        // non atteints (pas besoin de réinitialiser les tableaux)
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(marque, 0);
+            generation = 1;
+        }
+    }
+
+    private void atteindre(int etat, int total, int route, int precedent) {
+        if (marque[etat] == generation && distance[etat] <= total) {
+            return;
+        }
+        marque[etat] = generation;
+        distance[etat] = total;
+        routeArrivee[etat] = route;
+        etatPrecedent[etat] = precedent;
+        ajouter(((long) total << 32) | etat);
+    }
+
+    private void ajouter(long element) {
+        if (tailleTas == tas.length) {
+            tas = Arrays.copyOf(tas, 2 * tas.length);
+        }
+        int i = tailleTas++;
+        while (i > 0 && tas[(i - 1) / 2] > element) {
+            tas[i] = tas[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        tas[i] = element;
+    }
+
+    private long retirer() {
+        long sommet = tas[0];
+        long dernier = tas[--tailleTas];
+        int i = 0;
+        while (2 * i + 1 < tailleTas) {
+            int fils = 2 * i + 1;
+            if (fils + 1 < tailleTas && tas[fils + 1] < tas[fils]) {
+                fils++;
+            }
+            if (tas[fils] >= dernier) {
+                break;
+            }
+            tas[i] = tas[fils];
+            i = fils;
+        }
+        tas[i] = dernier;
+        return sommet;
+    }
+}
@@ -0,0 +1,171 @@
+package fr.umontpellier.iut.rails;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Roue temporelle (« timer wheel ») : exécute des tâches après un délai, avec
+ * une précision de l'ordre de la durée d'un cran de la roue.
+ * <p>
+ * La roue est un tableau circulaire de {@link #NB_CRANS} crans. Un unique thread
+ * avance d'un cran à chaque {@link #DUREE_CRAN} et exécute les tâches du cran
+ * dont le nombre de tours restants est nul. L'ajout et l'annulation d'une tâche
+ * se font en temps constant et sans verrou : les tâches ajoutées sont placées
+ * dans une file que le thread de la roue vide à chaque cran, et une tâche
+ * annulée est simplement marquée (elle est retirée lorsque la roue passe sur son
+ * cran).
+ * <p>
+ * Une seule roue ({@link #getInstance()}) est partagée par toutes les parties
+ * d'un serveur : une partie en attente d'une décision n'occupe pas de thread
+ * supplémentaire, et une échéance annulée ne reste en mémoire qu'au plus un tour
+ * de roue.
+ */
+public final class RoueTemporelle {
+    /**
+     * Nombre de crans de la roue
+     */
+    static final int NB_CRANS = 512;
+    /**
+     * Durée d'un cran de la roue
+     */
+    static final Duration DUREE_CRAN = Duration.ofMillis(20);
+
+    private static volatile RoueTemporelle instance;
+
+    /**
+     * Tâche programmée sur la roue
+     */
+    public static final class Echeance {
+        private final Runnable tache;
+        /**
+         * Nombre de tours complets de la roue avant l'exécution (uniquement
+         * manipulé par le thread de la roue)
+         */
+        private long toursRestants;
+        private final long nbCrans;
+        private volatile boolean annulee;
+        /**
+         * Échéance suivante dans le même cran
+         */
+        private Echeance suivante;
+
+        private Echeance(Runnable tache, long nbCrans) {
+            this.tache = tache;
+            this.nbCrans = nbCrans;
+        }
+
+        /**
+         * Annule l'échéance (sans effet si la tâche a déjà été exécutée)
+         */
+        public void annuler() {
+            annulee = true;
+        }
+    }
+
+    private final long dureeCranNanos;
+    /**
+     * Premières échéances de chaque cran (listes chaînées, uniquement manipulées
+     * par le thread de la roue)
+     */
+    private final Echeance[] crans = new Echeance[NB_CRANS];
+    private final ConcurrentLinkedQueue<Echeance> nouvelles = new ConcurrentLinkedQueue<>();
+    private int cranCourant;
+
+    RoueTemporelle(Duration dureeCran) {
+        this.dureeCranNanos = dureeCran.toNanos();
+        Thread thread = new Thread(this::tourner, "roue-temporelle");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return la roue partagée (démarrée à la première utilisation)
+     */
+    public static RoueTemporelle getInstance() {
+        if (instance == null) {
+            synchronized (RoueTemporelle.class) {
+                if (instance == null) {
+                    instance = new RoueTemporelle(DUREE_CRAN);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Programme l'exécution d'une tâche après un délai. La tâche est exécutée par
+     * le thread de la roue : elle doit être courte et ne pas bloquer.
+     *
+     * @return l'échéance, qui permet d'annuler la tâche
+     */
+    public Echeance planifier(Duration delai, Runnable tache) {
+        // arrondi au cran supérieur (au moins un cran)
+        long nbCrans = Math.max(1, (delai.toNanos() + dureeCranNanos - 1) / dureeCranNanos);
+        Echeance echeance = new Echeance(tache, nbCrans);
+        nouvelles.add(echeance);
+        return echeance;
+    }
+
+    private void tourner() {
+        long prochainCran = System.nanoTime() + dureeCranNanos;
+        while (true) {
+            long attente = prochainCran - System.nanoTime();
+            if (attente > 0) {
+                try {
+                    Thread.sleep(attente / 1_000_000, (int) (attente % 1_000_000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            prochainCran += dureeCranNanos;
+            placerNouvelles();
+            cranCourant = (cranCourant + 1) % NB_CRANS;
+            executerCran();
+        }
+    }
+
+    /**
+     * Place les échéances ajoutées depuis le dernier cran (le décompte commence
+     * au cran courant)
+     */
+    private void placerNouvelles() {
+        for (Echeance e = nouvelles.poll(); e != null; e = nouvelles.poll()) {
+            if (e.annulee) {
+                continue;
+            }
+            e.toursRestants = (e.nbCrans - 1) / NB_CRANS;
+            int cran = (int) ((cranCourant + e.nbCrans) % NB_CRANS);
+            e.suivante = crans[cran];
+            crans[cran] = e;
+        }
+    }
+
+    private void executerCran() {
+        Echeance precedente = null;
+        Echeance e = crans[cranCourant];
+        while (e != null) {
+            Echeance suivante = e.suivante;
+            boolean retirer = e.annulee || e.toursRestants == 0;
+            if (retirer) {
+                if (precedente == null) {
+                    crans[cranCourant] = suivante;
+                } else {
+                    precedente.suivante = suivante;
+                }
+                e.suivante = null;
+                if (!e.annulee) {
+                    try {
+                        e.tache.run();
+                    } catch (RuntimeException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            } else {
+                e.toursRestants--;
+                precedente = e;
+            }
+            e = suivante;
+        }
+    }
+}
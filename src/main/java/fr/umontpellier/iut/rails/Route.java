@@ -115,11 +115,11 @@ public abstract class Route {
         if (jeu.getJoueurs().size() <= 3) {
             // s'il y a 3 joueurs ou moins, on peut capturer une route double si la
             // route parallèle n'a pas déjà été capturée
-            return jeu.getRoutesLibres().contains(routeParallele);
+            return jeu.estRouteLibre(routeParallele);
         } else {
             // s'il y a au moins 4 joueurs, on peut capturer une route double si la route
             // parallelle n'a pas déjà été capturée par le même joueur
-            return !joueur.getRoutes().contains(routeParallele);
+            return !joueur.possedeRoute(routeParallele);
         }
     }
 
@@ -2,6 +2,7 @@ package fr.umontpellier.iut.rails;
 
 import fr.umontpellier.iut.rails.data.CarteTransport;
 import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.ListeCartesTransport;
 import fr.umontpellier.iut.rails.data.TypeCarteTransport;
 import fr.umontpellier.iut.rails.data.Ville;
 
@@ -27,20 +28,20 @@ public class RouteMaritime extends Route {
             return false;
         }
 
-        CarteTransport.Catalogue cartesTransport = new CarteTransport.Catalogue(joueur.getCartesTransport());
+        ListeCartesTransport cartesTransport = joueur.getCartesTransport();
         return cartesTransport.getValeur(TypeCarteTransport.BATEAU, getCouleur(), true) >= getLongueur();
     }
 
-    Collection<CarteTransport> getOptionsPourPayer(CarteTransport.Catalogue catalogueMain,
-            CarteTransport.Catalogue cataloguePosees, Couleur couleur, int valeurRestante) {
+    Collection<CarteTransport> getOptionsPourPayer(ListeCartesTransport cartesMain,
+            ListeCartesTransport cartesPosees, Couleur couleur, int valeurRestante) {
 
         Collection<CarteTransport> options = new HashSet<>();
-        boolean aPoseCarteSimple = !cataloguePosees.getSimples(TypeCarteTransport.BATEAU, couleur).isEmpty() ||
-                !cataloguePosees.get(TypeCarteTransport.JOKER, Couleur.GRIS).isEmpty();
+        boolean aPoseCarteSimple = cartesPosees.getNombre(TypeCarteTransport.BATEAU, couleur, false) > 0 ||
+                cartesPosees.getNombre(TypeCarteTransport.JOKER, Couleur.GRIS) > 0;
         List<CarteTransport> cartesSimplesMain = new ArrayList<>(
-                catalogueMain.get(TypeCarteTransport.JOKER, Couleur.GRIS));
-        cartesSimplesMain.addAll(catalogueMain.getSimples(TypeCarteTransport.BATEAU, couleur));
-        List<CarteTransport> cartesDoublesMain = catalogueMain.getDoubles(TypeCarteTransport.BATEAU, couleur);
+                cartesMain.get(TypeCarteTransport.JOKER, Couleur.GRIS));
+        cartesSimplesMain.addAll(cartesMain.getSimples(TypeCarteTransport.BATEAU, couleur));
+        List<CarteTransport> cartesDoublesMain = cartesMain.getDoubles(TypeCarteTransport.BATEAU, couleur);
 
         if (cartesSimplesMain.size() + 2 * cartesDoublesMain.size() >= valeurRestante) {
             // le joueur a assez de cartes pour payer la route dans la couleur demandée
@@ -55,7 +56,7 @@ public class RouteMaritime extends Route {
                 // on peut défausser une carte double (soit le joueur n'a pas joué de cartes
                 // simples, donc on peut dépasser, soit la carte double ne fera pas dépasser et
                 // on pourra atteindre la valeur exacte)
-                options.addAll(catalogueMain.getDoubles(TypeCarteTransport.BATEAU, couleur));
+                options.addAll(cartesMain.getDoubles(TypeCarteTransport.BATEAU, couleur));
             }
         }
         return options;
@@ -65,28 +66,28 @@ public class RouteMaritime extends Route {
     public void payerPar(Joueur joueur) {
         int longueur = getLongueur();
         while (true) {
-            CarteTransport.Catalogue cataloguePosees = new CarteTransport.Catalogue(joueur.getCartesTransportPosees());
-            int valeurRestante = longueur - cataloguePosees.getValeur();
+            ListeCartesTransport cartesPosees = joueur.getCartesTransportPosees();
+            int valeurRestante = longueur - cartesPosees.getValeur();
             if (valeurRestante <= 0) {
                 // la route est entièrement payée
                 break;
             }
 
             Collection<CarteTransport> optionsCartes;
-            CarteTransport.Catalogue catalogueMain = new CarteTransport.Catalogue(joueur.getCartesTransport());
+            ListeCartesTransport cartesMain = joueur.getCartesTransport();
             Couleur couleur = getCouleur();
             if (couleur == Couleur.GRIS) {
                 // si la route est grise mais que le joueur a commencé à payer avec une couleur
                 // on n'accepte que des cartes de cette couleur
-                couleur = cataloguePosees.getCouleur();
+                couleur = cartesPosees.getCouleur();
             }
             if (couleur == Couleur.GRIS) {
                 optionsCartes = new HashSet<>();
                 for (Couleur c : Couleur.getCouleursSimples()) {
-                    optionsCartes.addAll(getOptionsPourPayer(catalogueMain, cataloguePosees, c, valeurRestante));
+                    optionsCartes.addAll(getOptionsPourPayer(cartesMain, cartesPosees, c, valeurRestante));
                 }
             } else {
-                optionsCartes = getOptionsPourPayer(catalogueMain, cataloguePosees, couleur, valeurRestante);
+                optionsCartes = getOptionsPourPayer(cartesMain, cartesPosees, couleur, valeurRestante);
             }
 
             String choix = joueur.choisir(
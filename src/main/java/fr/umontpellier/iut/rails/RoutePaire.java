@@ -2,6 +2,7 @@ package fr.umontpellier.iut.rails;
 
 import fr.umontpellier.iut.rails.data.CarteTransport;
 import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.ListeCartesTransport;
 import fr.umontpellier.iut.rails.data.TypeCarteTransport;
 import fr.umontpellier.iut.rails.data.Ville;
 
@@ -26,13 +27,13 @@ public class RoutePaire extends Route {
             return false;
         }
 
-        CarteTransport.Catalogue cartesTransport = new CarteTransport.Catalogue(joueur.getCartesTransport());
+        ListeCartesTransport cartesTransport = joueur.getCartesTransport();
         int nbPaires = 0;
         int nbIsolees = 0;
-        int nbJokers = cartesTransport.get(TypeCarteTransport.JOKER, Couleur.GRIS).size();
+        int nbJokers = cartesTransport.getNombre(TypeCarteTransport.JOKER, Couleur.GRIS);
 
         for (Couleur couleur : Couleur.getCouleursSimples()) {
-            int n = cartesTransport.get(TypeCarteTransport.WAGON, couleur).size();
+            int n = cartesTransport.getNombre(TypeCarteTransport.WAGON, couleur);
             nbPaires += n / 2;
             nbIsolees += n % 2;
         }
@@ -54,17 +55,17 @@ public class RoutePaire extends Route {
                 break;
             }
 
-            CarteTransport.Catalogue cataloguePosees = new CarteTransport.Catalogue(joueur.getCartesTransportPosees());
-            CarteTransport.Catalogue catalogueMain = new CarteTransport.Catalogue(joueur.getCartesTransport());
+            ListeCartesTransport cartesPosees = joueur.getCartesTransportPosees();
+            ListeCartesTransport cartesMain = joueur.getCartesTransport();
 
             // les jokers sont toujours jouables
             List<CarteTransport> optionsCartes = new ArrayList<>(
-                    catalogueMain.get(TypeCarteTransport.JOKER, Couleur.GRIS));
+                    cartesMain.get(TypeCarteTransport.JOKER, Couleur.GRIS));
 
             // nombre de jokers déjà posés
-            int nbJokersPoses = cataloguePosees.get(TypeCarteTransport.JOKER, Couleur.GRIS).size();
+            int nbJokersPoses = cartesPosees.getNombre(TypeCarteTransport.JOKER, Couleur.GRIS);
             // nombre de jokers que le joueur a en main
-            int nbJokersMain = catalogueMain.get(TypeCarteTransport.JOKER, Couleur.GRIS).size();
+            int nbJokersMain = cartesMain.getNombre(TypeCarteTransport.JOKER, Couleur.GRIS);
             // couleurs pour lesquelles il y a un nombre impair de cartes posées
             List<Couleur> couleursImpaires = new ArrayList<>();
             // couleurs pour lesquelles il y a un nombre pair de cartes posées
@@ -77,14 +78,14 @@ public class RoutePaire extends Route {
             List<Couleur> couleursNombreuses = new ArrayList<>();
 
             for (Couleur c : Couleur.getCouleursSimples()) {
-                if (cataloguePosees.get(TypeCarteTransport.WAGON, c).size() % 2 == 1) {
+                if (cartesPosees.getNombre(TypeCarteTransport.WAGON, c) % 2 == 1) {
                     couleursImpaires.add(c);
-                    if (catalogueMain.get(TypeCarteTransport.WAGON, c).isEmpty()) {
+                    if (cartesMain.getNombre(TypeCarteTransport.WAGON, c) == 0) {
                         nbCouleursImpairesNonCompletables += 1;
                     }
                 } else {
                     couleursPaires.add(c);
-                    if (catalogueMain.get(TypeCarteTransport.WAGON, c).size() >= 2) {
+                    if (cartesMain.getNombre(TypeCarteTransport.WAGON, c) >= 2) {
                         couleursNombreuses.add(c);
                     }
                 }
@@ -92,7 +93,7 @@ public class RoutePaire extends Route {
 
             // les cartes qui complètent une couleur impaire sont toujours jouables
             for (Couleur c : couleursImpaires) {
-                optionsCartes.addAll(catalogueMain.get(TypeCarteTransport.WAGON, c));
+                optionsCartes.addAll(cartesMain.get(TypeCarteTransport.WAGON, c));
             }
 
             // nombre de paires qui ne sont pas encore complétées
@@ -104,12 +105,12 @@ public class RoutePaire extends Route {
                     // on peut jouer n'importe quelle couleur (la paire peut être complétée par un
                     // joker)
                     for (Couleur c : couleursPaires) {
-                        optionsCartes.addAll(catalogueMain.get(TypeCarteTransport.WAGON, c));
+                        optionsCartes.addAll(cartesMain.get(TypeCarteTransport.WAGON, c));
                     }
                 } else {
                     // on peut jouer n'importe quelle couleur dont on a au moins 2 cartes
                     for (Couleur c : couleursNombreuses) {
-                        optionsCartes.addAll(catalogueMain.get(TypeCarteTransport.WAGON, c));
+                        optionsCartes.addAll(cartesMain.get(TypeCarteTransport.WAGON, c));
                     }
                 }
             }
@@ -2,6 +2,7 @@ package fr.umontpellier.iut.rails;
 
 import fr.umontpellier.iut.rails.data.CarteTransport;
 import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.ListeCartesTransport;
 import fr.umontpellier.iut.rails.data.TypeCarteTransport;
 import fr.umontpellier.iut.rails.data.Ville;
 
@@ -27,7 +28,7 @@ public class RouteTerrestre extends Route {
             return false;
         }
 
-        CarteTransport.Catalogue cartesTransport = new CarteTransport.Catalogue(joueur.getCartesTransport());
+        ListeCartesTransport cartesTransport = joueur.getCartesTransport();
         return (cartesTransport.getValeur(TypeCarteTransport.WAGON, getCouleur(), true) >= getLongueur());
     }
 
@@ -35,31 +36,31 @@ public class RouteTerrestre extends Route {
     public void payerPar(Joueur joueur) {
         int longueur = getLongueur();
         while (true) {
-            CarteTransport.Catalogue cataloguePosees = new CarteTransport.Catalogue(joueur.getCartesTransportPosees());
-            int valeurPosee = cataloguePosees.getValeur();
+            ListeCartesTransport cartesPosees = joueur.getCartesTransportPosees();
+            int valeurPosee = cartesPosees.getValeur();
             if (valeurPosee >= longueur) {
                 // la route est entièrement payée
                 break;
             }
 
-            CarteTransport.Catalogue catalogueMain = new CarteTransport.Catalogue(joueur.getCartesTransport());
+            ListeCartesTransport cartesMain = joueur.getCartesTransport();
             Couleur couleur = getCouleur();
             if (couleur == Couleur.GRIS) {
                 // si la route est grise mais que le joueur a commencé à payer avec une couleur
                 // on n'accepte que des cartes de cette couleur
-                couleur = cataloguePosees.getCouleur();
+                couleur = cartesPosees.getCouleur();
             }
 
             List<CarteTransport> optionsCartes = new ArrayList<>(
-                    catalogueMain.get(TypeCarteTransport.JOKER, Couleur.GRIS));
+                    cartesMain.get(TypeCarteTransport.JOKER, Couleur.GRIS));
             if (couleur == Couleur.GRIS) {
                 for (Couleur c : Couleur.getCouleursSimples()) {
-                    if (catalogueMain.getValeur(TypeCarteTransport.WAGON, c, true) >= longueur - valeurPosee) {
-                        optionsCartes.addAll(catalogueMain.get(TypeCarteTransport.WAGON, c));
+                    if (cartesMain.getValeur(TypeCarteTransport.WAGON, c, true) >= longueur - valeurPosee) {
+                        optionsCartes.addAll(cartesMain.get(TypeCarteTransport.WAGON, c));
                     }
                 }
             } else {
-                optionsCartes.addAll(catalogueMain.get(TypeCarteTransport.WAGON, couleur));
+                optionsCartes.addAll(cartesMain.get(TypeCarteTransport.WAGON, couleur));
             }
 
             String choix = joueur.choisir(
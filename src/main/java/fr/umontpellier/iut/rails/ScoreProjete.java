@@ -0,0 +1,265 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.umontpellier.iut.rails.data.Destination;
+import fr.umontpellier.iut.rails.data.Ville;
+
+/**
+ * Partie du score projeté d'un joueur (score qu'il aurait si la partie
+ * s'arrêtait maintenant, voir {@link Joueur#calculerScoreFinal()}) qui ne vient
+ * pas des routes : points des destinations complètes, pénalités des
+ * destinations incomplètes et bonus des ports.
+ * <p>
+ * Le bonus est maintenu au fur et à mesure des captures de routes, des
+ * constructions de ports et des prises de destinations (signalées par le
+ * joueur), si bien qu'il se lit en temps constant. Les villes reliées par les
+ * routes du joueur sont représentées par une structure union-find : comme un
+ * joueur ne perd jamais de route, une destination complète le reste, et seules
+ * les destinations incomplètes sont réexaminées après une capture.
+ * <p>
+ * Les listes de routes, de ports et de destinations du joueur peuvent aussi être
+ * modifiées directement (tests, import d'un état de simulation) : un compteur de
+ * modifications par liste permet de le détecter, et le bonus est alors
+ * recalculé entièrement.
+ */
+final class ScoreProjete {
+    /**
+     * Liste des destinations d'un joueur, qui expose son compteur de
+     * modifications
+     */
+    static final class Destinations extends ArrayList<Destination> {
+        private static final long serialVersionUID = 1L;
+
+        int getNbModifications() {
+            return modCount;
+        }
+    }
+
+    private final EnsembleIndexe<Route> routes;
+    private final EnsembleIndexe<Ville> ports;
+    private final Destinations destinations;
+
+    /**
+     * Identifiants des villes (attribués à la première rencontre) et parent de
+     * chaque ville dans la structure union-find
+     */
+    private final Map<String, Integer> idsVilles = new HashMap<>();
+    private int[] parent = new int[64];
+    /**
+     * Identifiants des villes de chaque destination du joueur (dans l'ordre de la
+     * liste des destinations)
+     */
+    private final List<int[]> villesDestinations = new ArrayList<>();
+    /**
+     * Positions des destinations complètes dans la liste des destinations
+     */
+    private final BitSet completes = new BitSet();
+    /**
+     * Nombre de destinations complètes passant par chaque ville portuaire
+     * (indexé par identifiant de port)
+     */
+    private final int[] nbDestinationsPort;
+    private int bonusDestinations;
+    private int bonusPorts;
+
+    private int nbModificationsRoutes;
+    private int nbModificationsPorts;
+    private int nbModificationsDestinations;
+
+    ScoreProjete(EnsembleIndexe<Route> routes, EnsembleIndexe<Ville> ports, Destinations destinations) {
+        this.routes = routes;
+        this.ports = ports;
+        this.destinations = destinations;
+        this.nbDestinationsPort = new int[ports.getIndex().taille()];
+        reconstruire();
+    }
+
+    /**
+     * @return les points des destinations et des ports (à ajouter au score des
+     * routes et des échanges de pions)
+     */
+    int getBonus() {
+        if (!estAJour(0, 0, 0)) {
+            reconstruire();
+        }
+        return bonusDestinations + bonusPorts;
+    }
+
+    /**
+     * @return true si la destination à la position {@code i} de la liste des
+     * destinations du joueur est complète
+     */
+    boolean estComplete(int i) {
+        if (!estAJour(0, 0, 0)) {
+            reconstruire();
+        }
+        return completes.get(i);
+    }
+
+    /**
+     * Signale que le joueur vient d'ajouter une route à ses routes
+     */
+    void routeAjoutee(Route r) {
+        if (!estAJour(1, 0, 0)) {
+            reconstruire();
+            return;
+        }
+        nbModificationsRoutes++;
+        if (unir(idVille(r.getVille1().nom()), idVille(r.getVille2().nom()))) {
+            for (int i = completes.nextClearBit(0); i < villesDestinations.size(); i = completes.nextClearBit(i + 1)) {
+                if (estReliee(villesDestinations.get(i))) {
+                    completer(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Signale que le joueur vient d'ajouter un port à ses ports
+     */
+    void portAjoute(Ville ville) {
+        if (!estAJour(0, 1, 0)) {
+            reconstruire();
+            return;
+        }
+        nbModificationsPorts++;
+        int port = ports.getIndex().getId(ville);
+        bonusPorts += valeurPort(nbDestinationsPort[port]) + 4;
+    }
+
+    /**
+     * Signale que le joueur vient d'ajouter des destinations à la fin de sa liste
+     * de destinations (par un seul appel à {@code add} ou {@code addAll})
+     */
+    void destinationsAjoutees(Collection<Destination> nouvelles) {
+        if (!estAJour(0, 0, 1)) {
+            reconstruire();
+            return;
+        }
+        nbModificationsDestinations++;
+        for (Destination d : nouvelles) {
+            ajouterDestination(d);
+        }
+    }
+
+    private boolean estAJour(int nbRoutesAjoutees, int nbPortsAjoutes, int nbAjoutsDestinations) {
+        return routes.getNbModifications() == nbModificationsRoutes + nbRoutesAjoutees
+                && ports.getNbModifications() == nbModificationsPorts + nbPortsAjoutes
+                && destinations.getNbModifications() == nbModificationsDestinations + nbAjoutsDestinations;
+    }
+
+    /**
+     * Recalcule entièrement le bonus à partir des listes du joueur
+     */
+    private void reconstruire() {
+        for (int i = 0; i < idsVilles.size(); i++) {
+            parent[i] = i;
+        }
+        for (Route r : routes) {
+            unir(idVille(r.getVille1().nom()), idVille(r.getVille2().nom()));
+        }
+        villesDestinations.clear();
+        completes.clear();
+        Arrays.fill(nbDestinationsPort, 0);
+        bonusDestinations = 0;
+        bonusPorts = -4 * (3 - ports.size());
+        for (Destination d : destinations) {
+            ajouterDestination(d);
+        }
+        nbModificationsRoutes = routes.getNbModifications();
+        nbModificationsPorts = ports.getNbModifications();
+        nbModificationsDestinations = destinations.getNbModifications();
+    }
+
+    private void ajouterDestination(Destination d) {
+        List<String> villes = d.getVilles();
+        int[] ids = new int[villes.size()];
+        for (int k = 0; k < ids.length; k++) {
+            ids[k] = idVille(villes.get(k));
+        }
+        villesDestinations.add(ids);
+        bonusDestinations -= d.getPenalite();
+        if (estReliee(ids)) {
+            completer(villesDestinations.size() - 1);
+        }
+    }
+
+    /**
+     * Marque comme complète la destination à la position {@code i} et met à jour
+     * les bonus des ports par lesquels elle passe
+     */
+    private void completer(int i) {
+        completes.set(i);
+        Destination d = destinations.get(i);
+        bonusDestinations += d.getValeurSimple() + d.getPenalite();
+        // le nombre de destinations est compté pour tous les ports (y compris ceux
+        // que le joueur n'a pas encore construits)
+        for (int port = 0; port < nbDestinationsPort.length; port++) {
+            if (d.getVilles().contains(ports.getIndex().get(port).nom())) {
+                nbDestinationsPort[port]++;
+                if (ports.contientId(port)) {
+                    bonusPorts += valeurPort(nbDestinationsPort[port]) - valeurPort(nbDestinationsPort[port] - 1);
+                }
+            }
+        }
+    }
+
+    private static int valeurPort(int nbDestinations) {
+        return switch (nbDestinations) {
+            case 0 -> 0;
+            case 1 -> 20;
+            case 2 -> 30;
+            default -> 40;
+        };
+    }
+
+    private boolean estReliee(int[] villes) {
+        for (int k = 0; k + 1 < villes.length; k++) {
+            if (trouver(villes[k]) != trouver(villes[k + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int idVille(String nom) {
+        Integer id = idsVilles.get(nom);
+        if (id == null) {
+            id = idsVilles.size();
+            idsVilles.put(nom, id);
+            if (id == parent.length) {
+                parent = Arrays.copyOf(parent, 2 * parent.length);
+            }
+            parent[id] = id;
+        }
+        return id;
+    }
+
+    private int trouver(int ville) {
+        while (parent[ville] != ville) {
+            parent[ville] = parent[parent[ville]];
+            ville = parent[ville];
+        }
+        return ville;
+    }
+
+    /**
+     * @return true si les deux villes n'étaient pas encore reliées
+     */
+    private boolean unir(int ville1, int ville2) {
+        int r1 = trouver(ville1);
+        int r2 = trouver(ville2);
+        if (r1 == r2) {
+            return false;
+        }
+        parent[r1] = r2;
+        return true;
+    }
+}
@@ -0,0 +1,92 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.umontpellier.iut.rails.data.Destination;
+
+/**
+ * Routes à mettre en surbrillance dans l'interface graphique lorsque le curseur
+ * passe sur une destination d'un joueur (voir
+ * {@link Joueur#routesEnSurbrillancePourDestination(Destination)}), pour un
+ * état donné du plateau : propriétaires des routes et pions (y compris ceux de
+ * la réserve) de chaque joueur.
+ * <p>
+ * Les routes ne sont calculées que lorsqu'un client les demande, puis conservées
+ * : la partie réutilise le même objet tant que le plateau ne change pas (voir
+ * {@link Jeu#getSurbrillanceDestinations()}). L'état du plateau est recopié à
+ * la création, si bien que l'objet peut être interrogé par un autre thread que
+ * celui de la partie.
+ */
+public final class SurbrillanceDestinations {
+    static final byte SANS_PROPRIETAIRE = -1;
+
+    /**
+     * Planificateur partagé avec les autres objets de la partie (utilisé sous son
+     * verrou)
+     */
+    private final PlanificateurDestinations planificateur;
+    private final Index<Route> indexRoutes;
+    private final Index<Destination> indexDestinations;
+    /**
+     * Numéro du joueur qui possède chaque route ({@link #SANS_PROPRIETAIRE} si la
+     * route est libre)
+     */
+    private final byte[] proprietaires;
+    private final int[] maxWagons;
+    private final int[] maxBateaux;
+    /**
+     * Routes déjà calculées, indexées par numéro de joueur et identifiant de
+     * destination
+     */
+    private final Map<Long, List<String>> routes = new HashMap<>();
+
+    SurbrillanceDestinations(PlanificateurDestinations planificateur, Index<Route> indexRoutes,
+            Index<Destination> indexDestinations, byte[] proprietaires, int[] maxWagons, int[] maxBateaux) {
+        this.planificateur = planificateur;
+        this.indexRoutes = indexRoutes;
+        this.indexDestinations = indexDestinations;
+        this.proprietaires = proprietaires;
+        this.maxWagons = maxWagons;
+        this.maxBateaux = maxBateaux;
+    }
+
+    /**
+     * @return true si l'objet correspond au plateau décrit par les arguments
+     */
+    boolean estPourLePlateau(byte[] proprietaires, int[] maxWagons, int[] maxBateaux) {
+        return Arrays.equals(this.proprietaires, proprietaires) && Arrays.equals(this.maxWagons, maxWagons)
+                && Arrays.equals(this.maxBateaux, maxBateaux);
+    }
+
+    /**
+     * Renvoie les noms des routes à mettre en surbrillance pour une destination
+     * d'un joueur (un plus court ensemble de routes pour la compléter)
+     *
+     * @param joueur         le numéro du joueur
+     * @param nomDestination le nom de la destination
+     * @return les noms des routes (liste vide si la destination est complète, ne
+     *         peut pas être complétée ou n'existe pas)
+     */
+    public List<String> routesPourDestination(int joueur, String nomDestination) {
+        int destination = indexDestinations.getId(nomDestination);
+        if (joueur < 0 || joueur >= maxWagons.length || destination < 0) {
+            return List.of();
+        }
+        synchronized (planificateur) {
+            return routes.computeIfAbsent(((long) joueur << 32) | destination, cle -> {
+                byte[] etatsRoutes = new byte[proprietaires.length];
+                for (int r = 0; r < etatsRoutes.length; r++) {
+                    etatsRoutes[r] = proprietaires[r] == SANS_PROPRIETAIRE ? PlanificateurDestinations.LIBRE
+                            : proprietaires[r] == joueur ? PlanificateurDestinations.POSSEDEE
+                            : PlanificateurDestinations.PRISE;
+                }
+                int[] ids = planificateur.planifier(indexDestinations.get(destination).getVilles(), etatsRoutes,
+                        maxWagons[joueur], maxBateaux[joueur]);
+                return Arrays.stream(ids).mapToObj(r -> indexRoutes.get(r).getNom()).toList();
+            });
+        }
+    }
+}
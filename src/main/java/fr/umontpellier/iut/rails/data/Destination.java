@@ -81,75 +81,28 @@ public class Destination {
     }
 
     /**
-     * @return une liste contenant toutes les destinations du jeu
+     * @return une liste contenant toutes les destinations du jeu (décrites dans
+     *         la ressource {@code /plateaux/monde.txt}, voir
+     *         {@link ImagePlateau#monde()})
      */
     public static ArrayList<Destination> makeDestinationsMonde() {
-        ArrayList<Destination> destinations = new ArrayList<>();
-        destinations.add(new Destination("Mumbai", "Beijing", 6)); // D1
-        destinations.add(new Destination("Bangkok", "Tokyo", 6)); // D2
-        destinations.add(new Destination("Lima", "Jakarta", 14)); // D3
-        destinations.add(new Destination("Moskva", "Hong Kong", 13)); // D4
-        destinations.add(new Destination("Marseille", "Beijing", 14)); // D5
-        destinations.add(new Destination("Buenos Aires", "Sydney", 13)); // D6
-        destinations.add(new Destination("Buenos Aires", "Marseille", 18)); // D7
-        destinations.add(new Destination("Vancouver", "Miami", 9)); // D8
-        destinations.add(new Destination("Djibouti", "Lahore", 7)); // D9
-        destinations.add(new Destination("Mexico", "Mumbai", 15)); // D10
-        destinations.add(new Destination("Mexico", "New York", 11)); // D11
-        destinations.add(new Destination("Rio de Janeiro", "Hamburg", 18)); // D12
-        destinations.add(new Destination("New York", "Cape Town", 19)); // D13
-        destinations.add(new Destination("Edinburgh", "Sydney", 25)); // D14
-        destinations.add(new Destination("Edinburgh", "Tokyo", 22)); // D15
-        destinations.add(new Destination("Winnipeg", "Perth", 14)); // D16
-        destinations.add(new Destination("Jakarta", "Sydney", 7)); // D17
-        destinations.add(new Destination("Caracas", "Al-Qahira", 13)); // D18
-        destinations.add(new Destination("Hong Kong", "Jakarta", 5)); // D19
-        destinations.add(new Destination("Casablanca", "Yakutsk", 16)); // D20
-        destinations.add(new Destination("Athina", "Manila", 14)); // D21
-        destinations.add(new Destination("Cape Town", "Jakarta", 13)); // D22
-        destinations.add(new Destination("Marseille", "Al-Qahira", 5)); // D23
-        destinations.add(new Destination("Moskva", "Petropavlovsk", 15)); // D24
-        destinations.add(new Destination("Hamburg", "Beijing", 13)); // D25
-        destinations.add(new Destination("Moskva", "Toamasina", 11)); // D26
-        destinations.add(new Destination("Lagos", "Tehran", 10)); // D27
-        destinations.add(new Destination("Reykjavik", "Mumbai", 13)); // D28
-        destinations.add(new Destination("Hamburg", "Dar Es Salaam", 8)); // D29
-        destinations.add(new Destination("Caracas", "Athina", 12)); // D30
-        destinations.add(new Destination("Tokyo", "Sydney", 11)); // D31
-        destinations.add(new Destination("Al-Qahira", "Sydney", 19)); // D32
-        destinations.add(new Destination("Los Angeles", "Jakarta", 11)); // D33
-        destinations.add(new Destination("Marseille", "Jakarta", 18)); // D34
-        destinations.add(new Destination("Miami", "Buenos Aires", 9)); // D35
-        destinations.add(new Destination("Rio de Janeiro", "Perth", 17)); // D36
-        destinations.add(new Destination("Valparaiso", "Rio de Janeiro", 6)); // D37
-        destinations.add(new Destination("Los Angeles", "Hamburg", 14)); // D38
-        destinations.add(new Destination("Edinburgh", "Hong Kong", 17)); // D39
-        destinations.add(new Destination("New York", "Marseille", 10)); // D40
-        destinations.add(new Destination("Rio de Janeiro", "Tokyo", 20)); // D41
-        destinations.add(new Destination("New York", "Sydney", 17)); // D42
-        destinations.add(new Destination("Los Angeles", "Rio de Janeiro", 15)); // D43
-        destinations.add(new Destination("Casablanca", "Honolulu", 16)); // D44
-        destinations.add(new Destination("Miami", "Moskva", 13)); // D45
-        destinations.add(new Destination("Buenos Aires", "Manila", 17)); // D46
-        destinations.add(new Destination("Los Angeles", "Dar Es Salaam", 17)); // D47
-        destinations.add(new Destination("Dar Es Salaam", "Tokyo", 15)); // D48
-        destinations.add(new Destination("New York", "Tokyo", 15)); // D49
-        destinations.add(new Destination("New York", "Mumbai", 19)); // D50
-        destinations.add(new Destination("Novosibirsk", "Darwin", 13)); // D51
-        destinations.add(new Destination("Rio de Janeiro", "Dar Es Salaam", 11)); // D52
-        destinations.add(new Destination("Mexico", "Beijing", 13)); // D53
-        destinations.add(new Destination("Edinburgh", "Luanda", 10)); // D54
-        destinations.add(new Destination("Marseille", "Christchurch", 23)); // D55
-        destinations.add(new Destination("Vancouver", "Edinburgh", 13)); // D56
-        destinations.add(new Destination("Lagos", "Hong Kong", 14)); // D57
-        destinations.add(new Destination(List.of("Manila", "Honolulu", "Port Moresby", "Darwin"), 9, 13, 19)); // D58
-        destinations.add(new Destination(List.of("Anchorage", "Cambridge Bay", "Reykjavik", "Murmansk", "Tiksi"), 23, 34, 40)); // D59
-        destinations.add(new Destination(List.of("Anchorage", "Vancouver", "Winnipeg", "Cambridge Bay"), 12, 18, 24)); // D60
-        destinations.add(new Destination(List.of("Casablanca", "Al-Qahira", "Tehran"), 6, 9, 15)); // D61
-        destinations.add(new Destination(List.of("Mexico", "Caracas", "Lima", "Valparaiso"), 10, 15, 21)); // D62
-        destinations.add(new Destination(List.of("Lagos", "Luanda", "Dar Es Salaam", "Djibouti"), 6, 9, 15)); // D63
-        destinations.add(new Destination(List.of("Tehran", "Lahore", "Mumbai", "Bangkok"), 9, 13, 19)); // D64
-        destinations.add(new Destination(List.of("Murmansk", "Tiksi", "Novosibirsk", "Yakutsk", "Petropavlovsk"), 20, 30, 36)); // D65
+        return depuisImage(ImagePlateau.monde());
+    }
+
+    /**
+     * @return une liste contenant les destinations d'un plateau, dans l'ordre de
+     *         son image
+     */
+    public static ArrayList<Destination> depuisImage(ImagePlateau image) {
+        ArrayList<Destination> destinations = new ArrayList<>(image.getNbDestinations());
+        for (int d = 0; d < image.getNbDestinations(); d++) {
+            List<String> villes = new ArrayList<>();
+            for (int ville : image.getVillesDestination(d)) {
+                villes.add(image.getNomVille(ville));
+            }
+            destinations.add(new Destination(villes, image.getValeurSimple(d), image.getValeurMax(d),
+                    image.getPenalite(d)));
+        }
         return destinations;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,416 @@
+package fr.umontpellier.iut.rails.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Image binaire d'un plateau (villes, routes et destinations), compilée une
+ * fois à partir d'une description textuelle et partagée en lecture seule par
+ * toutes les parties qui utilisent ce plateau (voir
+ * {@link Plateau#depuisImage(ImagePlateau)} et
+ * {@link Destination#depuisImage(ImagePlateau)}).
+ * <p>
+ * Format de la description (texte UTF-8, une ligne par élément, champs séparés
+ * par des tabulations, lignes vides et lignes commençant par # ignorées) :
+ * <pre>
+ * ville       &lt;nom&gt;
+ * port        &lt;nom&gt;
+ * terrestre   &lt;ville 1&gt; &lt;ville 2&gt; &lt;couleur&gt; &lt;longueur&gt;
+ * maritime    &lt;ville 1&gt; &lt;ville 2&gt; &lt;couleur&gt; &lt;longueur&gt;
+ * paire       &lt;ville 1&gt; &lt;ville 2&gt; &lt;longueur&gt;
+ * destination &lt;valeur&gt; &lt;ville 1&gt; &lt;ville 2&gt;
+ * itineraire  &lt;valeur simple&gt; &lt;valeur max&gt; &lt;pénalité&gt; &lt;villes...&gt;
+ * </pre>
+ * Les routes et les destinations sont créées dans l'ordre du fichier. Le
+ * plateau du jeu est décrit dans la ressource {@code /plateaux/monde.txt}.
+ * <p>
+ * Format de l'image (entiers big-endian) : un en-tête de {@value #TAILLE_ENTETE}
+ * octets (signature, version, nombres de villes, de routes et de destinations,
+ * positions des tables), puis des tables d'enregistrements de taille fixe
+ * (villes sur 8 octets, routes sur 16 octets, avec la route parallèle déjà
+ * calculée), les destinations (table de positions suivie des destinations) et
+ * les noms des villes encodés en UTF-8. Toutes les lectures se font à une
+ * position absolue, sans modifier le tampon : une même image peut être lue par
+ * plusieurs threads, et un fichier image est projeté en mémoire
+ * ({@link #ouvrir(Path)}) plutôt que lu, si bien que même un plateau de
+ * plusieurs centaines de milliers de routes est chargé sans copie et ne
+ * réside qu'une fois en mémoire.
+ */
+public final class ImagePlateau {
+    public enum TypeRoute {
+        TERRESTRE,
+        MARITIME,
+        PAIRE
+    }
+
+    private static final int SIGNATURE = 0x5241494C; // "RAIL"
+    private static final int VERSION = 1;
+    static final int TAILLE_ENTETE = 32;
+    private static final int TAILLE_VILLE = 8;
+    private static final int TAILLE_ROUTE = 16;
+
+    /**
+     * Images déjà projetées en mémoire, indexées par fichier
+     */
+    private static final Map<Path, ImagePlateau> imagesOuvertes = new ConcurrentHashMap<>();
+    private static volatile ImagePlateau monde;
+
+    private final ByteBuffer donnees;
+    private final int nbVilles;
+    private final int nbRoutes;
+    private final int nbDestinations;
+    private final int debutRoutes;
+    private final int debutDestinations;
+
+    private ImagePlateau(ByteBuffer donnees) throws IOException {
+        this.donnees = donnees;
+        if (donnees.capacity() < TAILLE_ENTETE || donnees.getInt(0) != SIGNATURE) {
+            throw new IOException("Format d'image de plateau inconnu");
+        }
+        if (donnees.getInt(4) != VERSION) {
+            throw new IOException("Version d'image de plateau non supportée : " + donnees.getInt(4));
+        }
+        nbVilles = donnees.getInt(8);
+        nbRoutes = donnees.getInt(12);
+        nbDestinations = donnees.getInt(16);
+        debutRoutes = donnees.getInt(20);
+        debutDestinations = donnees.getInt(24);
+    }
+
+    /**
+     * @return l'image du plateau du jeu (compilée une seule fois, à la première
+     *         utilisation, à partir de la ressource {@code /plateaux/monde.txt})
+     */
+    public static ImagePlateau monde() {
+        if (monde == null) {
+            synchronized (ImagePlateau.class) {
+                if (monde == null) {
+                    try (InputStream entree = ImagePlateau.class.getResourceAsStream("/plateaux/monde.txt")) {
+                        if (entree == null) {
+                            throw new IOException("Ressource introuvable : /plateaux/monde.txt");
+                        }
+                        monde = new ImagePlateau(compiler(
+                                new BufferedReader(new InputStreamReader(entree, StandardCharsets.UTF_8)))
+                                .asReadOnlyBuffer());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        }
+        return monde;
+    }
+
+    /**
+     * @return l'image du fichier donné par la propriété système
+     *         {@code rails.plateau} (voir {@link #ouvrir(Path)}), ou le plateau
+     *         du jeu si elle n'est pas définie
+     */
+    public static ImagePlateau parDefaut() {
+        String fichier = System.getProperty("rails.plateau");
+        if (fichier == null) {
+            return monde();
+        }
+        try {
+            return ouvrir(Path.of(fichier));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Projette en mémoire un fichier image (voir {@link #compiler(Path, Path)}).
+     * Un fichier n'est projeté qu'une fois : les appels suivants renvoient la
+     * même image.
+     */
+    public static ImagePlateau ouvrir(Path fichier) throws IOException {
+        Path chemin = fichier.toRealPath();
+        ImagePlateau image = imagesOuvertes.get(chemin);
+        if (image == null) {
+            try (FileChannel canal = FileChannel.open(chemin)) {
+                image = new ImagePlateau(canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()));
+            }
+            ImagePlateau existante = imagesOuvertes.putIfAbsent(chemin, image);
+            if (existante != null) {
+                image = existante;
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Compile une description textuelle de plateau en un fichier image (écrit
+     * sous un nom temporaire puis renommé)
+     */
+    public static void compiler(Path source, Path image) throws IOException {
+        ByteBuffer donnees;
+        try (BufferedReader entree = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            donnees = compiler(entree);
+        }
+        Path temporaire = image.resolveSibling(image.getFileName() + ".tmp");
+        Files.write(temporaire, donnees.array());
+        Files.move(temporaire, image, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Compile une description textuelle de plateau (à utiliser avant de lancer le
+     * serveur avec {@code -Drails.plateau=<image>})
+     * <p>
+     * Usage : {@code ImagePlateau <description> <image>}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage : ImagePlateau <description> <image>");
+            System.exit(1);
+        }
+        compiler(Path.of(args[0]), Path.of(args[1]));
+    }
+
+    private record RouteSource(int ville1, int ville2, TypeRoute type, Couleur couleur, int longueur) {
+    }
+
+    private record DestinationSource(int valeurSimple, int valeurMax, int penalite, int[] villes) {
+    }
+
+    /**
+     * Lit une description textuelle et renvoie l'image correspondante (dans un
+     * tableau d'octets)
+     */
+    static ByteBuffer compiler(BufferedReader entree) throws IOException {
+        List<String> nomsVilles = new ArrayList<>();
+        List<Boolean> ports = new ArrayList<>();
+        Map<String, Integer> idVilles = new HashMap<>();
+        List<RouteSource> routes = new ArrayList<>();
+        List<DestinationSource> destinations = new ArrayList<>();
+
+        String ligne;
+        int numero = 0;
+        while ((ligne = entree.readLine()) != null) {
+            numero++;
+            if (ligne.isBlank() || ligne.startsWith("#")) {
+                continue;
+            }
+            String[] champs = ligne.split("\t");
+            try {
+                switch (champs[0]) {
+                    case "ville", "port" -> {
+                        verifierNombreChamps(champs, 2);
+                        if (idVilles.putIfAbsent(champs[1], nomsVilles.size()) != null) {
+                            throw new IOException("ville déjà définie : " + champs[1]);
+                        }
+                        nomsVilles.add(champs[1]);
+                        ports.add(champs[0].equals("port"));
+                    }
+                    case "terrestre", "maritime" -> {
+                        verifierNombreChamps(champs, 5);
+                        routes.add(new RouteSource(ville(idVilles, champs[1]), ville(idVilles, champs[2]),
+                                champs[0].equals("terrestre") ? TypeRoute.TERRESTRE : TypeRoute.MARITIME,
+                                Couleur.valueOf(champs[3]), Integer.parseInt(champs[4])));
+                    }
+                    case "paire" -> {
+                        verifierNombreChamps(champs, 4);
+                        routes.add(new RouteSource(ville(idVilles, champs[1]), ville(idVilles, champs[2]),
+                                TypeRoute.PAIRE, Couleur.GRIS, Integer.parseInt(champs[3])));
+                    }
+                    case "destination" -> {
+                        verifierNombreChamps(champs, 4);
+                        int valeur = Integer.parseInt(champs[1]);
+                        destinations.add(new DestinationSource(valeur, valeur, valeur,
+                                new int[] { ville(idVilles, champs[2]), ville(idVilles, champs[3]) }));
+                    }
+                    case "itineraire" -> {
+                        if (champs.length < 6) {
+                            throw new IOException("un itinéraire relie au moins 2 villes");
+                        }
+                        int[] villes = new int[champs.length - 4];
+                        for (int i = 0; i < villes.length; i++) {
+                            villes[i] = ville(idVilles, champs[4 + i]);
+                        }
+                        destinations.add(new DestinationSource(Integer.parseInt(champs[1]),
+                                Integer.parseInt(champs[2]), Integer.parseInt(champs[3]), villes));
+                    }
+                    default -> throw new IOException("élément inconnu : " + champs[0]);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IOException("Ligne " + numero + " : " + e.getMessage(), e);
+            }
+        }
+        return encoder(nomsVilles, ports, routes, destinations);
+    }
+
+    private static void verifierNombreChamps(String[] champs, int nombre) throws IOException {
+        if (champs.length != nombre) {
+            throw new IOException(String.format("%d champs attendus pour %s", nombre, champs[0]));
+        }
+    }
+
+    private static int ville(Map<String, Integer> idVilles, String nom) throws IOException {
+        Integer id = idVilles.get(nom);
+        if (id == null) {
+            throw new IOException("ville inconnue : " + nom);
+        }
+        return id;
+    }
+
+    private static ByteBuffer encoder(List<String> nomsVilles, List<Boolean> ports, List<RouteSource> routes,
+            List<DestinationSource> destinations) {
+        // routes parallèles : deux routes qui relient les mêmes villes dans le même
+        // ordre (calculées une fois pour toutes en regroupant les routes par
+        // extrémités)
+        int[] paralleles = new int[routes.size()];
+        Arrays.fill(paralleles, -1);
+        Map<Long, List<Integer>> groupes = new HashMap<>();
+        for (int r = 0; r < routes.size(); r++) {
+            RouteSource route = routes.get(r);
+            groupes.computeIfAbsent(((long) route.ville1() << 32) | route.ville2(), cle -> new ArrayList<>()).add(r);
+        }
+        for (List<Integer> groupe : groupes.values()) {
+            if (groupe.size() > 1) {
+                // chaque route a pour parallèle la dernière route du groupe (la
+                // dernière a pour parallèle l'avant-dernière)
+                int derniere = groupe.get(groupe.size() - 1);
+                for (int r : groupe) {
+                    paralleles[r] = r == derniere ? groupe.get(groupe.size() - 2) : derniere;
+                }
+            }
+        }
+
+        byte[][] noms = new byte[nomsVilles.size()][];
+        int tailleNoms = 0;
+        for (int i = 0; i < noms.length; i++) {
+            noms[i] = nomsVilles.get(i).getBytes(StandardCharsets.UTF_8);
+            tailleNoms += 2 + noms[i].length;
+        }
+        int tailleDestinations = 4 * destinations.size();
+        for (DestinationSource destination : destinations) {
+            tailleDestinations += 8 + 4 * destination.villes().length;
+        }
+        int debutRoutes = TAILLE_ENTETE + TAILLE_VILLE * noms.length;
+        int debutDestinations = debutRoutes + TAILLE_ROUTE * routes.size();
+        int debutNoms = debutDestinations + tailleDestinations;
+        ByteBuffer donnees = ByteBuffer.allocate(debutNoms + tailleNoms);
+
+        donnees.putInt(SIGNATURE).putInt(VERSION).putInt(noms.length).putInt(routes.size())
+                .putInt(destinations.size()).putInt(debutRoutes).putInt(debutDestinations).putInt(debutNoms);
+        int positionNom = debutNoms;
+        for (int i = 0; i < noms.length; i++) {
+            donnees.putInt(positionNom).putInt(ports.get(i) ? 1 : 0);
+            positionNom += 2 + noms[i].length;
+        }
+        for (int r = 0; r < routes.size(); r++) {
+            RouteSource route = routes.get(r);
+            donnees.putInt(route.ville1()).putInt(route.ville2()).putInt(paralleles[r])
+                    .put((byte) route.type().ordinal()).put((byte) route.couleur().ordinal())
+                    .putShort((short) route.longueur());
+        }
+        int positionDestination = debutDestinations + 4 * destinations.size();
+        for (DestinationSource destination : destinations) {
+            donnees.putInt(positionDestination);
+            positionDestination += 8 + 4 * destination.villes().length;
+        }
+        for (DestinationSource destination : destinations) {
+            donnees.putShort((short) destination.valeurSimple()).putShort((short) destination.valeurMax())
+                    .putShort((short) destination.penalite()).putShort((short) destination.villes().length);
+            for (int ville : destination.villes()) {
+                donnees.putInt(ville);
+            }
+        }
+        for (byte[] nom : noms) {
+            donnees.putShort((short) nom.length).put(nom);
+        }
+        return donnees.flip();
+    }
+
+    public int getNbVilles() {
+        return nbVilles;
+    }
+
+    public String getNomVille(int ville) {
+        int position = donnees.getInt(TAILLE_ENTETE + TAILLE_VILLE * ville);
+        byte[] nom = new byte[Short.toUnsignedInt(donnees.getShort(position))];
+        donnees.get(position + 2, nom);
+        return new String(nom, StandardCharsets.UTF_8);
+    }
+
+    public boolean estPort(int ville) {
+        return (donnees.getInt(TAILLE_ENTETE + TAILLE_VILLE * ville + 4) & 1) != 0;
+    }
+
+    public int getNbRoutes() {
+        return nbRoutes;
+    }
+
+    public int getVille1(int route) {
+        return donnees.getInt(debutRoutes + TAILLE_ROUTE * route);
+    }
+
+    public int getVille2(int route) {
+        return donnees.getInt(debutRoutes + TAILLE_ROUTE * route + 4);
+    }
+
+    /**
+     * @return le numéro de la route parallèle, ou -1 si la route n'est pas double
+     */
+    public int getRouteParallele(int route) {
+        return donnees.getInt(debutRoutes + TAILLE_ROUTE * route + 8);
+    }
+
+    public TypeRoute getType(int route) {
+        return TypeRoute.values()[donnees.get(debutRoutes + TAILLE_ROUTE * route + 12)];
+    }
+
+    public Couleur getCouleur(int route) {
+        return Couleur.values()[donnees.get(debutRoutes + TAILLE_ROUTE * route + 13)];
+    }
+
+    public int getLongueur(int route) {
+        return donnees.getShort(debutRoutes + TAILLE_ROUTE * route + 14);
+    }
+
+    public int getNbDestinations() {
+        return nbDestinations;
+    }
+
+    private int positionDestination(int destination) {
+        return donnees.getInt(debutDestinations + 4 * destination);
+    }
+
+    public int getValeurSimple(int destination) {
+        return donnees.getShort(positionDestination(destination));
+    }
+
+    public int getValeurMax(int destination) {
+        return donnees.getShort(positionDestination(destination) + 2);
+    }
+
+    public int getPenalite(int destination) {
+        return donnees.getShort(positionDestination(destination) + 4);
+    }
+
+    /**
+     * @return les numéros des villes de la destination, dans l'ordre
+     */
+    public int[] getVillesDestination(int destination) {
+        int position = positionDestination(destination);
+        int[] villes = new int[donnees.getShort(position + 6)];
+        for (int i = 0; i < villes.length; i++) {
+            villes[i] = donnees.getInt(position + 8 + 4 * i);
+        }
+        return villes;
+    }
+}
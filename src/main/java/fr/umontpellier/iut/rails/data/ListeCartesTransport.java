@@ -0,0 +1,336 @@
+package fr.umontpellier.iut.rails.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Liste de cartes transport qui maintient au fur et à mesure le nombre de cartes
+ * de chaque sorte (type, couleur, simple ou double, avec ou sans ancre).
+ * <p>
+ * Toutes les modifications de la liste (y compris par ses itérateurs) mettent à
+ * jour les compteurs, si bien que les questions sur la composition de la liste
+ * (nombre de cartes, valeur totale, etc.) se traitent en temps constant et sans
+ * allocation, contrairement à {@link CarteTransport.Catalogue} qui doit parcourir
+ * et recopier toutes les cartes.
+ */
+public class ListeCartesTransport extends AbstractList<CarteTransport> {
+    private static final int NB_COULEURS = Couleur.values().length;
+    private static final List<Couleur> COULEURS_SIMPLES = Couleur.getCouleursSimples();
+
+    /**
+     * Tableau circulaire contenant les cartes : la carte d'indice i de la liste est
+     * dans la case {@code (debut + i) % cartes.length}. L'ajout et le retrait aux
+     * deux extrémités de la liste se font ainsi en temps constant (ce qui permet
+     * d'utiliser la liste comme pile de pioche, dont le sommet est la carte
+     * d'indice 0).
+     */
+    private CarteTransport[] cartes;
+    private int debut;
+    private int taille;
+    /**
+     * Nombre de cartes de chaque sorte (voir {@link #indice})
+     */
+    private final int[] nombres;
+    /**
+     * Nombre de cartes de chaque type (indexé par {@link TypeCarteTransport#ordinal()})
+     */
+    private final int[] nombresParType;
+
+    public ListeCartesTransport() {
+        this.cartes = new CarteTransport[16];
+        this.nombres = new int[TypeCarteTransport.values().length * NB_COULEURS * 4];
+        this.nombresParType = new int[TypeCarteTransport.values().length];
+    }
+
+    public ListeCartesTransport(Collection<CarteTransport> cartes) {
+        this();
+        addAll(cartes);
+    }
+
+    private static int indice(TypeCarteTransport type, Couleur couleur, boolean estDouble, boolean ancre) {
+        return ((type.ordinal() * NB_COULEURS + couleur.ordinal()) * 2 + (estDouble ? 1 : 0)) * 2 + (ancre ? 1 : 0);
+    }
+
+    private void compter(CarteTransport carte, int delta) {
+        nombres[indice(carte.getType(), carte.getCouleur(), carte.estDouble(), carte.getAncre())] += delta;
+        nombresParType[carte.getType().ordinal()] += delta;
+    }
+
+    /**
+     * @return la case du tableau contenant la carte d'indice i
+     */
+    private int position(int i) {
+        int c = debut + i;
+        return c < cartes.length ? c : c - cartes.length;
+    }
+
+    private void verifierIndice(int i) {
+        if (i < 0 || i >= taille) {
+            throw new IndexOutOfBoundsException(i);
+        }
+    }
+
+    private void agrandir() {
+        CarteTransport[] nouvelles = new CarteTransport[cartes.length * 2];
+        for (int i = 0; i < taille; i++) {
+            nouvelles[i] = cartes[position(i)];
+        }
+        cartes = nouvelles;
+        debut = 0;
+    }
+
+    @Override
+    public CarteTransport get(int i) {
+        verifierIndice(i);
+        return cartes[position(i)];
+    }
+
+    @Override
+    public int size() {
+        return taille;
+    }
+
+    @Override
+    public CarteTransport set(int i, CarteTransport carte) {
+        verifierIndice(i);
+        int c = position(i);
+        CarteTransport ancienne = cartes[c];
+        cartes[c] = carte;
+        compter(ancienne, -1);
+        compter(carte, 1);
+        return ancienne;
+    }
+
+    @Override
+    public void add(int i, CarteTransport carte) {
+        if (i < 0 || i > taille) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        if (taille == cartes.length) {
+            agrandir();
+        }
+        if (i < taille / 2) {
+            // on décale le début de la liste vers la gauche
+            debut = debut == 0 ? cartes.length - 1 : debut - 1;
+            for (int k = 0; k < i; k++) {
+                cartes[position(k)] = cartes[position(k + 1)];
+            }
+        } else {
+            // on décale la fin de la liste vers la droite
+            for (int k = taille; k > i; k--) {
+                cartes[position(k)] = cartes[position(k - 1)];
+            }
+        }
+        cartes[position(i)] = carte;
+        taille++;
+        compter(carte, 1);
+        modCount++;
+    }
+
+    @Override
+    public CarteTransport remove(int i) {
+        verifierIndice(i);
+        CarteTransport carte = cartes[position(i)];
+        if (i < taille / 2) {
+            for (int k = i; k > 0; k--) {
+                cartes[position(k)] = cartes[position(k - 1)];
+            }
+            cartes[debut] = null;
+            debut = position(1);
+        } else {
+            for (int k = i; k < taille - 1; k++) {
+                cartes[position(k)] = cartes[position(k + 1)];
+            }
+            cartes[position(taille - 1)] = null;
+        }
+        taille--;
+        compter(carte, -1);
+        modCount++;
+        return carte;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int i = indexOf(o);
+        if (i < 0) {
+            return false;
+        }
+        remove(i);
+        return true;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        for (int i = 0; i < taille; i++) {
+            if (cartes[position(i)].equals(o)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(cartes, null);
+        debut = 0;
+        taille = 0;
+        Arrays.fill(nombres, 0);
+        Arrays.fill(nombresParType, 0);
+        modCount++;
+    }
+
+    /**
+     * Mélange les cartes de la liste (mélange de Fisher-Yates)
+     *
+     * @param aleatoire le générateur aléatoire utilisé (pour pouvoir reproduire
+     *                  une partie)
+     */
+    public void melanger(SplittableRandom aleatoire) {
+        for (int i = taille - 1; i > 0; i--) {
+            int j = aleatoire.nextInt(i + 1);
+            int ci = position(i);
+            int cj = position(j);
+            CarteTransport c = cartes[ci];
+            cartes[ci] = cartes[cj];
+            cartes[cj] = c;
+        }
+        modCount++;
+    }
+
+    /**
+     * Renvoie le nombre de cartes d'un type (toutes couleurs confondues)
+     */
+    public int getNombre(TypeCarteTransport type) {
+        return nombresParType[type.ordinal()];
+    }
+
+    /**
+     * Renvoie le nombre de cartes d'un type et d'une couleur
+     */
+    public int getNombre(TypeCarteTransport type, Couleur couleur) {
+        return getNombre(type, couleur, false) + getNombre(type, couleur, true);
+    }
+
+    /**
+     * Renvoie le nombre de cartes simples (ou doubles) d'un type et d'une couleur
+     */
+    public int getNombre(TypeCarteTransport type, Couleur couleur, boolean estDouble) {
+        return nombres[indice(type, couleur, estDouble, false)] + nombres[indice(type, couleur, estDouble, true)];
+    }
+
+    /**
+     * Renvoie le nombre de cartes ayant une ancre d'un type et d'une couleur
+     */
+    public int getNombreAvecAncre(TypeCarteTransport type, Couleur couleur) {
+        return nombres[indice(type, couleur, false, true)] + nombres[indice(type, couleur, true, true)];
+    }
+
+    /**
+     * Renvoie la valeur totale des cartes ayant une ancre d'un type et d'une
+     * couleur (une carte double vaut 2)
+     */
+    public int getValeurAvecAncre(TypeCarteTransport type, Couleur couleur) {
+        return nombres[indice(type, couleur, false, true)] + 2 * nombres[indice(type, couleur, true, true)];
+    }
+
+    /**
+     * Même sémantique que {@link CarteTransport.Catalogue#getValeur(TypeCarteTransport, Couleur, boolean)}
+     */
+    public int getValeur(TypeCarteTransport type, Couleur couleur, boolean compteJoker) {
+        if (couleur == Couleur.GRIS) {
+            int max = 0;
+            for (Couleur c : COULEURS_SIMPLES) {
+                max = Math.max(max, getValeur(type, c, compteJoker));
+            }
+            return max;
+        }
+        int total = getNombre(type, couleur, false) + 2 * getNombre(type, couleur, true);
+        if (compteJoker && type != TypeCarteTransport.JOKER) {
+            total += getValeur(TypeCarteTransport.JOKER);
+        }
+        return total;
+    }
+
+    /**
+     * Même sémantique que {@link CarteTransport.Catalogue#getValeur(TypeCarteTransport, Couleur)}
+     */
+    public int getValeur(TypeCarteTransport type, Couleur couleur) {
+        return getValeur(type, couleur, false);
+    }
+
+    /**
+     * Renvoie la valeur totale des cartes d'un type (toutes couleurs confondues).
+     * Les jokers ne sont pas comptés.
+     */
+    public int getValeur(TypeCarteTransport type) {
+        int total = 0;
+        for (Couleur couleur : Couleur.values()) {
+            total += getNombre(type, couleur, false) + 2 * getNombre(type, couleur, true);
+        }
+        return total;
+    }
+
+    /**
+     * Renvoie la valeur totale des cartes de la liste
+     */
+    public int getValeur() {
+        int total = 0;
+        for (TypeCarteTransport t : TypeCarteTransport.values()) {
+            total += getValeur(t);
+        }
+        return total;
+    }
+
+    /**
+     * Même sémantique que {@link CarteTransport.Catalogue#getCouleur()}
+     */
+    public Couleur getCouleur() {
+        for (Couleur c : COULEURS_SIMPLES) {
+            if (getNombre(TypeCarteTransport.WAGON, c) > 0 || getNombre(TypeCarteTransport.BATEAU, c) > 0) {
+                return c;
+            }
+        }
+        return Couleur.GRIS;
+    }
+
+    /**
+     * Renvoie la liste des cartes d'un type et d'une couleur
+     */
+    public List<CarteTransport> get(TypeCarteTransport type, Couleur couleur) {
+        return filtrer(type, couleur, null, false);
+    }
+
+    public List<CarteTransport> getSimples(TypeCarteTransport type, Couleur couleur) {
+        return filtrer(type, couleur, false, false);
+    }
+
+    public List<CarteTransport> getDoubles(TypeCarteTransport type, Couleur couleur) {
+        return filtrer(type, couleur, true, false);
+    }
+
+    /**
+     * Renvoie la liste des cartes ayant une ancre d'un type et d'une couleur
+     */
+    public List<CarteTransport> getAvecAncre(TypeCarteTransport type, Couleur couleur) {
+        return filtrer(type, couleur, null, true);
+    }
+
+    private List<CarteTransport> filtrer(TypeCarteTransport type, Couleur couleur, Boolean estDouble, boolean ancreSeulement) {
+        List<CarteTransport> resultat = new ArrayList<>();
+        if (getNombre(type, couleur) == 0) {
+            return resultat;
+        }
+        for (CarteTransport c : this) {
+            if (c.getType() == type && c.getCouleur() == couleur
+                    && (estDouble == null || c.estDouble() == estDouble)
+                    && (!ancreSeulement || c.getAncre())) {
+                resultat.add(c);
+            }
+        }
+        return resultat;
+    }
+}
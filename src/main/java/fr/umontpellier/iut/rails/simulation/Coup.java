@@ -0,0 +1,82 @@
+package fr.umontpellier.iut.rails.simulation;
+
+/**
+ * Codage des coups d'une simulation sous forme d'entiers.
+ * <p>
+ * Un coup est un {@code int} positif dont les bits de poids fort donnent le type
+ * du coup et les {@value #BITS_ARGUMENT} bits de poids faible son argument
+ * (identifiant de route, de port, sorte de carte ou nombre de pions selon le
+ * type). Ce codage permet de générer et de manipuler les coups sans aucune
+ * allocation. L'argument va jusqu'à {@link #MAX_ARGUMENT}, ce qui couvre tous
+ * les identifiants d'une image de plateau (16 octets par route dans un tampon
+ * d'au plus 2 Go).
+ */
+public final class Coup {
+    /**
+     * Ne rien faire (fin du tour, ou refus de prendre une deuxième carte)
+     */
+    public static final int PASSER = 0;
+    /**
+     * Piocher une carte dans la pioche wagon
+     */
+    public static final int PIOCHER_WAGON = 1;
+    /**
+     * Piocher une carte dans la pioche bateau
+     */
+    public static final int PIOCHER_BATEAU = 2;
+    /**
+     * Prendre une carte visible (argument : sorte de la carte dans une
+     * simulation, position de la carte parmi les cartes visibles dans le jeu)
+     */
+    public static final int PRENDRE_VISIBLE = 3;
+    /**
+     * Capturer une route (argument : identifiant de la route)
+     */
+    public static final int CAPTURER_ROUTE = 4;
+    /**
+     * Construire un port (argument : identifiant du port)
+     */
+    public static final int CONSTRUIRE_PORT = 5;
+    /**
+     * Échanger des pions bateau contre des pions wagon (argument : nombre de
+     * pions, 0 si le nombre doit être demandé au joueur)
+     */
+    public static final int PIONS_WAGON = 6;
+    /**
+     * Échanger des pions wagon contre des pions bateau (argument : nombre de
+     * pions, 0 si le nombre doit être demandé au joueur)
+     */
+    public static final int PIONS_BATEAU = 7;
+    /**
+     * Piocher des destinations
+     */
+    public static final int DESTINATIONS = 8;
+
+    static final int BITS_ARGUMENT = 27;
+    public static final int MAX_ARGUMENT = (1 << BITS_ARGUMENT) - 1;
+
+    private Coup() {
+    }
+
+    public static int creer(int type, int argument) {
+        return type << BITS_ARGUMENT | argument;
+    }
+
+    public static int creer(int type) {
+        return type << BITS_ARGUMENT;
+    }
+
+    public static int type(int coup) {
+        return coup >>> BITS_ARGUMENT;
+    }
+
+    public static int argument(int coup) {
+        return coup & MAX_ARGUMENT;
+    }
+
+    public static String toString(int coup) {
+        String[] noms = { "PASSER", "PIOCHER_WAGON", "PIOCHER_BATEAU", "PRENDRE_VISIBLE", "CAPTURER_ROUTE",
+                "CONSTRUIRE_PORT", "PIONS_WAGON", "PIONS_BATEAU", "DESTINATIONS" };
+        return noms[type(coup)] + "(" + argument(coup) + ")";
+    }
+}
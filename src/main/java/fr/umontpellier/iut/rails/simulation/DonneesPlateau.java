@@ -0,0 +1,330 @@
+package fr.umontpellier.iut.rails.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.umontpellier.iut.rails.Route;
+import fr.umontpellier.iut.rails.RouteMaritime;
+import fr.umontpellier.iut.rails.RoutePaire;
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.Destination;
+import fr.umontpellier.iut.rails.data.TypeCarteTransport;
+import fr.umontpellier.iut.rails.data.Ville;
+
+/**
+ * Description immuable du plateau et du matériel d'une partie (routes, ports,
+ * destinations et sortes de cartes transport), sous forme de tableaux indexés
+ * par les identifiants des éléments.
+ * <p>
+ * Ces données sont partagées par tous les {@link EtatSimulation} d'une même
+ * partie (elles ne sont jamais recopiées).
+ * <p>
+ * Les identifiants sont des {@code int} : un plateau peut avoir autant de
+ * villes et de routes qu'une {@link fr.umontpellier.iut.rails.data.ImagePlateau}
+ * (les coups d'une simulation limitent les identifiants à
+ * {@link Coup#MAX_ARGUMENT}).
+ * <p>
+ * Les cartes transport sont regroupées par sortes : deux cartes de même type,
+ * même couleur, toutes deux simples ou doubles et toutes deux avec ou sans ancre
+ * sont interchangeables pour les règles du jeu.
+ */
+public final class DonneesPlateau {
+    public static final byte TERRESTRE = 0;
+    public static final byte MARITIME = 1;
+    public static final byte PAIRE = 2;
+
+    final int nbVilles;
+    final int nbRoutes;
+    final int nbPorts;
+    final int nbDestinations;
+    final int nbSortes;
+
+    // routes (indexées par identifiant de route)
+    final int[] ville1;
+    final int[] ville2;
+    final byte[] longueur;
+    final byte[] couleurRoute;
+    final byte[] genre;
+    final int[] parallele;
+    final byte[] scoreRoute;
+
+    // ports (indexés par identifiant de port)
+    final int[] villePort;
+    /**
+     * Identifiant du port de chaque ville (-1 si la ville n'est pas un port)
+     */
+    final int[] portVille;
+    /**
+     * Identifiants des routes qui arrivent à chaque port
+     */
+    final int[][] routesPort;
+    /**
+     * Identifiants des routes qui arrivent à chaque ville (indexé par identifiant
+     * de ville)
+     */
+    final int[][] routesVille;
+
+    // destinations (indexées par identifiant de destination)
+    final int[][] villesDestination;
+    final byte[] valeurSimple;
+    final byte[] penalite;
+
+    // sortes de cartes
+    final TypeCarteTransport[] typeSorte;
+    final Couleur[] couleurSorte;
+    final boolean[] doubleSorte;
+    final boolean[] ancreSorte;
+    /**
+     * Sorte de chaque carte (indexée par identifiant de carte)
+     */
+    final byte[] sorteCarte;
+    /**
+     * Nombre total de cartes de chaque sorte
+     */
+    final byte[] nbCartesSorte;
+
+    private final List<String> nomsVilles;
+    private final Map<String, Integer> idsVilles;
+
+    /**
+     * @param routes       les routes (dans l'ordre de leurs identifiants)
+     * @param ports        les ports (dans l'ordre de leurs identifiants)
+     * @param destinations les destinations (dans l'ordre de leurs identifiants)
+     * @param cartes       les cartes transport (dans l'ordre de leurs
+     *                     identifiants)
+     */
+    public DonneesPlateau(List<Route> routes, List<Ville> ports, List<Destination> destinations,
+            List<CarteTransport> cartes) {
+        idsVilles = new HashMap<>();
+        nomsVilles = new ArrayList<>();
+        for (Ville v : ports) {
+            idVille(v.nom(), idsVilles);
+        }
+        Map<Route, Integer> idsRoutes = new HashMap<>();
+        for (int i = 0; i < routes.size(); i++) {
+            Route r = routes.get(i);
+            idVille(r.getVille1().nom(), idsVilles);
+            idVille(r.getVille2().nom(), idsVilles);
+            idsRoutes.put(r, i);
+        }
+        for (Destination d : destinations) {
+            for (String v : d.getVilles()) {
+                idVille(v, idsVilles);
+            }
+        }
+        nbVilles = nomsVilles.size();
+
+        nbRoutes = routes.size();
+        ville1 = new int[nbRoutes];
+        ville2 = new int[nbRoutes];
+        longueur = new byte[nbRoutes];
+        couleurRoute = new byte[nbRoutes];
+        genre = new byte[nbRoutes];
+        parallele = new int[nbRoutes];
+        scoreRoute = new byte[nbRoutes];
+        for (int i = 0; i < nbRoutes; i++) {
+            Route r = routes.get(i);
+            ville1[i] = idsVilles.get(r.getVille1().nom());
+            ville2[i] = idsVilles.get(r.getVille2().nom());
+            longueur[i] = (byte) r.getLongueur();
+            couleurRoute[i] = (byte) r.getCouleur().ordinal();
+            genre[i] = r instanceof RouteMaritime ? MARITIME : r instanceof RoutePaire ? PAIRE : TERRESTRE;
+            Integer p = r.getRouteParallele() == null ? null : idsRoutes.get(r.getRouteParallele());
+            parallele[i] = (p == null ? -1 : p);
+            scoreRoute[i] = (byte) r.getScore();
+        }
+
+        int[] nbRoutesVille = new int[nbVilles];
+        for (int i = 0; i < nbRoutes; i++) {
+            nbRoutesVille[ville1[i]]++;
+            nbRoutesVille[ville2[i]]++;
+        }
+        routesVille = new int[nbVilles][];
+        for (int v = 0; v < nbVilles; v++) {
+            routesVille[v] = new int[nbRoutesVille[v]];
+            nbRoutesVille[v] = 0;
+        }
+        for (int i = 0; i < nbRoutes; i++) {
+            routesVille[ville1[i]][nbRoutesVille[ville1[i]]++] = i;
+            routesVille[ville2[i]][nbRoutesVille[ville2[i]]++] = i;
+        }
+
+        nbPorts = ports.size();
+        villePort = new int[nbPorts];
+        portVille = new int[nbVilles];
+        Arrays.fill(portVille, -1);
+        for (int i = 0; i < nbPorts; i++) {
+            villePort[i] = idsVilles.get(ports.get(i).nom());
+            portVille[villePort[i]] = i;
+        }
+        // routes de la ville de chaque port (une route qui relie une ville à
+        // elle-même n'y figure qu'une fois)
+        routesPort = new int[nbPorts][];
+        for (int i = 0; i < nbPorts; i++) {
+            int[] routesDeLaVille = routesVille[villePort[i]];
+            int[] adjacentes = new int[routesDeLaVille.length];
+            int n = 0;
+            for (int r : routesDeLaVille) {
+                if (n == 0 || adjacentes[n - 1] != r) {
+                    adjacentes[n++] = r;
+                }
+            }
+            routesPort[i] = Arrays.copyOf(adjacentes, n);
+        }
+
+        nbDestinations = destinations.size();
+        villesDestination = new int[nbDestinations][];
+        valeurSimple = new byte[nbDestinations];
+        penalite = new byte[nbDestinations];
+        for (int i = 0; i < nbDestinations; i++) {
+            Destination d = destinations.get(i);
+            List<String> villes = d.getVilles();
+            villesDestination[i] = new int[villes.size()];
+            for (int k = 0; k < villes.size(); k++) {
+                villesDestination[i][k] = idsVilles.get(villes.get(k));
+            }
+            valeurSimple[i] = (byte) d.getValeurSimple();
+            penalite[i] = (byte) d.getPenalite();
+        }
+
+        // sortes de cartes (dans l'ordre de première apparition)
+        List<String> cles = new ArrayList<>();
+        List<CarteTransport> representants = new ArrayList<>();
+        sorteCarte = new byte[cartes.size()];
+        for (int i = 0; i < cartes.size(); i++) {
+            CarteTransport c = cartes.get(i);
+            String cle = c.getType() + " " + c.getCouleur() + " " + c.estDouble() + " " + c.getAncre();
+            int sorte = cles.indexOf(cle);
+            if (sorte < 0) {
+                sorte = cles.size();
+                cles.add(cle);
+                representants.add(c);
+            }
+            sorteCarte[i] = (byte) sorte;
+        }
+        nbSortes = cles.size();
+        typeSorte = new TypeCarteTransport[nbSortes];
+        couleurSorte = new Couleur[nbSortes];
+        doubleSorte = new boolean[nbSortes];
+        ancreSorte = new boolean[nbSortes];
+        nbCartesSorte = new byte[nbSortes];
+        for (int s = 0; s < nbSortes; s++) {
+            CarteTransport c = representants.get(s);
+            typeSorte[s] = c.getType();
+            couleurSorte[s] = c.getCouleur();
+            doubleSorte[s] = c.estDouble();
+            ancreSorte[s] = c.getAncre();
+        }
+        for (byte s : sorteCarte) {
+            nbCartesSorte[s]++;
+        }
+    }
+
+    private int idVille(String nom, Map<String, Integer> idsVilles) {
+        Integer id = idsVilles.get(nom);
+        if (id == null) {
+            id = nomsVilles.size();
+            idsVilles.put(nom, id);
+            nomsVilles.add(nom);
+        }
+        return id;
+    }
+
+    public int getNbRoutes() {
+        return nbRoutes;
+    }
+
+    public int getNbPorts() {
+        return nbPorts;
+    }
+
+    public int getNbDestinations() {
+        return nbDestinations;
+    }
+
+    public int getNbSortes() {
+        return nbSortes;
+    }
+
+    public int getNbVilles() {
+        return nbVilles;
+    }
+
+    public String getNomVille(int ville) {
+        return nomsVilles.get(ville);
+    }
+
+    /**
+     * @return l'identifiant de la ville dont le nom est passé en argument, ou -1
+     *         si la ville n'est pas sur le plateau
+     */
+    public int getIdVille(String nom) {
+        Integer id = idsVilles.get(nom);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return le nombre de routes qui arrivent à la ville
+     */
+    public int getNbRoutesVille(int ville) {
+        return routesVille[ville].length;
+    }
+
+    /**
+     * @return l'identifiant de la {@code k}-ième route qui arrive à la ville
+     */
+    public int getRouteVille(int ville, int k) {
+        return routesVille[ville][k];
+    }
+
+    public int getLongueur(int route) {
+        return longueur[route];
+    }
+
+    public int getGenre(int route) {
+        return genre[route];
+    }
+
+    public int getVille1(int route) {
+        return ville1[route];
+    }
+
+    public int getVille2(int route) {
+        return ville2[route];
+    }
+
+    /**
+     * @return la sorte de la carte dont l'identifiant est passé en argument
+     */
+    public int getSorte(int carte) {
+        return sorteCarte[carte];
+    }
+
+    public TypeCarteTransport getType(int sorte) {
+        return typeSorte[sorte];
+    }
+
+    public Couleur getCouleur(int sorte) {
+        return couleurSorte[sorte];
+    }
+
+    /**
+     * @return true si les cartes de la sorte sont dans la pioche des cartes wagon
+     *         (cartes wagon et jokers), false si elles sont dans la pioche des
+     *         cartes bateau
+     */
+    public boolean estSorteWagon(int sorte) {
+        return typeSorte[sorte] != TypeCarteTransport.BATEAU;
+    }
+
+    /**
+     * @return la valeur d'une carte de la sorte (2 pour une carte double, 1 sinon)
+     */
+    public int getValeur(int sorte) {
+        return doubleSorte[sorte] ? 2 : 1;
+    }
+}
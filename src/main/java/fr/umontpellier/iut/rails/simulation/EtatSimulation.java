@@ -0,0 +1,397 @@
+package fr.umontpellier.iut.rails.simulation;
+
+import java.util.Arrays;
+
+/**
+ * État complet d'une partie sous une forme compacte et copiable, destiné aux
+ * joueurs automatiques qui explorent les coups possibles (voir
+ * {@link MoteurRegles}).
+ * <p>
+ * L'état n'est fait que de tableaux de types primitifs indexés par les
+ * identifiants des éléments de la partie (routes, ports, destinations, sortes
+ * de cartes et numéros des joueurs). Les cartes transport ne sont pas
+ * distinguées individuellement : on ne conserve que le nombre de cartes de
+ * chaque sorte dans chaque main et chaque pile, et l'ordre des cartes de la
+ * pioche (inconnu des joueurs) n'est pas représenté. Les données fixes du
+ * plateau sont partagées entre toutes les copies, si bien que {@link #copy()}
+ * ne recopie que quelques centaines d'octets.
+ */
+public final class EtatSimulation {
+    // indices des compteurs de pions de chaque joueur
+    public static final int PIONS_WAGON = 0;
+    public static final int RESERVE_WAGON = 1;
+    public static final int PIONS_BATEAU = 2;
+    public static final int RESERVE_BATEAU = 3;
+
+    /**
+     * Phase du tour : le joueur courant n'a encore rien fait
+     */
+    public static final int DEBUT_TOUR = 0;
+    /**
+     * Phase du tour : le joueur courant a pris une première carte et peut en
+     * prendre une deuxième
+     */
+    public static final int DEUXIEME_CARTE = 1;
+
+    final DonneesPlateau plateau;
+    final int nbJoueurs;
+    /**
+     * Nombre de mots de 64 bits utilisés pour représenter un ensemble de
+     * destinations
+     */
+    final int nbMotsDestinations;
+
+    /**
+     * Numéro du joueur qui possède chaque route (-1 si la route est libre)
+     */
+    final byte[] proprietaireRoute;
+    /**
+     * Numéro du joueur qui a construit chaque port (-1 si le port est libre)
+     */
+    final byte[] proprietairePort;
+    /**
+     * Nombre de cartes de chaque sorte dans la main de chaque joueur (indice
+     * {@code joueur * nbSortes + sorte})
+     */
+    final byte[] mains;
+    /**
+     * Nombre de cartes de chaque sorte dans les pioches (wagon et bateau)
+     */
+    final byte[] pioche;
+    /**
+     * Nombre de cartes de chaque sorte dans les défausses (wagon et bateau)
+     */
+    final byte[] defausse;
+    /**
+     * Nombre de cartes de chaque sorte face visible
+     */
+    final byte[] visibles;
+    /**
+     * Pions de chaque joueur (indice {@code joueur * 4 + PIONS_WAGON}, etc.)
+     */
+    final byte[] pions;
+    final short[] scores;
+    /**
+     * Destinations de chaque joueur (ensembles de bits, indice
+     * {@code joueur * nbMotsDestinations + mot})
+     */
+    final long[] destinations;
+    /**
+     * Destinations de la pile (ensemble de bits)
+     */
+    final long[] pileDestinations;
+
+    int joueurCourant;
+    int phase;
+    /**
+     * Nombre de tours restant avant la fin de la partie (-1 tant que la fin de la
+     * partie n'a pas été déclenchée)
+     */
+    int toursRestants;
+
+    /**
+     * Crée un état vide (aucune carte, aucune destination, toutes les routes et
+     * tous les ports libres)
+     */
+    public EtatSimulation(DonneesPlateau plateau, int nbJoueurs) {
+        this.plateau = plateau;
+        this.nbJoueurs = nbJoueurs;
+        this.nbMotsDestinations = (plateau.nbDestinations + 63) / 64;
+        proprietaireRoute = new byte[plateau.nbRoutes];
+        Arrays.fill(proprietaireRoute, (byte) -1);
+        proprietairePort = new byte[plateau.nbPorts];
+        Arrays.fill(proprietairePort, (byte) -1);
+        mains = new byte[nbJoueurs * plateau.nbSortes];
+        pioche = new byte[plateau.nbSortes];
+        defausse = new byte[plateau.nbSortes];
+        visibles = new byte[plateau.nbSortes];
+        pions = new byte[nbJoueurs * 4];
+        scores = new short[nbJoueurs];
+        destinations = new long[nbJoueurs * nbMotsDestinations];
+        pileDestinations = new long[nbMotsDestinations];
+        joueurCourant = 0;
+        phase = DEBUT_TOUR;
+        toursRestants = -1;
+    }
+
+    private EtatSimulation(EtatSimulation etat) {
+        plateau = etat.plateau;
+        nbJoueurs = etat.nbJoueurs;
+        nbMotsDestinations = etat.nbMotsDestinations;
+        proprietaireRoute = etat.proprietaireRoute.clone();
+        proprietairePort = etat.proprietairePort.clone();
+        mains = etat.mains.clone();
+        pioche = etat.pioche.clone();
+        defausse = etat.defausse.clone();
+        visibles = etat.visibles.clone();
+        pions = etat.pions.clone();
+        scores = etat.scores.clone();
+        destinations = etat.destinations.clone();
+        pileDestinations = etat.pileDestinations.clone();
+        joueurCourant = etat.joueurCourant;
+        phase = etat.phase;
+        toursRestants = etat.toursRestants;
+    }
+
+    /**
+     * Renvoie une copie indépendante de l'état (les données du plateau sont
+     * partagées)
+     */
+    public EtatSimulation copy() {
+        return new EtatSimulation(this);
+    }
+
+    /**
+     * Recopie l'état dans un autre état de la même partie, sans allocation. Tout
+     * l'état est recopié (voir {@link #getTailleDonnees()}), quel que soit le
+     * nombre de valeurs modifiées depuis la sauvegarde : pour revenir sur
+     * quelques coups, il est moins coûteux de les annuler (voir
+     * {@link MoteurRegles#annuler(EtatSimulation, int, Trace)}).
+     *
+     * @throws IllegalArgumentException si les deux états ne portent pas sur le
+     *                                  même plateau et le même nombre de joueurs
+     */
+    public void copierDans(EtatSimulation cible) {
+        if (cible.plateau != plateau || cible.nbJoueurs != nbJoueurs) {
+            throw new IllegalArgumentException("Les états ne correspondent pas à la même partie");
+        }
+        System.arraycopy(proprietaireRoute, 0, cible.proprietaireRoute, 0, proprietaireRoute.length);
+        System.arraycopy(proprietairePort, 0, cible.proprietairePort, 0, proprietairePort.length);
+        System.arraycopy(mains, 0, cible.mains, 0, mains.length);
+        System.arraycopy(pioche, 0, cible.pioche, 0, pioche.length);
+        System.arraycopy(defausse, 0, cible.defausse, 0, defausse.length);
+        System.arraycopy(visibles, 0, cible.visibles, 0, visibles.length);
+        System.arraycopy(pions, 0, cible.pions, 0, pions.length);
+        System.arraycopy(scores, 0, cible.scores, 0, scores.length);
+        System.arraycopy(destinations, 0, cible.destinations, 0, destinations.length);
+        System.arraycopy(pileDestinations, 0, cible.pileDestinations, 0, pileDestinations.length);
+        cible.joueurCourant = joueurCourant;
+        cible.phase = phase;
+        cible.toursRestants = toursRestants;
+    }
+
+    /**
+     * Remet un champ de l'état à une valeur notée dans une {@link Trace}
+     */
+    void restaurer(int champ, int indice, int valeur) {
+        switch (champ) {
+            case Trace.MAIN -> mains[indice] = (byte) valeur;
+            case Trace.PIOCHE -> pioche[indice] = (byte) valeur;
+            case Trace.DEFAUSSE -> defausse[indice] = (byte) valeur;
+            case Trace.VISIBLE -> visibles[indice] = (byte) valeur;
+            case Trace.PIONS -> pions[indice] = (byte) valeur;
+            case Trace.SCORE -> scores[indice] = (short) valeur;
+            case Trace.ROUTE -> proprietaireRoute[indice] = (byte) valeur;
+            case Trace.PORT -> proprietairePort[indice] = (byte) valeur;
+            case Trace.DESTINATION -> restaurerBit(destinations, indice, valeur);
+            case Trace.PILE_DESTINATIONS -> restaurerBit(pileDestinations, indice, valeur);
+            case Trace.JOUEUR_COURANT -> joueurCourant = valeur;
+            case Trace.PHASE -> phase = valeur;
+            case Trace.TOURS_RESTANTS -> toursRestants = valeur;
+            default -> throw new IllegalArgumentException("Champ inconnu : " + champ);
+        }
+    }
+
+    private static void restaurerBit(long[] bits, int bit, int valeur) {
+        if (valeur != 0) {
+            bits[bit >> 6] |= 1L << bit;
+        } else {
+            bits[bit >> 6] &= ~(1L << bit);
+        }
+    }
+
+    public DonneesPlateau getPlateau() {
+        return plateau;
+    }
+
+    public int getNbJoueurs() {
+        return nbJoueurs;
+    }
+
+    public int getJoueurCourant() {
+        return joueurCourant;
+    }
+
+    public void setJoueurCourant(int joueurCourant) {
+        this.joueurCourant = joueurCourant;
+    }
+
+    public int getPhase() {
+        return phase;
+    }
+
+    /**
+     * @param phase {@link #DEBUT_TOUR} ou {@link #DEUXIEME_CARTE}
+     */
+    public void setPhase(int phase) {
+        this.phase = phase;
+    }
+
+    public int getToursRestants() {
+        return toursRestants;
+    }
+
+    public void setToursRestants(int toursRestants) {
+        this.toursRestants = toursRestants;
+    }
+
+    /**
+     * @return true si la partie est terminée
+     */
+    public boolean estTerminee() {
+        return toursRestants == 0;
+    }
+
+    /**
+     * @return le numéro du joueur qui possède la route (-1 si elle est libre)
+     */
+    public int getProprietaireRoute(int route) {
+        return proprietaireRoute[route];
+    }
+
+    public void setProprietaireRoute(int route, int joueur) {
+        proprietaireRoute[route] = (byte) joueur;
+    }
+
+    /**
+     * @return le numéro du joueur qui a construit le port (-1 s'il est libre)
+     */
+    public int getProprietairePort(int port) {
+        return proprietairePort[port];
+    }
+
+    public void setProprietairePort(int port, int joueur) {
+        proprietairePort[port] = (byte) joueur;
+    }
+
+    public int getNbCartesMain(int joueur, int sorte) {
+        return mains[joueur * plateau.nbSortes + sorte];
+    }
+
+    public void ajouterCartesMain(int joueur, int sorte, int nombre) {
+        mains[joueur * plateau.nbSortes + sorte] += nombre;
+    }
+
+    public int getNbCartesPioche(int sorte) {
+        return pioche[sorte];
+    }
+
+    public void ajouterCartesPioche(int sorte, int nombre) {
+        pioche[sorte] += nombre;
+    }
+
+    public int getNbCartesDefausse(int sorte) {
+        return defausse[sorte];
+    }
+
+    public void ajouterCartesDefausse(int sorte, int nombre) {
+        defausse[sorte] += nombre;
+    }
+
+    public int getNbCartesVisibles(int sorte) {
+        return visibles[sorte];
+    }
+
+    public void ajouterCartesVisibles(int sorte, int nombre) {
+        visibles[sorte] += nombre;
+    }
+
+    /**
+     * @param type un des indices {@link #PIONS_WAGON}, {@link #RESERVE_WAGON},
+     *             {@link #PIONS_BATEAU} ou {@link #RESERVE_BATEAU}
+     */
+    public int getPions(int joueur, int type) {
+        return pions[joueur * 4 + type];
+    }
+
+    public void setPions(int joueur, int type, int nombre) {
+        pions[joueur * 4 + type] = (byte) nombre;
+    }
+
+    public int getScore(int joueur) {
+        return scores[joueur];
+    }
+
+    public void setScore(int joueur, int score) {
+        scores[joueur] = (short) score;
+    }
+
+    public boolean possedeDestination(int joueur, int destination) {
+        return (destinations[joueur * nbMotsDestinations + (destination >> 6)] & 1L << destination) != 0;
+    }
+
+    public void ajouterDestination(int joueur, int destination) {
+        destinations[joueur * nbMotsDestinations + (destination >> 6)] |= 1L << destination;
+    }
+
+    public boolean estDansPileDestinations(int destination) {
+        return (pileDestinations[destination >> 6] & 1L << destination) != 0;
+    }
+
+    public void ajouterPileDestinations(int destination) {
+        pileDestinations[destination >> 6] |= 1L << destination;
+    }
+
+    /**
+     * @return le nombre de destinations dans la pile
+     */
+    public int getNbDestinationsPile() {
+        int n = 0;
+        for (long mot : pileDestinations) {
+            n += Long.bitCount(mot);
+        }
+        return n;
+    }
+
+    /**
+     * @return le nombre de ports construits par le joueur
+     */
+    public int getNbPorts(int joueur) {
+        int n = 0;
+        for (byte p : proprietairePort) {
+            if (p == joueur) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return le nombre d'octets de données recopiés par {@link #copy()} et
+     * {@link #copierDans(EtatSimulation)}
+     */
+    public int getTailleDonnees() {
+        return proprietaireRoute.length + proprietairePort.length + mains.length + pioche.length
+                + defausse.length + visibles.length + pions.length + 2 * scores.length
+                + 8 * (destinations.length + pileDestinations.length) + 12;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EtatSimulation etat)) {
+            return false;
+        }
+        return plateau == etat.plateau && joueurCourant == etat.joueurCourant && phase == etat.phase
+                && toursRestants == etat.toursRestants
+                && Arrays.equals(proprietaireRoute, etat.proprietaireRoute)
+                && Arrays.equals(proprietairePort, etat.proprietairePort)
+                && Arrays.equals(mains, etat.mains) && Arrays.equals(pioche, etat.pioche)
+                && Arrays.equals(defausse, etat.defausse) && Arrays.equals(visibles, etat.visibles)
+                && Arrays.equals(pions, etat.pions) && Arrays.equals(scores, etat.scores)
+                && Arrays.equals(destinations, etat.destinations)
+                && Arrays.equals(pileDestinations, etat.pileDestinations);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = Arrays.hashCode(proprietaireRoute);
+        h = 31 * h + Arrays.hashCode(mains);
+        h = 31 * h + Arrays.hashCode(visibles);
+        h = 31 * h + Arrays.hashCode(pions);
+        h = 31 * h + Arrays.hashCode(destinations);
+        return 31 * h + joueurCourant;
+    }
+}
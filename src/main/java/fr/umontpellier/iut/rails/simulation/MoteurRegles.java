@@ -0,0 +1,789 @@
+package fr.umontpellier.iut.rails.simulation;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.TypeCarteTransport;
+
+/**
+ * Règles du jeu appliquées directement à un {@link EtatSimulation}, sans passer
+ * par les choix textuels des joueurs.
+ * <p>
+ * Les coups sont codés par des entiers (voir {@link Coup}). Les conditions pour
+ * qu'un coup soit autorisé sont les mêmes que dans {@code Joueur} et les classes
+ * de routes. Les choix secondaires que le jeu demande aux joueurs sont faits
+ * automatiquement :
+ * <ul>
+ * <li>les cartes utilisées pour payer une route ou un port sont choisies de
+ * manière gloutonne (cartes de couleur avant les jokers, cartes sans ancre avant
+ * les cartes avec ancre) ;
+ * <li>les cartes visibles sont complétées en retournant une carte de la pioche
+ * qui a le moins de cartes visibles ;
+ * <li>lorsque le joueur pioche des destinations, il garde celle qui a la plus
+ * petite pénalité.
+ * </ul>
+ * {@link #appliquer} modifie l'état sur place. Lorsqu'une {@link Trace} lui est
+ * passée, les valeurs modifiées y sont notées et le coup peut ensuite être
+ * annulé ({@link #annuler}) : une suite de coups est annulée dans l'ordre
+ * inverse, pour un coût proportionnel au nombre de valeurs modifiées plutôt
+ * qu'à la taille de l'état.
+ * <p>
+ * Un moteur utilise des tableaux de travail : il ne doit être utilisé que par un
+ * seul thread à la fois (un moteur par thread).
+ */
+public final class MoteurRegles {
+    private static final int NB_COULEURS = Couleur.values().length;
+    private static final int GRIS = Couleur.GRIS.ordinal();
+    /**
+     * Nombre maximum de pions qui peuvent être échangés en un coup
+     */
+    private static final int MAX_ECHANGE_PIONS = 64;
+    /**
+     * Nombre maximum de redistributions successives des cartes visibles (la
+     * redistribution est aléatoire et pourrait se répéter indéfiniment)
+     */
+    private static final int MAX_REDISTRIBUTIONS = 16;
+    private static final int NB_DESTINATIONS_PIOCHEES = 4;
+
+    private final DonneesPlateau plateau;
+    private final int[] parent;
+    private final long[] destinationsCompletes;
+    private final int[] destinationsTirees = new int[NB_DESTINATIONS_PIOCHEES];
+
+    // contenu de la main analysée par analyserMain (indexé par couleur)
+    private final int[] valeurWagon = new int[NB_COULEURS];
+    private final int[] nombreWagon = new int[NB_COULEURS];
+    private final int[] valeurBateau = new int[NB_COULEURS];
+    private final int[] valeurWagonAncre = new int[NB_COULEURS];
+    private final int[] valeurBateauAncre = new int[NB_COULEURS];
+    private int nbJokers;
+    private int nbJokersAncre;
+    /**
+     * Trace du coup en cours d'application (null si le coup ne sera pas annulé)
+     */
+    private Trace trace;
+
+    public MoteurRegles(DonneesPlateau plateau) {
+        this.plateau = plateau;
+        this.parent = new int[plateau.nbVilles];
+        this.destinationsCompletes = new long[(plateau.nbDestinations + 63) / 64];
+    }
+
+    /**
+     * @return la taille de tableau suffisante pour contenir tous les coups
+     *         renvoyés par {@link #coupsLegaux(EtatSimulation, int[])}
+     */
+    public int getTailleMaxCoups() {
+        return 4 + plateau.nbSortes + plateau.nbRoutes + plateau.nbPorts + 2 * MAX_ECHANGE_PIONS;
+    }
+
+    /**
+     * Écrit dans le tableau {@code coups} les coups que le joueur courant peut
+     * jouer dans l'état passé en argument. Les coups sont écrits dans l'ordre
+     * croissant de leurs codes.
+     *
+     * @return le nombre de coups écrits (0 si la partie est terminée)
+     */
+    public int coupsLegaux(EtatSimulation etat, int[] coups) {
+        if (etat.estTerminee()) {
+            return 0;
+        }
+        int j = etat.joueurCourant;
+        boolean premiereCarte = etat.phase == EtatSimulation.DEBUT_TOUR;
+        int n = 0;
+        coups[n++] = Coup.creer(Coup.PASSER);
+        if (nbCartesPiles(etat, true) > 0) {
+            coups[n++] = Coup.creer(Coup.PIOCHER_WAGON);
+        }
+        if (nbCartesPiles(etat, false) > 0) {
+            coups[n++] = Coup.creer(Coup.PIOCHER_BATEAU);
+        }
+        for (int s = 0; s < plateau.nbSortes; s++) {
+            if (etat.visibles[s] > 0 && (premiereCarte || plateau.typeSorte[s] != TypeCarteTransport.JOKER)) {
+                coups[n++] = Coup.creer(Coup.PRENDRE_VISIBLE, s);
+            }
+        }
+        if (premiereCarte) {
+            analyserMain(etat, j);
+            for (int r = 0; r < plateau.nbRoutes; r++) {
+                if (peutCapturerRouteAnalysee(etat, j, r)) {
+                    coups[n++] = Coup.creer(Coup.CAPTURER_ROUTE, r);
+                }
+            }
+            if (etat.getNbPorts(j) < 3 && peutPayerPortAnalyse()) {
+                for (int p = 0; p < plateau.nbPorts; p++) {
+                    if (etat.proprietairePort[p] < 0 && estAdjacentAuPort(etat, j, p)) {
+                        coups[n++] = Coup.creer(Coup.CONSTRUIRE_PORT, p);
+                    }
+                }
+            }
+            int max = Math.min(MAX_ECHANGE_PIONS, Math.min(etat.getPions(j, EtatSimulation.RESERVE_WAGON),
+                    etat.getPions(j, EtatSimulation.PIONS_BATEAU)));
+            for (int k = 1; k <= max; k++) {
+                coups[n++] = Coup.creer(Coup.PIONS_WAGON, k);
+            }
+            max = Math.min(MAX_ECHANGE_PIONS, Math.min(etat.getPions(j, EtatSimulation.RESERVE_BATEAU),
+                    etat.getPions(j, EtatSimulation.PIONS_WAGON)));
+            for (int k = 1; k <= max; k++) {
+                coups[n++] = Coup.creer(Coup.PIONS_BATEAU, k);
+            }
+            if (etat.getNbDestinationsPile() > 0) {
+                coups[n++] = Coup.creer(Coup.DESTINATIONS);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return true si le joueur peut capturer la route (mêmes conditions que
+     *         {@code Route.peutEtreCaptureePar})
+     */
+    public boolean peutCapturerRoute(EtatSimulation etat, int joueur, int route) {
+        analyserMain(etat, joueur);
+        return peutCapturerRouteAnalysee(etat, joueur, route);
+    }
+
+    /**
+     * @return true si le joueur peut construire le port (mêmes conditions que
+     *         dans {@code Joueur})
+     */
+    public boolean peutConstruirePort(EtatSimulation etat, int joueur, int port) {
+        analyserMain(etat, joueur);
+        return etat.proprietairePort[port] < 0 && etat.getNbPorts(joueur) < 3 && peutPayerPortAnalyse()
+                && estAdjacentAuPort(etat, joueur, port);
+    }
+
+    /**
+     * Joue un coup pour le joueur courant. Le coup doit faire partie des coups
+     * renvoyés par {@link #coupsLegaux(EtatSimulation, int[])}.
+     *
+     * @param aleatoire générateur utilisé pour les cartes et destinations piochées
+     */
+    public void appliquer(EtatSimulation etat, int coup, SplittableRandom aleatoire) {
+        appliquer(etat, coup, aleatoire, null);
+    }
+
+    /**
+     * Joue un coup pour le joueur courant en notant les valeurs modifiées dans la
+     * trace, pour pouvoir l'annuler ensuite
+     * ({@link #annuler(EtatSimulation, int, Trace)}).
+     *
+     * @param trace la trace dans laquelle le coup est noté (null si le coup ne
+     *              sera pas annulé)
+     */
+    public void appliquer(EtatSimulation etat, int coup, SplittableRandom aleatoire, Trace trace) {
+        int debut = trace == null ? 0 : trace.getNbEntrees();
+        this.trace = trace;
+        try {
+            jouer(etat, coup, aleatoire);
+        } finally {
+            this.trace = null;
+        }
+        if (trace != null) {
+            trace.noterCoup(coup, debut);
+        }
+    }
+
+    /**
+     * Annule le dernier coup noté dans la trace : l'état redevient celui qui
+     * précédait le coup (le joueur courant, les cartes, les destinations, les
+     * pions, le score, etc.)
+     *
+     * @throws IllegalArgumentException si le dernier coup noté dans la trace
+     *                                  n'est pas {@code coup}
+     */
+    public void annuler(EtatSimulation etat, int coup, Trace trace) {
+        trace.annulerCoup(etat, coup);
+    }
+
+    private void jouer(EtatSimulation etat, int coup, SplittableRandom aleatoire) {
+        int j = etat.joueurCourant;
+        int argument = Coup.argument(coup);
+        switch (Coup.type(coup)) {
+            case Coup.PASSER -> finTour(etat, aleatoire);
+            case Coup.PIOCHER_WAGON, Coup.PIOCHER_BATEAU -> {
+                int s = tirer(etat, Coup.type(coup) == Coup.PIOCHER_WAGON, aleatoire);
+                if (s >= 0) {
+                    ajouter(Trace.MAIN, etat.mains, j * plateau.nbSortes + s, 1);
+                }
+                carteSuivante(etat, aleatoire);
+            }
+            case Coup.PRENDRE_VISIBLE -> {
+                ajouter(Trace.VISIBLE, etat.visibles, argument, -1);
+                ajouter(Trace.MAIN, etat.mains, j * plateau.nbSortes + argument, 1);
+                remplirVisibles(etat, aleatoire);
+                if (plateau.typeSorte[argument] == TypeCarteTransport.JOKER) {
+                    // si on prend un joker, on ne peut pas prendre de deuxième carte
+                    finTour(etat, aleatoire);
+                } else {
+                    carteSuivante(etat, aleatoire);
+                }
+            }
+            case Coup.CAPTURER_ROUTE -> {
+                analyserMain(etat, j);
+                payerRoute(etat, j, argument);
+                affecter(Trace.ROUTE, etat.proprietaireRoute, argument, j);
+                int type = plateau.genre[argument] == DonneesPlateau.MARITIME ? EtatSimulation.PIONS_BATEAU
+                        : EtatSimulation.PIONS_WAGON;
+                ajouter(Trace.PIONS, etat.pions, j * 4 + type, -plateau.longueur[argument]);
+                ajouterScore(etat, j, plateau.scoreRoute[argument]);
+                finTour(etat, aleatoire);
+            }
+            case Coup.CONSTRUIRE_PORT -> {
+                analyserMain(etat, j);
+                payerPort(etat, j);
+                affecter(Trace.PORT, etat.proprietairePort, argument, j);
+                finTour(etat, aleatoire);
+            }
+            case Coup.PIONS_WAGON -> {
+                echangerPions(etat, j, EtatSimulation.PIONS_BATEAU, EtatSimulation.PIONS_WAGON, argument);
+                finTour(etat, aleatoire);
+            }
+            case Coup.PIONS_BATEAU -> {
+                echangerPions(etat, j, EtatSimulation.PIONS_WAGON, EtatSimulation.PIONS_BATEAU, argument);
+                finTour(etat, aleatoire);
+            }
+            case Coup.DESTINATIONS -> {
+                piocherDestinations(etat, j, aleatoire);
+                finTour(etat, aleatoire);
+            }
+            default -> throw new IllegalArgumentException("Coup invalide : " + coup);
+        }
+    }
+
+    /**
+     * Calcule le score final du joueur dans l'état passé en argument (même calcul
+     * que {@code Joueur.calculerScoreFinal})
+     */
+    public int scoreFinal(EtatSimulation etat, int joueur) {
+        calculerComposantes(etat, joueur);
+        int score = etat.scores[joueur];
+        Arrays.fill(destinationsCompletes, 0);
+        for (int d = 0; d < plateau.nbDestinations; d++) {
+            if (!etat.possedeDestination(joueur, d)) {
+                continue;
+            }
+            if (estComplete(d)) {
+                destinationsCompletes[d >> 6] |= 1L << d;
+                score += plateau.valeurSimple[d];
+            } else {
+                score -= plateau.penalite[d];
+            }
+        }
+        int nbPorts = 0;
+        for (int p = 0; p < plateau.nbPorts; p++) {
+            if (etat.proprietairePort[p] != joueur) {
+                continue;
+            }
+            nbPorts++;
+            int nbDestinations = 0;
+            for (int d = 0; d < plateau.nbDestinations; d++) {
+                if ((destinationsCompletes[d >> 6] & 1L << d) != 0 && contientVille(d, plateau.villePort[p])) {
+                    nbDestinations++;
+                }
+            }
+            switch (nbDestinations) {
+                case 0 -> {
+                }
+                case 1 -> score += 20;
+                case 2 -> score += 30;
+                default -> score += 40;
+            }
+        }
+        return score - 4 * (3 - nbPorts);
+    }
+
+    /**
+     * @return true si les routes du joueur relient toutes les villes de la
+     *         destination
+     */
+    public boolean destinationEstComplete(EtatSimulation etat, int joueur, int destination) {
+        calculerComposantes(etat, joueur);
+        return estComplete(destination);
+    }
+
+    private void analyserMain(EtatSimulation etat, int joueur) {
+        Arrays.fill(valeurWagon, 0);
+        Arrays.fill(nombreWagon, 0);
+        Arrays.fill(valeurBateau, 0);
+        Arrays.fill(valeurWagonAncre, 0);
+        Arrays.fill(valeurBateauAncre, 0);
+        nbJokers = 0;
+        nbJokersAncre = 0;
+        int debut = joueur * plateau.nbSortes;
+        for (int s = 0; s < plateau.nbSortes; s++) {
+            int n = etat.mains[debut + s];
+            if (n == 0) {
+                continue;
+            }
+            int c = plateau.couleurSorte[s].ordinal();
+            int v = n * plateau.getValeur(s);
+            boolean ancre = plateau.ancreSorte[s];
+            switch (plateau.typeSorte[s]) {
+                case JOKER -> {
+                    nbJokers += n;
+                    nbJokersAncre += ancre ? n : 0;
+                }
+                case WAGON -> {
+                    valeurWagon[c] += v;
+                    nombreWagon[c] += n;
+                    valeurWagonAncre[c] += ancre ? v : 0;
+                }
+                case BATEAU -> {
+                    valeurBateau[c] += v;
+                    valeurBateauAncre[c] += ancre ? v : 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Valeur des cartes de la main analysée pour payer une route de la couleur
+     * donnée, jokers compris (pour une route grise, couleur la plus avantageuse)
+     */
+    private int valeurAvecJokers(int[] valeurs, int couleur) {
+        return valeurs[meilleureCouleur(valeurs, couleur)] + nbJokers;
+    }
+
+    private static int meilleureCouleur(int[] valeurs, int couleur) {
+        if (couleur != GRIS) {
+            return couleur;
+        }
+        int meilleure = 0;
+        for (int c = 1; c < NB_COULEURS; c++) {
+            if (c != GRIS && valeurs[c] > valeurs[meilleure]) {
+                meilleure = c;
+            }
+        }
+        return meilleure;
+    }
+
+    private int nbPairesAnalysees() {
+        int nbPaires = 0;
+        int nbIsolees = 0;
+        for (int c = 0; c < NB_COULEURS; c++) {
+            nbPaires += nombreWagon[c] / 2;
+            nbIsolees += nombreWagon[c] % 2;
+        }
+        nbPaires += Math.min(nbIsolees, nbJokers);
+        if (nbJokers > nbIsolees) {
+            nbPaires += (nbJokers - nbIsolees) / 2;
+        }
+        return nbPaires;
+    }
+
+    private boolean peutCapturerRouteAnalysee(EtatSimulation etat, int joueur, int route) {
+        if (etat.proprietaireRoute[route] >= 0) {
+            return false;
+        }
+        int parallele = plateau.parallele[route];
+        if (parallele >= 0) {
+            if (etat.nbJoueurs <= 3 ? etat.proprietaireRoute[parallele] >= 0
+                    : etat.proprietaireRoute[parallele] == joueur) {
+                return false;
+            }
+        }
+        int longueur = plateau.longueur[route];
+        int couleur = plateau.couleurRoute[route];
+        return switch (plateau.genre[route]) {
+            case DonneesPlateau.MARITIME -> etat.getPions(joueur, EtatSimulation.PIONS_BATEAU) >= longueur
+                    && valeurAvecJokers(valeurBateau, couleur) >= longueur;
+            case DonneesPlateau.PAIRE -> etat.getPions(joueur, EtatSimulation.PIONS_WAGON) >= longueur
+                    && nbPairesAnalysees() >= longueur;
+            default -> etat.getPions(joueur, EtatSimulation.PIONS_WAGON) >= longueur
+                    && valeurAvecJokers(valeurWagon, couleur) >= longueur;
+        };
+    }
+
+    /**
+     * Couleur à utiliser pour payer un port avec la main analysée (-1 si le
+     * joueur ne peut pas payer de port)
+     */
+    private int couleurPort() {
+        int meilleure = -1;
+        int meilleureValeur = 4 - nbJokersAncre - 1;
+        for (int c = 0; c < NB_COULEURS; c++) {
+            int valeur = Math.min(2, valeurWagonAncre[c]) + Math.min(2, valeurBateauAncre[c]);
+            if (c != GRIS && valeur > meilleureValeur) {
+                meilleure = c;
+                meilleureValeur = valeur;
+            }
+        }
+        return meilleure;
+    }
+
+    private boolean peutPayerPortAnalyse() {
+        return couleurPort() >= 0;
+    }
+
+    private boolean estAdjacentAuPort(EtatSimulation etat, int joueur, int port) {
+        for (int r : plateau.routesPort[port]) {
+            if (etat.proprietaireRoute[r] == joueur) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int nbCartesPiles(EtatSimulation etat, boolean wagon) {
+        int n = 0;
+        for (int s = 0; s < plateau.nbSortes; s++) {
+            if (plateau.estSorteWagon(s) == wagon) {
+                n += etat.pioche[s] + etat.defausse[s];
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Pioche une carte au hasard dans la pioche wagon ou bateau (la défausse est
+     * remise dans la pioche si la pioche est vide).
+     *
+     * @return la sorte de la carte piochée (-1 si les deux piles sont vides)
+     */
+    private int tirer(EtatSimulation etat, boolean wagon, SplittableRandom aleatoire) {
+        int total = 0;
+        for (int s = 0; s < plateau.nbSortes; s++) {
+            if (plateau.estSorteWagon(s) == wagon) {
+                total += etat.pioche[s];
+            }
+        }
+        if (total == 0) {
+            for (int s = 0; s < plateau.nbSortes; s++) {
+                if (plateau.estSorteWagon(s) == wagon) {
+                    affecter(Trace.PIOCHE, etat.pioche, s, etat.defausse[s]);
+                    affecter(Trace.DEFAUSSE, etat.defausse, s, 0);
+                    total += etat.pioche[s];
+                }
+            }
+            if (total == 0) {
+                return -1;
+            }
+        }
+        int r = aleatoire.nextInt(total);
+        for (int s = 0; s < plateau.nbSortes; s++) {
+            if (plateau.estSorteWagon(s) == wagon) {
+                r -= etat.pioche[s];
+                if (r < 0) {
+                    ajouter(Trace.PIOCHE, etat.pioche, s, -1);
+                    return s;
+                }
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private boolean reveler(EtatSimulation etat, boolean wagon, SplittableRandom aleatoire) {
+        int s = tirer(etat, wagon, aleatoire);
+        if (s < 0) {
+            return false;
+        }
+        ajouter(Trace.VISIBLE, etat.visibles, s, 1);
+        return true;
+    }
+
+    /**
+     * Complète les cartes visibles jusqu'à 6 cartes puis les redistribue s'il y a
+     * au moins 3 jokers (comme {@code Jeu.updateCartesTransportVisibles})
+     */
+    private void remplirVisibles(EtatSimulation etat, SplittableRandom aleatoire) {
+        while (true) {
+            int nbWagon = 0;
+            int nbBateau = 0;
+            for (int s = 0; s < plateau.nbSortes; s++) {
+                if (plateau.estSorteWagon(s)) {
+                    nbWagon += etat.visibles[s];
+                } else {
+                    nbBateau += etat.visibles[s];
+                }
+            }
+            if (nbWagon + nbBateau >= 6) {
+                break;
+            }
+            boolean wagon = nbWagon <= nbBateau;
+            if (!reveler(etat, wagon, aleatoire) && !reveler(etat, !wagon, aleatoire)) {
+                break;
+            }
+        }
+        for (int i = 0; i < MAX_REDISTRIBUTIONS && doitRedistribuer(etat); i++) {
+            for (int s = 0; s < plateau.nbSortes; s++) {
+                ajouter(Trace.DEFAUSSE, etat.defausse, s, etat.visibles[s]);
+                affecter(Trace.VISIBLE, etat.visibles, s, 0);
+            }
+            // même ordre que Jeu.remplirCartesTransportVisibles
+            int n = 0;
+            for (int k = 0; k < 3 && reveler(etat, false, aleatoire); k++) {
+                n++;
+            }
+            for (int k = 0; k < 3 && reveler(etat, true, aleatoire); k++) {
+                n++;
+            }
+            while (n < 6 && reveler(etat, true, aleatoire)) {
+                n++;
+            }
+            while (n < 6 && reveler(etat, false, aleatoire)) {
+                n++;
+            }
+        }
+    }
+
+    private boolean doitRedistribuer(EtatSimulation etat) {
+        int nbJokersVisibles = 0;
+        int nbWagonSimples = 0;
+        int nbCartesBateau = 0;
+        for (int s = 0; s < plateau.nbSortes; s++) {
+            switch (plateau.typeSorte[s]) {
+                case JOKER -> nbJokersVisibles += etat.visibles[s];
+                case WAGON -> nbWagonSimples += etat.pioche[s] + etat.defausse[s] + etat.visibles[s];
+                case BATEAU -> nbCartesBateau += etat.pioche[s] + etat.defausse[s] + etat.visibles[s];
+            }
+        }
+        return nbJokersVisibles >= 3 && nbWagonSimples > 0 && nbWagonSimples + nbCartesBateau > 3;
+    }
+
+    private void carteSuivante(EtatSimulation etat, SplittableRandom aleatoire) {
+        if (etat.phase == EtatSimulation.DEBUT_TOUR) {
+            noter(Trace.PHASE, 0, etat.phase);
+            etat.phase = EtatSimulation.DEUXIEME_CARTE;
+        } else {
+            finTour(etat, aleatoire);
+        }
+    }
+
+    /**
+     * Termine le tour du joueur courant (même décompte de fin de partie que
+     * {@code Jeu.run})
+     */
+    private void finTour(EtatSimulation etat, SplittableRandom aleatoire) {
+        int j = etat.joueurCourant;
+        if (etat.toursRestants > 0) {
+            noter(Trace.TOURS_RESTANTS, 0, etat.toursRestants);
+            etat.toursRestants--;
+        } else if (etat.toursRestants < 0 && etat.getPions(j, EtatSimulation.PIONS_WAGON)
+                + etat.getPions(j, EtatSimulation.PIONS_BATEAU) <= 6) {
+            // chaque joueur joue encore 2 tours et la partie s'arrête
+            noter(Trace.TOURS_RESTANTS, 0, etat.toursRestants);
+            etat.toursRestants = 2 * etat.nbJoueurs;
+        }
+        noter(Trace.JOUEUR_COURANT, 0, j);
+        etat.joueurCourant = (j + 1) % etat.nbJoueurs;
+        noter(Trace.PHASE, 0, etat.phase);
+        etat.phase = EtatSimulation.DEBUT_TOUR;
+        if (!etat.estTerminee()) {
+            remplirVisibles(etat, aleatoire);
+        }
+    }
+
+    private void echangerPions(EtatSimulation etat, int joueur, int donnes, int recus, int nombre) {
+        ajouter(Trace.PIONS, etat.pions, joueur * 4 + donnes, -nombre);
+        ajouter(Trace.PIONS, etat.pions, joueur * 4 + donnes + 1, nombre);
+        ajouter(Trace.PIONS, etat.pions, joueur * 4 + recus, nombre);
+        ajouter(Trace.PIONS, etat.pions, joueur * 4 + recus + 1, -nombre);
+        ajouterScore(etat, joueur, -nombre);
+    }
+
+    private void piocherDestinations(EtatSimulation etat, int joueur, SplittableRandom aleatoire) {
+        int n = 0;
+        while (n < NB_DESTINATIONS_PIOCHEES) {
+            int nbPile = etat.getNbDestinationsPile();
+            if (nbPile == 0) {
+                break;
+            }
+            int r = aleatoire.nextInt(nbPile);
+            int d = -1;
+            for (int k = 0; k <= r; k++) {
+                d = prochainBit(etat.pileDestinations, d + 1);
+            }
+            noter(Trace.PILE_DESTINATIONS, d, 1);
+            etat.pileDestinations[d >> 6] &= ~(1L << d);
+            destinationsTirees[n++] = d;
+        }
+        if (n == 0) {
+            return;
+        }
+        int gardee = destinationsTirees[0];
+        for (int k = 1; k < n; k++) {
+            int d = destinationsTirees[k];
+            if (plateau.penalite[d] < plateau.penalite[gardee]) {
+                gardee = d;
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            if (destinationsTirees[k] != gardee) {
+                noter(Trace.PILE_DESTINATIONS, destinationsTirees[k], 0);
+                etat.ajouterPileDestinations(destinationsTirees[k]);
+            }
+        }
+        noter(Trace.DESTINATION, joueur * etat.nbMotsDestinations * 64 + gardee, 0);
+        etat.ajouterDestination(joueur, gardee);
+    }
+
+    private static int prochainBit(long[] bits, int depuis) {
+        int mot = depuis >> 6;
+        long reste = bits[mot] & -1L << depuis;
+        while (reste == 0) {
+            reste = bits[++mot];
+        }
+        return (mot << 6) + Long.numberOfTrailingZeros(reste);
+    }
+
+    private void payerRoute(EtatSimulation etat, int joueur, int route) {
+        int longueur = plateau.longueur[route];
+        int couleur = plateau.couleurRoute[route];
+        switch (plateau.genre[route]) {
+            case DonneesPlateau.MARITIME -> {
+                couleur = meilleureCouleur(valeurBateau, couleur);
+                int reste = prendre(etat, joueur, TypeCarteTransport.BATEAU, couleur, 1, -1, longueur, false);
+                reste = prendre(etat, joueur, TypeCarteTransport.BATEAU, couleur, 0, -1, reste, false);
+                reste = prendre(etat, joueur, TypeCarteTransport.JOKER, GRIS, -1, -1, reste, false);
+                prendre(etat, joueur, TypeCarteTransport.BATEAU, couleur, 1, -1, reste, true);
+            }
+            case DonneesPlateau.PAIRE -> {
+                int reste = longueur;
+                int[] nombres = nombreWagon.clone();
+                for (int c = 0; c < NB_COULEURS && reste > 0; c++) {
+                    int k = Math.min(reste, nombres[c] / 2);
+                    prendreWagons(etat, joueur, c, 2 * k);
+                    nombres[c] -= 2 * k;
+                    reste -= k;
+                }
+                int jokers = nbJokers;
+                for (int c = 0; c < NB_COULEURS && reste > 0 && jokers > 0; c++) {
+                    if (nombres[c] > 0) {
+                        prendreWagons(etat, joueur, c, 1);
+                        prendre(etat, joueur, TypeCarteTransport.JOKER, GRIS, -1, -1, 1, false);
+                        jokers--;
+                        reste--;
+                    }
+                }
+                prendre(etat, joueur, TypeCarteTransport.JOKER, GRIS, -1, -1, 2 * reste, false);
+            }
+            default -> {
+                couleur = meilleureCouleur(valeurWagon, couleur);
+                int reste = prendreWagons(etat, joueur, couleur, longueur);
+                prendre(etat, joueur, TypeCarteTransport.JOKER, GRIS, -1, -1, reste, false);
+            }
+        }
+    }
+
+    private void payerPort(EtatSimulation etat, int joueur) {
+        int couleur = couleurPort();
+        int reste = 4;
+        reste -= Math.min(2, valeurWagonAncre[couleur])
+                - prendre(etat, joueur, TypeCarteTransport.WAGON, couleur, -1, 1,
+                        Math.min(2, valeurWagonAncre[couleur]), false);
+        reste -= Math.min(2, valeurBateauAncre[couleur])
+                - prendre(etat, joueur, TypeCarteTransport.BATEAU, couleur, -1, 1,
+                        Math.min(2, valeurBateauAncre[couleur]), false);
+        prendre(etat, joueur, TypeCarteTransport.JOKER, GRIS, -1, 1, reste, false);
+    }
+
+    /**
+     * Défausse des cartes wagon d'une couleur (cartes sans ancre d'abord)
+     *
+     * @return le nombre de cartes qui restaient à défausser
+     */
+    private int prendreWagons(EtatSimulation etat, int joueur, int couleur, int nombre) {
+        nombre = prendre(etat, joueur, TypeCarteTransport.WAGON, couleur, -1, 0, nombre, false);
+        return prendre(etat, joueur, TypeCarteTransport.WAGON, couleur, -1, 1, nombre, false);
+    }
+
+    /**
+     * Défausse des cartes de la main du joueur jusqu'à atteindre la valeur
+     * demandée
+     *
+     * @param estDouble 1 pour ne prendre que des cartes doubles, 0 pour des
+     *                  cartes simples, -1 pour les deux
+     * @param ancre     1 pour ne prendre que des cartes avec une ancre, 0 pour
+     *                  des cartes sans ancre, -1 pour les deux
+     * @param depasser  si true, la valeur des cartes défaussées peut dépasser la
+     *                  valeur demandée
+     * @return la valeur qui restait à payer
+     */
+    private int prendre(EtatSimulation etat, int joueur, TypeCarteTransport type, int couleur, int estDouble,
+            int ancre, int valeur, boolean depasser) {
+        int debut = joueur * plateau.nbSortes;
+        for (int s = 0; s < plateau.nbSortes && valeur > 0; s++) {
+            if (plateau.typeSorte[s] != type || plateau.couleurSorte[s].ordinal() != couleur
+                    || (estDouble >= 0 && plateau.doubleSorte[s] != (estDouble == 1))
+                    || (ancre >= 0 && plateau.ancreSorte[s] != (ancre == 1))) {
+                continue;
+            }
+            int v = plateau.getValeur(s);
+            int k = Math.min(etat.mains[debut + s], depasser ? (valeur + v - 1) / v : valeur / v);
+            ajouter(Trace.MAIN, etat.mains, debut + s, -k);
+            ajouter(Trace.DEFAUSSE, etat.defausse, s, k);
+            valeur -= k * v;
+        }
+        return Math.max(0, valeur);
+    }
+
+    /**
+     * Note l'ancienne valeur d'un champ de l'état dans la trace du coup en cours
+     * (voir {@link Trace})
+     */
+    private void noter(int champ, int indice, int ancienneValeur) {
+        if (trace != null) {
+            trace.noter(champ, indice, ancienneValeur);
+        }
+    }
+
+    private void ajouter(int champ, byte[] valeurs, int indice, int nombre) {
+        if (nombre != 0) {
+            noter(champ, indice, valeurs[indice]);
+            valeurs[indice] += nombre;
+        }
+    }
+
+    private void affecter(int champ, byte[] valeurs, int indice, int valeur) {
+        if (valeurs[indice] != valeur) {
+            noter(champ, indice, valeurs[indice]);
+            valeurs[indice] = (byte) valeur;
+        }
+    }
+
+    private void ajouterScore(EtatSimulation etat, int joueur, int points) {
+        noter(Trace.SCORE, joueur, etat.scores[joueur]);
+        etat.scores[joueur] += points;
+    }
+
+    private void calculerComposantes(EtatSimulation etat, int joueur) {
+        for (int v = 0; v < parent.length; v++) {
+            parent[v] = v;
+        }
+        for (int r = 0; r < plateau.nbRoutes; r++) {
+            if (etat.proprietaireRoute[r] == joueur) {
+                parent[racine(plateau.ville1[r])] = racine(plateau.ville2[r]);
+            }
+        }
+    }
+
+    private int racine(int ville) {
+        while (parent[ville] != ville) {
+            parent[ville] = parent[parent[ville]];
+            ville = parent[ville];
+        }
+        return ville;
+    }
+
+    private boolean estComplete(int destination) {
+        int[] villes = plateau.villesDestination[destination];
+        int r = racine(villes[0]);
+        for (int k = 1; k < villes.length; k++) {
+            if (racine(villes[k]) != r) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contientVille(int destination, int ville) {
+        for (int v : plateau.villesDestination[destination]) {
+            if (v == ville) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
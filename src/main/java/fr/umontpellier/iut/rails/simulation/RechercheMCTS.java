@@ -0,0 +1,547 @@
+package fr.umontpellier.iut.rails.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Recherche du meilleur coup par la méthode de Monte-Carlo (MCTS).
+ * <p>
+ * Les informations cachées au joueur qui cherche son coup (cartes en main des
+ * adversaires, ordre des pioches, destinations des adversaires et de la pile)
+ * sont tirées au hasard à chaque itération parmi les possibilités compatibles
+ * avec ce que le joueur voit (déterminisation). Toutes les itérations partagent
+ * le même arbre, indexé par les coups joués, dans lequel on ne considère à
+ * chaque itération que les coups autorisés dans l'état tiré.
+ * <p>
+ * La recherche est parallèle : plusieurs threads parcourent le même arbre. Les
+ * compteurs des nœuds sont mis à jour sans verrou (opérations atomiques) et un
+ * nœud en cours d'exploration compte temporairement comme une défaite (perte
+ * virtuelle) pour que les threads explorent des branches différentes. La
+ * recherche s'arrête lorsque le temps alloué est écoulé.
+ * <p>
+ * Chaque thread travaille sur sa propre copie de l'état. Les modifications
+ * d'une itération (tirage des informations cachées, coups de la descente dans
+ * l'arbre et de la fin de partie simulée) sont notées dans une {@link Trace} et
+ * annulées à la fin de l'itération : l'état n'est pas recopié à chaque
+ * itération, ce qui coûterait la taille de l'état (proportionnelle au nombre de
+ * routes du plateau) plutôt que le nombre de valeurs modifiées.
+ */
+public final class RechercheMCTS {
+    /**
+     * Temps de recherche par défaut pour un coup (en millisecondes), qui laisse
+     * de la marge pour répondre en moins de 200 ms (le temps de préparer la
+     * recherche compte dans ce budget lorsque l'échéance est calculée par
+     * l'appelant, voir {@link #choisirCoup(EtatSimulation, SplittableRandom, long)})
+     */
+    public static final long BUDGET_PAR_DEFAUT = 150;
+    private static final double EXPLORATION = 0.7;
+    private static final int PERTE_VIRTUELLE = 1;
+    /**
+     * Nombre maximum de coups joués au hasard à la fin de chaque itération (la
+     * partie est évaluée par le score final qu'auraient les joueurs à ce moment)
+     */
+    private static final int PROFONDEUR_MAX_SIMULATION = 400;
+    /**
+     * Écart de score qui correspond à environ 73% de chances de victoire
+     */
+    private static final double ECHELLE_SCORE = 10;
+    private static final long UNITE_GAIN = 1_000_000;
+
+    private static final ExecutorService EXECUTEUR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "recherche-mcts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final int nbThreads;
+    private final long budget;
+    private int nbIterationsMax = Integer.MAX_VALUE;
+    private int nbIterations;
+
+    /**
+     * @param nbThreads nombre de threads qui explorent l'arbre
+     * @param budget    temps de recherche par coup (en millisecondes)
+     */
+    public RechercheMCTS(int nbThreads, long budget) {
+        this.nbThreads = Math.max(1, nbThreads);
+        this.budget = budget;
+    }
+
+    /**
+     * Recherche qui utilise tous les processeurs disponibles avec le temps de
+     * recherche par défaut
+     */
+    public RechercheMCTS() {
+        this(Runtime.getRuntime().availableProcessors(), BUDGET_PAR_DEFAUT);
+    }
+
+    /**
+     * Limite le nombre d'itérations de chaque recherche (en plus de la limite de
+     * temps)
+     */
+    public void setNbIterationsMax(int nbIterationsMax) {
+        this.nbIterationsMax = nbIterationsMax;
+    }
+
+    /**
+     * @return le temps de recherche par coup (en millisecondes)
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return le nombre d'itérations effectuées par la dernière recherche
+     */
+    public int getNbIterations() {
+        return nbIterations;
+    }
+
+    /**
+     * Cherche le meilleur coup pour le joueur courant de l'état passé en argument
+     * (l'état n'est pas modifié).
+     *
+     * @param aleatoire générateur dont sont dérivés les générateurs des threads
+     * @return le coup choisi (voir {@link Coup})
+     */
+    public int choisirCoup(EtatSimulation etat, SplittableRandom aleatoire) {
+        return choisirCoup(etat, aleatoire, System.nanoTime() + budget * 1_000_000);
+    }
+
+    /**
+     * Cherche le meilleur coup pour le joueur courant de l'état passé en argument
+     * jusqu'à une échéance donnée (par exemple calculée au début du tour du
+     * joueur, pour que le temps passé à préparer la recherche compte dans le
+     * budget). Chaque thread effectue au moins une itération, puis n'en commence
+     * pas de nouvelle après l'échéance.
+     *
+     * @param fin l'échéance (valeur de {@link System#nanoTime()})
+     * @return le coup choisi (voir {@link Coup})
+     */
+    public int choisirCoup(EtatSimulation etat, SplittableRandom aleatoire, long fin) {
+        Noeud racine = new Noeud(Coup.creer(Coup.PASSER), -1, null);
+        AtomicInteger iterations = new AtomicInteger();
+        List<Future<?>> taches = new ArrayList<>();
+        for (int i = 1; i < nbThreads; i++) {
+            Explorateur explorateur = new Explorateur(etat, aleatoire.split());
+            taches.add(EXECUTEUR.submit(() -> explorateur.explorer(racine, fin, iterations)));
+        }
+        new Explorateur(etat, aleatoire.split()).explorer(racine, fin, iterations);
+        for (Future<?> tache : taches) {
+            try {
+                tache.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        nbIterations = Math.min(iterations.get(), nbIterationsMax);
+
+        Noeud meilleur = null;
+        for (Noeud n = racine.premierEnfant; n != null; n = n.frere) {
+            if (meilleur == null || n.visites > meilleur.visites) {
+                meilleur = n;
+            }
+        }
+        return meilleur == null ? Coup.creer(Coup.PASSER) : meilleur.coup;
+    }
+
+    /**
+     * Nœud de l'arbre de recherche. Les enfants forment une liste chaînée à
+     * laquelle les threads ajoutent des éléments en tête sans verrou.
+     */
+    private static final class Noeud {
+        private static final AtomicIntegerFieldUpdater<Noeud> VISITES = AtomicIntegerFieldUpdater
+                .newUpdater(Noeud.class, "visites");
+        private static final AtomicLongFieldUpdater<Noeud> GAINS = AtomicLongFieldUpdater.newUpdater(Noeud.class,
+                "gains");
+        private static final AtomicReferenceFieldUpdater<Noeud, Noeud> PREMIER_ENFANT = AtomicReferenceFieldUpdater
+                .newUpdater(Noeud.class, Noeud.class, "premierEnfant");
+
+        /**
+         * Coup qui mène à ce nœud
+         */
+        final int coup;
+        /**
+         * Joueur qui a joué le coup (les gains du nœud sont ceux de ce joueur)
+         */
+        final int joueur;
+        final Noeud frere;
+        volatile Noeud premierEnfant;
+        volatile int visites;
+        /**
+         * Somme des gains (en millionièmes)
+         */
+        volatile long gains;
+
+        Noeud(int coup, int joueur, Noeud frere) {
+            this.coup = coup;
+            this.joueur = joueur;
+            this.frere = frere;
+        }
+
+        /**
+         * Renvoie l'enfant qui correspond au coup, en le créant s'il n'existe pas
+         */
+        Noeud enfant(int coup, int joueur) {
+            while (true) {
+                Noeud premier = premierEnfant;
+                for (Noeud n = premier; n != null; n = n.frere) {
+                    if (n.coup == coup) {
+                        return n;
+                    }
+                }
+                Noeud nouveau = new Noeud(coup, joueur, premier);
+                if (PREMIER_ENFANT.compareAndSet(this, premier, nouveau)) {
+                    return nouveau;
+                }
+            }
+        }
+
+        void ajouterPerteVirtuelle() {
+            VISITES.addAndGet(this, PERTE_VIRTUELLE);
+        }
+
+        void retropropager(double gain) {
+            VISITES.addAndGet(this, 1 - PERTE_VIRTUELLE);
+            GAINS.addAndGet(this, Math.round(gain * UNITE_GAIN));
+        }
+    }
+
+    /**
+     * Itérations exécutées par un thread (avec ses propres tableaux de travail)
+     */
+    private final class Explorateur {
+        /**
+         * État de travail, remis dans l'état initial à la fin de chaque itération
+         * en annulant les modifications notées dans la trace
+         */
+        private final EtatSimulation etat;
+        private final Trace trace = new Trace();
+        /**
+         * Coups joués depuis le début de l'itération
+         */
+        private int[] coupsJoues = new int[256];
+        private int nbCoupsJoues;
+        private final int joueur;
+        private final DonneesPlateau plateau;
+        private final MoteurRegles moteur;
+        private final SplittableRandom aleatoire;
+        private final int[] coups;
+        private final boolean[] essayes;
+        private final int[] scores;
+        private final double[] gains;
+        private final int[] cartesCachees;
+        private final int[] nbCartesWagon;
+        private final int[] nbCartesBateau;
+        private final int[] nbDestinations;
+        private final int[] destinationsCachees;
+        private Noeud[] chemin = new Noeud[64];
+
+        Explorateur(EtatSimulation etatInitial, SplittableRandom aleatoire) {
+            this.etat = etatInitial.copy();
+            this.joueur = etatInitial.joueurCourant;
+            this.plateau = etatInitial.plateau;
+            this.moteur = new MoteurRegles(plateau);
+            this.aleatoire = aleatoire;
+            this.coups = new int[moteur.getTailleMaxCoups()];
+            this.essayes = new boolean[coups.length];
+            this.scores = new int[etatInitial.nbJoueurs];
+            this.gains = new double[etatInitial.nbJoueurs];
+            this.cartesCachees = new int[plateau.nbSortes];
+            this.nbCartesWagon = new int[etatInitial.nbJoueurs];
+            this.nbCartesBateau = new int[etatInitial.nbJoueurs];
+            this.nbDestinations = new int[etatInitial.nbJoueurs];
+            this.destinationsCachees = new int[plateau.nbDestinations];
+        }
+
+        void explorer(Noeud racine, long fin, AtomicInteger iterations) {
+            do {
+                if (iterations.getAndIncrement() >= nbIterationsMax) {
+                    break;
+                }
+                iterer(racine);
+            } while (System.nanoTime() < fin);
+        }
+
+        private void iterer(Noeud racine) {
+            determiniser(etat);
+            int profondeur = 0;
+            chemin[profondeur++] = racine;
+            racine.ajouterPerteVirtuelle();
+            Noeud noeud = racine;
+            boolean nouveauNoeud = false;
+            while (!nouveauNoeud && !etat.estTerminee()) {
+                int n = coupsCandidats(etat);
+                Arrays.fill(essayes, 0, n, false);
+                int nbNonEssayes = n;
+                Noeud meilleur = null;
+                double meilleureValeur = Double.NEGATIVE_INFINITY;
+                double logVisites = Math.log(Math.max(1, noeud.visites));
+                for (Noeud enfant = noeud.premierEnfant; enfant != null; enfant = enfant.frere) {
+                    int i = Arrays.binarySearch(coups, 0, n, enfant.coup);
+                    if (i < 0) {
+                        // coup impossible dans l'état tiré pour cette itération
+                        continue;
+                    }
+                    essayes[i] = true;
+                    nbNonEssayes--;
+                    int visites = Math.max(1, enfant.visites);
+                    double valeur = (double) enfant.gains / UNITE_GAIN / visites
+                            + EXPLORATION * Math.sqrt(logVisites / visites);
+                    if (valeur > meilleureValeur) {
+                        meilleur = enfant;
+                        meilleureValeur = valeur;
+                    }
+                }
+                Noeud suivant;
+                if (nbNonEssayes > 0) {
+                    int k = aleatoire.nextInt(nbNonEssayes);
+                    int i = 0;
+                    while (essayes[i] || k-- > 0) {
+                        i++;
+                    }
+                    suivant = noeud.enfant(coups[i], etat.joueurCourant);
+                    nouveauNoeud = true;
+                } else {
+                    suivant = meilleur;
+                }
+                suivant.ajouterPerteVirtuelle();
+                if (profondeur == chemin.length) {
+                    chemin = Arrays.copyOf(chemin, 2 * profondeur);
+                }
+                chemin[profondeur++] = suivant;
+                jouer(suivant.coup);
+                noeud = suivant;
+            }
+            simuler(etat);
+            evaluer(etat);
+            while (nbCoupsJoues > 0) {
+                moteur.annuler(etat, coupsJoues[--nbCoupsJoues], trace);
+            }
+            // informations cachées tirées au début de l'itération
+            trace.annulerTout(etat);
+            for (int i = 0; i < profondeur; i++) {
+                Noeud n = chemin[i];
+                n.retropropager(n.joueur < 0 ? 0 : gains[n.joueur]);
+            }
+        }
+
+        /**
+         * Joue un coup en le notant dans la trace, pour l'annuler à la fin de
+         * l'itération
+         */
+        private void jouer(int coup) {
+            if (nbCoupsJoues == coupsJoues.length) {
+                coupsJoues = Arrays.copyOf(coupsJoues, 2 * nbCoupsJoues);
+            }
+            coupsJoues[nbCoupsJoues++] = coup;
+            moteur.appliquer(etat, coup, aleatoire, trace);
+        }
+
+        /**
+         * Coups considérés par la recherche : les coups autorisés, sauf les échanges
+         * de pions dont le nombre n'est pas 1 ou un multiple de 5 (pour limiter le
+         * nombre de coups presque équivalents)
+         */
+        private int coupsCandidats(EtatSimulation etat) {
+            int n = moteur.coupsLegaux(etat, coups);
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                int type = Coup.type(coups[i]);
+                int argument = Coup.argument(coups[i]);
+                if ((type != Coup.PIONS_WAGON && type != Coup.PIONS_BATEAU) || argument == 1
+                        || argument % 5 == 0) {
+                    coups[k++] = coups[i];
+                }
+            }
+            return k;
+        }
+
+        /**
+         * Termine la partie en jouant au hasard (en capturant de préférence les
+         * routes et ports possibles, et sans échanger de pions)
+         */
+        private void simuler(EtatSimulation etat) {
+            for (int p = 0; p < PROFONDEUR_MAX_SIMULATION && !etat.estTerminee(); p++) {
+                int n = moteur.coupsLegaux(etat, coups);
+                int nbConstructions = 0;
+                int nbAutres = 0;
+                for (int i = 0; i < n; i++) {
+                    int type = Coup.type(coups[i]);
+                    if (type == Coup.CAPTURER_ROUTE || type == Coup.CONSTRUIRE_PORT) {
+                        nbConstructions++;
+                    } else if (type != Coup.PASSER && type != Coup.PIONS_WAGON && type != Coup.PIONS_BATEAU) {
+                        nbAutres++;
+                    }
+                }
+                int coup;
+                if (nbConstructions > 0 && (nbAutres == 0 || aleatoire.nextInt(4) != 0)) {
+                    coup = choisir(n, aleatoire.nextInt(nbConstructions), true);
+                } else if (nbAutres > 0) {
+                    coup = choisir(n, aleatoire.nextInt(nbAutres), false);
+                } else {
+                    coup = Coup.creer(Coup.PASSER);
+                }
+                jouer(coup);
+            }
+        }
+
+        /**
+         * Renvoie le k-ième coup qui est une construction (ou le k-ième coup qui
+         * n'est ni une construction, ni un passage, ni un échange de pions)
+         */
+        private int choisir(int n, int k, boolean construction) {
+            for (int i = 0; i < n; i++) {
+                int type = Coup.type(coups[i]);
+                boolean estConstruction = type == Coup.CAPTURER_ROUTE || type == Coup.CONSTRUIRE_PORT;
+                boolean estAutre = !estConstruction && type != Coup.PASSER && type != Coup.PIONS_WAGON
+                        && type != Coup.PIONS_BATEAU;
+                if ((construction ? estConstruction : estAutre) && k-- == 0) {
+                    return coups[i];
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        /**
+         * Calcule dans {@code gains} le gain de chaque joueur, qui dépend de l'écart
+         * entre son score final et le meilleur score de ses adversaires
+         */
+        private void evaluer(EtatSimulation etat) {
+            for (int j = 0; j < etat.nbJoueurs; j++) {
+                scores[j] = moteur.scoreFinal(etat, j);
+            }
+            for (int j = 0; j < etat.nbJoueurs; j++) {
+                int meilleurAdversaire = Integer.MIN_VALUE;
+                for (int k = 0; k < etat.nbJoueurs; k++) {
+                    if (k != j) {
+                        meilleurAdversaire = Math.max(meilleurAdversaire, scores[k]);
+                    }
+                }
+                gains[j] = 1 / (1 + Math.exp((meilleurAdversaire - scores[j]) / ECHELLE_SCORE));
+            }
+        }
+
+        /**
+         * Tire au hasard les informations que le joueur ne connaît pas : les cartes
+         * en main des adversaires (parmi les cartes de la pioche et de leurs mains,
+         * en conservant le nombre de cartes wagon et bateau de chaque adversaire) et
+         * les destinations des adversaires (parmi celles de la pile et des
+         * adversaires). Les valeurs modifiées sont notées dans la trace.
+         */
+        private void determiniser(EtatSimulation etat) {
+            trace.vider();
+            int nbSortes = plateau.nbSortes;
+            for (int s = 0; s < nbSortes; s++) {
+                cartesCachees[s] = etat.pioche[s];
+            }
+            int nbDestinationsCachees = 0;
+            for (int d = 0; d < plateau.nbDestinations; d++) {
+                if (etat.estDansPileDestinations(d)) {
+                    destinationsCachees[nbDestinationsCachees++] = d;
+                    trace.noter(Trace.PILE_DESTINATIONS, d, 1);
+                }
+            }
+            for (int j = 0; j < etat.nbJoueurs; j++) {
+                if (j == joueur) {
+                    continue;
+                }
+                nbCartesWagon[j] = 0;
+                nbCartesBateau[j] = 0;
+                for (int s = 0; s < nbSortes; s++) {
+                    int n = etat.mains[j * nbSortes + s];
+                    cartesCachees[s] += n;
+                    if (plateau.estSorteWagon(s)) {
+                        nbCartesWagon[j] += n;
+                    } else {
+                        nbCartesBateau[j] += n;
+                    }
+                    if (n != 0) {
+                        trace.noter(Trace.MAIN, j * nbSortes + s, n);
+                        etat.mains[j * nbSortes + s] = 0;
+                    }
+                }
+                nbDestinations[j] = 0;
+                for (int d = 0; d < plateau.nbDestinations; d++) {
+                    if (etat.possedeDestination(j, d)) {
+                        destinationsCachees[nbDestinationsCachees++] = d;
+                        nbDestinations[j]++;
+                        trace.noter(Trace.DESTINATION, j * etat.nbMotsDestinations * 64 + d, 1);
+                    }
+                }
+                Arrays.fill(etat.destinations, j * etat.nbMotsDestinations,
+                        (j + 1) * etat.nbMotsDestinations, 0);
+            }
+            Arrays.fill(etat.pileDestinations, 0);
+            for (int i = nbDestinationsCachees - 1; i > 0; i--) {
+                int k = aleatoire.nextInt(i + 1);
+                int d = destinationsCachees[i];
+                destinationsCachees[i] = destinationsCachees[k];
+                destinationsCachees[k] = d;
+            }
+
+            int suivante = 0;
+            for (int j = 0; j < etat.nbJoueurs; j++) {
+                if (j == joueur) {
+                    continue;
+                }
+                distribuer(etat, j, true, nbCartesWagon[j]);
+                distribuer(etat, j, false, nbCartesBateau[j]);
+                for (int k = 0; k < nbDestinations[j]; k++) {
+                    int d = destinationsCachees[suivante++];
+                    trace.noter(Trace.DESTINATION, j * etat.nbMotsDestinations * 64 + d, 0);
+                    etat.ajouterDestination(j, d);
+                }
+            }
+            for (int s = 0; s < nbSortes; s++) {
+                if (etat.pioche[s] != cartesCachees[s]) {
+                    trace.noter(Trace.PIOCHE, s, etat.pioche[s]);
+                    etat.pioche[s] = (byte) cartesCachees[s];
+                }
+            }
+            while (suivante < nbDestinationsCachees) {
+                int d = destinationsCachees[suivante++];
+                trace.noter(Trace.PILE_DESTINATIONS, d, 0);
+                etat.ajouterPileDestinations(d);
+            }
+        }
+
+        /**
+         * Donne au joueur des cartes tirées au hasard parmi les cartes cachées
+         */
+        private void distribuer(EtatSimulation etat, int j, boolean wagon, int nombre) {
+            int total = 0;
+            for (int s = 0; s < plateau.nbSortes; s++) {
+                if (plateau.estSorteWagon(s) == wagon) {
+                    total += cartesCachees[s];
+                }
+            }
+            for (; nombre > 0 && total > 0; nombre--, total--) {
+                int r = aleatoire.nextInt(total);
+                for (int s = 0; s < plateau.nbSortes; s++) {
+                    if (plateau.estSorteWagon(s) == wagon) {
+                        r -= cartesCachees[s];
+                        if (r < 0) {
+                            cartesCachees[s]--;
+                            trace.noter(Trace.MAIN, j * plateau.nbSortes + s, etat.mains[j * plateau.nbSortes + s]);
+                            etat.mains[j * plateau.nbSortes + s]++;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
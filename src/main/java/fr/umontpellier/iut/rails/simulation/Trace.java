@@ -0,0 +1,117 @@
+package fr.umontpellier.iut.rails.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Modifications faites à un {@link EtatSimulation} par les coups joués, qui
+ * permettent d'annuler ces coups (voir
+ * {@link MoteurRegles#appliquer(EtatSimulation, int, java.util.SplittableRandom, Trace)}
+ * et {@link MoteurRegles#annuler(EtatSimulation, int, Trace)}).
+ * <p>
+ * Chaque valeur modifiée de l'état (cartes piochées, cartes visibles
+ * complétées ou redistribuées, destinations tirées et gardée, pions, score,
+ * propriétaire d'une route ou d'un port, joueur courant, phase...) est notée
+ * avec sa valeur précédente, sous la forme de trois entiers (champ, indice,
+ * ancienne valeur) ajoutés à un tampon d'entiers réutilisé d'un coup à l'autre.
+ * Chaque coup est suivi d'une entrée qui le désigne. Annuler un coup ne coûte
+ * donc que le nombre de valeurs qu'il a modifiées, quelle que soit la taille du
+ * plateau.
+ * <p>
+ * Les coups sont annulés dans l'ordre inverse de celui dans lequel ils ont été
+ * joués, comme une pile. Une trace n'est utilisée que par un seul thread à la
+ * fois.
+ */
+public final class Trace {
+    // champs de l'état (indice dans le tableau correspondant de l'état, ou
+    // numéro de bit pour les ensembles de destinations)
+    static final int MAIN = 0;
+    static final int PIOCHE = 1;
+    static final int DEFAUSSE = 2;
+    static final int VISIBLE = 3;
+    static final int PIONS = 4;
+    static final int SCORE = 5;
+    static final int ROUTE = 6;
+    static final int PORT = 7;
+    static final int DESTINATION = 8;
+    static final int PILE_DESTINATIONS = 9;
+    static final int JOUEUR_COURANT = 10;
+    static final int PHASE = 11;
+    static final int TOURS_RESTANTS = 12;
+    /**
+     * Fin d'un coup (indice : le coup, valeur : nombre d'entrées de la trace
+     * avant le coup)
+     */
+    static final int COUP = 13;
+
+    private int[] entrees = new int[3 * 256];
+    /**
+     * Nombre d'entiers utilisés dans {@code entrees}
+     */
+    private int taille;
+
+    /**
+     * @return le nombre de modifications (et de coups) notées
+     */
+    public int getNbEntrees() {
+        return taille / 3;
+    }
+
+    /**
+     * Oublie toutes les modifications notées (l'état n'est pas modifié)
+     */
+    public void vider() {
+        taille = 0;
+    }
+
+    /**
+     * Note la valeur d'un champ de l'état avant sa modification
+     */
+    void noter(int champ, int indice, int ancienneValeur) {
+        if (taille + 3 > entrees.length) {
+            entrees = Arrays.copyOf(entrees, 2 * entrees.length);
+        }
+        entrees[taille] = champ;
+        entrees[taille + 1] = indice;
+        entrees[taille + 2] = ancienneValeur;
+        taille += 3;
+    }
+
+    /**
+     * Note la fin d'un coup
+     *
+     * @param debut le nombre d'entrées de la trace avant le coup
+     */
+    void noterCoup(int coup, int debut) {
+        noter(COUP, coup, debut);
+    }
+
+    /**
+     * Annule les modifications du dernier coup noté
+     *
+     * @throws IllegalArgumentException si le dernier coup noté n'est pas
+     *                                  {@code coup}
+     */
+    void annulerCoup(EtatSimulation etat, int coup) {
+        if (taille == 0 || entrees[taille - 3] != COUP || entrees[taille - 2] != coup) {
+            throw new IllegalArgumentException("Le coup " + coup + " n'est pas le dernier coup de la trace");
+        }
+        annulerJusqua(etat, entrees[taille - 1]);
+    }
+
+    /**
+     * Annule toutes les modifications notées depuis le début de la trace (ou le
+     * dernier appel à {@link #vider()}), coups compris
+     */
+    void annulerTout(EtatSimulation etat) {
+        annulerJusqua(etat, 0);
+    }
+
+    private void annulerJusqua(EtatSimulation etat, int nbEntrees) {
+        for (int i = taille - 3; i >= 3 * nbEntrees; i -= 3) {
+            if (entrees[i] != COUP) {
+                etat.restaurer(entrees[i], entrees[i + 1], entrees[i + 2]);
+            }
+        }
+        taille = 3 * nbEntrees;
+    }
+}
@@ -0,0 +1,46 @@
+package fr.umontpellier.iut.gui;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.junit.jupiter.api.Test;
+
+public class ClientWebTest {
+
+    @Test
+    void testEnvoiBloqueDeconnecteSansNouvellePublication() throws IOException {
+        Session session = mock(Session.class);
+        // l'envoi asynchrone ne se termine jamais
+        when(session.getAsyncRemote()).thenReturn(mock(RemoteEndpoint.Async.class));
+        ClientWeb client = new ClientWeb(session, Runnable::run, Duration.ofMillis(100));
+        client.envoyer("{}");
+        verify(session, timeout(5000)).close(any(CloseReason.class));
+    }
+
+    @Test
+    void testEnvoiTermineNonDeconnecte() throws IOException, InterruptedException {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async distant = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(distant);
+        ClientWeb client = new ClientWeb(session, Runnable::run, Duration.ofMillis(100));
+        client.envoyer("{}");
+        verify(distant).sendText(anyString(), any(SendHandler.class));
+        client.onResult(new SendResult());
+        Thread.sleep(300);
+        verify(session, never()).close(any(CloseReason.class));
+    }
+}
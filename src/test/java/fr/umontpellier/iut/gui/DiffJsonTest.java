@@ -0,0 +1,163 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.umontpellier.iut.rails.EtatJson;
+import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.data.CarteTransport;
+
+public class DiffJsonTest {
+    private final Gson gson = new Gson();
+
+    /**
+     * Applique une liste d'opérations (add/remove/replace) à une copie de l'état
+     */
+    private JsonElement appliquer(JsonElement etat, JsonArray operations) {
+        JsonElement resultat = etat.deepCopy();
+        for (JsonElement e : operations) {
+            JsonObject operation = e.getAsJsonObject();
+            String[] cles = operation.get("path").getAsString().substring(1).split("/");
+            JsonElement parent = resultat;
+            for (int i = 0; i < cles.length - 1; i++) {
+                parent = parent.isJsonArray() ? parent.getAsJsonArray().get(Integer.parseInt(cles[i]))
+                        : parent.getAsJsonObject().get(cles[i]);
+            }
+            String derniere = cles[cles.length - 1];
+            String op = operation.get("op").getAsString();
+            if (parent.isJsonArray()) {
+                JsonArray tableau = parent.getAsJsonArray();
+                if (op.equals("remove")) {
+                    tableau.remove(Integer.parseInt(derniere));
+                } else if (derniere.equals("-")) {
+                    tableau.add(operation.get("value"));
+                } else if (op.equals("add")) {
+                    // insertion : les éléments suivants sont décalés
+                    int indice = Integer.parseInt(derniere);
+                    tableau.add(operation.get("value"));
+                    for (int i = tableau.size() - 1; i > indice; i--) {
+                        tableau.set(i, tableau.get(i - 1));
+                    }
+                    tableau.set(indice, operation.get("value"));
+                } else {
+                    tableau.set(Integer.parseInt(derniere), operation.get("value"));
+                }
+            } else if (op.equals("remove")) {
+                parent.getAsJsonObject().remove(derniere);
+            } else {
+                parent.getAsJsonObject().add(derniere, operation.get("value"));
+            }
+        }
+        return resultat;
+    }
+
+    @Test
+    void testEtatsIdentiques() {
+        JsonElement etat = gson.toJsonTree(Map.of("score", 3, "routes", List.of("R1", "R2")));
+        assertEquals(0, DiffJson.diff(etat, etat.deepCopy()).size());
+    }
+
+    @Test
+    void testRemplacementValeur() {
+        JsonElement ancien = gson.toJsonTree(Map.of("score", 3, "nom", "Guybrush"));
+        JsonElement nouveau = gson.toJsonTree(Map.of("score", 7, "nom", "Guybrush"));
+        JsonArray operations = DiffJson.diff(ancien, nouveau);
+        assertEquals(1, operations.size());
+        assertEquals("/score", operations.get(0).getAsJsonObject().get("path").getAsString());
+        assertEquals(nouveau, appliquer(ancien, operations));
+    }
+
+    @Test
+    void testAjoutEnFinDeTableau() {
+        List<String> log = new ArrayList<>(List.of("a", "b", "c"));
+        JsonElement ancien = gson.toJsonTree(Map.of("log", log));
+        log.add("d");
+        JsonElement nouveau = gson.toJsonTree(Map.of("log", log));
+        JsonArray operations = DiffJson.diff(ancien, nouveau);
+        assertEquals(1, operations.size());
+        assertEquals("add", operations.get(0).getAsJsonObject().get("op").getAsString());
+        assertEquals(nouveau, appliquer(ancien, operations));
+    }
+
+    @Test
+    void testRetraitTableauEtCles() {
+        JsonElement ancien = gson.toJsonTree(Map.of(
+                "joueurs", List.of(Map.of("main", List.of("C1", "C2", "C3")), Map.of("main", List.of("C4"))),
+                "instruction", "Début du tour"));
+        JsonElement nouveau = gson.toJsonTree(Map.of(
+                "joueurs", List.of(Map.of("main", List.of("C2")), Map.of("main", List.of("C4", "C1"), "score", 2)),
+                "boutons", List.of()));
+        JsonArray operations = DiffJson.diff(ancien, nouveau);
+        assertTrue(operations.size() > 0);
+        assertEquals(nouveau, appliquer(ancien, operations));
+    }
+
+    @Test
+    void testCarteAjouteeAuMilieuDUneMainTriee() {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" });
+        List<CarteTransport> main = jeu.getJoueurs().get(0).getCartesTransport();
+        for (int i = 0; i < 10; i++) {
+            main.add(jeu.piocherCarteWagon());
+        }
+        JsonElement ancien = JsonParser.parseString(jeu.etatJson().texte());
+        // carte qui n'est pas la dernière de la main triée
+        CarteTransport carte = jeu.piocherCarteWagon();
+        while (Collections.max(main).compareTo(carte) < 0) {
+            carte = jeu.piocherCarteWagon();
+        }
+        main.add(carte);
+        main.remove(0);
+        JsonElement nouveau = JsonParser.parseString(jeu.etatJson().texte());
+
+        JsonArray operations = DiffJson.diff(ancien, nouveau);
+        // un retrait et une insertion dans la main, sans remplacer les cartes
+        // suivantes
+        List<String> ops = new ArrayList<>();
+        for (JsonElement operation : operations) {
+            if (operation.getAsJsonObject().get("path").getAsString().startsWith("/joueurs/0/main/")) {
+                ops.add(operation.getAsJsonObject().get("op").getAsString());
+            }
+        }
+        assertEquals(List.of("remove", "add"), ops, operations.toString());
+        assertEquals(nouveau, appliquer(ancien, operations));
+    }
+
+    @Test
+    void testElementsNommesDansUnAutreOrdre() {
+        JsonElement ancien = gson.toJsonTree(Map.of("main", List.of(Map.of("nom", "C1"), Map.of("nom", "C2"),
+                Map.of("nom", "C3"))));
+        JsonElement nouveau = gson.toJsonTree(Map.of("main", List.of(Map.of("nom", "C3"), Map.of("nom", "C4"),
+                Map.of("nom", "C1"))));
+        assertEquals(nouveau, appliquer(ancien, DiffJson.diff(ancien, nouveau)));
+    }
+
+    @Test
+    void testDifferencesParSections() {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo", "LeChuck" });
+        jeu.remplirCartesTransportVisibles();
+        EtatJson ancien = jeu.etatJson();
+        jeu.getJoueurs().get(1).getCartesTransport().add(jeu.piocherCarteWagon());
+        jeu.defausserCarteTransport(jeu.piocherCarteBateau());
+        EtatJson nouveau = jeu.etatJson();
+
+        JsonElement arbreAncien = JsonParser.parseString(ancien.texte());
+        JsonElement arbreNouveau = JsonParser.parseString(nouveau.texte());
+        JsonArray operations = DiffJson.diff(ancien, nouveau);
+        assertTrue(operations.size() > 0);
+        assertEquals(DiffJson.diff(arbreAncien, arbreNouveau), operations);
+        assertEquals(arbreNouveau, appliquer(arbreAncien, operations));
+    }
+}
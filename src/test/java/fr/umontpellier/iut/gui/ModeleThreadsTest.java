@@ -0,0 +1,43 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class ModeleThreadsTest {
+
+    @Test
+    void testThreadsDeLaPlateforme() throws InterruptedException {
+        ModeleThreads modele = new ModeleThreads(ModeleThreads.Type.PLATEFORME);
+        assertEquals(ModeleThreads.Type.PLATEFORME, modele.getType());
+        Thread thread = modele.demarrer("partie", () -> {
+        });
+        thread.join();
+        assertEquals("partie", thread.getName());
+        assertFalse(thread.isDaemon());
+        assertTrue(modele.fabrique("diffusion", true).newThread(() -> {
+        }).isDaemon());
+    }
+
+    @Test
+    void testThreadsVirtuelsSiDisponibles() throws InterruptedException {
+        ModeleThreads modele = new ModeleThreads(ModeleThreads.Type.VIRTUELS);
+        ModeleThreads.Type attendu = Runtime.version().feature() >= 21
+                ? ModeleThreads.Type.VIRTUELS
+                : ModeleThreads.Type.PLATEFORME;
+        assertEquals(attendu, modele.getType());
+
+        CountDownLatch executee = new CountDownLatch(1);
+        Thread thread = modele.demarrer("partie", executee::countDown);
+        assertTrue(executee.await(5, TimeUnit.SECONDS));
+        assertEquals("partie", thread.getName());
+        assertEquals(0, modele.getNbEpinglages());
+        assertEquals(Duration.ZERO, modele.getDureeEpinglages());
+    }
+}
@@ -0,0 +1,93 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.umontpellier.iut.rails.Bouton;
+import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.LogJeu;
+import fr.umontpellier.iut.rails.TestUtils;
+
+public class ProtocoleBinaireTest {
+    private final Gson gson = new Gson();
+    private Jeu jeu;
+    private ProtocoleBinaire protocole;
+
+    @BeforeEach
+    void setUp() {
+        jeu = new Jeu(new String[] { "Guybrush", "Largo", "LeChuck" });
+        jeu.remplirCartesTransportVisibles();
+        for (Joueur joueur : jeu.getJoueurs()) {
+            for (int i = 0; i < 4; i++) {
+                joueur.getCartesTransport().add(jeu.piocherCarteWagon());
+                joueur.getCartesTransport().add(jeu.piocherCarteBateau());
+            }
+            joueur.getDestinations().add(jeu.piocherDestination());
+        }
+        TestUtils.setAttribute(jeu, "instruction", "Début du tour");
+        TestUtils.setAttribute(jeu, "boutons", List.of(new Bouton("Prendre des pions wagon", "PIONS WAGON")));
+        protocole = new ProtocoleBinaire(jeu);
+    }
+
+    @Test
+    void testTrameEtatRedonneLEtat() {
+        JsonObject etat = JsonParser.parseString(jeu.etatJson().texte()).getAsJsonObject();
+        LogJeu.Extrait log = new LogJeu.Extrait(12, List.of("Guybrush pioche une carte", "Largo passe"));
+
+        TrameBinaire trame = protocole.trameEtat(7, log, protocole.encoderEtat(jeu));
+        JsonObject message = protocole.decoderEtat(trame.vue());
+        trame.liberer();
+
+        assertEquals("etat", message.get("type").getAsString());
+        assertEquals(7, message.get("version").getAsLong());
+        assertEquals(gson.toJsonTree(log), message.get("log"));
+        assertEquals(etat, message.get("etat"));
+        // les cartes et les destinations sont désignées par leurs identifiants
+        assertTrue(trame.taille() * 4 < gson.toJson(etat).length());
+    }
+
+    @Test
+    void testTrameDepassantLaTailleDesTampons() {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            messages.add("<span class=\"joueur\">Guybrush</span> pioche une carte wagon " + i);
+        }
+        LogJeu.Extrait log = new LogJeu.Extrait(0, messages);
+
+        TrameBinaire trame = protocole.trameEtat(1, log, protocole.encoderEtat(jeu));
+        assertTrue(trame.taille() > TrameBinaire.TAILLE_INITIALE);
+        assertEquals(gson.toJsonTree(log), protocole.decoderEtat(trame.vue()).get("log"));
+        trame.liberer();
+    }
+
+    @Test
+    void testActions() {
+        List<String> entrees = List.of("", "WAGON", "BATEAU", "PIONS WAGON", "PIONS BATEAU", "DESTINATION", "12",
+                jeu.getCartesTransportVisibles().get(0).getNom(),
+                jeu.getIndexRoutes().get(5).getNom(),
+                jeu.getIndexPorts().get(3).nom(),
+                jeu.getIndexDestinations().get(8).getNom());
+        for (String entree : entrees) {
+            ByteBuffer action = protocole.encoderAction(entree);
+            assertTrue(action.remaining() <= 3);
+            assertEquals(entree, protocole.decoderAction(action));
+        }
+        assertNull(protocole.encoderAction("n'importe quoi"));
+        assertNull(protocole.decoderAction(ByteBuffer.wrap(new byte[] { ProtocoleBinaire.ACTION_ROUTE })));
+        assertNull(protocole.decoderAction(ByteBuffer.wrap(new byte[] { ProtocoleBinaire.ACTION_ROUTE, -1, -1 })));
+        assertNull(protocole.decoderAction(ByteBuffer.wrap(new byte[] { 42 })));
+    }
+}
@@ -0,0 +1,55 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.umontpellier.iut.rails.Metriques;
+
+public class ServeurMetriquesTest {
+
+    @Test
+    void testPublicationHttpEtJmx() throws IOException, JMException {
+        Metriques.activer(true);
+        ServeurMetriques serveur = ServeurMetriques.demarrer(0, new ModeleThreads(ModeleThreads.Type.PLATEFORME));
+        try {
+            Metriques.PROMPTS.incrementer();
+            long total = Metriques.PROMPTS.getTotal();
+
+            HttpURLConnection connexion = (HttpURLConnection) new URL(
+                    "http://localhost:" + serveur.getPort() + "/metriques").openConnection();
+            assertEquals(200, connexion.getResponseCode());
+            JsonObject mesures;
+            try (InputStream entree = connexion.getInputStream()) {
+                mesures = JsonParser.parseString(new String(entree.readAllBytes(), StandardCharsets.UTF_8))
+                        .getAsJsonObject();
+            }
+            assertEquals(total, mesures.getAsJsonObject("prompts").get("total").getAsLong());
+            assertEquals("ns", mesures.getAsJsonObject("etat.construction").get("unite").getAsString());
+            assertEquals("PLATEFORME", mesures.getAsJsonObject("threads").get("modele").getAsString());
+
+            Object jmx = ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(new ObjectName(ServeurMetriques.NOM_JMX), "prompts.total");
+            assertEquals(total, jmx);
+        } finally {
+            serveur.arreter();
+            Metriques.activer(false);
+        }
+        assertTrue(!ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(new ObjectName(ServeurMetriques.NOM_JMX)));
+    }
+}
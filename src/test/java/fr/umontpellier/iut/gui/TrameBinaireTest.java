@@ -0,0 +1,67 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.Test;
+
+public class TrameBinaireTest {
+    /**
+     * Message JSON plus grand que les tampons initiaux, avec des caractères non
+     * ASCII
+     */
+    private static String message() {
+        StringBuilder message = new StringBuilder("{\"log\":[");
+        for (int i = 0; i < 2000; i++) {
+            message.append(i == 0 ? "" : ",").append("\"Guybrush prend la route Marseille–Al-Qahira ").append(i).append('"');
+        }
+        return message.append("]}").toString();
+    }
+
+    private static byte[] octets(ByteBuffer vue) {
+        byte[] octets = new byte[vue.remaining()];
+        vue.get(octets);
+        return octets;
+    }
+
+    @Test
+    void testJsonUtf8() {
+        String message = message();
+        TrameBinaire trame = TrameBinaire.json(message, false);
+        assertEquals(message, new String(octets(trame.vue()), StandardCharsets.UTF_8));
+        trame.liberer();
+    }
+
+    @Test
+    void testJsonCompresse() throws DataFormatException {
+        String message = message();
+        TrameBinaire trame = TrameBinaire.json(message, true);
+        byte[] utf8 = message.getBytes(StandardCharsets.UTF_8);
+        assertTrue(trame.taille() < utf8.length / 4);
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(octets(trame.vue()));
+        byte[] resultat = new byte[utf8.length];
+        assertEquals(utf8.length, inflater.inflate(resultat));
+        assertTrue(inflater.finished());
+        inflater.end();
+        assertEquals(message, new String(resultat, StandardCharsets.UTF_8));
+        trame.liberer();
+    }
+
+    @Test
+    void testVuesIndependantes() {
+        TrameBinaire trame = TrameBinaire.json("{\"a\":1}", false);
+        ByteBuffer vue1 = trame.vue();
+        ByteBuffer vue2 = trame.vue();
+        vue1.get();
+        assertEquals(trame.taille() - 1, vue1.remaining());
+        assertEquals(trame.taille(), vue2.remaining());
+        trame.liberer();
+    }
+}
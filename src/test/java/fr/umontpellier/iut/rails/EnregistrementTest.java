@@ -0,0 +1,80 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import fr.umontpellier.iut.rails.Joueur.CouleurJouer;
+
+public class EnregistrementTest {
+
+    /**
+     * Résumé de l'état des joueurs à la fin d'une partie, indépendant des noms des
+     * cartes et des routes
+     */
+    private static List<String> resume(Jeu jeu) {
+        return jeu.getJoueurs().stream()
+                .map(j -> String.format("%s %d %d %d %s %s", j.getNom(), j.getScore(), j.getNbPionsWagon(),
+                        j.getNbPionsBateau(),
+                        j.getRoutes().stream().map(r -> jeu.getIndexRoutes().getId(r)).toList(),
+                        j.getCartesTransport().stream().map(c -> jeu.versEntreeCanonique(c.getNom())).sorted().toList()))
+                .toList();
+    }
+
+    @Test
+    void testRejouerPartieAleatoire() {
+        IOJeu jeu = new IOJeu(new String[] { "J1", "J2", "J3" });
+        TestUtils.setJoueurs(jeu, List.of(
+                new JoueurAutoAleatoire("J1", jeu, CouleurJouer.JAUNE),
+                new JoueurAutoAleatoire("J2", jeu, CouleurJouer.ROUGE),
+                new JoueurAutoAleatoire("J3", jeu, CouleurJouer.BLEU)));
+        Enregistrement enregistrement = jeu.activerEnregistrement();
+        jeu.setInput("", "20", "", "20", "", "20");
+        jeu.run();
+
+        JeuRejoue rejoue = JeuRejoue.rejouer(enregistrement);
+        assertEquals(enregistrement.getEntrees().size(), rejoue.getNbEntreesLues());
+        assertEquals(resume(jeu), resume(rejoue));
+    }
+
+    @Test
+    void testLectureEcriture(@TempDir Path dossier) throws IOException {
+        Enregistrement enregistrement = new Enregistrement(123456789L, List.of("Guybrush", "Largo"));
+        enregistrement.ajouter("");
+        enregistrement.ajouter("#C12");
+        enregistrement.ajouter("ligne\navec \\ retour");
+        Path fichier = dossier.resolve("partie.txt");
+        enregistrement.ecrire(fichier);
+
+        Enregistrement relu = Enregistrement.lire(fichier);
+        assertEquals(123456789L, relu.getGraine());
+        assertEquals(List.of("Guybrush", "Largo"), relu.getNomsJoueurs());
+        assertEquals(enregistrement.getEntrees(), relu.getEntrees());
+    }
+
+    @Test
+    void testEcritureAuFurEtAMesure(@TempDir Path dossier) throws IOException {
+        Enregistrement enregistrement = new Enregistrement(-1L, List.of("A", "B", "C"));
+        Path fichier = dossier.resolve("partie.txt");
+        enregistrement.ajouter("avant");
+        enregistrement.ecrireAuFurEtAMesure(fichier);
+        enregistrement.ajouter("après");
+        assertEquals(List.of("avant", "après"), Enregistrement.lire(fichier).getEntrees());
+    }
+
+    @Test
+    void testEntreesCanoniques() {
+        Jeu jeu = new Jeu(new String[] { "A", "B" }, 42);
+        Route route = jeu.getRoutesLibres().get(3);
+        assertEquals("#R3", jeu.versEntreeCanonique(route.getNom()));
+        assertEquals(route.getNom(), jeu.depuisEntreeCanonique("#R3"));
+        assertEquals("Lima", jeu.versEntreeCanonique("Lima"));
+        assertEquals("##x", jeu.versEntreeCanonique("#x"));
+        assertEquals("#x", jeu.depuisEntreeCanonique("##x"));
+    }
+}
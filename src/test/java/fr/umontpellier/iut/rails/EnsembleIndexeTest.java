@@ -0,0 +1,85 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class EnsembleIndexeTest {
+    private Index<String> index;
+
+    @BeforeEach
+    void setUp() {
+        index = new Index<>(List.of("a", "b", "c", "d"), s -> s.toUpperCase());
+    }
+
+    @Test
+    void testIndex() {
+        assertEquals(4, index.taille());
+        assertEquals(2, index.getId((Object) "c"));
+        assertEquals(1, index.getId("B"));
+        assertEquals(-1, index.getId("e"));
+        assertEquals("d", index.get(3));
+    }
+
+    @Test
+    void testCompletEtRetrait() {
+        EnsembleIndexe<String> ensemble = EnsembleIndexe.complet(index);
+        assertEquals(List.of("a", "b", "c", "d"), ensemble);
+        assertEquals("b", ensemble.retirer("B"));
+        assertNull(ensemble.retirer("B"));
+        assertTrue(ensemble.remove("d"));
+        assertFalse(ensemble.remove("d"));
+        assertEquals(2, ensemble.size());
+        assertEquals(List.of("a", "c"), ensemble);
+        assertFalse(ensemble.contains("b"));
+        assertTrue(ensemble.contains("c"));
+    }
+
+    @Test
+    void testAjoutDansLOrdreDesIdentifiants() {
+        EnsembleIndexe<String> ensemble = new EnsembleIndexe<>(index);
+        assertTrue(ensemble.add("c"));
+        assertTrue(ensemble.add("a"));
+        assertFalse(ensemble.add("c"));
+        assertEquals(List.of("a", "c"), ensemble);
+        assertEquals("c", ensemble.get(1));
+        assertThrows(IllegalArgumentException.class, () -> ensemble.add("z"));
+    }
+
+    @Test
+    void testIterateurEtVue() {
+        EnsembleIndexe<String> ensemble = EnsembleIndexe.complet(index);
+        List<String> vue = ensemble.vueLectureSeule();
+        Iterator<String> it = ensemble.iterator();
+        while (it.hasNext()) {
+            if (it.next().equals("b")) {
+                it.remove();
+            }
+        }
+        assertEquals(List.of("a", "c", "d"), vue);
+        assertThrows(UnsupportedOperationException.class, () -> vue.remove("a"));
+        ensemble.clear();
+        assertTrue(vue.isEmpty());
+    }
+
+    @Test
+    void testAccesParPositionApresModifications() {
+        EnsembleIndexe<String> ensemble = EnsembleIndexe.complet(index);
+        assertEquals("c", ensemble.get(2));
+        ensemble.remove("b");
+        assertEquals("c", ensemble.get(1));
+        assertEquals("d", ensemble.get(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> ensemble.get(3));
+        ensemble.add("b");
+        assertEquals("b", ensemble.remove(1));
+        assertEquals(List.of("a", "c", "d"), ensemble.vueLectureSeule());
+    }
+}
@@ -0,0 +1,145 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.umontpellier.iut.rails.data.Destination;
+import fr.umontpellier.iut.rails.data.Ville;
+
+public class EtatJsonTest {
+    private final Gson gson = new Gson();
+    private Jeu jeu;
+
+    @BeforeEach
+    void setUp() {
+        jeu = new Jeu(new String[] { "Guybrush", "Largo", "LeChuck" });
+        jeu.remplirCartesTransportVisibles();
+        for (Joueur joueur : jeu.getJoueurs()) {
+            for (int i = 0; i < 5; i++) {
+                joueur.getCartesTransport().add(jeu.piocherCarteWagon());
+                joueur.getCartesTransport().add(jeu.piocherCarteBateau());
+            }
+            joueur.getCartesTransportPosees().add(jeu.piocherCarteWagon());
+            joueur.getDestinations().add(jeu.piocherDestination());
+        }
+        TestUtils.setAttribute(jeu, "instruction", "Défaussez des cartes pour construire le port à <span>Athina</span>");
+        TestUtils.setAttribute(jeu, "boutons", List.of(new Bouton("Prendre des pions wagon", "PIONS WAGON")));
+    }
+
+    /**
+     * Construit l'état attendu à partir des attributs du jeu
+     */
+    private JsonObject etatAttendu() {
+        JsonObject etat = new JsonObject();
+        JsonArray joueurs = new JsonArray();
+        for (Joueur joueur : jeu.getJoueurs()) {
+            JsonObject j = new JsonObject();
+            j.addProperty("nom", joueur.getNom());
+            j.addProperty("couleur", joueur.getCouleur().name());
+            j.addProperty("score", joueur.getScore());
+            j.addProperty("scoreProjete", joueur.getScoreProjete());
+            j.addProperty("pionsWagon", joueur.getNbPionsWagon());
+            j.addProperty("pionsWagonReserve", joueur.getNbPionsWagonEnReserve());
+            j.addProperty("pionsBateau", joueur.getNbPionsBateau());
+            j.addProperty("pionsBateauReserve", joueur.getNbPionsBateauEnReserve());
+            ScoreProjete scoreProjete = (ScoreProjete) TestUtils.getAttribute(joueur, "scoreProjete");
+            List<Destination> completes = new ArrayList<>();
+            List<Destination> incompletes = new ArrayList<>();
+            for (int i = 0; i < joueur.getDestinations().size(); i++) {
+                (scoreProjete.estComplete(i) ? completes : incompletes).add(joueur.getDestinations().get(i));
+            }
+            j.add("destinationsIncompletes", gson.toJsonTree(incompletes));
+            j.add("destinationsCompletes", gson.toJsonTree(completes));
+            j.add("main", gson.toJsonTree(joueur.getCartesTransport().stream().sorted().toList()));
+            j.add("inPlay", gson.toJsonTree(joueur.getCartesTransportPosees().stream().sorted().toList()));
+            @SuppressWarnings("unchecked")
+            List<Ville> ports = (List<Ville>) TestUtils.getAttribute(joueur, "ports");
+            j.add("ports", gson.toJsonTree(ports.stream().map(Ville::nom).toList()));
+            j.add("routes", gson.toJsonTree(joueur.getRoutes().stream().map(Route::getNom).toList()));
+            joueurs.add(j);
+        }
+        etat.add("joueurs", joueurs);
+        etat.addProperty("joueurCourant", jeu.getJoueurs().indexOf(jeu.getJoueurCourant()));
+        for (String pioche : new String[] { "piocheWagon", "piocheBateau" }) {
+            Object piles = TestUtils.getAttribute(jeu,
+                    pioche.equals("piocheWagon") ? "pilesDeCartesWagon" : "pilesDeCartesBateau");
+            JsonObject pile = new JsonObject();
+            pile.addProperty("pioche", ((List<?>) TestUtils.getAttribute(piles, "pilePioche")).size());
+            pile.add("defausse", gson.toJsonTree(TestUtils.getAttribute(piles, "pileDefausse")));
+            etat.add(pioche, pile);
+        }
+        etat.add("cartesTransportVisibles", gson.toJsonTree(jeu.getCartesTransportVisibles()));
+        etat.addProperty("nbDestinations", ((List<?>) TestUtils.getAttribute(jeu, "pileDestinations")).size());
+        etat.addProperty("instruction", (String) TestUtils.getAttribute(jeu, "instruction"));
+        etat.add("boutons", gson.toJsonTree(TestUtils.getAttribute(jeu, "boutons")));
+        return etat;
+    }
+
+    private void assertEtatsEgaux() {
+        assertEquals(etatAttendu(), JsonParser.parseString(jeu.etatJson().texte()));
+    }
+
+    @Test
+    void testContenuDeLEtat() {
+        assertEtatsEgaux();
+    }
+
+    @Test
+    void testSectionsDeLEtat() {
+        EtatJson etat = jeu.etatJson();
+        JsonObject arbre = JsonParser.parseString(etat.texte()).getAsJsonObject();
+        assertEquals(jeu.getJoueurs().size() + arbre.size() - 1, etat.getNbSections());
+        for (int i = 0; i < etat.getNbSections(); i++) {
+            String[] cles = etat.getChemin(i).substring(1).split("/");
+            JsonElement valeur = arbre.get(cles[0]);
+            if (cles.length > 1) {
+                valeur = valeur.getAsJsonArray().get(Integer.parseInt(cles[1]));
+            }
+            assertEquals(valeur, JsonParser.parseString(etat.getSection(i)), etat.getChemin(i));
+            assertTrue(etat.sectionEgale(i, jeu.etatJson()));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRoutesPortsEtDestinationsCompletes() {
+        Joueur joueur = jeu.getJoueurs().get(1);
+        Route route = jeu.getRoutesLibres().get(0);
+        ((List<Route>) TestUtils.getAttribute(jeu, "routesLibres")).remove(route);
+        joueur.getRoutes().add(route);
+        ((List<Ville>) TestUtils.getAttribute(joueur, "ports")).add(jeu.getPortsLibres().get(0));
+        Destination complete = jeu.getIndexDestinations().getElements().stream()
+                .filter(d -> d.getVilles().size() == 2
+                        && d.getVilles().contains(route.getVille1().nom())
+                        && d.getVilles().contains(route.getVille2().nom()))
+                .findFirst().orElse(null);
+        if (complete != null) {
+            joueur.getDestinations().add(complete);
+        }
+        jeu.defausserCarteTransport(joueur.getCartesTransport().remove(0));
+        assertEtatsEgaux();
+    }
+
+    @Test
+    void testEtatsSuccessifs() {
+        String premier = jeu.etatJson().texte();
+        assertEquals(premier, jeu.etatJson().texte());
+        jeu.getJoueurs().get(0).getCartesTransport().add(jeu.piocherCarteBateau());
+        String second = jeu.etatJson().texte();
+        assertNotEquals(premier, second);
+        assertEtatsEgaux();
+    }
+}
@@ -0,0 +1,88 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class EvenementsJfrTest {
+
+    /**
+     * Exécute une action pendant un enregistrement JFR des événements du jeu
+     */
+    private static List<RecordedEvent> enregistrer(Runnable action) throws IOException {
+        Path fichier = Files.createTempFile("partie", ".jfr");
+        try (Recording enregistrement = new Recording()) {
+            for (String nom : List.of("Tour", "Choix", "CaptureRoute", "MelangePioche", "Redistribution")) {
+                enregistrement.enable("fr.umontpellier.iut.rails." + nom);
+            }
+            enregistrement.start();
+            action.run();
+            enregistrement.stop();
+            enregistrement.dump(fichier);
+            return RecordingFile.readAllEvents(fichier);
+        } finally {
+            Files.delete(fichier);
+        }
+    }
+
+    @Test
+    void testEvenementsDUnePartieComplete() throws IOException {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, 42) {
+            @Override
+            public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+            }
+        };
+        jeu.addInput("n'importe quoi");
+        jeu.setDelaiDecision(Duration.ofMillis(1), Jeu.ReactionDelaiDepasse.JOUEUR_AUTOMATIQUE);
+
+        List<RecordedEvent> evenements = enregistrer(jeu::run);
+
+        Map<String, List<RecordedEvent>> parType = evenements.stream()
+                .filter(e -> e.getLong("partie") == jeu.getIdPartie())
+                .collect(Collectors.groupingBy(e -> e.getEventType().getName()));
+        assertFalse(parType.getOrDefault("fr.umontpellier.iut.rails.Tour", List.of()).isEmpty());
+        List<RecordedEvent> captures = parType.get("fr.umontpellier.iut.rails.CaptureRoute");
+        assertEquals(jeu.getJoueurs().stream().mapToInt(j -> j.getRoutes().size()).sum(), captures.size());
+        // les cartes posées avant le choix de la route ne sont pas comptées
+        assertTrue(captures.stream().allMatch(e -> e.getInt("cartesPayees") >= 0));
+        assertTrue(captures.stream().anyMatch(e -> e.getInt("cartesPayees") > 0));
+
+        RecordedEvent premierChoix = parType.get("fr.umontpellier.iut.rails.Choix").stream()
+                .min((a, b) -> a.getStartTime().compareTo(b.getStartTime())).orElseThrow();
+        // l'entrée invalide puis le délai dépassé
+        assertEquals(2, premierChoix.getInt("tentatives"));
+        assertEquals(0, premierChoix.getInt("joueur"));
+        assertTrue(premierChoix.getLong("attente") >= Duration.ofMillis(1).toNanos());
+    }
+
+    @Test
+    void testAucunEvenementPendantUneRelecture() throws IOException {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, 5) {
+            @Override
+            public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+            }
+        };
+        Enregistrement enregistrement = jeu.activerEnregistrement();
+        jeu.setDelaiDecision(Duration.ofMillis(1), Jeu.ReactionDelaiDepasse.JOUEUR_AUTOMATIQUE);
+        jeu.run();
+
+        JeuRejoue[] rejoue = new JeuRejoue[1];
+        List<RecordedEvent> evenements = enregistrer(() -> rejoue[0] = JeuRejoue.rejouer(enregistrement));
+        assertTrue(evenements.stream().noneMatch(e -> e.getLong("partie") == rejoue[0].getIdPartie()));
+    }
+}
@@ -0,0 +1,107 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GestionnairePartiesTest {
+    @TempDir
+    Path repertoire;
+
+    /**
+     * Attend que la partie soit passivée (par le thread de passivation ou par un
+     * appel explicite)
+     */
+    private static void attendrePassivation(GestionnaireParties parties, String id) throws InterruptedException {
+        long fin = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!parties.estPassivee(id) && System.nanoTime() < fin) {
+            Thread.sleep(20);
+            parties.passiverInactives();
+        }
+    }
+
+    @Test
+    void testPartieInactivePassiveeEtRestauree() throws IOException, InterruptedException {
+        try (GestionnaireParties parties = new GestionnaireParties(repertoire, Duration.ofMillis(50))) {
+            String id = parties.creer(new String[] { "Guybrush", "Largo" }, 1);
+            PartieReprenable.Decision premiere = parties.getDecision(id);
+            PartieReprenable.Decision deuxieme = parties.soumettre(id, premiere.boutons().get(0).valeur());
+
+            attendrePassivation(parties, id);
+            assertTrue(parties.estPassivee(id));
+            assertEquals(0, parties.getNbPartiesEnMemoire());
+            assertTrue(Files.exists(repertoire.resolve(id + ".rails")));
+
+            // restauration transparente à la consultation, le fichier est conservé
+            assertEquals(deuxieme, parties.getDecision(id));
+            assertTrue(Files.exists(repertoire.resolve(id + ".rails")));
+        }
+    }
+
+    @Test
+    void testReponseAUnePartiePassivee() throws IOException, InterruptedException {
+        PartieReprenable reference = new PartieReprenable(new String[] { "Guybrush", "Largo" }, 5);
+        try (GestionnaireParties parties = new GestionnaireParties(repertoire, Duration.ofMillis(20))) {
+            String id = parties.creer(new String[] { "Guybrush", "Largo" }, 5);
+            for (int i = 0; i < 3; i++) {
+                String entree = reference.getDecision().boutons().get(0).valeur();
+                attendrePassivation(parties, id);
+                assertEquals(reference.soumettre(entree), parties.soumettre(id, entree));
+            }
+        }
+    }
+
+    @Test
+    void testFichierSupprimeALaFinDeLaPartie() throws IOException, InterruptedException {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, 11) {
+            @Override
+            public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+            }
+        };
+        Enregistrement complete = jeu.activerEnregistrement();
+        jeu.setDelaiDecision(Duration.ofMillis(1), Jeu.ReactionDelaiDepasse.JOUEUR_AUTOMATIQUE);
+        jeu.run();
+
+        try (GestionnaireParties parties = new GestionnaireParties(repertoire, Duration.ofMillis(20))) {
+            String id = parties.creer(new String[] { "Guybrush", "Largo" }, 11);
+            attendrePassivation(parties, id);
+            Path fichier = repertoire.resolve(id + ".rails");
+            assertTrue(Files.exists(fichier));
+            PartieReprenable.Decision decision = null;
+            for (String entree : complete.getEntrees()) {
+                decision = parties.soumettre(id, entree);
+            }
+            assertNull(decision);
+            assertFalse(Files.exists(fichier));
+        }
+    }
+
+    @Test
+    void testPartiesPassiveesRetrouveesApresRedemarrage() throws IOException, InterruptedException {
+        String id;
+        PartieReprenable.Decision decision;
+        try (GestionnaireParties parties = new GestionnaireParties(repertoire, Duration.ofMillis(20))) {
+            id = parties.creer(new String[] { "Guybrush", "Largo", "LeChuck" }, 9);
+            decision = parties.soumettre(id, parties.getDecision(id).boutons().get(1).valeur());
+            attendrePassivation(parties, id);
+        }
+        try (GestionnaireParties parties = new GestionnaireParties(repertoire, Duration.ofHours(1))) {
+            assertEquals(Set.of(id), parties.getIdentifiants());
+            assertTrue(parties.estPassivee(id));
+            assertEquals(decision, parties.getDecision(id));
+            assertThrows(IllegalArgumentException.class, () -> parties.getDecision("inconnue"));
+        }
+    }
+}
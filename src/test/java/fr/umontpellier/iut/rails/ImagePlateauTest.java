@@ -0,0 +1,171 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import fr.umontpellier.iut.gui.ProtocoleBinaire;
+import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.Destination;
+import fr.umontpellier.iut.rails.data.ImagePlateau;
+import fr.umontpellier.iut.rails.data.Plateau;
+import fr.umontpellier.iut.rails.simulation.Coup;
+import fr.umontpellier.iut.rails.simulation.DonneesPlateau;
+
+public class ImagePlateauTest {
+    @TempDir
+    Path dossier;
+
+    @Test
+    void testPlateauMonde() {
+        ImagePlateau image = ImagePlateau.monde();
+        assertEquals(48, image.getNbVilles());
+        assertEquals(130, image.getNbRoutes());
+        assertEquals(65, image.getNbDestinations());
+
+        Plateau plateau = Plateau.depuisImage(image);
+        List<Route> routes = plateau.getRoutes();
+        Route r1 = routes.get(0);
+        assertTrue(r1 instanceof RouteMaritime);
+        assertEquals("Al-Qahira", r1.getVille1().nom());
+        assertEquals("Athina", r1.getVille2().nom());
+        assertEquals(Couleur.VERT, r1.getCouleur());
+        assertNull(r1.getRouteParallele());
+        // R3 et R4 : Al-Qahira - Djibouti
+        assertSame(routes.get(3), routes.get(2).getRouteParallele());
+        assertSame(routes.get(2), routes.get(3).getRouteParallele());
+        assertTrue(routes.get(9) instanceof RoutePaire);
+        assertEquals(plateau.getPorts().size(), plateau.getPorts().stream().filter(v -> v.estPort()).count());
+
+        List<Destination> destinations = Destination.depuisImage(image);
+        Destination d58 = destinations.get(57);
+        assertEquals(List.of("Manila", "Honolulu", "Port Moresby", "Darwin"), d58.getVilles());
+        assertEquals(9, d58.getValeurSimple());
+        assertEquals(13, d58.getValeurMax());
+        assertEquals(19, d58.getPenalite());
+    }
+
+    @Test
+    void testImageProjeteeEnMemoire() throws IOException {
+        Path source = dossier.resolve("plateau.txt");
+        Files.writeString(source, """
+                # petit plateau
+                ville\tSaint-Étienne
+                port\tSète
+                port\tMarseille
+                terrestre\tSaint-Étienne\tSète\tROUGE\t3
+                maritime\tSète\tMarseille\tGRIS\t1
+                terrestre\tSaint-Étienne\tSète\tNOIR\t3
+                paire\tSète\tMarseille\t2
+                itineraire\t4\t6\t8\tSaint-Étienne\tSète\tMarseille
+                """);
+        Path fichier = dossier.resolve("plateau.img");
+        ImagePlateau.compiler(source, fichier);
+        ImagePlateau image = ImagePlateau.ouvrir(fichier);
+        assertSame(image, ImagePlateau.ouvrir(fichier));
+
+        assertEquals("Saint-Étienne", image.getNomVille(0));
+        assertTrue(image.estPort(1));
+        assertEquals(2, image.getRouteParallele(0));
+        assertEquals(0, image.getRouteParallele(2));
+        assertEquals(3, image.getRouteParallele(1));
+        assertEquals(1, image.getRouteParallele(3));
+        assertEquals(ImagePlateau.TypeRoute.PAIRE, image.getType(3));
+        assertEquals(Couleur.GRIS, image.getCouleur(3));
+        assertEquals(List.of("Saint-Étienne", "Sète", "Marseille"), Destination.depuisImage(image).get(0).getVilles());
+    }
+
+    /**
+     * Compile un plateau généré (une ville sur trois est un port, et chaque
+     * couple de villes est relié par deux routes consécutives)
+     */
+    private Path compilerGrandPlateau(String nom, int nbVilles, int nbRoutes) throws IOException {
+        Path source = dossier.resolve(nom + ".txt");
+        try (BufferedWriter sortie = Files.newBufferedWriter(source)) {
+            for (int v = 0; v < nbVilles; v++) {
+                sortie.write((v % 3 == 0 ? "port\tV" : "ville\tV") + v + "\n");
+            }
+            for (int r = 0; r < nbRoutes; r++) {
+                int a = (r / 2) % nbVilles;
+                int b = (r / 2 / nbVilles + a + 1) % nbVilles;
+                sortie.write(String.format("terrestre\tV%d\tV%d\tBLANC\t%d%n", a, b, 1 + r % 6));
+            }
+            sortie.write("destination\t12\tV0\tV" + (nbVilles - 1) + "\n");
+        }
+        Path fichier = dossier.resolve(nom + ".img");
+        ImagePlateau.compiler(source, fichier);
+        return fichier;
+    }
+
+    @Test
+    void testGrandPlateau() throws IOException {
+        int nbRoutes = 100_000;
+        ImagePlateau image = ImagePlateau.ouvrir(compilerGrandPlateau("grand", 1000, nbRoutes));
+        assertEquals(nbRoutes, image.getNbRoutes());
+        assertEquals(nbRoutes - 1, image.getRouteParallele(nbRoutes - 2));
+        assertEquals("V999", image.getNomVille(image.getVillesDestination(0)[1]));
+
+        Plateau plateau = Plateau.depuisImage(image);
+        assertEquals(nbRoutes, plateau.getRoutes().size());
+        assertEquals(334, plateau.getPorts().size());
+    }
+
+    @Test
+    void testPartieSurUnPlateauDePlusDe65536Routes() throws IOException {
+        int nbVilles = 40_000;
+        int nbRoutes = 100_000;
+        Path fichier = compilerGrandPlateau("immense", nbVilles, nbRoutes);
+        Jeu jeu;
+        System.setProperty("rails.plateau", fichier.toString());
+        try {
+            jeu = new Jeu(new String[] { "Guybrush", "Largo" });
+        } finally {
+            System.clearProperty("rails.plateau");
+        }
+        assertEquals(nbRoutes, jeu.getIndexRoutes().taille());
+
+        // identifiants de routes et de villes au-delà de 16 bits
+        DonneesPlateau plateau = jeu.getDonneesPlateau();
+        assertEquals(nbVilles, plateau.getNbVilles());
+        for (int id : new int[] { 65_535, 65_536, nbRoutes - 1 }) {
+            Route route = jeu.getIndexRoutes().get(id);
+            assertEquals(route.getVille1().nom(), plateau.getNomVille(plateau.getVille1(id)));
+            assertEquals(route.getVille2().nom(), plateau.getNomVille(plateau.getVille2(id)));
+            assertEquals(route.getLongueur(), plateau.getLongueur(id));
+
+            int coup = Coup.creer(Coup.CAPTURER_ROUTE, id);
+            assertEquals(Coup.CAPTURER_ROUTE, Coup.type(coup));
+            assertEquals(id, Coup.argument(coup));
+
+            assertEquals("#R" + id, jeu.versEntreeCanonique(route.getNom()));
+            ProtocoleBinaire protocole = new ProtocoleBinaire(jeu);
+            assertEquals(route.getNom(), protocole.decoderAction(protocole.encoderAction(route.getNom())));
+        }
+        // l'avant-dernière ville n'est pas un port (les ports ont les premiers
+        // identifiants)
+        int ville = plateau.getIdVille("V" + (nbVilles - 2));
+        assertTrue(ville > Short.MAX_VALUE);
+        int route = plateau.getRouteVille(ville, 0);
+        assertTrue(plateau.getVille1(route) == ville || plateau.getVille2(route) == ville);
+    }
+
+    @Test
+    void testDescriptionInvalide() throws IOException {
+        Path source = dossier.resolve("invalide.txt");
+        Files.writeString(source, "ville\tA\nterrestre\tA\tB\tROUGE\t2\n");
+        IOException e = assertThrows(IOException.class,
+                () -> ImagePlateau.compiler(source, dossier.resolve("invalide.img")));
+        assertTrue(e.getMessage().startsWith("Ligne 2"));
+    }
+}
@@ -0,0 +1,143 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import fr.umontpellier.iut.rails.Joueur.CouleurJouer;
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.simulation.Coup;
+import fr.umontpellier.iut.rails.simulation.EtatSimulation;
+import fr.umontpellier.iut.rails.simulation.MoteurRegles;
+import fr.umontpellier.iut.rails.simulation.RechercheMCTS;
+
+public class JoueurMCTSTest {
+
+    @Test
+    void testRechercheRespecteLeBudget() {
+        IOJeu jeu = new IOJeu(new String[] { "J1", "J2" });
+        jeu.remplirCartesTransportVisibles();
+        for (Joueur joueur : jeu.getJoueurs()) {
+            for (int i = 0; i < 5; i++) {
+                joueur.getCartesTransport().add(jeu.piocherCarteWagon());
+                joueur.getCartesTransport().add(jeu.piocherCarteBateau());
+            }
+            joueur.getDestinations().add(jeu.piocherDestination());
+            TestUtils.setAttribute(joueur, "nbPionsWagon", 20);
+            TestUtils.setAttribute(joueur, "nbPionsBateau", 40);
+        }
+        EtatSimulation etat = jeu.exporterEtatSimulation();
+        RechercheMCTS recherche = new RechercheMCTS(4, 50);
+        MoteurRegles moteur = new MoteurRegles(jeu.getDonneesPlateau());
+        int[] coups = new int[moteur.getTailleMaxCoups()];
+        int n = moteur.coupsLegaux(etat, coups);
+
+        // échéance déjà passée : chaque thread ne fait qu'une itération
+        int coup = recherche.choisirCoup(etat, new SplittableRandom(1), System.nanoTime());
+        assertEquals(4, recherche.getNbIterations());
+        assertTrue(Arrays.stream(coups, 0, n).anyMatch(c -> c == coup));
+
+        // la recherche s'arrête à l'échéance (large marge pour les machines
+        // chargées)
+        assertTimeoutPreemptively(Duration.ofMillis(recherche.getBudget() + 5000),
+                () -> recherche.choisirCoup(etat, new SplittableRandom(2)));
+        assertTrue(recherche.getNbIterations() >= 4);
+        assertEquals(etat, jeu.exporterEtatSimulation());
+    }
+
+    @Test
+    void testCoupsDuJoueurCommeDansLaSimulation() {
+        IOJeu jeu = new IOJeu(new String[] { "J1", "J2" });
+        jeu.remplirCartesTransportVisibles();
+        Joueur joueur = jeu.getJoueurs().get(0);
+        for (int i = 0; i < 6; i++) {
+            joueur.getCartesTransport().add(jeu.piocherCarteWagon());
+            joueur.getCartesTransport().add(jeu.piocherCarteBateau());
+        }
+        TestUtils.setAttribute(joueur, "nbPionsWagon", 20);
+        TestUtils.setAttribute(joueur, "nbPionsBateau", 40);
+
+        int[] coupsJoueur = new int[jeu.getIndexRoutes().taille() + jeu.getIndexPorts().taille() + 16];
+        int nJoueur = joueur.genererCoups(coupsJoueur, true);
+        MoteurRegles moteur = new MoteurRegles(jeu.getDonneesPlateau());
+        int[] coups = new int[moteur.getTailleMaxCoups()];
+        int n = moteur.coupsLegaux(jeu.exporterEtatSimulation(), coups);
+
+        int[] routesJoueur = Arrays.stream(coupsJoueur, 0, nJoueur)
+                .filter(c -> Coup.type(c) == Coup.CAPTURER_ROUTE).sorted().toArray();
+        int[] routes = Arrays.stream(coups, 0, n).filter(c -> Coup.type(c) == Coup.CAPTURER_ROUTE).toArray();
+        assertTrue(routes.length > 0);
+        assertArrayEquals(routes, routesJoueur);
+        for (int i = 0; i < nJoueur; i++) {
+            if (Coup.type(coupsJoueur[i]) == Coup.PRENDRE_VISIBLE) {
+                CarteTransport c = jeu.getCartesTransportVisibles().get(Coup.argument(coupsJoueur[i]));
+                assertEquals(c.getNom(), jeu.versEntree(coupsJoueur[i]));
+            }
+        }
+    }
+
+    @Test
+    void testPartieEntreJoueursMCTS() {
+        IOJeu jeu = new IOJeu(new String[] { "J1", "J2" });
+        RechercheMCTS recherche = new RechercheMCTS(2, 1000);
+        recherche.setNbIterationsMax(40);
+        TestUtils.setJoueurs(jeu, List.of(
+                new JoueurMCTS("J1", jeu, CouleurJouer.JAUNE, recherche),
+                new JoueurMCTS("J2", jeu, CouleurJouer.ROUGE, recherche)));
+        Enregistrement enregistrement = jeu.activerEnregistrement();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(60), jeu::run);
+
+        assertTrue(jeu.getJoueurs().stream()
+                .anyMatch(j -> j.getNbPionsWagon() + j.getNbPionsBateau() <= 6));
+        // la partie peut être rejouée à partir des réponses des joueurs
+        JeuRejoue rejoue = JeuRejoue.rejouer(enregistrement);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(jeu.getJoueurs().get(i).getScore(), rejoue.getJoueurs().get(i).getScore());
+        }
+    }
+
+    @Test
+    void testScoreProjeteEgalAuScoreFinal() {
+        IOJeu jeu = new IOJeu(new String[] { "J1", "J2", "J3" });
+        RechercheMCTS recherche = new RechercheMCTS(3, 1000);
+        recherche.setNbIterationsMax(20);
+        class JoueurVerifie extends JoueurMCTS {
+            JoueurVerifie(String nom, CouleurJouer couleur) {
+                super(nom, jeu, couleur, recherche);
+            }
+
+            @Override
+            int choisirCoup(String instruction, int[] coups, int n, boolean peutPasser) {
+                for (Joueur j : jeu.getJoueurs()) {
+                    assertEquals(j.calculerScoreFinal(), j.getScoreProjete());
+                }
+                return super.choisirCoup(instruction, coups, n, peutPasser);
+            }
+        }
+        TestUtils.setJoueurs(jeu, List.of(
+                new JoueurVerifie("J1", CouleurJouer.JAUNE),
+                new JoueurVerifie("J2", CouleurJouer.ROUGE),
+                new JoueurVerifie("J3", CouleurJouer.VERT)));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(60), jeu::run);
+
+        for (Joueur j : jeu.getJoueurs()) {
+            assertEquals(j.calculerScoreFinal(), j.getScoreProjete());
+            // modification directe des listes du joueur : le score est recalculé
+            j.getDestinations().add(jeu.getIndexDestinations().get(0));
+            if (!j.getRoutes().isEmpty()) {
+                j.getRoutes().remove(0);
+            }
+            assertEquals(j.calculerScoreFinal(), j.getScoreProjete());
+        }
+    }
+}
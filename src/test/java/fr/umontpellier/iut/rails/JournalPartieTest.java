@@ -0,0 +1,95 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import fr.umontpellier.iut.rails.Joueur.CouleurJouer;
+
+public class JournalPartieTest {
+
+    @Test
+    void testReprisePartieJournalisee(@TempDir Path dossier) throws IOException {
+        Path fichier = dossier.resolve("partie.journal");
+        IOJeu jeu = new IOJeu(new String[] { "J1", "J2" });
+        TestUtils.setJoueurs(jeu, List.of(
+                new JoueurAutoAleatoire("J1", jeu, CouleurJouer.JAUNE),
+                new JoueurAutoAleatoire("J2", jeu, CouleurJouer.ROUGE)));
+        Enregistrement enregistrement = jeu.activerEnregistrement();
+        jeu.activerJournal(fichier, 10);
+        jeu.setInput("", "20", "", "20");
+        jeu.run();
+        // le journal est fermé à la fin de la partie
+        assertNull(TestUtils.getAttribute(jeu, "journal"));
+
+        JournalPartie.Contenu contenu = JournalPartie.lire(fichier);
+        assertEquals(List.of("J1", "J2"), contenu.nomsJoueurs());
+        assertEquals(enregistrement.getEntrees(), contenu.entrees());
+        assertEquals(0, contenu.numeroInstantane() % 10);
+
+        // la reprise rejoue tout le journal et vérifie le dernier instantané
+        Jeu repris = Jeu.reprendre(fichier, 10);
+        repris.run();
+        assertArrayEquals(jeu.instantane(), repris.instantane());
+    }
+
+    @Test
+    void testFinDeJournalIncomplete(@TempDir Path dossier) throws IOException {
+        Path fichier = dossier.resolve("partie.journal");
+        try (JournalPartie journal = JournalPartie.creer(fichier, 7, List.of("A", "B"), 0)) {
+            journal.ajouterEntree("premiere");
+            journal.ajouterEntree("seconde");
+        }
+        // corruption des dernières données (écriture interrompue)
+        try (RandomAccessFile acces = new RandomAccessFile(fichier.toFile(), "rw")) {
+            long position = 0;
+            byte[] contenu = new byte[(int) acces.length()];
+            acces.readFully(contenu);
+            for (int i = 0; i < contenu.length - 6; i++) {
+                if (new String(contenu, i, 7).equals("seconde")) {
+                    position = i;
+                }
+            }
+            acces.seek(position);
+            acces.write('X');
+        }
+
+        JournalPartie.Contenu contenu = JournalPartie.lire(fichier);
+        assertEquals(7, contenu.graine());
+        assertEquals(List.of("premiere"), contenu.entrees());
+        assertNull(contenu.instantane());
+
+        try (JournalPartie journal = JournalPartie.rouvrir(fichier, 0)) {
+            assertEquals(1, journal.getNbEntrees());
+            journal.ajouterEntree("troisieme");
+        }
+        assertEquals(List.of("premiere", "troisieme"), JournalPartie.lire(fichier).entrees());
+    }
+
+    @Test
+    void testAgrandissement(@TempDir Path dossier) throws IOException {
+        Path fichier = dossier.resolve("partie.journal");
+        String longue = "x".repeat(1000);
+        try (JournalPartie journal = JournalPartie.creer(fichier, 1, List.of("A"), 50)) {
+            for (int i = 0; i < 200; i++) {
+                journal.ajouterEntree(longue + i);
+                if (journal.instantaneAttendu()) {
+                    journal.ajouterInstantane(new byte[] { (byte) i });
+                }
+            }
+        }
+        JournalPartie.Contenu contenu = JournalPartie.lire(fichier);
+        assertEquals(200, contenu.entrees().size());
+        assertEquals(longue + 199, contenu.entrees().get(199));
+        assertEquals(200, contenu.numeroInstantane());
+        assertArrayEquals(new byte[] { (byte) 199 }, contenu.instantane());
+    }
+}
@@ -0,0 +1,98 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.ListeCartesTransport;
+import fr.umontpellier.iut.rails.data.TypeCarteTransport;
+
+public class ListeCartesTransportTest {
+    private List<CarteTransport> cartes;
+
+    @BeforeEach
+    void setUp() {
+        cartes = new ArrayList<>();
+        cartes.add(new CarteTransport(TypeCarteTransport.WAGON, Couleur.ROUGE, false, true));
+        cartes.add(new CarteTransport(TypeCarteTransport.WAGON, Couleur.ROUGE, false, false));
+        cartes.add(new CarteTransport(TypeCarteTransport.BATEAU, Couleur.ROUGE, true, false));
+        cartes.add(new CarteTransport(TypeCarteTransport.BATEAU, Couleur.VERT, false, true));
+        cartes.add(new CarteTransport(TypeCarteTransport.BATEAU, Couleur.VERT, true, false));
+        cartes.add(new CarteTransport(TypeCarteTransport.JOKER, Couleur.GRIS, false, true));
+    }
+
+    private void assertMemesValeurs(List<CarteTransport> attendu, ListeCartesTransport liste) {
+        CarteTransport.Catalogue catalogue = new CarteTransport.Catalogue(attendu);
+        assertEquals(catalogue.getValeur(), liste.getValeur());
+        assertEquals(catalogue.getCouleur(), liste.getCouleur());
+        for (TypeCarteTransport t : TypeCarteTransport.values()) {
+            assertEquals(catalogue.getValeur(t), liste.getValeur(t));
+            for (Couleur c : Couleur.values()) {
+                assertEquals(catalogue.get(t, c).size(), liste.getNombre(t, c));
+                assertEquals(catalogue.get(t, c), liste.get(t, c));
+                assertEquals(catalogue.getValeur(t, c, true), liste.getValeur(t, c, true));
+                assertEquals(catalogue.getValeur(t, c, false), liste.getValeur(t, c, false));
+            }
+        }
+    }
+
+    @Test
+    void testCompteursCommeCatalogue() {
+        ListeCartesTransport liste = new ListeCartesTransport(cartes);
+        assertMemesValeurs(cartes, liste);
+        assertEquals(1, liste.getNombreAvecAncre(TypeCarteTransport.WAGON, Couleur.ROUGE));
+        assertEquals(1, liste.getValeurAvecAncre(TypeCarteTransport.BATEAU, Couleur.VERT));
+    }
+
+    @Test
+    void testCompteursApresModifications() {
+        ListeCartesTransport liste = new ListeCartesTransport(cartes);
+        liste.remove(cartes.get(2));
+        liste.remove(0);
+        liste.add(0, cartes.get(2));
+        Iterator<CarteTransport> it = liste.iterator();
+        while (it.hasNext()) {
+            if (it.next().getType() == TypeCarteTransport.JOKER) {
+                it.remove();
+            }
+        }
+        assertMemesValeurs(new ArrayList<>(liste), liste);
+        assertEquals(0, liste.getNombre(TypeCarteTransport.JOKER, Couleur.GRIS));
+        assertEquals(2, liste.getNombre(TypeCarteTransport.BATEAU, Couleur.ROUGE, true)
+                + liste.getNombre(TypeCarteTransport.BATEAU, Couleur.VERT, true));
+
+        liste.clear();
+        assertMemesValeurs(List.of(), liste);
+    }
+
+    @Test
+    void testAjoutsEtRetraitsAuxDeuxExtremites() {
+        ListeCartesTransport liste = new ListeCartesTransport();
+        List<CarteTransport> attendu = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            CarteTransport c = cartes.get(i % cartes.size());
+            if (i % 3 == 0) {
+                liste.add(0, c);
+                attendu.add(0, c);
+            } else {
+                liste.add(c);
+                attendu.add(c);
+            }
+            if (i % 4 == 0) {
+                assertEquals(attendu.remove(0), liste.remove(0));
+            }
+        }
+        liste.add(5, cartes.get(0));
+        attendu.add(5, cartes.get(0));
+        assertEquals(attendu.remove(12), liste.remove(12));
+        assertEquals(attendu, liste);
+        assertMemesValeurs(attendu, liste);
+    }
+}
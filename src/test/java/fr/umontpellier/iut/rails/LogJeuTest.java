@@ -0,0 +1,81 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LogJeuTest {
+
+    @Test
+    void testNumerotation() {
+        LogJeu log = new LogJeu(5);
+        assertEquals(-1, log.getDernierNumero());
+        assertEquals(0, log.ajouter("a"));
+        assertEquals(1, log.ajouter("b"));
+        assertEquals(1, log.getDernierNumero());
+        assertEquals(List.of("a", "b"), log.getMessages().messages());
+    }
+
+    @Test
+    void testTamponCirculaire() {
+        LogJeu log = new LogJeu(3);
+        for (int i = 0; i < 10; i++) {
+            log.ajouter("m" + i);
+        }
+        LogJeu.Extrait extrait = log.getMessages();
+        assertEquals(7, extrait.premier());
+        assertEquals(List.of("m7", "m8", "m9"), extrait.messages());
+    }
+
+    @Test
+    void testDepuis() {
+        LogJeu log = new LogJeu(3);
+        for (int i = 0; i < 5; i++) {
+            log.ajouter("m" + i);
+        }
+        assertEquals(List.of("m4"), log.depuis(3).messages());
+        assertEquals(List.of(), log.depuis(4).messages());
+        // les messages 0 et 1 ne sont plus en mémoire
+        LogJeu.Extrait extrait = log.depuis(-1);
+        assertEquals(2, extrait.premier());
+        assertEquals(List.of("m2", "m3", "m4"), extrait.messages());
+    }
+
+    @Test
+    void testAvantSansArchive() {
+        LogJeu log = new LogJeu(3);
+        for (int i = 0; i < 5; i++) {
+            log.ajouter("m" + i);
+        }
+        assertEquals(List.of("m2", "m3"), log.avant(4, 2).messages());
+        LogJeu.Extrait extrait = log.avant(3, 10);
+        assertEquals(2, extrait.premier());
+        assertEquals(List.of("m2"), extrait.messages());
+        assertEquals(List.of(), log.avant(2, 10).messages());
+    }
+
+    @Test
+    void testAvantAvecArchive(@TempDir Path dossier) throws IOException {
+        LogJeu log = new LogJeu(3);
+        log.activerArchive(dossier.resolve("log.txt"));
+        for (int i = 0; i < 8; i++) {
+            log.ajouter("m" + i + (i == 2 ? "\nsuite \\ fin" : ""));
+        }
+        LogJeu.Extrait extrait = log.avant(6, 5);
+        assertEquals(1, extrait.premier());
+        assertEquals(List.of("m1", "m2\nsuite \\ fin", "m3", "m4", "m5"), extrait.messages());
+    }
+
+    @Test
+    void testArchiveActiveeTropTard(@TempDir Path dossier) {
+        LogJeu log = new LogJeu(3);
+        log.ajouter("m0");
+        assertThrows(IllegalStateException.class, () -> log.activerArchive(dossier.resolve("log.txt")));
+    }
+}
@@ -0,0 +1,107 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Collection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class MetriquesTest {
+
+    @AfterEach
+    void desactiver() {
+        Metriques.activer(false);
+    }
+
+    @Test
+    void testIntervallesDeLHistogramme() {
+        for (long valeur : new long[] { 0, 1, 31, 32, 33, 1000, 123_456_789, Long.MAX_VALUE }) {
+            int i = Histogramme.intervalle(valeur);
+            assertTrue(i < Histogramme.NB_INTERVALLES);
+            long max = Histogramme.maxIntervalle(i);
+            assertTrue(max >= valeur);
+            // précision relative de 1/32
+            assertTrue(max - valeur <= valeur / 32, "valeur " + valeur);
+            assertTrue(i == 0 || Histogramme.maxIntervalle(i - 1) < valeur);
+        }
+    }
+
+    @Test
+    void testCentilesSurPlusieursThreads() throws InterruptedException {
+        Histogramme histogramme = new Histogramme("ns");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int v = 1; v <= 1000; v++) {
+                    histogramme.enregistrer(v);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Histogramme.Instantane instantane = histogramme.instantane();
+        assertEquals(4000, instantane.nombre());
+        assertEquals(500.5, instantane.moyenne(), 1e-9);
+        assertEquals(500, instantane.p50(), 500 / 32);
+        assertEquals(990, instantane.p99(), 990 / 32);
+        assertEquals(1000, instantane.max(), 1000 / 32);
+    }
+
+    @Test
+    void testHistogrammeSurDesThreadsEphemeres() throws InterruptedException {
+        Histogramme histogramme = new Histogramme("ns");
+        int nbCompteurs = histogramme.getNbCompteurs();
+        for (int t = 0; t < 2000; t++) {
+            Thread thread = new Thread(() -> {
+                histogramme.enregistrer(10);
+                histogramme.enregistrer(1000);
+            });
+            thread.start();
+            thread.join();
+        }
+        // la mémoire de l'histogramme ne dépend pas du nombre de threads
+        assertEquals(nbCompteurs, histogramme.getNbCompteurs());
+        assertEquals(Histogramme.NB_BANDES * (Histogramme.NB_INTERVALLES + 1), nbCompteurs);
+        Histogramme.Instantane instantane = histogramme.instantane();
+        assertEquals(4000, instantane.nombre());
+        assertEquals(505, instantane.moyenne(), 1e-9);
+        assertEquals(10, instantane.p50());
+        assertEquals(1000, instantane.max(), 1000 / 32);
+    }
+
+    @Test
+    void testMesuresDesactivees() {
+        Metriques.activer(false);
+        long total = Metriques.CHOIX_INVALIDES.getTotal();
+        Metriques.CHOIX_INVALIDES.incrementer();
+        assertEquals(0, Metriques.debut());
+        assertEquals(total, Metriques.CHOIX_INVALIDES.getTotal());
+        // les échecs sont toujours comptés
+        long echecs = Metriques.ECHECS_PASSIVATION.getTotal();
+        Metriques.ECHECS_PASSIVATION.incrementer();
+        assertEquals(echecs + 1, Metriques.ECHECS_PASSIVATION.getTotal());
+    }
+
+    @Test
+    void testMesuresDUnePartie() {
+        Metriques.activer(true);
+        long choixInvalides = Metriques.CHOIX_INVALIDES.getTotal();
+        long generations = Metriques.GENERATION_COUPS.instantane().nombre();
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, 42) {
+            @Override
+            public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+            }
+        };
+        jeu.addInput("n'importe quoi");
+        jeu.setDelaiDecision(Duration.ofMillis(1), Jeu.ReactionDelaiDepasse.JOUEUR_AUTOMATIQUE);
+        jeu.run();
+        assertEquals(choixInvalides + 1, Metriques.CHOIX_INVALIDES.getTotal());
+        assertTrue(Metriques.GENERATION_COUPS.instantane().nombre() > generations);
+        assertTrue(Metriques.dataMap().containsKey("coups.generation"));
+    }
+}
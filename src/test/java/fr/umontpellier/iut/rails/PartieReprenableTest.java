@@ -0,0 +1,93 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class PartieReprenableTest {
+
+    /**
+     * Joue une partie complète avec des joueurs automatiques et renvoie son
+     * enregistrement
+     */
+    private static Enregistrement partieComplete(long graine) {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, graine) {
+            @Override
+            public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+            }
+        };
+        Enregistrement enregistrement = jeu.activerEnregistrement();
+        jeu.setDelaiDecision(Duration.ofMillis(1), Jeu.ReactionDelaiDepasse.JOUEUR_AUTOMATIQUE);
+        jeu.run();
+        return enregistrement;
+    }
+
+    @Test
+    void testPremiereDecision() {
+        PartieReprenable partie = new PartieReprenable(new String[] { "Guybrush", "Largo" }, 1);
+        PartieReprenable.Decision decision = partie.getDecision();
+        assertNotNull(decision);
+        assertEquals(0, decision.joueur());
+        assertTrue(decision.peutPasser());
+        assertEquals(5, decision.boutons().size());
+        assertTrue(decision.boutons().stream().allMatch(b -> b.valeur().startsWith("#D")));
+        assertTrue(partie.getEnregistrement().getEntrees().isEmpty());
+    }
+
+    @Test
+    void testEntreesInvalidesIgnorees() {
+        PartieReprenable partie = new PartieReprenable(new String[] { "Guybrush", "Largo" }, 1);
+        PartieReprenable.Decision decision = partie.getDecision();
+        assertEquals(decision, partie.soumettre("n'importe quoi"));
+        assertEquals(decision, partie.soumettre("#D9999"));
+        assertEquals(decision, partie.soumettre("#X1"));
+        assertTrue(partie.getEnregistrement().getEntrees().isEmpty());
+
+        String defausse = decision.boutons().get(0).valeur();
+        PartieReprenable.Decision suivante = partie.soumettre(defausse);
+        assertEquals(List.of(defausse), partie.getEnregistrement().getEntrees());
+        assertEquals(4, suivante.boutons().size());
+        assertFalse(suivante.boutons().stream().anyMatch(b -> b.valeur().equals(defausse)));
+    }
+
+    @Test
+    void testPartieCompleteSoumiseEntreeParEntree() {
+        Enregistrement complete = partieComplete(7);
+        PartieReprenable partie = new PartieReprenable(new String[] { "Guybrush", "Largo" }, 7);
+        for (String entree : complete.getEntrees()) {
+            assertFalse(partie.estTerminee());
+            // chaque entrée acceptée fait partie des choix proposés par la décision
+            PartieReprenable.Decision decision = partie.getDecision();
+            assertTrue(decision.estReponseValide(entree), entree);
+            partie.soumettre(entree);
+        }
+        assertTrue(partie.estTerminee());
+        assertNull(partie.getDecision());
+        assertEquals(complete.getEntrees(), partie.getEnregistrement().getEntrees());
+        assertThrows(IllegalStateException.class, () -> partie.soumettre(""));
+    }
+
+    @Test
+    void testRepriseDepuisUnEnregistrement() {
+        Enregistrement complete = partieComplete(3);
+        List<String> entrees = complete.getEntrees();
+        Enregistrement debut = new Enregistrement(3, complete.getNomsJoueurs());
+        entrees.subList(0, entrees.size() / 2).forEach(debut::ajouter);
+
+        PartieReprenable partie = new PartieReprenable(debut);
+        assertFalse(partie.estTerminee());
+        for (String entree : entrees.subList(entrees.size() / 2, entrees.size())) {
+            partie.soumettre(entree);
+        }
+        assertTrue(partie.estTerminee());
+    }
+}
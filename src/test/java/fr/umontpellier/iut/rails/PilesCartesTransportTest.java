@@ -0,0 +1,87 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.TypeCarteTransport;
+
+public class PilesCartesTransportTest {
+    private List<CarteTransport> cartes;
+
+    @BeforeEach
+    void setUp() {
+        cartes = new ArrayList<>();
+        for (Couleur c : Couleur.getCouleursSimples()) {
+            cartes.add(new CarteTransport(TypeCarteTransport.WAGON, c, false, false));
+            cartes.add(new CarteTransport(TypeCarteTransport.BATEAU, c, true, false));
+        }
+    }
+
+    private List<CarteTransport> tirages(long graine) {
+        PilesCartesTransport piles = new PilesCartesTransport(cartes, new SplittableRandom(graine));
+        List<CarteTransport> tirages = new ArrayList<>();
+        for (int i = 0; i < 3 * cartes.size(); i++) {
+            CarteTransport c = piles.piocher();
+            tirages.add(c);
+            piles.defausser(c);
+        }
+        return tirages;
+    }
+
+    @Test
+    void testMemeGraineMemesTirages() {
+        assertEquals(tirages(42), tirages(42));
+    }
+
+    @Test
+    void testPiocheEtDefausse() {
+        PilesCartesTransport piles = new PilesCartesTransport(cartes, new SplittableRandom(1));
+        assertEquals(6, piles.getNombre(TypeCarteTransport.WAGON));
+        List<CarteTransport> piochees = new ArrayList<>();
+        for (int i = 0; i < cartes.size(); i++) {
+            piochees.add(piles.piocher());
+        }
+        assertTrue(piles.estVide());
+        assertNull(piles.piocher());
+        assertTrue(piochees.containsAll(cartes));
+
+        piles.defausser(piochees.get(0));
+        assertEquals(piochees.get(0), piles.piocher());
+        assertEquals(0, piles.getNombre(TypeCarteTransport.BATEAU));
+    }
+
+    @Test
+    void testRedistributionBorneeAvecUnePiocheDeJokers() {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, 3);
+        PilesCartesTransport pilesWagon = (PilesCartesTransport) TestUtils.getAttribute(jeu, "pilesDeCartesWagon");
+        PilesCartesTransport pilesBateau = (PilesCartesTransport) TestUtils.getAttribute(jeu, "pilesDeCartesBateau");
+        // une seule carte wagon simple parmi les jokers : les cartes visibles sont
+        // redistribuées tant qu'il y a 3 jokers, mais pas indéfiniment
+        List<CarteTransport> pioche = new ArrayList<>();
+        pioche.add(new CarteTransport(TypeCarteTransport.WAGON, Couleur.ROUGE, false, false));
+        for (int i = 0; i < 30; i++) {
+            pioche.add(new CarteTransport(TypeCarteTransport.JOKER, Couleur.GRIS, false, false));
+        }
+        pilesWagon.remplacer(pioche, List.of());
+        int nbCartesBateau = pilesBateau.getCartes().size();
+
+        jeu.remplirCartesTransportVisibles();
+
+        List<CarteTransport> visibles = jeu.getCartesTransportVisibles();
+        assertEquals(6, visibles.size());
+        assertEquals(31, pilesWagon.getCartes().size() + visibles.stream()
+                .filter(c -> c.getType() != TypeCarteTransport.BATEAU).count());
+        assertEquals(nbCartesBateau, pilesBateau.getCartes().size() + visibles.stream()
+                .filter(c -> c.getType() == TypeCarteTransport.BATEAU).count());
+    }
+}
@@ -0,0 +1,188 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import fr.umontpellier.iut.rails.data.Destination;
+
+public class PlanificateurDestinationsTest {
+    private IOJeu jeu;
+    private Joueur joueur;
+    private Joueur adversaire;
+    private List<Route> routesLibres;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jeu = new IOJeu(new String[] { "Guybrush", "Largo" });
+        joueur = jeu.getJoueurs().get(0);
+        adversaire = jeu.getJoueurs().get(1);
+        routesLibres = (List<Route>) TestUtils.getAttribute(jeu, "routesLibres");
+    }
+
+    private static int longueur(Collection<Route> routes) {
+        return routes.stream().mapToInt(Route::getLongueur).sum();
+    }
+
+    /**
+     * Longueur minimale d'un chemin entre deux villes en n'utilisant que des routes
+     * libres (algorithme de Floyd-Warshall)
+     */
+    private Map<String, Map<String, Integer>> distancesRoutesLibres() {
+        Map<String, Map<String, Integer>> distances = new HashMap<>();
+        List<String> villes = new ArrayList<>();
+        for (Route r : jeu.getIndexRoutes().getElements()) {
+            for (String v : List.of(r.getVille1().nom(), r.getVille2().nom())) {
+                if (!distances.containsKey(v)) {
+                    distances.put(v, new HashMap<>(Map.of(v, 0)));
+                    villes.add(v);
+                }
+            }
+        }
+        for (Route r : routesLibres) {
+            distances.get(r.getVille1().nom()).merge(r.getVille2().nom(), r.getLongueur(), Math::min);
+            distances.get(r.getVille2().nom()).merge(r.getVille1().nom(), r.getLongueur(), Math::min);
+        }
+        for (String k : villes) {
+            for (String i : villes) {
+                Integer ik = distances.get(i).get(k);
+                if (ik == null) {
+                    continue;
+                }
+                for (Map.Entry<String, Integer> kj : distances.get(k).entrySet()) {
+                    distances.get(i).merge(kj.getKey(), ik + kj.getValue(), Math::min);
+                }
+            }
+        }
+        return distances;
+    }
+
+    @Test
+    void testPlusCourtCheminSansLimiteDePions() {
+        Map<String, Map<String, Integer>> distances = distancesRoutesLibres();
+        for (Destination d : jeu.getIndexDestinations().getElements()) {
+            List<String> villes = d.getVilles();
+            if (villes.size() != 2) {
+                continue;
+            }
+            Collection<Route> routes = joueur.routesPourCompleterDestination(d);
+            assertEquals(distances.get(villes.get(0)).get(villes.get(1)), longueur(routes), d.getNom());
+            // les routes proposées complètent bien la destination
+            joueur.getRoutes().addAll(routes);
+            assertTrue(joueur.destinationEstComplete(d), d.getNom());
+            joueur.getRoutes().clear();
+        }
+    }
+
+    @Test
+    void testRoutesDuJoueurGratuitesEtRoutesDesAdversairesIgnorees() {
+        Destination d = jeu.getIndexDestinations().getElements().stream()
+                .filter(dest -> joueur.routesPourCompleterDestination(dest).size() >= 3)
+                .findFirst().orElseThrow();
+        List<Route> chemin = new ArrayList<>(joueur.routesPourCompleterDestination(d));
+        int longueurInitiale = longueur(chemin);
+
+        Route possedee = chemin.get(0);
+        routesLibres.remove(possedee);
+        joueur.getRoutes().add(possedee);
+        Collection<Route> routes = joueur.routesPourCompleterDestination(d);
+        assertFalse(routes.contains(possedee));
+        assertEquals(longueurInitiale - possedee.getLongueur(), longueur(routes));
+
+        Route prise = chemin.get(1);
+        routesLibres.remove(prise);
+        adversaire.getRoutes().add(prise);
+        routes = joueur.routesPourCompleterDestination(d);
+        assertFalse(routes.contains(prise));
+        assertTrue(routes.isEmpty() || longueur(routes) >= longueurInitiale - possedee.getLongueur());
+    }
+
+    @Test
+    void testLimitesDePions() {
+        Destination d = jeu.getIndexDestinations().getElements().stream()
+                .filter(dest -> !joueur.routesPourCompleterDestination(dest).isEmpty())
+                .findFirst().orElseThrow();
+        Collection<Route> routes = joueur.routesPourCompleterDestination(d);
+        int nbWagons = routes.stream().filter(r -> !(r instanceof RouteMaritime)).mapToInt(Route::getLongueur).sum();
+        int nbBateaux = routes.stream().filter(r -> r instanceof RouteMaritime).mapToInt(Route::getLongueur).sum();
+
+        // sans pions, la destination ne peut pas être complétée, mais elle est
+        // encore en surbrillance (pions de la réserve)
+        assertTrue(joueur.routesPourCompleterDestinationAvecPions(d).isEmpty());
+        assertEquals(longueur(routes), longueur(joueur.routesEnSurbrillancePourDestination(d)));
+
+        TestUtils.setAttribute(joueur, "nbPionsWagon", nbWagons);
+        TestUtils.setAttribute(joueur, "nbPionsBateau", nbBateaux);
+        assertEquals(longueur(routes), longueur(joueur.routesPourCompleterDestinationAvecPions(d)));
+
+        // un chemin plus long peut encore exister avec un pion de moins
+        if (nbWagons > 0) {
+            TestUtils.setAttribute(joueur, "nbPionsWagon", nbWagons - 1);
+            TestUtils.setAttribute(joueur, "nbPionsBateau", 50);
+            Collection<Route> autres = joueur.routesPourCompleterDestinationAvecPions(d);
+            assertTrue(autres.stream().filter(r -> !(r instanceof RouteMaritime))
+                    .mapToInt(Route::getLongueur).sum() < nbWagons);
+        }
+    }
+
+    @Test
+    void testResultatsConservesTantQueLesRoutesNeChangentPas() {
+        Destination d = jeu.getIndexDestinations().get(0);
+        Collection<Route> routes = joueur.routesPourCompleterDestination(d);
+        assertSame(routes, joueur.routesPourCompleterDestination(d));
+
+        Route r = routesLibres.get(0);
+        routesLibres.remove(r);
+        adversaire.getRoutes().add(r);
+        assertFalse(routes == joueur.routesPourCompleterDestination(d));
+    }
+
+    @Test
+    void testSurbrillanceCalculeeALaDemandePourUnEtatDuPlateau() {
+        Destination d = jeu.getIndexDestinations().get(3);
+        TestUtils.setAttribute(joueur, "nbPionsWagon", 10);
+        SurbrillanceDestinations surbrillance = jeu.getSurbrillanceDestinations();
+        List<String> attendues = joueur.routesEnSurbrillancePourDestination(d).stream().map(Route::getNom).toList();
+        assertFalse(attendues.isEmpty());
+        assertEquals(attendues, surbrillance.routesPourDestination(0, d.getNom()));
+        assertTrue(surbrillance.routesPourDestination(0, "D-inconnue").isEmpty());
+        assertTrue(surbrillance.routesPourDestination(7, d.getNom()).isEmpty());
+
+        // tant que le plateau ne change pas, les routes déjà calculées sont conservées
+        assertSame(surbrillance, jeu.getSurbrillanceDestinations());
+        assertSame(surbrillance.routesPourDestination(0, d.getNom()), surbrillance.routesPourDestination(0, d.getNom()));
+
+        // une route capturée change le plateau, mais pas les routes déjà envoyées
+        Route r = jeu.getIndexRoutes().getElements().stream()
+                .filter(route -> attendues.contains(route.getNom())).findFirst().orElseThrow();
+        routesLibres.remove(r);
+        adversaire.getRoutes().add(r);
+        SurbrillanceDestinations nouvelle = jeu.getSurbrillanceDestinations();
+        assertFalse(nouvelle == surbrillance);
+        assertFalse(nouvelle.routesPourDestination(0, d.getNom()).contains(r.getNom()));
+        assertEquals(attendues, surbrillance.routesPourDestination(0, d.getNom()));
+    }
+
+    @Test
+    void testRechercheSurLesVillesSansLimiteDePions() {
+        PlanificateurDestinations planificateur = new PlanificateurDestinations(jeu.getDonneesPlateau());
+        Destination d = jeu.getIndexDestinations().get(0);
+        byte[] etatsRoutes = new byte[jeu.getDonneesPlateau().getNbRoutes()];
+        int[] routes = planificateur.planifier(d.getVilles(), etatsRoutes, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        assertTrue(routes.length > 0);
+        // un état par ville, sans suivre le nombre de pions wagon utilisés
+        assertEquals(jeu.getDonneesPlateau().getNbVilles(),
+                ((int[]) TestUtils.getAttribute(planificateur, "distance")).length);
+    }
+}
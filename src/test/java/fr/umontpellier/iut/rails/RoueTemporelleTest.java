@@ -0,0 +1,111 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class RoueTemporelleTest {
+
+    @Test
+    void testTacheExecuteeApresLeDelai() throws InterruptedException {
+        RoueTemporelle roue = new RoueTemporelle(Duration.ofMillis(5));
+        CountDownLatch executee = new CountDownLatch(1);
+        long debut = System.nanoTime();
+        roue.planifier(Duration.ofMillis(50), executee::countDown);
+        assertTrue(executee.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - debut >= Duration.ofMillis(50).toNanos());
+    }
+
+    @Test
+    void testDelaiPlusLongQuUnTourDeRoue() throws InterruptedException {
+        RoueTemporelle roue = new RoueTemporelle(Duration.ofNanos(100_000));
+        Duration delai = Duration.ofNanos(100_000L * (RoueTemporelle.NB_CRANS + 10));
+        CountDownLatch executee = new CountDownLatch(1);
+        long debut = System.nanoTime();
+        roue.planifier(delai, executee::countDown);
+        assertTrue(executee.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - debut >= delai.toNanos());
+    }
+
+    @Test
+    void testEcheanceAnnulee() throws InterruptedException {
+        RoueTemporelle roue = new RoueTemporelle(Duration.ofMillis(5));
+        AtomicBoolean annuleeExecutee = new AtomicBoolean();
+        CountDownLatch executee = new CountDownLatch(1);
+        roue.planifier(Duration.ofMillis(20), () -> annuleeExecutee.set(true)).annuler();
+        roue.planifier(Duration.ofMillis(60), executee::countDown);
+        assertTrue(executee.await(5, TimeUnit.SECONDS));
+        assertFalse(annuleeExecutee.get());
+    }
+
+    @Test
+    void testLectureInterrompueParLeDelai() {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, 1);
+        jeu.setDelaiDecision(Duration.ofMillis(30), Jeu.ReactionDelaiDepasse.PASSER);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertNull(jeu.lireLigne()));
+        // une entrée reçue à temps est renvoyée normalement
+        jeu.addInput("WAGON");
+        assertEquals("WAGON", jeu.lireLigne());
+    }
+
+    @Test
+    void testEntreesDesJoueursDistinctesDuDelaiDepasse() {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, 1);
+        jeu.setDelaiDecision(Duration.ofSeconds(30), Jeu.ReactionDelaiDepasse.PASSER);
+        jeu.addInput("délai dépassé");
+        jeu.addInput("\0délai dépassé 1");
+        assertEquals("délai dépassé", jeu.lireLigne());
+        assertEquals("\0délai dépassé 1", jeu.lireLigne());
+    }
+
+    @Test
+    void testLectureInterrompue() {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, 1);
+        jeu.setDelaiDecision(Duration.ofSeconds(30), Jeu.ReactionDelaiDepasse.PASSER);
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(CancellationException.class, jeu::lireLigne);
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void testPartieAbandonneeTermineeMalgreLaReactionPasser() {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, 42) {
+            @Override
+            public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+            }
+        };
+        jeu.setDelaiDecision(Duration.ofMillis(5), Jeu.ReactionDelaiDepasse.PASSER);
+        assertTimeoutPreemptively(Duration.ofSeconds(60), jeu::run);
+        assertTrue(jeu.estAbandonnee());
+    }
+
+    @Test
+    void testPartieSansReponseTermineeParDesJoueursAutomatiques() {
+        Jeu jeu = new Jeu(new String[] { "Guybrush", "Largo" }, 42) {
+            @Override
+            public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+            }
+        };
+        jeu.setDelaiDecision(Duration.ofMillis(10), Jeu.ReactionDelaiDepasse.JOUEUR_AUTOMATIQUE);
+        // aucune entrée n'est jamais ajoutée : chaque joueur dépasse le délai une
+        // fois, puis joue automatiquement
+        assertTimeoutPreemptively(Duration.ofSeconds(60), jeu::run);
+        assertTrue(jeu.getJoueurs().stream().allMatch(j -> !j.getRoutes().isEmpty()));
+    }
+}
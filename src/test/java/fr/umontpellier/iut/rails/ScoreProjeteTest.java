@@ -0,0 +1,118 @@
+package fr.umontpellier.iut.rails;
+
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.Destination;
+import fr.umontpellier.iut.rails.data.TypeCarteTransport;
+import fr.umontpellier.iut.rails.data.Ville;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScoreProjeteTest extends BaseTestClass {
+    @BeforeEach
+    void setUp() {
+        setUpJeu(4);
+        initialisation();
+        routesJoueur1.clear();
+        destinationsJoueur1.clear();
+        cartesJoueur1.clear();
+    }
+
+    private CarteTransport ajouterCarte(TypeCarteTransport type, Couleur couleur) {
+        CarteTransport c = new CarteTransport(type, couleur, false, true);
+        cartesJoueur1.add(c);
+        return c;
+    }
+
+    private String[] cartes(TypeCarteTransport type, Couleur couleur, int nombre) {
+        String[] noms = new String[nombre];
+        for (int i = 0; i < nombre; i++) {
+            noms[i] = ajouterCarte(type, couleur).getNom();
+        }
+        return noms;
+    }
+
+    private void jouer(String choix, String... cartes) {
+        String[] entrees = new String[cartes.length + 1];
+        entrees[0] = choix;
+        System.arraycopy(cartes, 0, entrees, 1, cartes.length);
+        jeu.setInput(entrees);
+        joueur1.jouerTour();
+    }
+
+    private void verifierScoreProjete() {
+        assertEquals(joueur1.calculerScoreFinal(), joueur1.getScoreProjete());
+    }
+
+    @Test
+    void testScoreProjeteApresChaqueCoup() {
+        Destination d60 = getDestination("D60"); // Anchorage - Vancouver - Winnipeg - Cambridge Bay (12, 18, 24)
+        destinationsJoueur1.add(d60);
+        verifierScoreProjete();
+
+        jouer("R7", cartes(TypeCarteTransport.BATEAU, Couleur.NOIR, 6)); // Anchorage - Cambridge Bay (M, NOIR, 6)
+        assertEquals(1, routesJoueur1.size());
+        verifierScoreProjete();
+
+        Ville anchorage = getPort("Anchorage");
+        String[] cartesPort = {
+                ajouterCarte(TypeCarteTransport.WAGON, Couleur.ROUGE).getNom(),
+                ajouterCarte(TypeCarteTransport.WAGON, Couleur.ROUGE).getNom(),
+                ajouterCarte(TypeCarteTransport.BATEAU, Couleur.ROUGE).getNom(),
+                ajouterCarte(TypeCarteTransport.BATEAU, Couleur.ROUGE).getNom() };
+        jouer("Anchorage", cartesPort);
+        assertTrue(portsJoueur1.contains(anchorage));
+        verifierScoreProjete();
+
+        jouer("R32", cartes(TypeCarteTransport.WAGON, Couleur.NOIR, 4)); // Cambridge Bay - Winnipeg (T, NOIR, 4)
+        verifierScoreProjete();
+        jouer("R104", cartes(TypeCarteTransport.WAGON, Couleur.ROUGE, 3)); // Los Angeles - Winnipeg (T, GRIS, 3)
+        verifierScoreProjete();
+        assertFalse(joueur1.destinationEstComplete(d60));
+
+        int avant = joueur1.getScoreProjete();
+        jouer("R103", cartes(TypeCarteTransport.WAGON, Couleur.VERT, 1)); // Los Angeles - Vancouver (T, VERT, 1)
+        assertTrue(joueur1.destinationEstComplete(d60));
+        verifierScoreProjete();
+        // 1 point pour la route, 12 + 24 pour l'itinéraire, et le port
+        // d'Anchorage compte désormais une destination
+        assertTrue(joueur1.getScoreProjete() > avant + 1 + 12 + 24);
+    }
+
+    @Test
+    void testScoreProjeteApresModificationsDirectesDesListes() {
+        Destination d60 = getDestination("D60"); // Anchorage - Vancouver - Winnipeg - Cambridge Bay (12, 18, 24)
+        Destination d19 = getDestination("D19"); // Hong Kong - Jakarta (5)
+        destinationsJoueur1.addAll(List.of(d60, d19));
+        verifierScoreProjete();
+
+        for (String nom : List.of("R7", "R32", "R104", "R103")) {
+            Route r = getRoute(nom);
+            routes.remove(r);
+            routesJoueur1.add(r);
+            verifierScoreProjete();
+        }
+        assertTrue(joueur1.destinationEstComplete(d60));
+
+        Ville vancouver = getPort("Vancouver");
+        ports.remove(vancouver);
+        portsJoueur1.add(vancouver);
+        verifierScoreProjete();
+
+        destinationsJoueur1.remove(d19);
+        verifierScoreProjete();
+
+        Route r7 = routesJoueur1.remove(0);
+        routes.add(r7);
+        assertFalse(joueur1.destinationEstComplete(d60));
+        verifierScoreProjete();
+
+        portsJoueur1.clear();
+        destinationsJoueur1.clear();
+        verifierScoreProjete();
+    }
+}
@@ -0,0 +1,185 @@
+package fr.umontpellier.iut.rails.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.Route;
+import fr.umontpellier.iut.rails.TestUtils;
+
+public class MoteurReglesTest {
+    private Jeu jeu;
+    private MoteurRegles moteur;
+    private int[] coups;
+
+    @BeforeEach
+    void setUp() {
+        jeu = new Jeu(new String[] { "J1", "J2", "J3" }, 42L);
+        jeu.remplirCartesTransportVisibles();
+        for (Joueur joueur : jeu.getJoueurs()) {
+            for (int i = 0; i < 3; i++) {
+                joueur.getCartesTransport().add(jeu.piocherCarteWagon());
+            }
+            for (int i = 0; i < 7; i++) {
+                joueur.getCartesTransport().add(jeu.piocherCarteBateau());
+            }
+            for (int i = 0; i < 3; i++) {
+                joueur.getDestinations().add(jeu.piocherDestination());
+            }
+            TestUtils.setAttribute(joueur, "nbPionsWagon", 20);
+            TestUtils.setAttribute(joueur, "nbPionsWagonEnReserve", 5);
+            TestUtils.setAttribute(joueur, "nbPionsBateau", 40);
+            TestUtils.setAttribute(joueur, "nbPionsBateauEnReserve", 10);
+        }
+        moteur = new MoteurRegles(jeu.getDonneesPlateau());
+        coups = new int[moteur.getTailleMaxCoups()];
+    }
+
+    /**
+     * Choisit un coup au hasard, en capturant une route ou un port dès que
+     * possible (pour que la partie avance)
+     */
+    private int choisirCoup(EtatSimulation etat, SplittableRandom aleatoire) {
+        int n = moteur.coupsLegaux(etat, coups);
+        for (int i = 0; i < n; i++) {
+            int type = Coup.type(coups[i]);
+            if (type == Coup.CAPTURER_ROUTE || type == Coup.CONSTRUIRE_PORT) {
+                return coups[i];
+            }
+        }
+        int coup;
+        do {
+            coup = coups[aleatoire.nextInt(n)];
+        } while (Coup.type(coup) == Coup.PIONS_WAGON || Coup.type(coup) == Coup.PIONS_BATEAU);
+        return coup;
+    }
+
+    private int nbCartes(EtatSimulation etat) {
+        int n = 0;
+        for (int s = 0; s < etat.getPlateau().getNbSortes(); s++) {
+            n += etat.getNbCartesPioche(s) + etat.getNbCartesDefausse(s) + etat.getNbCartesVisibles(s);
+            for (int j = 0; j < etat.getNbJoueurs(); j++) {
+                n += etat.getNbCartesMain(j, s);
+            }
+        }
+        return n;
+    }
+
+    @Test
+    void testCopieIndependante() {
+        EtatSimulation etat = jeu.exporterEtatSimulation();
+        EtatSimulation copie = etat.copy();
+        assertEquals(etat, copie);
+
+        moteur.appliquer(copie, Coup.creer(Coup.PIOCHER_WAGON), new SplittableRandom(1));
+        assertNotEquals(etat, copie);
+        assertEquals(jeu.exporterEtatSimulation(), etat);
+        assertEquals(EtatSimulation.DEUXIEME_CARTE, copie.getPhase());
+        assertTrue(etat.getTailleDonnees() < 1024);
+    }
+
+    @Test
+    void testAnnulerAvecCopierDans() {
+        EtatSimulation etat = jeu.exporterEtatSimulation();
+        EtatSimulation sauvegarde = etat.copy();
+        SplittableRandom aleatoire = new SplittableRandom(5);
+        int n = moteur.coupsLegaux(etat, coups);
+        for (int i = 0; i < n; i++) {
+            etat.copierDans(sauvegarde);
+            moteur.appliquer(etat, coups[i], aleatoire);
+            sauvegarde.copierDans(etat);
+            assertEquals(jeu.exporterEtatSimulation(), etat);
+        }
+    }
+
+    @Test
+    void testAnnulerAvecUneTrace() {
+        EtatSimulation etat = jeu.exporterEtatSimulation();
+        SplittableRandom aleatoire = new SplittableRandom(13);
+        Trace trace = new Trace();
+        int[] joues = new int[100_000];
+        EtatSimulation[] avant = new EtatSimulation[joues.length];
+        int n = 0;
+        while (!etat.estTerminee()) {
+            avant[n] = etat.copy();
+            joues[n] = choisirCoup(etat, aleatoire);
+            moteur.appliquer(etat, joues[n], aleatoire, trace);
+            n++;
+        }
+        assertTrue(n > 50);
+        int dernier = joues[n - 1];
+        assertThrows(IllegalArgumentException.class,
+                () -> moteur.annuler(etat, dernier + 1, trace));
+        // chaque coup annulé redonne l'état qui le précédait
+        while (n > 0) {
+            n--;
+            moteur.annuler(etat, joues[n], trace);
+            assertEquals(avant[n], etat);
+        }
+        assertEquals(jeu.exporterEtatSimulation(), etat);
+        assertEquals(0, trace.getNbEntrees());
+    }
+
+    @Test
+    void testExportImport() {
+        EtatSimulation etat = jeu.exporterEtatSimulation();
+        assertEquals(jeu.getIndexCartes().taille(), nbCartes(etat));
+        SplittableRandom aleatoire = new SplittableRandom(7);
+        for (int i = 0; !etat.estTerminee() && (i < 200 || etat.getPhase() != EtatSimulation.DEBUT_TOUR); i++) {
+            moteur.appliquer(etat, choisirCoup(etat, aleatoire), aleatoire);
+        }
+
+        jeu.importerEtatSimulation(etat);
+        assertEquals(etat, jeu.exporterEtatSimulation());
+        assertEquals(jeu.getIndexCartes().taille(), nbCartes(etat));
+        Joueur joueur = jeu.getJoueurs().get(etat.getJoueurCourant());
+        assertEquals(etat.getScore(etat.getJoueurCourant()), joueur.getScore());
+    }
+
+    @Test
+    void testRoutesCapturablesCommeDansLeJeu() {
+        EtatSimulation etat = jeu.exporterEtatSimulation();
+        SplittableRandom aleatoire = new SplittableRandom(3);
+        int nbComparaisons = 0;
+        for (int i = 0; i < 600 && !etat.estTerminee(); i++) {
+            moteur.appliquer(etat, choisirCoup(etat, aleatoire), aleatoire);
+            if (i % 20 != 0 || etat.getPhase() != EtatSimulation.DEBUT_TOUR) {
+                continue;
+            }
+            jeu.importerEtatSimulation(etat);
+            int j = etat.getJoueurCourant();
+            Joueur joueur = jeu.getJoueurs().get(j);
+            for (Route r : jeu.getRoutesLibres()) {
+                int id = jeu.getIndexRoutes().getId(r);
+                assertEquals(r.peutEtreCaptureePar(joueur), moteur.peutCapturerRoute(etat, j, id), r.toString());
+                nbComparaisons++;
+            }
+        }
+        assertTrue(nbComparaisons > 0);
+    }
+
+    @Test
+    void testPartieSimuleeSeTermine() {
+        EtatSimulation etat = jeu.exporterEtatSimulation();
+        SplittableRandom aleatoire = new SplittableRandom(11);
+        for (int i = 0; i < 100_000 && !etat.estTerminee(); i++) {
+            moteur.appliquer(etat, choisirCoup(etat, aleatoire), aleatoire);
+            assertEquals(jeu.getIndexCartes().taille(), nbCartes(etat));
+        }
+        assertTrue(etat.estTerminee());
+        assertEquals(0, moteur.coupsLegaux(etat, coups));
+
+        jeu.importerEtatSimulation(etat);
+        for (int j = 0; j < etat.getNbJoueurs(); j++) {
+            assertEquals(jeu.getJoueurs().get(j).calculerScoreFinal(), moteur.scoreFinal(etat, j));
+        }
+    }
+}